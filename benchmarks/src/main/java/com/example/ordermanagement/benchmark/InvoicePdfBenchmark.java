@@ -0,0 +1,87 @@
+package com.example.ordermanagement.benchmark;
+
+import com.example.ordermanagement.service.FileSystemInvoiceStore;
+import com.example.ordermanagement.service.InvoicePdf;
+import com.example.ordermanagement.service.InvoiceStore;
+import com.example.ordermanagement.service.OperationMetrics;
+import com.example.ordermanagement.service.PdfService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * {@link PdfService#generateInvoicePdf}: {@code render} writes into one reused scratch file to
+ * measure the template alone, {@code renderAndStore} goes through {@link FileSystemInvoiceStore}
+ * (temp file plus atomic move) under a temporary directory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InvoicePdfBenchmark {
+
+    private Path dir;
+    private FileChannel scratch;
+    private PdfService renderOnly;
+    private PdfService renderAndStore;
+    private final UUID orderId = UUID.randomUUID();
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("invoice-bench");
+        scratch = FileChannel.open(dir.resolve("scratch.pdf"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Path scratchPath = dir.resolve("scratch.pdf");
+        OperationMetrics metrics = new OperationMetrics(new SimpleMeterRegistry());
+        renderOnly = new PdfService(new InvoiceStore() {
+            @Override
+            public Path write(UUID id, ContentWriter writer) throws IOException {
+                scratch.truncate(0);
+                scratch.position(0);
+                writer.writeTo(scratch);
+                return scratchPath;
+            }
+
+            @Override
+            public void index(Collection<InvoicePdf> invoices) {
+            }
+
+            @Override
+            public Optional<Path> locate(UUID id) {
+                return Optional.empty();
+            }
+        }, metrics);
+        renderAndStore = new PdfService(new FileSystemInvoiceStore(null, null, dir.resolve("store").toString()), metrics);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        scratch.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public InvoicePdf render() throws IOException {
+        return renderOnly.generateInvoicePdf(orderId, "customer@example.com");
+    }
+
+    @Benchmark
+    public InvoicePdf renderAndStore() throws IOException {
+        return renderAndStore.generateInvoicePdf(orderId, "customer@example.com");
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.ordermanagement.benchmark;
+
+import com.example.ordermanagement.config.RabbitConfig;
+import com.example.ordermanagement.messaging.JobMessageCodec;
+import com.example.ordermanagement.messaging.dto.InvoiceJobDto;
+import com.example.ordermanagement.messaging.dto.RefundJobDto;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Job message (de)serialization through the converter {@link RabbitConfig} registers, with an
+ * ObjectMapper built like Spring Boot's default one, for each codec ({@code app.jobs.codec}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JobMessageCodecBenchmark {
+
+    @Param({"JSON", "BINARY"})
+    public JobMessageCodec codec;
+
+    private MessageConverter converter;
+    private String contentType;
+    private InvoiceJobDto invoiceJob;
+    private RefundJobDto refundJob;
+    private byte[] invoiceBody;
+    private byte[] refundBody;
+    private MessageProperties invoiceProps;
+    private MessageProperties refundProps;
+
+    @Setup
+    public void setup() {
+        converter = new RabbitConfig().jobMessageConverter(Jackson2ObjectMapperBuilder.json().build());
+        contentType = codec.contentType();
+        invoiceJob = new InvoiceJobDto(UUID.randomUUID(), UUID.randomUUID(), "customer@example.com");
+        refundJob = new RefundJobDto(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), "pay-000123456", "EUR");
+        Message invoice = converter.toMessage(invoiceJob, outbound());
+        Message refund = converter.toMessage(refundJob, outbound());
+        invoiceBody = invoice.getBody();
+        refundBody = refund.getBody();
+        invoiceProps = invoice.getMessageProperties();
+        refundProps = refund.getMessageProperties();
+    }
+
+    @Benchmark
+    public Message serializeInvoiceJob() {
+        return converter.toMessage(invoiceJob, outbound());
+    }
+
+    @Benchmark
+    public Message serializeRefundJob() {
+        return converter.toMessage(refundJob, outbound());
+    }
+
+    @Benchmark
+    public Object deserializeInvoiceJob() {
+        return converter.fromMessage(new Message(invoiceBody, invoiceProps));
+    }
+
+    @Benchmark
+    public Object deserializeRefundJob() {
+        return converter.fromMessage(new Message(refundBody, refundProps));
+    }
+
+    private MessageProperties outbound() {
+        MessageProperties props = new MessageProperties();
+        props.setContentType(contentType);
+        return props;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.ordermanagement.benchmark;
+
+import com.example.ordermanagement.config.JobShards;
+import com.example.ordermanagement.config.RabbitConfig;
+import com.example.ordermanagement.domain.Order;
+import com.example.ordermanagement.domain.OrderStatus;
+import com.example.ordermanagement.domain.OutboxMessage;
+import com.example.ordermanagement.messaging.RabbitJobTransport;
+import com.example.ordermanagement.messaging.dto.InvoiceJobDto;
+import com.example.ordermanagement.repository.JobLogRepository;
+import com.example.ordermanagement.repository.OutboxMessageRepository;
+import com.example.ordermanagement.service.JobPublisherService;
+import com.example.ordermanagement.service.OperationMetrics;
+import com.example.ordermanagement.service.OutboxRelay;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The two halves of job publishing with the database and broker stubbed out (see {@link Stubs}):
+ * {@code enqueueInvoiceJob} is {@link JobPublisherService#publishInvoiceJob} building the job row
+ * and the serialized outbox message, {@code relayBatch} is one {@link OutboxRelay} pass that
+ * publishes {@code batchSize} claimed messages through {@code RabbitJobTransport} and a {@code RabbitTemplate} whose sends and
+ * confirms are no-ops. Repository calls go through a JDK proxy, which adds a little allocation
+ * of its own.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JobPublishBenchmark {
+
+    @Param({"1", "4"})
+    public int shards;
+
+    @Param({"100"})
+    public int batchSize;
+
+    private JobPublisherService publisher;
+    private OutboxRelay relay;
+    private Order order;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        MessageConverter converter = new RabbitConfig().jobMessageConverter(Jackson2ObjectMapperBuilder.json().build());
+        JobLogRepository jobs = Stubs.repository(JobLogRepository.class, Map.of());
+
+        List<OutboxMessage> claimed = new ArrayList<>(batchSize);
+        byte[] payload = converter.toMessage(new InvoiceJobDto(
+                UUID.randomUUID(), UUID.randomUUID(), "customer@example.com"), new MessageProperties()).getBody();
+        for (int i = 0; i < batchSize; i++) {
+            claimed.add(new OutboxMessage(UUID.randomUUID(), UUID.randomUUID(), RabbitConfig.EXCHANGE, RabbitConfig.INVOICE_ROUTING_KEY,
+                    UUID.randomUUID(), "application/json", "com.example.ordermanagement.messaging.dto.InvoiceJobDto", payload));
+        }
+        OutboxMessageRepository outbox = Stubs.repository(OutboxMessageRepository.class, Map.of("claimBatch", args -> claimed));
+
+        publisher = new JobPublisherService(converter, jobs, outbox);
+        RabbitJobTransport transport = new RabbitJobTransport(new Stubs.RecordingRabbitTemplate(), new JobShards(shards));
+        // @Value fields are not injected outside Spring
+        setField(transport, "confirmTimeoutMs", 5000L);
+        relay = new OutboxRelay(outbox, jobs, transport, new Stubs.NoopTransactionManager(), new OperationMetrics(new SimpleMeterRegistry()));
+        // one more than the batch ends the pass
+        setField(relay, "batchSize", batchSize + 1);
+        order = new Order(UUID.randomUUID(), "bench-1", "customer@example.com", new BigDecimal("99.90"), OrderStatus.SHIPPED);
+    }
+
+    @Benchmark
+    public UUID enqueueInvoiceJob() {
+        return publisher.publishInvoiceJob(order);
+    }
+
+    @Benchmark
+    public void relayBatch() {
+        relay.relayPending();
+    }
+
+    private static void setField(Object target, String name, Object value) throws ReflectiveOperationException {
+        Field f = target.getClass().getDeclaredField(name);
+        f.setAccessible(true);
+        f.set(target, value);
+    }
+}
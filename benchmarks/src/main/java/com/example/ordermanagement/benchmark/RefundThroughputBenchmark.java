@@ -0,0 +1,79 @@
+package com.example.ordermanagement.benchmark;
+
+import com.example.ordermanagement.config.VirtualThreads;
+import com.example.ordermanagement.service.MockRefundClient;
+import com.example.ordermanagement.service.RefundClient;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refund calls/sec against {@link MockRefundClient} (200 ms per call) with at most
+ * {@code inFlight} calls running, on a fixed pool of {@code platformThreads} platform threads or
+ * on a virtual thread per call. Platform throughput stays flat at the pool size, virtual thread
+ * throughput follows {@code inFlight}; this is what {@code app.execution.virtual-threads.enabled}
+ * buys the refund listener. The {@code virtual} runs need a Java 21+ JVM and fail in setup on
+ * older ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class RefundThroughputBenchmark {
+
+    private static final int CALLS = 256;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"8", "32", "128"})
+    public int inFlight;
+
+    @Param({"16"})
+    public int platformThreads;
+
+    private final RefundClient client = new MockRefundClient();
+    private ExecutorService executor;
+    private Semaphore permits;
+
+    @Setup
+    public void setup() {
+        executor = "virtual".equals(threads)
+                ? VirtualThreads.newPerTaskExecutor()
+                : Executors.newFixedThreadPool(platformThreads);
+        permits = new Semaphore(inFlight);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public void refunds() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(CALLS);
+        for (int i = 0; i < CALLS; i++) {
+            executor.execute(() -> {
+                permits.acquireUninterruptibly();
+                try {
+                    RefundClient.RefundRequestDto req = new RefundClient.RefundRequestDto();
+                    req.idempotencyKey = Thread.currentThread().getName();
+                    req.currency = "USD";
+                    client.processRefund(req);
+                } catch (RefundClient.RefundException ignored) {
+                } finally {
+                    permits.release();
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.ordermanagement.benchmark;
+
+import com.example.ordermanagement.domain.OrderStatus;
+import com.example.ordermanagement.domain.ReturnStatus;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transition checks over every (from, to) pair of the order and return state machines; scores
+ * are per check.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatusTransitionBenchmark {
+
+    private final OrderStatus[] orderStatuses = OrderStatus.values();
+    private final ReturnStatus[] returnStatuses = ReturnStatus.values();
+
+    @Benchmark
+    @OperationsPerInvocation(36)
+    public void orderCanTransitionTo(Blackhole bh) {
+        for (OrderStatus from : orderStatuses) {
+            for (OrderStatus to : orderStatuses) {
+                bh.consume(from.canTransitionTo(to));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(49)
+    public void returnCanTransitionTo(Blackhole bh) {
+        for (ReturnStatus from : returnStatuses) {
+            for (ReturnStatus to : returnStatuses) {
+                bh.consume(from.canTransitionTo(to));
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.ordermanagement.benchmark;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * In-memory stand-ins for the broker, the database and the transaction manager, so the
+ * publish path runs without external services.
+ */
+final class Stubs {
+
+    private Stubs() {
+    }
+
+    /**
+     * A repository whose methods answer from {@code answers} by name; {@code save} returns its
+     * argument and anything else returns the type's default value.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T repository(Class<T> type, Map<String, Function<Object[], Object>> answers) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Function<Object[], Object> answer = answers.get(method.getName());
+            if (answer != null) {
+                return answer.apply(args);
+            }
+            if (method.getName().equals("save")) {
+                return args[0];
+            }
+            Class<?> r = method.getReturnType();
+            if (r == int.class) {
+                return 0;
+            }
+            if (r == long.class) {
+                return 0L;
+            }
+            if (r == boolean.class) {
+                return false;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Runs {@code invoke} callbacks on itself, counts sends and confirms immediately.
+     */
+    static final class RecordingRabbitTemplate extends RabbitTemplate {
+        long sent;
+
+        @Override
+        public <T> T invoke(OperationsCallback<T> action, com.rabbitmq.client.ConfirmCallback acks,
+                            com.rabbitmq.client.ConfirmCallback nacks) {
+            return action.doInRabbit(this);
+        }
+
+        @Override
+        public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+            sent += message.getBody().length;
+        }
+
+        @Override
+        public void waitForConfirmsOrDie(long timeout) {
+        }
+    }
+
+    static final class NoopTransactionManager implements PlatformTransactionManager {
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    }
+}
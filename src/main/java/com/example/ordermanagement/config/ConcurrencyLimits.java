@@ -0,0 +1,51 @@
+package com.example.ordermanagement.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Explicit caps on how much work of each kind runs at once, independent of how many threads
+ * are around to run it. With virtual threads the thread count is no longer a limit, so these
+ * semaphores are what keeps the gateway and the CPU from being overrun.
+ */
+@Component
+public class ConcurrencyLimits {
+
+    private final Semaphore refundCalls;
+    private final Semaphore invoiceRenders;
+    private final int refundCallPermits;
+    private final int invoiceRenderPermits;
+
+    public ConcurrencyLimits(@Value("${app.execution.refund.max-in-flight:64}") int refundCallPermits,
+                             @Value("${app.execution.invoice.max-in-flight:0}") int invoiceRenderPermits) {
+        this.refundCallPermits = refundCallPermits;
+        // rendering is CPU bound; default to one per core
+        this.invoiceRenderPermits = invoiceRenderPermits > 0 ? invoiceRenderPermits : Runtime.getRuntime().availableProcessors();
+        this.refundCalls = new Semaphore(this.refundCallPermits, true);
+        this.invoiceRenders = new Semaphore(this.invoiceRenderPermits);
+    }
+
+    /** Permits for concurrent {@code RefundClient} calls. */
+    public Semaphore refundCalls() {
+        return refundCalls;
+    }
+
+    /** Permits for concurrent invoice renders. */
+    public Semaphore invoiceRenders() {
+        return invoiceRenders;
+    }
+
+    public int refundCallPermits() {
+        return refundCallPermits;
+    }
+
+    public int refundCallsInFlight() {
+        return refundCallPermits - refundCalls.availablePermits();
+    }
+
+    public int invoiceRendersInFlight() {
+        return invoiceRenderPermits - invoiceRenders.availablePermits();
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.ordermanagement.config;
+
+import com.example.ordermanagement.domain.JobType;
+import com.example.ordermanagement.listener.InvoiceListener;
+import com.example.ordermanagement.listener.RefundListener;
+import com.example.ordermanagement.messaging.DeadLetterPublisher;
+import com.example.ordermanagement.messaging.dto.InvoiceJobDto;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.BatchMessageListener;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.rabbit.annotation.RabbitListenerConfigurer;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registers the job listeners: one container per shard queue and job type (see
+ * {@link JobShards}). With a single shard the containers keep their original ids
+ * ({@code invoiceListener} or {@code invoiceBatchListener}, and {@code refundListener}) and the
+ * factories' concurrency; with more, shard {@code i} gets {@code <id>-i} and exactly one
+ * consumer, which together with the queues' single-active-consumer flag means one order's jobs
+ * are handled by one consumer on one node. They are handled in the order they were written to
+ * the outbox: the relay publishes an order's messages one after the other (see
+ * {@code OutboxMessageRepository#claimBatch}), invoice consumers handle deliveries serially,
+ * and {@link RefundListener} runs an order's refunds one at a time within its window. A job
+ * that is retried lets the order's later jobs go first. Not used with
+ * {@code app.jobs.transport=ring}, where
+ * {@link com.example.ordermanagement.messaging.RingBufferJobTransport} feeds the listeners.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.jobs.transport", havingValue = "rabbit", matchIfMissing = true)
+public class JobListenerConfig implements RabbitListenerConfigurer {
+
+    private final InvoiceListener invoiceListener;
+    private final RefundListener refundListener;
+    private final MessageConverter messageConverter;
+    private final DeadLetterPublisher deadLetterPublisher;
+    private final JobShards jobShards;
+    private final SimpleRabbitListenerContainerFactory defaultFactory;
+    private final SimpleRabbitListenerContainerFactory invoiceBatchFactory;
+    private final boolean invoiceBatchEnabled;
+
+    public JobListenerConfig(InvoiceListener invoiceListener, RefundListener refundListener, MessageConverter messageConverter,
+                             DeadLetterPublisher deadLetterPublisher, JobShards jobShards,
+                             @Qualifier("rabbitListenerContainerFactory") SimpleRabbitListenerContainerFactory defaultFactory,
+                             @Qualifier(RabbitConfig.INVOICE_BATCH_CONTAINER_FACTORY) SimpleRabbitListenerContainerFactory invoiceBatchFactory,
+                             @Value("${app.jobs.invoice.batch.enabled:false}") boolean invoiceBatchEnabled) {
+        this.invoiceListener = invoiceListener;
+        this.refundListener = refundListener;
+        this.messageConverter = messageConverter;
+        this.deadLetterPublisher = deadLetterPublisher;
+        this.jobShards = jobShards;
+        this.defaultFactory = defaultFactory;
+        this.invoiceBatchFactory = invoiceBatchFactory;
+        this.invoiceBatchEnabled = invoiceBatchEnabled;
+    }
+
+    @Override
+    public void configureRabbitListeners(RabbitListenerEndpointRegistrar registrar) {
+        for (int shard = 0; shard < jobShards.count(); shard++) {
+            String invoiceQueue = jobShards.queueName(RabbitConfig.queue(JobType.INVOICE_GENERATION), shard);
+            if (invoiceBatchEnabled) {
+                SimpleRabbitListenerEndpoint batch = endpoint("invoiceBatchListener", shard, invoiceQueue);
+                batch.setBatchListener(true);
+                batch.setMessageListener((BatchMessageListener) this::onInvoiceBatch);
+                registrar.registerEndpoint(batch, invoiceBatchFactory);
+            } else {
+                SimpleRabbitListenerEndpoint single = endpoint("invoiceListener", shard, invoiceQueue);
+                single.setMessageListener((MessageListener) m -> invoiceListener.handleInvoice(toInvoiceJob(m)));
+                registrar.registerEndpoint(single, defaultFactory);
+            }
+
+            SimpleRabbitListenerEndpoint refund = endpoint("refundListener", shard,
+                    jobShards.queueName(RabbitConfig.queue(JobType.REFUND_PROCESSING), shard));
+            // acked by RefundListener once the gateway call has settled
+            refund.setAckMode(AcknowledgeMode.MANUAL);
+            refund.setMessageListener((ChannelAwareMessageListener) refundListener::handleRefund);
+            registrar.registerEndpoint(refund, defaultFactory);
+        }
+    }
+
+    private SimpleRabbitListenerEndpoint endpoint(String id, int shard, String queue) {
+        SimpleRabbitListenerEndpoint endpoint = new SimpleRabbitListenerEndpoint();
+        endpoint.setId(jobShards.isSharded() ? id + "-" + shard : id);
+        endpoint.setQueueNames(queue);
+        if (jobShards.isSharded()) {
+            endpoint.setConcurrency("1");
+        }
+        return endpoint;
+    }
+
+    /**
+     * Converts the batch and hands what converted to the listener. Deliveries that cannot be
+     * converted are dead-lettered only once the rest has been handled: if the listener throws,
+     * the whole batch is retried and finally dead-lettered by the container, and publishing
+     * them here first would dead-letter them once per attempt.
+     */
+    private void onInvoiceBatch(List<Message> messages) {
+        List<InvoiceJobDto> jobs = new ArrayList<>(messages.size());
+        List<Message> unconvertible = new ArrayList<>();
+        List<RuntimeException> causes = new ArrayList<>();
+        for (Message m : messages) {
+            try {
+                jobs.add(toInvoiceJob(m));
+            } catch (RuntimeException e) {
+                unconvertible.add(m);
+                causes.add(e);
+            }
+        }
+        if (!jobs.isEmpty()) {
+            invoiceListener.handleInvoiceBatch(jobs);
+        }
+        for (int i = 0; i < unconvertible.size(); i++) {
+            deadLetterPublisher.publish(unconvertible.get(i), causes.get(i));
+        }
+    }
+
+    private InvoiceJobDto toInvoiceJob(Message message) {
+        message.getMessageProperties().setInferredArgumentType(InvoiceJobDto.class);
+        return (InvoiceJobDto) messageConverter.fromMessage(message);
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.ordermanagement.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Spreads each job type over {@code app.jobs.shards} queues. A job's shard is a jump
+ * consistent hash of its order id, so all jobs of one order land on the same queue, where
+ * they are handled in order (see {@link JobListenerConfig}), and, when
+ * the shard count changes from N to M, only about |N - M| / max(N, M) of orders move. Shard
+ * {@code i} of queue {@code q} is named {@code q.i} and bound with routing key {@code base.i};
+ * with a single shard the original names are used unchanged.
+ */
+@Component
+public class JobShards {
+
+    private final int count;
+
+    public JobShards(@Value("${app.jobs.shards:1}") int count) {
+        this.count = Math.max(1, count);
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public boolean isSharded() {
+        return count > 1;
+    }
+
+    public int shardOf(UUID shardKey) {
+        if (shardKey == null) {
+            return 0;
+        }
+        return jumpConsistentHash(mix(shardKey.getMostSignificantBits() ^ shardKey.getLeastSignificantBits()), count);
+    }
+
+    /**
+     * Routing key that reaches {@code shardKey}'s shard, given the job type's base key (or a
+     * key for a different shard count; its shard suffix is ignored).
+     */
+    public String routingKey(String routingKey, UUID shardKey) {
+        String base = baseRoutingKey(routingKey);
+        return isSharded() ? base + "." + shardOf(shardKey) : base;
+    }
+
+    public String routingKeyForShard(String baseRoutingKey, int shard) {
+        return isSharded() ? baseRoutingKey + "." + shard : baseRoutingKey;
+    }
+
+    public String queueName(String baseQueue, int shard) {
+        return isSharded() ? baseQueue + "." + shard : baseQueue;
+    }
+
+    public List<String> queueNames(String baseQueue) {
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(queueName(baseQueue, i));
+        }
+        return names;
+    }
+
+    /**
+     * Strips a trailing shard number ({@code invoice.generate.3} becomes {@code invoice.generate}).
+     */
+    public static String baseRoutingKey(String routingKey) {
+        int dot = routingKey.lastIndexOf('.');
+        if (dot < 0 || dot == routingKey.length() - 1) {
+            return routingKey;
+        }
+        for (int i = dot + 1; i < routingKey.length(); i++) {
+            if (!Character.isDigit(routingKey.charAt(i))) {
+                return routingKey;
+            }
+        }
+        return routingKey.substring(0, dot);
+    }
+
+    // Lamping & Veach, "A Fast, Minimal Memory, Consistent Hash Algorithm"
+    static int jumpConsistentHash(long key, int buckets) {
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+
+    private static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
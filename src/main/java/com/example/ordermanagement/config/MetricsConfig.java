@@ -0,0 +1,122 @@
+package com.example.ordermanagement.config;
+
+import com.example.ordermanagement.domain.JobType;
+import com.example.ordermanagement.messaging.RingBufferJobTransport;
+import com.example.ordermanagement.service.*;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Publishes the read-outs behind {@code /admin} as meters, next to the timers and counters of
+ * {@link OperationMetrics}. Everything is scraped from {@code /actuator/prometheus}.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder jobPipelineMeters(CompletedJobFilter completedJobFilter, TransitionGuard transitionGuard,
+                                         RetryScheduler retryScheduler, ConcurrencyLimits concurrencyLimits,
+                                         ObjectProvider<RingBufferJobTransport> ringTransport) {
+        return registry -> {
+            FunctionCounter.builder("jobs.completed.filter.lookups", completedJobFilter, f -> f.stats().hits)
+                    .tag("result", "known_completed").register(registry);
+            FunctionCounter.builder("jobs.completed.filter.lookups", completedJobFilter, f -> f.stats().misses)
+                    .tag("result", "unknown").register(registry);
+
+            FunctionCounter.builder("transitions.lock.acquisitions", transitionGuard, g -> g.stats().acquisitions).register(registry);
+            FunctionCounter.builder("transitions.lock.contended", transitionGuard, g -> g.stats().contended).register(registry);
+            FunctionCounter.builder("transitions.lock.timeouts", transitionGuard, g -> g.stats().lockTimeouts).register(registry);
+            FunctionCounter.builder("transitions.conflicts", transitionGuard, g -> g.stats().conflicts).register(registry);
+            FunctionCounter.builder("transitions.retries.exhausted", transitionGuard, g -> g.stats().retriesExhausted).register(registry);
+
+            Gauge.builder("jobs.retry.pending", retryScheduler, RetryScheduler::pending)
+                    .description("Claimed retries waiting on this node's timing wheel").register(registry);
+            Gauge.builder("refunds.in.flight", concurrencyLimits, ConcurrencyLimits::refundCallsInFlight).register(registry);
+            Gauge.builder("invoices.renders.in.flight", concurrencyLimits, ConcurrencyLimits::invoiceRendersInFlight).register(registry);
+            ringTransport.ifAvailable(transport -> {
+                for (JobType type : JobType.values()) {
+                    Gauge.builder("jobs.ring.depth", transport, t -> t.depth(type))
+                            .description("Messages waiting in the in-process job rings")
+                            .tag("type", type.name().toLowerCase(Locale.ROOT)).register(registry);
+                }
+            });
+        };
+    }
+
+    @Bean
+    public MeterBinder readCacheMeters(VersionedCache<UUID, OrderService.OrderView> orderReadCache,
+                                       VersionedCache<UUID, ReturnService.ReturnView> returnReadCache) {
+        return registry -> {
+            for (VersionedCache<?, ?> cache : new VersionedCache<?, ?>[]{orderReadCache, returnReadCache}) {
+                String name = cache.stats().name;
+                Gauge.builder("cache.read.size", cache, c -> c.stats().size).tag("cache", name).register(registry);
+                FunctionCounter.builder("cache.read.hits", cache, c -> c.stats().hits).tag("cache", name).register(registry);
+                FunctionCounter.builder("cache.read.misses", cache, c -> c.stats().misses).tag("cache", name).register(registry);
+                FunctionCounter.builder("cache.read.expirations", cache, c -> c.stats().expirations).tag("cache", name).register(registry);
+                FunctionCounter.builder("cache.read.evictions", cache, c -> c.stats().evictions).tag("cache", name).register(registry);
+                FunctionCounter.builder("cache.read.stale.rejections", cache, c -> c.stats().staleRejections).tag("cache", name).register(registry);
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder historyWriterMeters(AuditHistoryWriter historyWriter) {
+        return registry -> {
+            Gauge.builder("history.writes.pending", historyWriter, AuditHistoryWriter::pending)
+                    .description("History rows queued by the write-behind writer").register(registry);
+            FunctionCounter.builder("history.writes.dropped", historyWriter, AuditHistoryWriter::dropped)
+                    .description("History rows the write-behind writer dropped, left to startup recovery").register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder refundResilienceMeters(RefundResilience resilience) {
+        return registry -> {
+            Gauge.builder("refunds.breaker.state", resilience, r -> r.stats().breakerState.ordinal())
+                    .description("Refund gateway circuit: 0 closed, 1 open, 2 half-open").register(registry);
+            FunctionCounter.builder("refunds.breaker.opened", resilience, r -> r.stats().breakerOpened).register(registry);
+            FunctionCounter.builder("refunds.calls.rejected", resilience, r -> r.stats().breakerRejections)
+                    .tag("reason", "breaker").register(registry);
+            FunctionCounter.builder("refunds.calls.rejected", resilience, r -> r.stats().bulkheadRejections)
+                    .tag("reason", "bulkhead").register(registry);
+            FunctionCounter.builder("refunds.calls.timeouts", resilience, r -> r.stats().timeouts).register(registry);
+            FunctionCounter.builder("refunds.hedges", resilience, r -> r.stats().hedgesSent).tag("result", "sent").register(registry);
+            FunctionCounter.builder("refunds.hedges", resilience, r -> r.stats().hedgesWon).tag("result", "won").register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder listenerAutoscalerMeters(ListenerAutoscaler autoscaler) {
+        return registry -> {
+            for (JobType type : JobType.values()) {
+                String t = type.name().toLowerCase(Locale.ROOT);
+                Gauge.builder("jobs.listener.consumers", autoscaler, a -> stat(a, type).consumers).tag("type", t).register(registry);
+                Gauge.builder("jobs.listener.prefetch", autoscaler, a -> stat(a, type).prefetch).tag("type", t).register(registry);
+                Gauge.builder("jobs.queue.depth", autoscaler, a -> stat(a, type).queueDepth)
+                        .description("Messages ready in the job queues at the last autoscaler sample")
+                        .tag("type", t).register(registry);
+                FunctionCounter.builder("jobs.listener.adjustments", autoscaler, a -> stat(a, type).adjustments)
+                        .tag("type", t).register(registry);
+                FunctionCounter.builder("jobs.listener.restarts", autoscaler, a -> stat(a, type).restarts)
+                        .description("Container restarts to apply a new prefetch")
+                        .tag("type", t).register(registry);
+            }
+        };
+    }
+
+    private static ListenerAutoscaler.Stats stat(ListenerAutoscaler autoscaler, JobType type) {
+        for (ListenerAutoscaler.Stats s : autoscaler.stats()) {
+            if (s.jobType == type) {
+                return s;
+            }
+        }
+        throw new IllegalArgumentException("No listener stats for " + type);
+    }
+}
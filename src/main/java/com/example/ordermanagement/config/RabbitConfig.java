@@ -1,52 +1,157 @@
 package com.example.ordermanagement.config;
 
+import com.example.ordermanagement.domain.JobType;
+import com.example.ordermanagement.messaging.BinaryJobMessageConverter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Configuration
 public class RabbitConfig {
 
     public static final String EXCHANGE = "ordermanagement.jobs";
     public static final String INVOICE_QUEUE = "ordermanagement.invoice_generation.queue";
     public static final String REFUND_QUEUE = "ordermanagement.refund_processing.queue";
+    public static final String INVOICE_ROUTING_KEY = "invoice.generate";
+    public static final String REFUND_ROUTING_KEY = "refund.process";
+    public static final String INVOICE_BATCH_CONTAINER_FACTORY = "invoiceBatchContainerFactory";
+
+    // failed deliveries are republished here under their original routing key
+    public static final String DEAD_LETTER_EXCHANGE = "ordermanagement.jobs.dlx";
+    public static final String INVOICE_DLQ = "ordermanagement.invoice_generation.dlq";
+    public static final String REFUND_DLQ = "ordermanagement.refund_processing.dlq";
+
+    public static String queue(JobType type) {
+        return type == JobType.INVOICE_GENERATION ? INVOICE_QUEUE : REFUND_QUEUE;
+    }
+
+    public static String routingKey(JobType type) {
+        return type == JobType.INVOICE_GENERATION ? INVOICE_ROUTING_KEY : REFUND_ROUTING_KEY;
+    }
+
+    public static String deadLetterQueue(JobType type) {
+        return type == JobType.INVOICE_GENERATION ? INVOICE_DLQ : REFUND_DLQ;
+    }
+
+    public static JobType jobTypeForRoutingKey(String routingKey) {
+        String base = routingKey != null ? JobShards.baseRoutingKey(routingKey) : null;
+        if (INVOICE_ROUTING_KEY.equals(base)) {
+            return JobType.INVOICE_GENERATION;
+        }
+        if (REFUND_ROUTING_KEY.equals(base)) {
+            return JobType.REFUND_PROCESSING;
+        }
+        return null;
+    }
 
     @Bean
     public TopicExchange jobsExchange() {
         return new TopicExchange(EXCHANGE);
     }
 
+    /**
+     * Work queues and their bindings, one per shard and job type (see {@link JobShards}). The
+     * queues name the DLX so deliveries the container rejects outright (e.g. a payload that
+     * cannot be converted) are dead-lettered by the broker. Shard queues are single-active-
+     * consumer: however many nodes subscribe, one consumer at a time receives a shard's
+     * deliveries, in order. Queue arguments cannot change on an existing queue, so a broker
+     * that still has queues declared with other arguments needs them deleted (once drained).
+     */
     @Bean
-    public Queue invoiceQueue() {
-        return QueueBuilder.durable(INVOICE_QUEUE).build();
+    public Declarables jobQueues(JobShards shards, TopicExchange jobsExchange) {
+        List<Declarable> declarables = new ArrayList<>();
+        for (JobType type : JobType.values()) {
+            for (int i = 0; i < shards.count(); i++) {
+                QueueBuilder builder = QueueBuilder.durable(shards.queueName(queue(type), i))
+                        .deadLetterExchange(DEAD_LETTER_EXCHANGE);
+                if (shards.isSharded()) {
+                    builder.singleActiveConsumer();
+                }
+                Queue queue = builder.build();
+                declarables.add(queue);
+                declarables.add(BindingBuilder.bind(queue).to(jobsExchange).with(shards.routingKeyForShard(routingKey(type), i)));
+            }
+        }
+        return new Declarables(declarables);
     }
 
     @Bean
-    public Queue refundQueue() {
-        return QueueBuilder.durable(REFUND_QUEUE).build();
+    public TopicExchange deadLetterExchange() {
+        return new TopicExchange(DEAD_LETTER_EXCHANGE);
     }
 
     @Bean
-    public Binding invoiceBinding(Queue invoiceQueue, TopicExchange jobsExchange) {
-        return BindingBuilder.bind(invoiceQueue).to(jobsExchange).with("invoice.generate");
+    public Queue invoiceDeadLetterQueue() {
+        return QueueBuilder.durable(INVOICE_DLQ).build();
     }
 
     @Bean
-    public Binding refundBinding(Queue refundQueue, TopicExchange jobsExchange) {
-        return BindingBuilder.bind(refundQueue).to(jobsExchange).with("refund.process");
+    public Queue refundDeadLetterQueue() {
+        return QueueBuilder.durable(REFUND_DLQ).build();
     }
 
     @Bean
-    public MessageConverter jackson2JsonMessageConverter(ObjectMapper objectMapper) {
-        return new Jackson2JsonMessageConverter(objectMapper);
+    public Binding invoiceDeadLetterBinding(Queue invoiceDeadLetterQueue, TopicExchange deadLetterExchange) {
+        // one DLQ per job type, whichever shard the delivery came from
+        return BindingBuilder.bind(invoiceDeadLetterQueue).to(deadLetterExchange).with(INVOICE_ROUTING_KEY + ".#");
+    }
+
+    @Bean
+    public Binding refundDeadLetterBinding(Queue refundDeadLetterQueue, TopicExchange deadLetterExchange) {
+        return BindingBuilder.bind(refundDeadLetterQueue).to(deadLetterExchange).with(REFUND_ROUTING_KEY + ".#");
+    }
+
+    /**
+     * Picks the job message codec by content type: JSON (also for messages without a known
+     * content type) or {@link BinaryJobMessageConverter}. Which one a node publishes with is
+     * {@code app.jobs.codec}; every node reads both.
+     */
+    @Bean
+    public MessageConverter jobMessageConverter(ObjectMapper objectMapper) {
+        MessageConverter json = new Jackson2JsonMessageConverter(objectMapper);
+        ContentTypeDelegatingMessageConverter converter = new ContentTypeDelegatingMessageConverter(json);
+        converter.addDelegate(MessageProperties.CONTENT_TYPE_JSON, json);
+        converter.addDelegate(BinaryJobMessageConverter.CONTENT_TYPE, new BinaryJobMessageConverter());
+        return converter;
+    }
+
+    /**
+     * Container factory for batch consumption of invoice jobs: each consumer collects up to
+     * {@code batchSize} deliveries (or whatever arrived within {@code receiveTimeoutMs}) and hands
+     * them to the listener as one list, acking them together after it returns. Prefetch is
+     * {@code app.jobs.invoice.batch.prefetch}, by default two batches per consumer: one being
+     * handled while the next is assembled. It is never below one batch, or no batch could fill.
+     */
+    @Bean(INVOICE_BATCH_CONTAINER_FACTORY)
+    public SimpleRabbitListenerContainerFactory invoiceBatchContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                            ConnectionFactory connectionFactory,
+                                                                            @Value("${app.jobs.invoice.batch.size:50}") int batchSize,
+                                                                            @Value("${app.jobs.invoice.batch.receive-timeout-ms:200}") long receiveTimeoutMs,
+                                                                            @Value("${app.jobs.invoice.batch.prefetch:0}") int prefetch) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(receiveTimeoutMs);
+        factory.setPrefetchCount(prefetch > 0 ? Math.max(prefetch, batchSize) : 2 * batchSize);
+        return factory;
     }
 
     @Bean
-    public RabbitTemplate rabbitTemplate(org.springframework.amqp.rabbit.connection.ConnectionFactory connectionFactory, MessageConverter messageConverter) {
+    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory, MessageConverter messageConverter) {
         RabbitTemplate rt = new RabbitTemplate(connectionFactory);
         rt.setMessageConverter(messageConverter);
         return rt;
@@ -0,0 +1,26 @@
+package com.example.ordermanagement.config;
+
+import com.example.ordermanagement.service.OrderService;
+import com.example.ordermanagement.service.ReturnService;
+import com.example.ordermanagement.service.VersionedCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.UUID;
+
+@Configuration
+public class ReadCacheConfig {
+
+    @Bean
+    public VersionedCache<UUID, OrderService.OrderView> orderReadCache(@Value("${app.cache.orders.max-size:10000}") int maxSize,
+                                                                       @Value("${app.cache.orders.expire-after-write-ms:30000}") long expireAfterWriteMs) {
+        return new VersionedCache<>("orders", maxSize, expireAfterWriteMs, v -> v.version);
+    }
+
+    @Bean
+    public VersionedCache<UUID, ReturnService.ReturnView> returnReadCache(@Value("${app.cache.returns.max-size:10000}") int maxSize,
+                                                                          @Value("${app.cache.returns.expire-after-write-ms:30000}") long expireAfterWriteMs) {
+        return new VersionedCache<>("returns", maxSize, expireAfterWriteMs, v -> v.version);
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.ordermanagement.config;
+
+import com.example.ordermanagement.service.MeteredRefundClient;
+import com.example.ordermanagement.service.OperationMetrics;
+import com.example.ordermanagement.service.RefundClient;
+import com.example.ordermanagement.service.RefundResilience;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Decorates the {@link RefundClient} bean, whoever calls it: {@link RefundResilience} on the
+ * outside, then {@link MeteredRefundClient}, so calls refused by the breaker or the bulkhead
+ * never show up in the gateway timings, while the hedged copies of a call do.
+ */
+@Configuration
+public class RefundClientConfig {
+
+    @Bean
+    public static BeanPostProcessor refundClientPostProcessor(ObjectProvider<OperationMetrics> metrics,
+                                                              ObjectProvider<RefundResilience> resilience) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof RefundClient client && !(bean instanceof RefundResilience.GuardedRefundClient)) {
+                    return resilience.getObject().decorate(new MeteredRefundClient(client, metrics.getObject()));
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.ordermanagement.config;
+
+import jakarta.annotation.PreDestroy;
+import org.apache.coyote.ProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Opt-in ({@code app.execution.virtual-threads.enabled=true}) mode that runs servlet requests and
+ * Rabbit listener consumers on virtual threads. Blocking calls such as the refund gateway then
+ * park a virtual thread instead of holding a platform thread, so the default listener container
+ * can run many more consumers; {@link ConcurrencyLimits} and {@link ConcurrencyLimitFilter} cap
+ * the actual work. Needs a Java 21+ runtime: enabling it on an older one fails startup rather
+ * than quietly keeping platform threads with virtual thread sized limits.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.execution.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadConfig.class);
+
+    private final ExecutorService requestExecutor;
+
+    public VirtualThreadConfig() {
+        if (!VirtualThreads.isSupported()) {
+            throw new IllegalStateException("app.execution.virtual-threads.enabled=true needs a Java 21+ runtime, running on Java "
+                    + Runtime.version().feature());
+        }
+        log.info("Running HTTP requests and Rabbit listeners on virtual threads");
+        this.requestExecutor = VirtualThreads.newPerTaskExecutor();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        requestExecutor.shutdown();
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer() {
+        return handler -> handler.setExecutor(requestExecutor);
+    }
+
+    @Bean
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(
+            @Value("${app.execution.http.max-concurrent-requests:512}") int maxConcurrentRequests,
+            @Value("${app.execution.http.acquire-timeout-ms:1000}") long acquireTimeoutMs) {
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration =
+                new FilterRegistrationBean<>(new ConcurrencyLimitFilter(maxConcurrentRequests, acquireTimeoutMs));
+        registration.setOrder(Integer.MIN_VALUE + 100);
+        return registration;
+    }
+
+    @Bean
+    public static BeanPostProcessor virtualThreadListenerContainerPostProcessor(
+            @Value("${app.execution.virtual-threads.listener-consumers:64}") int listenerConsumers) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof SimpleRabbitListenerContainerFactory factory) {
+                    // consumer threads live as long as the container, so one executor per factory is fine
+                    factory.setTaskExecutor(new TaskExecutorAdapter(VirtualThreads.newPerTaskExecutor()));
+                    if (!RabbitConfig.INVOICE_BATCH_CONTAINER_FACTORY.equals(beanName)) {
+                        // blocking I/O listeners: consumers are cheap now, ConcurrencyLimits caps the work
+                        factory.setConcurrentConsumers(listenerConsumers);
+                        factory.setMaxConcurrentConsumers(listenerConsumers);
+                    }
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.ordermanagement.controller;
+
+import com.example.ordermanagement.service.CompletedJobFilter;
+import com.example.ordermanagement.service.DeadLetterReplayService;
+import com.example.ordermanagement.service.ListenerAutoscaler;
+import com.example.ordermanagement.service.OrderService;
+import com.example.ordermanagement.service.ReturnService;
+import com.example.ordermanagement.service.TransitionGuard;
+import com.example.ordermanagement.service.VersionedCache;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Operational read-outs for the job pipeline.
+ */
+@RestController
+@RequestMapping("/admin")
+public class AdminController {
+
+    private final CompletedJobFilter completedJobFilter;
+    private final VersionedCache<UUID, OrderService.OrderView> orderCache;
+    private final VersionedCache<UUID, ReturnService.ReturnView> returnCache;
+    private final TransitionGuard transitionGuard;
+    private final DeadLetterReplayService deadLetterReplayService;
+    private final ListenerAutoscaler listenerAutoscaler;
+
+    public AdminController(CompletedJobFilter completedJobFilter,
+                           VersionedCache<UUID, OrderService.OrderView> orderCache,
+                           VersionedCache<UUID, ReturnService.ReturnView> returnCache,
+                           TransitionGuard transitionGuard,
+                           DeadLetterReplayService deadLetterReplayService,
+                           ListenerAutoscaler listenerAutoscaler) {
+        this.completedJobFilter = completedJobFilter;
+        this.orderCache = orderCache;
+        this.returnCache = returnCache;
+        this.transitionGuard = transitionGuard;
+        this.deadLetterReplayService = deadLetterReplayService;
+        this.listenerAutoscaler = listenerAutoscaler;
+    }
+
+    @GetMapping("/jobs/completed-filter")
+    public ResponseEntity<CompletedJobFilter.Stats> completedFilterStats() {
+        return ResponseEntity.ok(completedJobFilter.stats());
+    }
+
+    @GetMapping("/caches")
+    public ResponseEntity<List<VersionedCache.Stats>> cacheStats() {
+        return ResponseEntity.ok(List.of(orderCache.stats(), returnCache.stats()));
+    }
+
+    @GetMapping("/transitions")
+    public ResponseEntity<TransitionGuard.Stats> transitionStats() {
+        return ResponseEntity.ok(transitionGuard.stats());
+    }
+
+    @GetMapping("/listeners")
+    public ResponseEntity<List<ListenerAutoscaler.Stats>> listenerStats() {
+        return ResponseEntity.ok(listenerAutoscaler.stats());
+    }
+
+    /**
+     * Starts replaying dead-lettered jobs that match the filter; poll the returned id for
+     * progress. An empty body replays everything at the default rate.
+     */
+    @PostMapping("/dead-letters/replay")
+    public ResponseEntity<DeadLetterReplayService.ReplayStatus> replayDeadLetters(
+            @RequestBody(required = false) DeadLetterReplayService.ReplayRequest request) {
+        DeadLetterReplayService.ReplayRequest filter = request != null ? request : new DeadLetterReplayService.ReplayRequest();
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(deadLetterReplayService.start(filter));
+    }
+
+    @GetMapping("/dead-letters/replays/{id}")
+    public ResponseEntity<DeadLetterReplayService.ReplayStatus> replayStatus(@PathVariable("id") UUID id) {
+        return deadLetterReplayService.status(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.ordermanagement.controller;
+
+import com.example.ordermanagement.repository.StateHistoryRecord;
+import com.example.ordermanagement.service.HistoryService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Shared response handling for the order and return history endpoints.
+ */
+final class HistoryResponses {
+
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private HistoryResponses() {
+    }
+
+    /**
+     * The page as a JSON array (the spec's response shape); the cursor for the next page, if
+     * any, goes in {@value #NEXT_CURSOR_HEADER}.
+     */
+    static ResponseEntity<List<StateHistoryRecord>> page(Supplier<Optional<HistoryService.HistoryPage>> query) {
+        Optional<HistoryService.HistoryPage> page;
+        try {
+            page = query.get();
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        if (page.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok();
+        if (page.get().nextCursor != null) {
+            ok.header(NEXT_CURSOR_HEADER, page.get().nextCursor);
+        }
+        return ok.body(page.get().items);
+    }
+
+    /**
+     * Writes every row as one JSON array straight to the response as the rows arrive.
+     */
+    static void export(HttpServletResponse response, ObjectMapper objectMapper,
+                       Consumer<Consumer<StateHistoryRecord>> rows) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            json.writeStartArray();
+            try {
+                rows.accept(row -> {
+                    try {
+                        json.writeObject(row);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            json.writeEndArray();
+        }
+    }
+}
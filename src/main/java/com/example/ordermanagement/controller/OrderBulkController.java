@@ -0,0 +1,43 @@
+package com.example.ordermanagement.controller;
+
+import com.example.ordermanagement.service.BulkOrderService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Bulk order import. Takes NDJSON ({@code {"externalId":..,"customerEmail":..,"totalAmount":..}}
+ * per line) and streams back one NDJSON result per input line as chunks are committed.
+ */
+@RestController
+public class OrderBulkController {
+
+    private static final String NDJSON = "application/x-ndjson";
+
+    private final BulkOrderService bulkOrderService;
+    private final ObjectWriter resultWriter;
+
+    public OrderBulkController(BulkOrderService bulkOrderService, ObjectMapper objectMapper) {
+        this.bulkOrderService = bulkOrderService;
+        this.resultWriter = objectMapper.writerFor(BulkOrderService.LineResult.class);
+    }
+
+    @PostMapping(path = "/orders:bulk", consumes = {NDJSON, "text/plain"})
+    public void bulkCreate(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON);
+        OutputStream out = response.getOutputStream();
+        bulkOrderService.ingest(request.getReader(), results -> {
+            for (BulkOrderService.LineResult r : results) {
+                out.write(resultWriter.writeValueAsBytes(r));
+                out.write('\n');
+            }
+            out.flush();
+        });
+    }
+}
@@ -2,11 +2,28 @@ package com.example.ordermanagement.controller;
 
 import com.example.ordermanagement.domain.Order;
 import com.example.ordermanagement.domain.OrderStatus;
+import com.example.ordermanagement.repository.RefundLedgerRepository;
+import com.example.ordermanagement.repository.StateHistoryRecord;
+import com.example.ordermanagement.service.HistoryService;
+import com.example.ordermanagement.service.InvoiceStore;
 import com.example.ordermanagement.service.OrderService;
+import com.example.ordermanagement.service.RefundLedgerService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -14,10 +31,28 @@ import java.util.UUID;
 @RequestMapping("/orders")
 public class OrderController {
 
+    // Tomcat request attributes for handing a file to the connector's sendfile support
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
     private final OrderService orderService;
+    private final InvoiceStore invoiceStore;
+    private final HistoryService historyService;
+    private final RefundLedgerService refundLedger;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.invoices.sendfile-min-bytes:49152}")
+    private long sendfileMinBytes;
 
-    public OrderController(OrderService orderService) {
+    public OrderController(OrderService orderService, InvoiceStore invoiceStore, HistoryService historyService,
+                           RefundLedgerService refundLedger, ObjectMapper objectMapper) {
         this.orderService = orderService;
+        this.invoiceStore = invoiceStore;
+        this.historyService = historyService;
+        this.refundLedger = refundLedger;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
@@ -29,6 +64,47 @@ public class OrderController {
         return ResponseEntity.ok(o);
     }
 
+    @GetMapping("/{id}")
+    public ResponseEntity<OrderService.OrderView> getOrder(@PathVariable("id") UUID id) {
+        return orderService.getOrder(id)
+                .map(v -> ResponseEntity.ok().eTag(Long.toString(v.version)).body(v))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * State history, oldest first, {@code limit} rows per page. Pass the {@code X-Next-Cursor}
+     * header of a response as {@code after} to get the following page.
+     */
+    @GetMapping("/{id}/history")
+    public ResponseEntity<List<StateHistoryRecord>> getHistory(@PathVariable("id") UUID id,
+                                                               @RequestParam(value = "after", required = false) String after,
+                                                               @RequestParam(value = "limit", defaultValue = "50") int limit) {
+        return HistoryResponses.page(() -> historyService.orderHistory(id, after, limit));
+    }
+
+    /**
+     * The whole history in one response, streamed from a database cursor.
+     */
+    @GetMapping(value = "/{id}/history", params = "export=true")
+    public void exportHistory(@PathVariable("id") UUID id, HttpServletResponse response) throws IOException {
+        if (!historyService.orderExists(id)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        HistoryResponses.export(response, objectMapper, sink -> historyService.exportOrderHistory(id, sink));
+    }
+
+    /**
+     * Refund balance in minor currency units: refundable, reserved by refunds in flight,
+     * refunded, and what remains.
+     */
+    @GetMapping("/{id}/refunds")
+    public ResponseEntity<RefundLedgerRepository.Balance> getRefundBalance(@PathVariable("id") UUID id) {
+        return refundLedger.balance(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
     @PostMapping("/{id}/status")
     public ResponseEntity<Order> changeStatus(@PathVariable("id") UUID id, @RequestBody Map<String, String> body) {
         String target = body.get("status");
@@ -36,5 +112,38 @@ public class OrderController {
         Order o = orderService.changeOrderStatus(id, status, "api", "manual status change");
         return ResponseEntity.ok(o);
     }
-}
 
+    /**
+     * Bulk status changes, e.g. a carrier's delivery confirmations. Body is a JSON array of
+     * {@code {"orderId": .., "status": ..}}; the response reports the outcome per entry.
+     */
+    @PostMapping("/status:bulk")
+    public ResponseEntity<List<OrderService.TransitionResult>> changeStatuses(@RequestBody List<OrderService.StatusChange> changes) {
+        return ResponseEntity.ok(orderService.changeOrderStatuses(changes, "api", "bulk status change"));
+    }
+
+    /**
+     * Serves the stored invoice. Files of at least {@code sendfile-min-bytes} are handed to
+     * Tomcat's sendfile, so the kernel copies them to the socket. Smaller ones (every invoice
+     * at the default 48 KiB, the threshold Tomcat's own DefaultServlet uses) are copied through
+     * the response buffer, which for a few kilobytes is cheaper than the sendfile handoff.
+     */
+    @GetMapping("/{id}/invoice")
+    public void downloadInvoice(@PathVariable("id") UUID id, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Path path = invoiceStore.locate(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Invoice not found for order: " + id));
+
+        long size = Files.size(path);
+        response.setContentType(MediaType.APPLICATION_PDF_VALUE);
+        response.setContentLengthLong(size);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"invoice-" + id + ".pdf\"");
+
+        if (size >= sendfileMinBytes && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, path.toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, size);
+            return;
+        }
+        Files.copy(path, response.getOutputStream());
+    }
+}
@@ -1,12 +1,21 @@
 package com.example.ordermanagement.controller;
 
+import com.example.ordermanagement.domain.Order;
 import com.example.ordermanagement.domain.ReturnRequest;
 import com.example.ordermanagement.domain.ReturnStatus;
-import com.example.ordermanagement.service.JobPublisherService;
+import com.example.ordermanagement.repository.StateHistoryRecord;
+import com.example.ordermanagement.service.HistoryService;
+import com.example.ordermanagement.service.RefundLedgerService;
 import com.example.ordermanagement.service.ReturnService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.hibernate.Hibernate;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -15,31 +24,64 @@ import java.util.UUID;
 public class ReturnController {
 
     private final ReturnService returnService;
-    private final JobPublisherService jobPublisherService;
+    private final HistoryService historyService;
+    private final ObjectMapper objectMapper;
 
-    public ReturnController(ReturnService returnService, JobPublisherService jobPublisherService) {
+    public ReturnController(ReturnService returnService, HistoryService historyService, ObjectMapper objectMapper) {
         this.returnService = returnService;
-        this.jobPublisherService = jobPublisherService;
+        this.historyService = historyService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
     public ResponseEntity<ReturnRequest> createReturn(@RequestBody Map<String, String> body) {
         UUID orderId = UUID.fromString(body.get("orderId"));
         String reason = body.getOrDefault("reason", "no reason");
-        ReturnRequest rr = returnService.createReturn(orderId, reason);
+        // decimal amount, e.g. "12.50"; defaults to everything still refundable on the order
+        String refundAmount = body.get("refundAmount");
+        Long refundAmountMinor = refundAmount != null ? RefundLedgerService.toMinor(new BigDecimal(refundAmount)) : null;
+        ReturnRequest rr = returnService.createReturn(orderId, reason, refundAmountMinor);
         return ResponseEntity.ok(rr);
     }
 
+    @GetMapping("/{id}")
+    public ResponseEntity<ReturnService.ReturnView> getReturn(@PathVariable("id") UUID id) {
+        return returnService.getReturn(id)
+                .map(v -> ResponseEntity.ok().eTag(Long.toString(v.version)).body(v))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * State history, oldest first, {@code limit} rows per page. Pass the {@code X-Next-Cursor}
+     * header of a response as {@code after} to get the following page.
+     */
+    @GetMapping("/{id}/history")
+    public ResponseEntity<List<StateHistoryRecord>> getHistory(@PathVariable("id") UUID id,
+                                                               @RequestParam(value = "after", required = false) String after,
+                                                               @RequestParam(value = "limit", defaultValue = "50") int limit) {
+        return HistoryResponses.page(() -> historyService.returnHistory(id, after, limit));
+    }
+
+    /**
+     * The whole history in one response, streamed from a database cursor.
+     */
+    @GetMapping(value = "/{id}/history", params = "export=true")
+    public void exportHistory(@PathVariable("id") UUID id, HttpServletResponse response) throws IOException {
+        if (!historyService.returnExists(id)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        HistoryResponses.export(response, objectMapper, sink -> historyService.exportReturnHistory(id, sink));
+    }
+
     @PostMapping("/{id}/status")
     public ResponseEntity<ReturnRequest> changeStatus(@PathVariable("id") UUID id, @RequestBody Map<String, String> body) {
         ReturnStatus status = ReturnStatus.valueOf(body.get("status"));
         ReturnRequest rr = returnService.changeReturnStatus(id, status, "api", "manual");
 
-        // if status becomes COMPLETED, publish refund job (dummy paymentRef/currency for now)
-        if (rr.getStatus() == ReturnStatus.COMPLETED) {
-            jobPublisherService.publishRefundJob(rr, "ORIG-PAYMENT-REF", "USD");
-        }
-
+        // the order association is a lazy proxy here, which Jackson cannot write; the request's
+        // open session loads the order so the response is the same as before
+        rr.setOrder(Hibernate.unproxy(rr.getOrder(), Order.class));
         return ResponseEntity.ok(rr);
     }
 }
@@ -0,0 +1,84 @@
+package com.example.ordermanagement.domain;
+
+import jakarta.persistence.*;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Index entry mapping an order to its stored invoice file. The path is relative to the
+ * invoice store root so the store can be relocated without rewriting rows.
+ */
+@Entity
+@Table(name = "invoice_documents")
+public class InvoiceDocument {
+
+    @Id
+    @Column(name = "order_id")
+    private UUID orderId;
+
+    @Column(name = "relative_path")
+    private String relativePath;
+
+    @Column(name = "size_bytes")
+    private long sizeBytes;
+
+    @Column(name = "checksum")
+    private long checksum;
+
+    @Column(name = "created_at")
+    private OffsetDateTime createdAt;
+
+    public InvoiceDocument() {
+        // JPA
+    }
+
+    public InvoiceDocument(UUID orderId, String relativePath, long sizeBytes, long checksum) {
+        this.orderId = orderId;
+        this.relativePath = relativePath;
+        this.sizeBytes = sizeBytes;
+        this.checksum = checksum;
+        this.createdAt = OffsetDateTime.now();
+    }
+
+    // getters/setters
+
+    public UUID getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(UUID orderId) {
+        this.orderId = orderId;
+    }
+
+    public String getRelativePath() {
+        return relativePath;
+    }
+
+    public void setRelativePath(String relativePath) {
+        this.relativePath = relativePath;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public void setSizeBytes(long sizeBytes) {
+        this.sizeBytes = sizeBytes;
+    }
+
+    public long getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(long checksum) {
+        this.checksum = checksum;
+    }
+
+    public OffsetDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(OffsetDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
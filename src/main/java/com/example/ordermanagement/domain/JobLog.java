@@ -5,7 +5,10 @@ import java.time.OffsetDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "job_log")
+@Table(name = "job_log", indexes = {
+        // due-retry claims: WHERE status = 'RETRYING' AND next_attempt_at <= ?
+        @Index(name = "idx_job_log_status_next_attempt", columnList = "status, next_attempt_at")
+})
 public class JobLog {
 
     @Id
@@ -31,6 +34,9 @@ public class JobLog {
     @Column(name = "attempts")
     private int attempts;
 
+    @Column(name = "next_attempt_at")
+    private OffsetDateTime nextAttemptAt;
+
     @Column(name = "last_error", columnDefinition = "text")
     private String lastError;
 
@@ -118,6 +124,14 @@ public class JobLog {
         this.attempts = attempts;
     }
 
+    public OffsetDateTime getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(OffsetDateTime nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
     public String getLastError() {
         return lastError;
     }
@@ -0,0 +1,57 @@
+package com.example.ordermanagement.domain;
+
+import jakarta.persistence.*;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Running refund balance of one order, in minor currency units. Only ever changed with
+ * conditional SQL updates (see {@code RefundLedgerRepository}), never through the entity.
+ */
+@Entity
+@Table(name = "order_refund_balance")
+public class OrderRefundBalance {
+
+    @Id
+    @Column(name = "order_id")
+    private UUID orderId;
+
+    @Column(name = "refundable_minor", nullable = false)
+    private long refundableMinor;
+
+    // held by refunds that are in flight at the gateway
+    @Column(name = "reserved_minor", nullable = false)
+    private long reservedMinor;
+
+    @Column(name = "refunded_minor", nullable = false)
+    private long refundedMinor;
+
+    @Column(name = "updated_at")
+    private OffsetDateTime updatedAt;
+
+    public OrderRefundBalance() {
+        // JPA
+    }
+
+    // getters
+
+    public UUID getOrderId() {
+        return orderId;
+    }
+
+    public long getRefundableMinor() {
+        return refundableMinor;
+    }
+
+    public long getReservedMinor() {
+        return reservedMinor;
+    }
+
+    public long getRefundedMinor() {
+        return refundedMinor;
+    }
+
+    public OffsetDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+}
@@ -5,7 +5,10 @@ import java.time.OffsetDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "order_state_history")
+@Table(name = "order_state_history", indexes = {
+        // keyset pagination of a parent's history: WHERE order_id = ? AND (created_at, id) > (?, ?)
+        @Index(name = "idx_order_history_order_created", columnList = "order_id, created_at, id")
+})
 public class OrderStateHistory {
 
     @Id
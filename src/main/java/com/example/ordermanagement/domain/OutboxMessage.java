@@ -0,0 +1,196 @@
+package com.example.ordermanagement.domain;
+
+import jakarta.persistence.*;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * A job message waiting to be relayed to the broker. Rows are written in the same
+ * transaction as the {@link JobLog} they belong to and published later by the outbox relay.
+ */
+@Entity
+@Table(name = "job_outbox", indexes = {
+        @Index(name = "idx_job_outbox_status_created", columnList = "status, created_at"),
+        @Index(name = "idx_job_outbox_job", columnList = "job_id"),
+        @Index(name = "idx_job_outbox_shard_key", columnList = "shard_key, status, created_at")
+})
+public class OutboxMessage {
+
+    @Id
+    private UUID id;
+
+    @Column(name = "job_id")
+    private UUID jobId;
+
+    @Column(name = "exchange")
+    private String exchange;
+
+    @Column(name = "routing_key")
+    private String routingKey;
+
+    // picks the shard queue at relay time (the order id), so a change of shard count applies
+    // to messages that are still waiting in the outbox
+    @Column(name = "shard_key")
+    private UUID shardKey;
+
+    @Column(name = "content_type")
+    private String contentType;
+
+    @Column(name = "type_id")
+    private String typeId;
+
+    @Column(name = "payload", length = 65536)
+    private byte[] payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status")
+    private OutboxStatus status;
+
+    @Column(name = "attempts")
+    private int attempts;
+
+    @Column(name = "last_error", columnDefinition = "text")
+    private String lastError;
+
+    // not relayed before this; null when the row has not failed yet
+    @Column(name = "next_attempt_at")
+    private OffsetDateTime nextAttemptAt;
+
+    @Column(name = "created_at")
+    private OffsetDateTime createdAt;
+
+    @Column(name = "sent_at")
+    private OffsetDateTime sentAt;
+
+    public OutboxMessage() {
+        // JPA
+    }
+
+    public OutboxMessage(UUID id, UUID jobId, String exchange, String routingKey, UUID shardKey, String contentType, String typeId, byte[] payload) {
+        this.id = id;
+        this.jobId = jobId;
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+        this.shardKey = shardKey;
+        this.contentType = contentType;
+        this.typeId = typeId;
+        this.payload = payload;
+        this.status = OutboxStatus.PENDING;
+        this.attempts = 0;
+        this.createdAt = OffsetDateTime.now();
+    }
+
+    // getters/setters
+
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(UUID id) {
+        this.id = id;
+    }
+
+    public UUID getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(UUID jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getExchange() {
+        return exchange;
+    }
+
+    public void setExchange(String exchange) {
+        this.exchange = exchange;
+    }
+
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    public void setRoutingKey(String routingKey) {
+        this.routingKey = routingKey;
+    }
+
+    public UUID getShardKey() {
+        return shardKey;
+    }
+
+    public void setShardKey(UUID shardKey) {
+        this.shardKey = shardKey;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getTypeId() {
+        return typeId;
+    }
+
+    public void setTypeId(String typeId) {
+        this.typeId = typeId;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public void setPayload(byte[] payload) {
+        this.payload = payload;
+    }
+
+    public OutboxStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(OutboxStatus status) {
+        this.status = status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public OffsetDateTime getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(OffsetDateTime nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public OffsetDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(OffsetDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public OffsetDateTime getSentAt() {
+        return sentAt;
+    }
+
+    public void setSentAt(OffsetDateTime sentAt) {
+        this.sentAt = sentAt;
+    }
+}
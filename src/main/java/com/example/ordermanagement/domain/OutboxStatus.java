@@ -0,0 +1,8 @@
+package com.example.ordermanagement.domain;
+
+public enum OutboxStatus {
+    PENDING,
+    SENT,
+    // gave up after app.outbox.max-attempts failed publishes; kept for inspection
+    FAILED
+}
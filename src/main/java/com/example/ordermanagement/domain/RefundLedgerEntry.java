@@ -0,0 +1,96 @@
+package com.example.ordermanagement.domain;
+
+import jakarta.persistence.*;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * One refund against an order, in minor currency units: RESERVED while the gateway call is in
+ * flight, then SETTLED or RELEASED. Written with conditional SQL updates (see
+ * {@code RefundLedgerRepository}); one entry per refund job.
+ */
+@Entity
+@Table(name = "refund_ledger", indexes = {
+        @Index(name = "idx_refund_ledger_order", columnList = "order_id, created_at")
+}, uniqueConstraints = {
+        @UniqueConstraint(name = "uk_refund_ledger_job", columnNames = "job_id")
+})
+public class RefundLedgerEntry {
+
+    @Id
+    private UUID id;
+
+    @Column(name = "order_id", nullable = false)
+    private UUID orderId;
+
+    @Column(name = "return_request_id")
+    private UUID returnRequestId;
+
+    @Column(name = "job_id", nullable = false)
+    private UUID jobId;
+
+    @Column(name = "amount_minor", nullable = false)
+    private long amountMinor;
+
+    @Column(name = "currency")
+    private String currency;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status")
+    private RefundLedgerStatus status;
+
+    @Column(name = "gateway_reference")
+    private String gatewayReference;
+
+    @Column(name = "created_at")
+    private OffsetDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private OffsetDateTime updatedAt;
+
+    public RefundLedgerEntry() {
+        // JPA
+    }
+
+    // getters
+
+    public UUID getId() {
+        return id;
+    }
+
+    public UUID getOrderId() {
+        return orderId;
+    }
+
+    public UUID getReturnRequestId() {
+        return returnRequestId;
+    }
+
+    public UUID getJobId() {
+        return jobId;
+    }
+
+    public long getAmountMinor() {
+        return amountMinor;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public RefundLedgerStatus getStatus() {
+        return status;
+    }
+
+    public String getGatewayReference() {
+        return gatewayReference;
+    }
+
+    public OffsetDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public OffsetDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+}
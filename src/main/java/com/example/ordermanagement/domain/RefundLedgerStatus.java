@@ -0,0 +1,7 @@
+package com.example.ordermanagement.domain;
+
+public enum RefundLedgerStatus {
+    RESERVED,
+    SETTLED,
+    RELEASED
+}
@@ -18,6 +18,10 @@ public class ReturnRequest {
     @Column(name = "reason")
     private String reason;
 
+    // amount to refund in minor currency units; null on returns created before it was tracked
+    @Column(name = "refund_amount_minor")
+    private Long refundAmountMinor;
+
     @Enumerated(EnumType.STRING)
     @Column(name = "status")
     private ReturnStatus status;
@@ -70,6 +74,14 @@ public class ReturnRequest {
         this.reason = reason;
     }
 
+    public Long getRefundAmountMinor() {
+        return refundAmountMinor;
+    }
+
+    public void setRefundAmountMinor(Long refundAmountMinor) {
+        this.refundAmountMinor = refundAmountMinor;
+    }
+
     public ReturnStatus getStatus() {
         return status;
     }
@@ -5,7 +5,10 @@ import java.time.OffsetDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "return_state_history")
+@Table(name = "return_state_history", indexes = {
+        // keyset pagination of a parent's history: WHERE return_request_id = ? AND (created_at, id) > (?, ?)
+        @Index(name = "idx_return_history_return_created", columnList = "return_request_id, created_at, id")
+})
 public class ReturnStateHistory {
 
     @Id
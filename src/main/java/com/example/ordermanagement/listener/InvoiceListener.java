@@ -1,19 +1,35 @@
 package com.example.ordermanagement.listener;
 
-import com.example.ordermanagement.config.RabbitConfig;
+import com.example.ordermanagement.config.ConcurrencyLimits;
 import com.example.ordermanagement.domain.JobLog;
 import com.example.ordermanagement.domain.JobStatus;
+import com.example.ordermanagement.domain.JobType;
 import com.example.ordermanagement.messaging.dto.InvoiceJobDto;
+import com.example.ordermanagement.repository.JobLogBatchRepository;
 import com.example.ordermanagement.repository.JobLogRepository;
+import com.example.ordermanagement.service.CompletedJobFilter;
+import com.example.ordermanagement.service.InvoicePdf;
+import com.example.ordermanagement.service.JobRetryPolicy;
+import com.example.ordermanagement.service.OperationMetrics;
+import com.example.ordermanagement.service.InvoiceStore;
 import com.example.ordermanagement.service.PdfService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.Semaphore;
 
+/**
+ * Consumes invoice jobs (containers are registered by
+ * {@link com.example.ordermanagement.config.JobListenerConfig}). By default one delivery at a time; with
+ * {@code app.jobs.invoice.batch.enabled=true} the batch container hands over up to
+ * {@code app.jobs.invoice.batch.size} deliveries at once. Both paths share
+ * {@link #processBatch(List)}: one IN query for the job rows and JDBC batches for the
+ * invoice index and the job results. Jobs the {@link CompletedJobFilter} knows to be complete
+ * are dropped before the query. Render failures go through {@link JobRetryPolicy}.
+ */
 @Component
 public class InvoiceListener {
 
@@ -21,51 +37,123 @@ public class InvoiceListener {
 
     private final PdfService pdfService;
     private final JobLogRepository jobLogRepository;
+    private final JobLogBatchRepository jobLogBatchRepository;
+    private final InvoiceStore invoiceStore;
+    private final ConcurrencyLimits concurrencyLimits;
+    private final CompletedJobFilter completedJobFilter;
+    private final JobRetryPolicy retryPolicy;
+    private final OperationMetrics metrics;
 
-    public InvoiceListener(PdfService pdfService, JobLogRepository jobLogRepository) {
+    public InvoiceListener(PdfService pdfService, JobLogRepository jobLogRepository, JobLogBatchRepository jobLogBatchRepository,
+                           InvoiceStore invoiceStore, ConcurrencyLimits concurrencyLimits, CompletedJobFilter completedJobFilter,
+                           JobRetryPolicy retryPolicy, OperationMetrics metrics) {
         this.pdfService = pdfService;
         this.jobLogRepository = jobLogRepository;
+        this.jobLogBatchRepository = jobLogBatchRepository;
+        this.invoiceStore = invoiceStore;
+        this.concurrencyLimits = concurrencyLimits;
+        this.completedJobFilter = completedJobFilter;
+        this.retryPolicy = retryPolicy;
+        this.metrics = metrics;
     }
 
-    @RabbitListener(queues = RabbitConfig.INVOICE_QUEUE)
     public void handleInvoice(InvoiceJobDto message) {
+        processBatch(List.of(message));
+    }
+
+    /**
+     * Batch entry point. An exception here or in {@link #handleInvoice} (e.g. the status update
+     * failing) propagates to the container, which retries the delivery locally and then
+     * dead-letters it with the failure reason; rendering is idempotent per order.
+     */
+    public void handleInvoiceBatch(List<InvoiceJobDto> messages) {
+        processBatch(messages);
+    }
+
+    void processBatch(List<InvoiceJobDto> messages) {
+        long started = System.nanoTime();
         try {
-            UUID jobId = message.jobId;
-            UUID orderId = message.orderId;
-            String customerEmail = message.customerEmail;
+            settle(messages);
+        } finally {
+            metrics.jobsHandled(JobType.INVOICE_GENERATION, messages.size(), System.nanoTime() - started);
+        }
+    }
 
-            JobLog job = jobLogRepository.findById(jobId).orElse(null);
+    private void settle(List<InvoiceJobDto> messages) {
+        // a redelivered job can show up twice in one batch; keep the first
+        Map<UUID, InvoiceJobDto> byJobId = new LinkedHashMap<>();
+        for (InvoiceJobDto m : messages) {
+            if (byJobId.containsKey(m.jobId)) {
+                continue;
+            }
+            if (completedJobFilter.isKnownCompleted(m.jobId)) {
+                log.info("Invoice job already processed: {}", m.jobId);
+                continue;
+            }
+            byJobId.put(m.jobId, m);
+        }
+        if (byJobId.isEmpty()) {
+            return;
+        }
+
+        Map<UUID, JobLog> jobs = new HashMap<>();
+        for (JobLog job : jobLogRepository.findAllById(byJobId.keySet())) {
+            jobs.put(job.getId(), job);
+            if (job.getStatus() == JobStatus.SUCCESS) {
+                completedJobFilter.recordCompleted(job.getId());
+            }
+        }
+
+        List<JobLog> settled = new ArrayList<>(byJobId.size());
+        List<InvoicePdf> rendered = new ArrayList<>(byJobId.size());
+        for (InvoiceJobDto message : byJobId.values()) {
+            JobLog job = jobs.get(message.jobId);
             if (job != null && job.getStatus() == JobStatus.SUCCESS) {
                 // already processed
-                log.info("Invoice job already processed: {}", jobId);
-                return;
+                log.info("Invoice job already processed: {}", message.jobId);
+                continue;
+            }
+            if (job != null && job.getStatus() == JobStatus.RETRYING) {
+                // a stale delivery; RetryScheduler re-enqueues the job when it is due
+                log.info("Invoice job {} is scheduled for retry, dropping delivery", message.jobId);
+                continue;
             }
-
             if (job != null) {
-                job.setStatus(JobStatus.IN_PROGRESS);
-                jobLogRepository.save(job);
+                job.setAttempts(job.getAttempts() + 1);
             }
 
-            // generate pdf
             try {
-                byte[] pdf = pdfService.generateInvoicePdf(orderId, customerEmail);
+                InvoicePdf pdf;
+                Semaphore permits = concurrencyLimits.invoiceRenders();
+                permits.acquireUninterruptibly();
+                try {
+                    pdf = pdfService.generateInvoicePdf(message.orderId, message.customerEmail);
+                } finally {
+                    permits.release();
+                }
+                rendered.add(pdf);
                 if (job != null) {
                     job.setStatus(JobStatus.SUCCESS);
-                    job.setResultMeta("pdfBytes=" + pdf.length);
-                    jobLogRepository.save(job);
+                    job.setResultMeta(pdf.toResultMeta());
+                    settled.add(job);
                 }
-                log.info("Generated invoice for order {} (bytes={})", orderId, pdf.length);
+                log.info("Generated invoice for order {} (bytes={})", message.orderId, pdf.getSizeBytes());
             } catch (IOException e) {
                 if (job != null) {
-                    job.setStatus(JobStatus.FAILED);
-                    job.setLastError(e.getMessage());
-                    jobLogRepository.save(job);
+                    retryPolicy.onFailure(job, e.getMessage());
+                    settled.add(job);
                 }
-                log.error("Failed to generate invoice for job {}: {}", jobId, e.getMessage(), e);
+                log.error("Failed to generate invoice for job {}: {}", message.jobId, e.getMessage(), e);
             }
+        }
 
-        } catch (Exception ex) {
-            log.error("Unhandled exception in InvoiceListener", ex);
+        invoiceStore.index(rendered);
+        jobLogBatchRepository.updateStatuses(settled);
+        for (JobLog job : settled) {
+            metrics.jobSettled(job);
+            if (job.getStatus() == JobStatus.SUCCESS) {
+                completedJobFilter.recordCompleted(job.getId());
+            }
         }
     }
 }
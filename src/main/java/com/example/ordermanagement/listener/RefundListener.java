@@ -1,88 +1,374 @@
 package com.example.ordermanagement.listener;
 
-import com.example.ordermanagement.config.RabbitConfig;
+import com.example.ordermanagement.config.ConcurrencyLimits;
 import com.example.ordermanagement.domain.JobLog;
 import com.example.ordermanagement.domain.JobStatus;
+import com.example.ordermanagement.domain.JobType;
 import com.example.ordermanagement.domain.ReturnRequest;
+import com.example.ordermanagement.domain.ReturnStatus;
+import com.example.ordermanagement.messaging.DeadLetterPublisher;
+import com.example.ordermanagement.messaging.JobDelivery;
 import com.example.ordermanagement.messaging.dto.RefundJobDto;
 import com.example.ordermanagement.repository.JobLogRepository;
 import com.example.ordermanagement.repository.ReturnRequestRepository;
+import com.example.ordermanagement.service.AuditHistoryWriter;
+import com.example.ordermanagement.service.CompletedJobFilter;
+import com.example.ordermanagement.service.JobRetryPolicy;
+import com.example.ordermanagement.service.OperationMetrics;
+import com.example.ordermanagement.service.RefundAggregator;
 import com.example.ordermanagement.service.RefundClient;
+import com.example.ordermanagement.service.RefundLedgerService;
+import com.example.ordermanagement.service.RefundResilience;
+import com.example.ordermanagement.service.ReturnService;
+import com.example.ordermanagement.service.VersionedCache;
+import com.rabbitmq.client.Channel;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.UUID;
+import java.util.concurrent.*;
 
+/**
+ * Consumes refund jobs with a window of gateway calls in flight. Each delivery is prepared in a
+ * short transaction, handed to {@link RefundClient#processRefundAsync} and the consumer moves on
+ * to the next delivery; when the call completes the outcome is committed in a second short
+ * transaction and only then is the delivery acked. The window is
+ * {@link ConcurrencyLimits#refundCalls()}: when it is full the consumer blocks, which stops it
+ * from taking more deliveries (the broker holds at most the prefetch count per consumer).
+ * Refunds of one order run one at a time, in delivery order: a delivery for an order whose
+ * previous refund has not settled yet takes its window slot and starts once that one has. A
+ * job that is requeued or parked for a retry lets the order's later jobs go first.
+ * With {@code app.jobs.refund.aggregation.enabled} calls go through {@link RefundAggregator}
+ * and reach the gateway in per-currency batches; outcomes are still settled per job.
+ * Redeliveries of jobs the {@link CompletedJobFilter} knows to be complete are acked without
+ * touching the database. The return's amount is reserved on the order's
+ * {@link RefundLedgerService} balance before the call and settled or released with the outcome.
+ * Gateway errors and timeouts go through {@link JobRetryPolicy}; a declined refund, a missing
+ * return request or an amount the balance no longer covers fails the job for good. While the
+ * {@link RefundResilience} circuit is open, jobs are parked as RETRYING without an attempt
+ * being spent, and so are calls the breaker or bulkhead refuses. A delivery that cannot be converted, or
+ * that fails to start a second time, goes to the dead-letter queue.
+ */
 @Component
 public class RefundListener {
 
     private static final Logger log = LoggerFactory.getLogger(RefundListener.class);
 
     private final RefundClient refundClient;
+    private final RefundAggregator refundAggregator;
+    private final boolean aggregate;
     private final JobLogRepository jobLogRepository;
     private final ReturnRequestRepository returnRequestRepository;
+    private final AuditHistoryWriter historyWriter;
+    private final RefundLedgerService refundLedger;
+    private final RefundResilience resilience;
+    private final ConcurrencyLimits concurrencyLimits;
+    private final CompletedJobFilter completedJobFilter;
+    private final VersionedCache<UUID, ReturnService.ReturnView> returnCache;
+    private final JobRetryPolicy retryPolicy;
+    private final MessageConverter messageConverter;
+    private final DeadLetterPublisher deadLetterPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService completionExecutor;
+    private final OperationMetrics metrics;
+    // the last refund taken per order, completed when it has settled
+    private final ConcurrentMap<UUID, CompletableFuture<Void>> inFlightByOrder = new ConcurrentHashMap<>();
 
-    public RefundListener(RefundClient refundClient, JobLogRepository jobLogRepository, ReturnRequestRepository returnRequestRepository) {
+    public RefundListener(RefundClient refundClient, RefundAggregator refundAggregator,
+                          @Value("${app.jobs.refund.aggregation.enabled:false}") boolean aggregate, JobLogRepository jobLogRepository, ReturnRequestRepository returnRequestRepository,
+                          AuditHistoryWriter historyWriter, RefundLedgerService refundLedger, RefundResilience resilience,
+                          ConcurrencyLimits concurrencyLimits, CompletedJobFilter completedJobFilter,
+                          VersionedCache<UUID, ReturnService.ReturnView> returnCache, JobRetryPolicy retryPolicy,
+                          MessageConverter messageConverter, DeadLetterPublisher deadLetterPublisher,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${app.jobs.refund.completion-threads:4}") int completionThreads,
+                          OperationMetrics metrics) {
         this.refundClient = refundClient;
+        this.refundAggregator = refundAggregator;
+        this.aggregate = aggregate;
         this.jobLogRepository = jobLogRepository;
         this.returnRequestRepository = returnRequestRepository;
+        this.historyWriter = historyWriter;
+        this.refundLedger = refundLedger;
+        this.resilience = resilience;
+        this.concurrencyLimits = concurrencyLimits;
+        this.completedJobFilter = completedJobFilter;
+        this.returnCache = returnCache;
+        this.retryPolicy = retryPolicy;
+        this.messageConverter = messageConverter;
+        this.deadLetterPublisher = deadLetterPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.completionExecutor = Executors.newFixedThreadPool(completionThreads, r -> {
+            Thread t = new Thread(r, "refund-completion");
+            t.setDaemon(true);
+            return t;
+        });
+        this.metrics = metrics;
     }
 
-    @RabbitListener(queues = RabbitConfig.REFUND_QUEUE)
-    @Transactional
-    public void handleRefund(RefundJobDto message) {
+    @PreDestroy
+    public void shutdown() {
+        completionExecutor.shutdown();
+    }
+
+    /**
+     * Entry point of the refund containers (registered by
+     * {@link com.example.ordermanagement.config.JobListenerConfig} with manual acks).
+     */
+    public void handleRefund(Message delivery, Channel channel) {
+        handleRefund(new ChannelDelivery(delivery, channel));
+    }
+
+    /**
+     * Entry point for transports other than Rabbit; settles {@code delivery} once the outcome is
+     * committed.
+     */
+    public void handleRefund(JobDelivery delivery) {
+        RefundJobDto message;
+        try {
+            delivery.message().getMessageProperties().setInferredArgumentType(RefundJobDto.class);
+            message = (RefundJobDto) messageConverter.fromMessage(delivery.message());
+        } catch (RuntimeException e) {
+            delivery.deadLetter(e);
+            return;
+        }
+
+        if (completedJobFilter.isKnownCompleted(message.jobId)) {
+            log.info("Refund already processed: {}", message.jobId);
+            delivery.ack();
+            return;
+        }
+        concurrencyLimits.refundCalls().acquireUninterruptibly();
+        CompletableFuture<Void> turn = new CompletableFuture<>();
+        CompletableFuture<Void> previous = message.orderId != null ? inFlightByOrder.put(message.orderId, turn) : null;
+        if (previous == null) {
+            start(message, delivery, turn);
+        } else {
+            // the order has a refund in flight: this one starts when it has settled
+            previous.whenCompleteAsync((v, e) -> start(message, delivery, turn), completionExecutor);
+        }
+    }
+
+    private void start(RefundJobDto message, JobDelivery delivery, CompletableFuture<Void> turn) {
+        long started = System.nanoTime();
+        CompletableFuture<RefundClient.RefundResponse> call;
+        try {
+            RefundClient.RefundRequestDto req = transactionTemplate.execute(status -> prepare(message));
+            if (req == null) {
+                finish(message, turn);
+                delivery.ack();
+                return;
+            }
+            call = aggregate ? refundAggregator.submit(req) : refundClient.processRefundAsync(req);
+        } catch (RuntimeException e) {
+            finish(message, turn);
+            log.error("Could not start refund job {}: {}", message.jobId, e.getMessage(), e);
+            if (delivery.redelivered()) {
+                delivery.deadLetter(e);
+            } else {
+                delivery.requeue();
+            }
+            return;
+        }
+
+        call.whenCompleteAsync((resp, error) -> {
+            try {
+                Boolean completed = transactionTemplate.execute(status -> complete(message, resp, error));
+                if (Boolean.TRUE.equals(completed)) {
+                    completedJobFilter.recordCompleted(message.jobId);
+                }
+                delivery.ack();
+            } catch (RuntimeException e) {
+                log.error("Could not record outcome of refund job {}: {}", message.jobId, e.getMessage(), e);
+                delivery.requeue();
+            } finally {
+                finish(message, turn);
+                metrics.jobsHandled(JobType.REFUND_PROCESSING, 1, System.nanoTime() - started);
+            }
+        }, completionExecutor);
+    }
+
+    /**
+     * Frees the delivery's window slot and lets the order's next refund start.
+     */
+    private void finish(RefundJobDto message, CompletableFuture<Void> turn) {
+        if (message.orderId != null) {
+            inFlightByOrder.remove(message.orderId, turn);
+        }
+        concurrencyLimits.refundCalls().release();
+        turn.complete(null);
+    }
+
+    /**
+     * Marks the job IN_PROGRESS and builds the gateway request, or returns null when there is
+     * nothing to do (unknown job, already processed, waiting for a scheduled retry, parked while
+     * the gateway circuit is open, or missing return request).
+     */
+    private RefundClient.RefundRequestDto prepare(RefundJobDto message) {
         UUID jobId = message.jobId;
         Optional<JobLog> jobOpt = jobLogRepository.findById(jobId);
         if (jobOpt.isEmpty()) {
             log.error("Unknown refund job: {}", jobId);
-            return;
+            return null;
         }
         JobLog job = jobOpt.get();
         if (job.getStatus() == JobStatus.SUCCESS) {
+            completedJobFilter.recordCompleted(jobId);
             log.info("Refund already processed: {}", jobId);
-            return;
+            return null;
+        }
+        if (job.getStatus() == JobStatus.RETRYING) {
+            // a stale delivery; RetryScheduler re-enqueues the job when it is due
+            log.info("Refund job {} is scheduled for retry, dropping delivery", jobId);
+            return null;
+        }
+        long rejectingForMs = resilience.rejectingForMs();
+        if (rejectingForMs > 0) {
+            // fail fast rather than hold a window slot for a call that would be refused
+            retryPolicy.park(job, "Refund gateway circuit is open", rejectingForMs);
+            jobLogRepository.save(job);
+            metrics.jobSettled(job);
+            return null;
         }
 
-        job.setStatus(JobStatus.IN_PROGRESS);
-        jobLogRepository.save(job);
-
-        // load return request
-        Optional<ReturnRequest> rrOpt = returnRequestRepository.findById(message.returnId);
-        if (rrOpt.isEmpty()) {
+        ReturnRequest rr = returnRequestRepository.findById(message.returnId).orElse(null);
+        if (rr == null) {
             job.setStatus(JobStatus.FAILED);
             job.setLastError("ReturnRequest not found: " + message.returnId);
             jobLogRepository.save(job);
-            return;
+            metrics.jobSettled(job);
+            return null;
+        }
+        // held until the outcome settles or releases it; a retry keeps the same reservation
+        OptionalLong amount = refundLedger.reserve(jobId, rr.getOrder().getId(), rr.getId(), rr.getRefundAmountMinor(), message.currency);
+        if (amount.isEmpty()) {
+            job.setStatus(JobStatus.FAILED);
+            job.setLastError("Refund exceeds the order's refundable balance");
+            jobLogRepository.save(job);
+            metrics.jobSettled(job);
+            return null;
         }
 
-        try {
-            RefundClient.RefundRequestDto req = new RefundClient.RefundRequestDto();
-            req.paymentReference = message.paymentReference;
-            req.idempotencyKey = job.getIdempotencyKey();
-            req.currency = message.currency;
-            req.amountCents = 0L; // amount not tracked in ReturnRequest in this initial model
-
-            RefundClient.RefundResponse resp = refundClient.processRefund(req);
-            if (resp.success) {
-                job.setStatus(JobStatus.SUCCESS);
-                job.setResultMeta("gatewayRef=" + resp.gatewayReference);
-                // mark return request as COMPLETED
-                ReturnRequest rr = rrOpt.get();
-                rr.setStatus(com.example.ordermanagement.domain.ReturnStatus.COMPLETED);
-                returnRequestRepository.save(rr);
+        job.setStatus(JobStatus.IN_PROGRESS);
+        job.setAttempts(job.getAttempts() + 1);
+        jobLogRepository.save(job);
+
+        RefundClient.RefundRequestDto req = new RefundClient.RefundRequestDto();
+        req.paymentReference = message.paymentReference;
+        req.idempotencyKey = job.getIdempotencyKey();
+        req.currency = message.currency;
+        req.amountCents = amount.getAsLong();
+        return req;
+    }
+
+    /**
+     * Records the gateway outcome; returns true when the job ended up SUCCESS.
+     */
+    private boolean complete(RefundJobDto message, RefundClient.RefundResponse resp, Throwable error) {
+        JobLog job = jobLogRepository.findById(message.jobId).orElse(null);
+        if (job == null) {
+            return false;
+        }
+        if (error != null) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof RefundResilience.CallRejectedException rejected) {
+                // never reached the gateway: give back the attempt taken in prepare
+                job.setAttempts(Math.max(0, job.getAttempts() - 1));
+                retryPolicy.park(job, rejected.getMessage(), rejected.retryAfterMs());
             } else {
-                job.setStatus(JobStatus.FAILED);
-                job.setLastError(resp.message);
+                retryPolicy.onFailure(job, cause.getMessage());
+            }
+            if (job.getStatus() == JobStatus.FAILED) {
+                refundLedger.release(job.getId());
             }
-        } catch (Exception e) {
+        } else if (resp.success) {
+            job.setStatus(JobStatus.SUCCESS);
+            job.setResultMeta("gatewayRef=" + resp.gatewayReference);
+            refundLedger.settle(job.getId(), resp.gatewayReference);
+            // mark return request as COMPLETED
+            returnRequestRepository.findById(message.returnId).ifPresent(rr -> {
+                if (rr.getStatus() != ReturnStatus.COMPLETED) {
+                    historyWriter.recordReturn(rr.getId(), rr.getStatus(), ReturnStatus.COMPLETED, "system", "refund processed");
+                    metrics.returnTransitionAfterCommit(rr.getStatus(), ReturnStatus.COMPLETED);
+                }
+                rr.setStatus(ReturnStatus.COMPLETED);
+                returnRequestRepository.save(rr);
+                returnCache.putAfterCommit(rr.getId(), () -> ReturnService.ReturnView.of(rr));
+            });
+        } else {
             job.setStatus(JobStatus.FAILED);
-            job.setLastError(e.getMessage());
+            job.setLastError(resp.message);
+            refundLedger.release(job.getId());
         }
-
         jobLogRepository.save(job);
+        metrics.jobSettled(job);
+        return job.getStatus() == JobStatus.SUCCESS;
+    }
+
+    /**
+     * A delivery from a refund container: settled on its channel, dead-lettered through
+     * {@link DeadLetterPublisher}.
+     */
+    private final class ChannelDelivery implements JobDelivery {
+
+        private final Message message;
+        private final Channel channel;
+        private final long deliveryTag;
+
+        ChannelDelivery(Message message, Channel channel) {
+            this.message = message;
+            this.channel = channel;
+            this.deliveryTag = message.getMessageProperties().getDeliveryTag();
+        }
+
+        @Override
+        public Message message() {
+            return message;
+        }
+
+        @Override
+        public boolean redelivered() {
+            return message.getMessageProperties().isRedelivered();
+        }
+
+        @Override
+        public void ack() {
+            try {
+                channel.basicAck(deliveryTag, false);
+            } catch (IOException e) {
+                log.warn("Failed to ack refund delivery {}: {}", deliveryTag, e.getMessage());
+            }
+        }
+
+        @Override
+        public void requeue() {
+            try {
+                channel.basicNack(deliveryTag, false, true);
+            } catch (IOException e) {
+                log.warn("Failed to nack refund delivery {}: {}", deliveryTag, e.getMessage());
+            }
+        }
+
+        @Override
+        public void deadLetter(Exception cause) {
+            try {
+                deadLetterPublisher.publish(message, cause);
+            } catch (RuntimeException e) {
+                log.error("Could not dead-letter refund delivery {}: {}", deliveryTag, e.getMessage());
+                requeue();
+                return;
+            }
+            ack();
+        }
     }
 }
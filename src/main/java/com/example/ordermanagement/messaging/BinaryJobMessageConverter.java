@@ -0,0 +1,171 @@
+package com.example.ordermanagement.messaging;
+
+import com.example.ordermanagement.messaging.dto.InvoiceJobDto;
+import com.example.ordermanagement.messaging.dto.RefundJobDto;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Compact encoding of {@link InvoiceJobDto} and {@link RefundJobDto}, registered under
+ * {@link #CONTENT_TYPE} next to JSON (see {@code RabbitConfig#jobMessageConverter}), so nodes
+ * that publish either format can run side by side. A message is a schema version byte, a kind
+ * byte, then the fields in declaration order: UUIDs as 16 big-endian bytes (the nil UUID
+ * standing for null) and strings as a varint of length + 1 (0 for null) followed by UTF-8.
+ * No type header is needed. Readers ignore bytes after the last field they know, so fields
+ * can be appended without a version change; anything else needs a new version, and messages
+ * with a version this reader does not know fail conversion (and are dead-lettered).
+ */
+public class BinaryJobMessageConverter implements MessageConverter {
+
+    public static final String CONTENT_TYPE = "application/vnd.ordermanagement.job";
+
+    static final byte VERSION = 1;
+    static final byte KIND_INVOICE = 1;
+    static final byte KIND_REFUND = 2;
+
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) {
+        byte[] body;
+        if (object instanceof InvoiceJobDto job) {
+            byte[] email = utf8(job.customerEmail);
+            body = new byte[2 + 16 * 2 + stringSize(email)];
+            int p = header(body, KIND_INVOICE);
+            p = putUuid(body, p, job.jobId);
+            p = putUuid(body, p, job.orderId);
+            putString(body, p, email);
+        } else if (object instanceof RefundJobDto job) {
+            byte[] paymentReference = utf8(job.paymentReference);
+            byte[] currency = utf8(job.currency);
+            body = new byte[2 + 16 * 3 + stringSize(paymentReference) + stringSize(currency)];
+            int p = header(body, KIND_REFUND);
+            p = putUuid(body, p, job.jobId);
+            p = putUuid(body, p, job.orderId);
+            p = putUuid(body, p, job.returnId);
+            p = putString(body, p, paymentReference);
+            putString(body, p, currency);
+        } else {
+            throw new MessageConversionException("No binary encoding for " + (object != null ? object.getClass().getName() : "null"));
+        }
+        messageProperties.setContentType(CONTENT_TYPE);
+        messageProperties.setContentLength(body.length);
+        return new Message(body, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) {
+        Reader r = new Reader(message.getBody());
+        byte version = r.readByte();
+        if (version != VERSION) {
+            throw new MessageConversionException("Unsupported job message version " + version);
+        }
+        byte kind = r.readByte();
+        if (kind == KIND_INVOICE) {
+            return new InvoiceJobDto(r.readUuid(), r.readUuid(), r.readString());
+        }
+        if (kind == KIND_REFUND) {
+            return new RefundJobDto(r.readUuid(), r.readUuid(), r.readUuid(), r.readString(), r.readString());
+        }
+        throw new MessageConversionException("Unknown job message kind " + kind);
+    }
+
+    private static int header(byte[] body, byte kind) {
+        body[0] = VERSION;
+        body[1] = kind;
+        return 2;
+    }
+
+    private static int putUuid(byte[] body, int p, UUID id) {
+        // nil UUID for null; never a random (version 4) id
+        LONG.set(body, p, id != null ? id.getMostSignificantBits() : 0L);
+        LONG.set(body, p + 8, id != null ? id.getLeastSignificantBits() : 0L);
+        return p + 16;
+    }
+
+    private static int putString(byte[] body, int p, byte[] utf8) {
+        int v = utf8 != null ? utf8.length + 1 : 0;
+        while ((v & ~0x7F) != 0) {
+            body[p++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        body[p++] = (byte) v;
+        if (utf8 != null) {
+            System.arraycopy(utf8, 0, body, p, utf8.length);
+            p += utf8.length;
+        }
+        return p;
+    }
+
+    private static byte[] utf8(String s) {
+        return s != null ? s.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int stringSize(byte[] utf8) {
+        int v = utf8 != null ? utf8.length + 1 : 0;
+        int size = 1;
+        while ((v & ~0x7F) != 0) {
+            size++;
+            v >>>= 7;
+        }
+        return size + (utf8 != null ? utf8.length : 0);
+    }
+
+    private static final class Reader {
+        private final byte[] body;
+        private int p;
+
+        Reader(byte[] body) {
+            this.body = body;
+        }
+
+        byte readByte() {
+            require(1);
+            return body[p++];
+        }
+
+        UUID readUuid() {
+            require(16);
+            long msb = (long) LONG.get(body, p);
+            long lsb = (long) LONG.get(body, p + 8);
+            p += 16;
+            return msb == 0 && lsb == 0 ? null : new UUID(msb, lsb);
+        }
+
+        String readString() {
+            int v = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (shift > 28) {
+                    throw new MessageConversionException("Malformed string length in job message");
+                }
+                byte b = readByte();
+                v |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            if (v == 0) {
+                return null;
+            }
+            int length = v - 1;
+            require(length);
+            String s = new String(body, p, length, StandardCharsets.UTF_8);
+            p += length;
+            return s;
+        }
+
+        private void require(int n) {
+            if (n < 0 || body.length - p < n) {
+                throw new MessageConversionException("Truncated job message");
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.ordermanagement.messaging;
+
+import com.example.ordermanagement.config.RabbitConfig;
+import com.example.ordermanagement.domain.JobType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.retry.MessageBatchRecoverer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Moves failed deliveries to the dead-letter exchange, tagged with why they failed. Registered
+ * as the listener containers' {@link org.springframework.amqp.rabbit.retry.MessageRecoverer}:
+ * once a listener has thrown on every local retry, the delivery (or the whole consumer batch)
+ * is republished here and then acked. Listeners that ack manually call {@link #publish}
+ * themselves. Publishing waits for the broker's confirm, so a message is never acked off the
+ * work queue before the DLQ has it.
+ */
+@Component
+public class DeadLetterPublisher implements MessageBatchRecoverer {
+
+    public static final String JOB_TYPE_HEADER = "x-job-type";
+    public static final String FAILURE_REASON_HEADER = "x-failure-reason";
+    public static final String EXCEPTION_TYPE_HEADER = "x-exception-type";
+    public static final String FAILED_AT_HEADER = "x-failed-at";
+    public static final String ORIGINAL_EXCHANGE_HEADER = "x-original-exchange";
+    public static final String ORIGINAL_ROUTING_KEY_HEADER = "x-original-routing-key";
+    public static final String ORIGINAL_QUEUE_HEADER = "x-original-queue";
+
+    private static final Logger log = LoggerFactory.getLogger(DeadLetterPublisher.class);
+    private static final int MAX_REASON_LENGTH = 1000;
+
+    private final RabbitTemplate rabbitTemplate;
+
+    @Value("${app.outbox.confirm-timeout-ms:5000}")
+    private long confirmTimeoutMs;
+
+    public DeadLetterPublisher(RabbitTemplate rabbitTemplate) {
+        this.rabbitTemplate = rabbitTemplate;
+    }
+
+    @Override
+    public void recover(Message message, Throwable cause) {
+        publish(List.of(message), cause);
+    }
+
+    @Override
+    public void recover(List<Message> messages, Throwable cause) {
+        publish(messages, cause);
+    }
+
+    public void publish(Message message, Throwable cause) {
+        publish(List.of(message), cause);
+    }
+
+    private void publish(List<Message> messages, Throwable cause) {
+        Throwable root = rootCause(cause);
+        String reason = root.getMessage() != null ? root.getMessage() : root.getClass().getSimpleName();
+        if (reason.length() > MAX_REASON_LENGTH) {
+            reason = reason.substring(0, MAX_REASON_LENGTH);
+        }
+        long failedAt = System.currentTimeMillis();
+        for (Message m : messages) {
+            MessageProperties props = m.getMessageProperties();
+            String routingKey = props.getReceivedRoutingKey();
+            JobType type = RabbitConfig.jobTypeForRoutingKey(routingKey);
+            if (type != null) {
+                props.setHeader(JOB_TYPE_HEADER, type.name());
+            }
+            props.setHeader(FAILURE_REASON_HEADER, reason);
+            props.setHeader(EXCEPTION_TYPE_HEADER, root.getClass().getName());
+            props.setHeader(FAILED_AT_HEADER, failedAt);
+            props.setHeader(ORIGINAL_EXCHANGE_HEADER, props.getReceivedExchange());
+            props.setHeader(ORIGINAL_ROUTING_KEY_HEADER, routingKey);
+            props.setHeader(ORIGINAL_QUEUE_HEADER, props.getConsumerQueue());
+        }
+        rabbitTemplate.invoke(ops -> {
+            for (Message m : messages) {
+                ops.send(RabbitConfig.DEAD_LETTER_EXCHANGE, m.getMessageProperties().getReceivedRoutingKey(), m);
+            }
+            ops.waitForConfirmsOrDie(confirmTimeoutMs);
+            return null;
+        });
+        log.warn("Dead-lettered {} message(s): {}", messages.size(), reason);
+    }
+
+    private static Throwable rootCause(Throwable t) {
+        Throwable root = t;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        return root;
+    }
+}
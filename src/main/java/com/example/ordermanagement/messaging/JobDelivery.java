@@ -0,0 +1,25 @@
+package com.example.ordermanagement.messaging;
+
+import org.springframework.amqp.core.Message;
+
+/**
+ * One delivery of a job message to a listener that settles it itself (the refund listener
+ * acks only after the gateway call). The transport decides what settling means: a Rabbit
+ * delivery is acked, requeued or dead-lettered on its channel; a {@link RingBufferJobTransport}
+ * delivery is released from the journal or put back on its ring.
+ */
+public interface JobDelivery {
+
+    Message message();
+
+    /** True when this message was delivered before and not acked. */
+    boolean redelivered();
+
+    void ack();
+
+    /** Hands the message back for another delivery. */
+    void requeue();
+
+    /** Gives up on a message that cannot be handled, keeping {@code cause} with it. */
+    void deadLetter(Exception cause);
+}
@@ -0,0 +1,197 @@
+package com.example.ordermanagement.messaging;
+
+import com.example.ordermanagement.domain.OutboxMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Append-only file behind {@link RingBufferJobTransport} that keeps messages handed to the
+ * rings across restarts. A batch is appended and forced to disk before the relay marks its
+ * outbox rows sent; acks are appended without forcing, since a lost ack only means one more
+ * delivery after a restart, which the listeners already tolerate. On open the file is read
+ * back (a torn record at the end is ignored), rewritten with just the unacked messages and
+ * those are returned for redelivery. While running, the open messages are also kept in memory
+ * (they are in the rings anyway), and once the file has grown past {@code compactBytes} it is
+ * rewritten the same way with just those, so it stays bounded under steady load. The next
+ * rewrite waits until the file has doubled from there, so a large open set is not copied on
+ * every ack.
+ */
+final class JobJournal implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(JobJournal.class);
+
+    private static final byte PUBLISHED = 'P';
+    private static final byte ACKED = 'A';
+
+    private final Path path;
+    private final long compactBytes;
+    private final Map<UUID, OutboxMessage> open = new LinkedHashMap<>();
+    private FileOutputStream file;
+    private DataOutputStream out;
+    // bytes in the file, and the size at which it is next rewritten
+    private long written;
+    private long compactAt;
+
+    private JobJournal(Path path, long compactBytes) {
+        this.path = path;
+        this.compactBytes = compactBytes;
+    }
+
+    /**
+     * Opens (or creates) the journal at {@code path} and adds what the previous run left unacked
+     * to {@code recovered}, oldest first.
+     */
+    static JobJournal open(Path path, long compactBytes, List<OutboxMessage> recovered) throws IOException {
+        JobJournal journal = new JobJournal(path, compactBytes);
+        Path dir = path.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        Map<UUID, OutboxMessage> pending = Files.exists(path) ? read(path) : new LinkedHashMap<>();
+        journal.open.putAll(pending);
+        journal.rewrite();
+        recovered.addAll(pending.values());
+        if (!pending.isEmpty()) {
+            log.info("Job journal {} has {} unacked messages from the previous run", path, pending.size());
+        }
+        return journal;
+    }
+
+    /** Appends {@code batch} and forces it to disk. */
+    synchronized void append(List<OutboxMessage> batch) throws IOException {
+        int before = out.size();
+        for (OutboxMessage m : batch) {
+            writePublished(out, m);
+            open.put(m.getId(), m);
+        }
+        written += out.size() - before;
+        out.flush();
+        file.getChannel().force(false);
+    }
+
+    /**
+     * Records that {@code messageId} needs no redelivery: it was handled, given up on, or never
+     * made it into a ring.
+     */
+    synchronized void ack(UUID messageId) {
+        if (open.remove(messageId) == null) {
+            return;
+        }
+        try {
+            out.writeByte(ACKED);
+            writeUuid(out, messageId);
+            written += 1 + 16;
+            if (written > compactAt) {
+                rewrite();
+            }
+        } catch (IOException e) {
+            log.warn("Could not record ack of {} in job journal {}: {}", messageId, path, e.getMessage());
+        }
+    }
+
+    synchronized int openCount() {
+        return open.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.flush();
+        file.getChannel().force(false);
+        out.close();
+    }
+
+    /**
+     * Replaces the file with one holding just the open messages, forced to disk before it is
+     * moved into place, and appends to that from now on.
+     */
+    private void rewrite() throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream compacted = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            for (OutboxMessage m : open.values()) {
+                writePublished(compacted, m);
+            }
+        }
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+        // until here a failure leaves the current file in use
+        if (out != null) {
+            out.close();
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        file = new FileOutputStream(path.toFile(), true);
+        out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024));
+        written = Files.size(path);
+        compactAt = Math.max(compactBytes, 2 * written);
+        log.debug("Rewrote job journal {} with {} open messages ({} bytes)", path, open.size(), written);
+    }
+
+    private static Map<UUID, OutboxMessage> read(Path path) throws IOException {
+        Map<UUID, OutboxMessage> pending = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                if (type == PUBLISHED) {
+                    OutboxMessage m = readPublished(in);
+                    pending.put(m.getId(), m);
+                } else if (type == ACKED) {
+                    pending.remove(readUuid(in));
+                } else {
+                    log.warn("Job journal {} has an unknown record type {}; ignoring the rest", path, type);
+                    break;
+                }
+            }
+        } catch (EOFException e) {
+            log.warn("Job journal {} ends in a partial record; ignoring it", path);
+        }
+        return pending;
+    }
+
+    private static void writePublished(DataOutputStream out, OutboxMessage m) throws IOException {
+        out.writeByte(PUBLISHED);
+        writeUuid(out, m.getId());
+        writeUuid(out, m.getJobId());
+        out.writeUTF(m.getRoutingKey());
+        out.writeBoolean(m.getShardKey() != null);
+        if (m.getShardKey() != null) {
+            writeUuid(out, m.getShardKey());
+        }
+        out.writeUTF(m.getContentType() != null ? m.getContentType() : "");
+        out.writeUTF(m.getTypeId() != null ? m.getTypeId() : "");
+        out.writeInt(m.getPayload().length);
+        out.write(m.getPayload());
+    }
+
+    private static OutboxMessage readPublished(DataInputStream in) throws IOException {
+        UUID id = readUuid(in);
+        UUID jobId = readUuid(in);
+        String routingKey = in.readUTF();
+        UUID shardKey = in.readBoolean() ? readUuid(in) : null;
+        String contentType = in.readUTF();
+        String typeId = in.readUTF();
+        byte[] payload = new byte[in.readInt()];
+        in.readFully(payload);
+        return new OutboxMessage(id, jobId, null, routingKey, shardKey, contentType.isEmpty() ? null : contentType,
+                typeId.isEmpty() ? null : typeId, payload);
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID id) throws IOException {
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(DataInputStream in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.ordermanagement.messaging;
+
+import org.springframework.amqp.core.MessageProperties;
+
+/**
+ * Encoding a node publishes job messages with ({@code app.jobs.codec}); consumers read both.
+ * Bound like any enum property, so {@code json} and {@code binary} work and an unknown value
+ * fails startup.
+ */
+public enum JobMessageCodec {
+    JSON(MessageProperties.CONTENT_TYPE_JSON),
+    BINARY(BinaryJobMessageConverter.CONTENT_TYPE);
+
+    private final String contentType;
+
+    JobMessageCodec(String contentType) {
+        this.contentType = contentType;
+    }
+
+    /** The content type that selects this codec in {@code RabbitConfig#jobMessageConverter}. */
+    public String contentType() {
+        return contentType;
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.ordermanagement.messaging;
+
+import com.example.ordermanagement.domain.OutboxMessage;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded ring of pre-allocated slots with one consumer. Producers take the producer lock,
+ * copy a batch into consecutive slots and publish it by moving the cursor once; the consumer
+ * reads every slot up to the cursor, copies what it needs and releases them by moving its own
+ * sequence, which is what lets producers reuse the slots. Nothing is allocated per message on
+ * the ring itself, and a consumer that is already awake picks a batch up without any locking.
+ */
+final class JobRing {
+
+    /**
+     * The fields of an outbox message a listener needs. Owned by the producer until the cursor
+     * passes it and by the consumer until it is released.
+     */
+    static final class Slot {
+        UUID messageId;
+        UUID jobId;
+        String routingKey;
+        UUID shardKey;
+        String contentType;
+        String typeId;
+        byte[] payload;
+        boolean redelivered;
+
+        void set(OutboxMessage m, boolean redelivered) {
+            this.messageId = m.getId();
+            this.jobId = m.getJobId();
+            this.routingKey = m.getRoutingKey();
+            this.shardKey = m.getShardKey();
+            this.contentType = m.getContentType();
+            this.typeId = m.getTypeId();
+            this.payload = m.getPayload();
+            this.redelivered = redelivered;
+        }
+    }
+
+    private static final long PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+
+    private final String name;
+    private final Slot[] slots;
+    private final int mask;
+    private final RingWaitStrategy waitStrategy;
+    // last published sequence; moved by producers under producerLock
+    private final AtomicLong cursor = new AtomicLong(-1);
+    // last sequence the consumer is done with; that slot and all before it can be reused
+    private final AtomicLong released = new AtomicLong(-1);
+    private final ReentrantLock producerLock = new ReentrantLock();
+    // only used by RingWaitStrategy.BLOCKING
+    private final ReentrantLock signalLock = new ReentrantLock();
+    private final Condition published = signalLock.newCondition();
+    private volatile boolean running = true;
+
+    /** {@code size} is rounded up to a power of two. */
+    JobRing(String name, int size, RingWaitStrategy waitStrategy) {
+        int capacity = Integer.highestOneBit(Math.max(2, size) - 1) << 1;
+        this.name = name;
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = capacity - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    String name() {
+        return name;
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Copies {@code messages} into the ring in order, waiting until {@code deadlineNanos}
+     * ({@link System#nanoTime()}) for the consumer to free slots when it is full. Returns how
+     * many were published: all of them unless the deadline passed or the ring was stopped.
+     */
+    int publish(List<OutboxMessage> messages, boolean redelivered, long deadlineNanos) {
+        producerLock.lock();
+        try {
+            long next = cursor.get() + 1;
+            int done = 0;
+            for (OutboxMessage m : messages) {
+                long wrapPoint = next - slots.length;
+                if (released.get() < wrapPoint) {
+                    // full: let the consumer have what is filled so far, then wait for room
+                    publishUpTo(next - 1);
+                    while (released.get() < wrapPoint) {
+                        if (!running || System.nanoTime() - deadlineNanos > 0) {
+                            return done;
+                        }
+                        LockSupport.parkNanos(PRODUCER_PARK_NANOS);
+                    }
+                }
+                slots[(int) next & mask].set(m, redelivered);
+                next++;
+                done++;
+            }
+            publishUpTo(next - 1);
+            return done;
+        } finally {
+            producerLock.unlock();
+        }
+    }
+
+    private void publishUpTo(long sequence) {
+        if (sequence <= cursor.get()) {
+            return;
+        }
+        cursor.set(sequence);
+        if (waitStrategy == RingWaitStrategy.BLOCKING) {
+            signalLock.lock();
+            try {
+                published.signalAll();
+            } finally {
+                signalLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Consumer side: waits for {@code sequence} and returns the highest published sequence,
+     * or {@code sequence - 1} once the ring is stopped.
+     */
+    long waitFor(long sequence) {
+        return waitStrategy.waitFor(sequence, this);
+    }
+
+    Slot slot(long sequence) {
+        return slots[(int) sequence & mask];
+    }
+
+    /**
+     * Hands every slot up to {@code sequence} back to the producers.
+     */
+    void release(long sequence) {
+        for (long s = released.get() + 1; s <= sequence; s++) {
+            // don't keep payloads alive until the slot comes round again
+            slots[(int) s & mask].payload = null;
+        }
+        released.set(sequence);
+    }
+
+    long cursor() {
+        return cursor.get();
+    }
+
+    /** Messages published and not yet released. */
+    long depth() {
+        return cursor.get() - released.get();
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    void stop() {
+        running = false;
+        signalLock.lock();
+        try {
+            published.signalAll();
+        } finally {
+            signalLock.unlock();
+        }
+    }
+
+    void awaitPublished(long sequence, long nanos) {
+        signalLock.lock();
+        try {
+            if (running && cursor.get() < sequence) {
+                published.awaitNanos(nanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            signalLock.unlock();
+        }
+    }
+}
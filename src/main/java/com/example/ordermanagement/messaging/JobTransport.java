@@ -0,0 +1,24 @@
+package com.example.ordermanagement.messaging;
+
+import com.example.ordermanagement.domain.OutboxMessage;
+
+import java.util.List;
+
+/**
+ * Carries job messages from the outbox to the listeners. The relay hands over each claimed
+ * batch and marks it sent once {@link #send} returns, so an implementation returns only after
+ * it has taken responsibility for every message of the batch. Selected by
+ * {@code app.jobs.transport}: {@code rabbit} ({@link RabbitJobTransport}, the default) or
+ * {@code ring} ({@link RingBufferJobTransport}, in-process).
+ */
+public interface JobTransport {
+
+    /**
+     * Sends {@code batch} and waits until it is accepted. Throws
+     * {@link TransportUnavailableException} when the transport itself cannot take messages at
+     * the moment, and any other runtime exception when the batch was refused; the relay then
+     * leaves the batch pending and sends it again after a backoff, so messages of a failed
+     * batch may be delivered twice.
+     */
+    void send(List<OutboxMessage> batch);
+}
@@ -0,0 +1,68 @@
+package com.example.ordermanagement.messaging;
+
+import com.example.ordermanagement.config.JobShards;
+import com.example.ordermanagement.domain.OutboxMessage;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.AmqpTimeoutException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Publishes job messages to RabbitMQ: the whole batch on one channel, then one wait for the
+ * broker's publisher confirms. The shard queue a message goes to is resolved here from its
+ * shard key (see {@link JobShards}).
+ */
+@Component
+@ConditionalOnProperty(name = "app.jobs.transport", havingValue = "rabbit", matchIfMissing = true)
+public class RabbitJobTransport implements JobTransport {
+
+    /** Order id a job message is sharded by; lets a replay re-resolve the shard. */
+    public static final String SHARD_KEY_HEADER = "x-shard-key";
+
+    private final RabbitTemplate rabbitTemplate;
+    private final JobShards jobShards;
+
+    @Value("${app.outbox.confirm-timeout-ms:5000}")
+    private long confirmTimeoutMs;
+
+    public RabbitJobTransport(RabbitTemplate rabbitTemplate, JobShards jobShards) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.jobShards = jobShards;
+    }
+
+    @Override
+    public void send(List<OutboxMessage> batch) {
+        try {
+            rabbitTemplate.invoke(ops -> {
+                for (OutboxMessage m : batch) {
+                    ops.send(m.getExchange(), jobShards.routingKey(m.getRoutingKey(), m.getShardKey()), toMessage(m));
+                }
+                ops.waitForConfirmsOrDie(confirmTimeoutMs);
+                return null;
+            });
+        } catch (AmqpConnectException | AmqpTimeoutException e) {
+            throw new TransportUnavailableException("RabbitMQ unavailable: " + e.getMessage(), e);
+        }
+    }
+
+    static Message toMessage(OutboxMessage m) {
+        MessageProperties props = new MessageProperties();
+        props.setContentType(m.getContentType());
+        props.setMessageId(m.getId().toString());
+        props.setCorrelationId(m.getJobId().toString());
+        if (m.getTypeId() != null) {
+            props.setHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME, m.getTypeId());
+        }
+        if (m.getShardKey() != null) {
+            props.setHeader(SHARD_KEY_HEADER, m.getShardKey().toString());
+        }
+        return new Message(m.getPayload(), props);
+    }
+}
@@ -0,0 +1,472 @@
+package com.example.ordermanagement.messaging;
+
+import com.example.ordermanagement.config.JobShards;
+import com.example.ordermanagement.config.RabbitConfig;
+import com.example.ordermanagement.domain.JobStatus;
+import com.example.ordermanagement.domain.JobType;
+import com.example.ordermanagement.domain.OutboxMessage;
+import com.example.ordermanagement.listener.InvoiceListener;
+import com.example.ordermanagement.listener.RefundListener;
+import com.example.ordermanagement.messaging.dto.InvoiceJobDto;
+import com.example.ordermanagement.repository.JobLogRepository;
+import com.example.ordermanagement.service.JobRetryPolicy;
+import com.example.ordermanagement.service.OperationMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process {@link JobTransport} for single-node deployments ({@code app.jobs.transport=ring}):
+ * no broker, no network hop, and a handoff from the relay to a listener measured in
+ * microseconds. Each job type gets {@code partitions} {@link JobRing}s with one consumer
+ * thread each; a message goes to the partition of its order id (the same jump hash as
+ * {@link JobShards}), so one order's jobs are handled by one thread, in order. A consumer drains up to
+ * {@code batch-size} messages per wakeup: invoice jobs go to
+ * {@link InvoiceListener#handleInvoiceBatch} as one batch, refund jobs to
+ * {@link RefundListener#handleRefund(JobDelivery)} one by one.
+ * <p>
+ * When the rings are full, {@link #send} waits up to {@code app.outbox.confirm-timeout-ms} and
+ * then fails, so the outbox keeps the batch pending. The messages some rings did accept are
+ * remembered and skipped when the relay sends the batch again, so they are not delivered
+ * twice. A listener failure is retried in place like the Rabbit containers do. There is no
+ * dead-letter queue: a message that cannot be converted or keeps failing (an invoice batch
+ * after {@code max-attempts}) is dropped, and its job counts a failed attempt with the reason
+ * in {@code last_error}. {@link JobRetryPolicy} then makes it RETRYING, so
+ * {@link com.example.ordermanagement.service.RetryScheduler} enqueues it again, or FAILED once
+ * its attempts are spent. Without the journal, messages still in a ring when the process dies
+ * are lost; with {@code journal.enabled} they are redelivered on the next start.
+ */
+@Component
+@ConditionalOnProperty(name = "app.jobs.transport", havingValue = "ring")
+public class RingBufferJobTransport implements JobTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(RingBufferJobTransport.class);
+    private static final JobType[] TYPES = JobType.values();
+
+    private final InvoiceListener invoiceListener;
+    private final RefundListener refundListener;
+    private final MessageConverter messageConverter;
+    private final JobLogRepository jobLogRepository;
+    private final JobRetryPolicy retryPolicy;
+    private final OperationMetrics metrics;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<JobType, JobRing[]> rings = new EnumMap<>(JobType.class);
+    private final List<Thread> consumers = new ArrayList<>();
+    // refund requeues come from completion threads and must not wait on a full ring there
+    private final ExecutorService requeues = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "job-ring-requeue");
+        t.setDaemon(true);
+        return t;
+    });
+    // messages of failed sends that a ring did accept; skipped when the relay sends them again
+    private final Set<UUID> acceptedOfFailedSends = ConcurrentHashMap.newKeySet();
+    private JobShards partitioner;
+    private JobJournal journal;
+    private volatile boolean accepting;
+
+    @Value("${app.jobs.ring.size:1024}")
+    private int ringSize;
+
+    @Value("${app.jobs.ring.partitions:0}")
+    private int partitions;
+
+    @Value("${app.jobs.ring.batch-size:50}")
+    private int batchSize;
+
+    @Value("${app.jobs.ring.wait-strategy:sleeping}")
+    private String waitStrategy;
+
+    @Value("${app.jobs.ring.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${app.jobs.ring.retry-interval-ms:1000}")
+    private long retryIntervalMs;
+
+    @Value("${app.jobs.ring.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs;
+
+    @Value("${app.jobs.ring.journal.enabled:false}")
+    private boolean journalEnabled;
+
+    @Value("${app.jobs.ring.journal.path:data/job-journal.bin}")
+    private String journalPath;
+
+    @Value("${app.jobs.ring.journal.compact-bytes:67108864}")
+    private long journalCompactBytes;
+
+    @Value("${app.outbox.confirm-timeout-ms:5000}")
+    private long sendTimeoutMs;
+
+    public RingBufferJobTransport(InvoiceListener invoiceListener, RefundListener refundListener, MessageConverter messageConverter,
+                                  JobLogRepository jobLogRepository, JobRetryPolicy retryPolicy, OperationMetrics metrics,
+                                  PlatformTransactionManager transactionManager) {
+        this.invoiceListener = invoiceListener;
+        this.refundListener = refundListener;
+        this.messageConverter = messageConverter;
+        this.jobLogRepository = jobLogRepository;
+        this.retryPolicy = retryPolicy;
+        this.metrics = metrics;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        int n = partitions > 0 ? partitions : Runtime.getRuntime().availableProcessors();
+        partitioner = new JobShards(n);
+        RingWaitStrategy strategy = RingWaitStrategy.parse(waitStrategy);
+        for (JobType type : TYPES) {
+            JobRing[] typeRings = new JobRing[n];
+            for (int i = 0; i < n; i++) {
+                String name = "job-ring-" + type.name().toLowerCase(Locale.ROOT).replace('_', '-') + "-" + i;
+                typeRings[i] = new JobRing(name, ringSize, strategy);
+                Thread t = new Thread(consumer(type, typeRings[i]), name);
+                t.setDaemon(true);
+                consumers.add(t);
+            }
+            rings.put(type, typeRings);
+        }
+        List<OutboxMessage> recovered = new ArrayList<>();
+        if (journalEnabled) {
+            journal = JobJournal.open(Path.of(journalPath), journalCompactBytes, recovered);
+        }
+        consumers.forEach(Thread::start);
+        accepting = true;
+        log.info("In-process job transport: {} partitions per job type, {} slots each, {} wait strategy{}",
+                n, rings.get(TYPES[0])[0].capacity(), strategy, journal != null ? ", journal " + journalPath : "");
+        if (!recovered.isEmpty()) {
+            // already in the journal; redelivered
+            publish(recovered, true, System.nanoTime() + TimeUnit.HOURS.toNanos(1), null);
+        }
+    }
+
+    @Override
+    public void send(List<OutboxMessage> batch) {
+        if (!accepting) {
+            throw new TransportUnavailableException("In-process job transport is not accepting messages");
+        }
+        List<OutboxMessage> left = batch;
+        if (!acceptedOfFailedSends.isEmpty()) {
+            left = new ArrayList<>(batch.size());
+            for (OutboxMessage m : batch) {
+                if (!acceptedOfFailedSends.remove(m.getId())) {
+                    left.add(m);
+                }
+            }
+        }
+        if (journal != null) {
+            try {
+                journal.append(left);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not write job journal: " + e.getMessage(), e);
+            }
+        }
+        List<OutboxMessage> accepted = new ArrayList<>(left.size());
+        try {
+            publish(left, false, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs), accepted);
+        } catch (IllegalStateException e) {
+            Set<UUID> acceptedIds = new HashSet<>();
+            for (OutboxMessage m : accepted) {
+                acceptedIds.add(m.getId());
+            }
+            acceptedOfFailedSends.addAll(acceptedIds);
+            if (journal != null) {
+                // the rest stays pending in the outbox, which sends it again
+                for (OutboxMessage m : left) {
+                    if (!acceptedIds.contains(m.getId())) {
+                        journal.ack(m.getId());
+                    }
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Spreads {@code batch} over the rings, keeping the batch order within each ring. Adds what
+     * the rings took to {@code accepted}, if given, also when it then fails.
+     */
+    private void publish(List<OutboxMessage> batch, boolean redelivered, long deadlineNanos, List<OutboxMessage> accepted) {
+        Map<JobRing, List<OutboxMessage>> byRing = new LinkedHashMap<>();
+        for (OutboxMessage m : batch) {
+            JobType type = RabbitConfig.jobTypeForRoutingKey(m.getRoutingKey());
+            if (type == null) {
+                throw new IllegalStateException("No job type for routing key " + m.getRoutingKey());
+            }
+            JobRing ring = rings.get(type)[partitioner.shardOf(m.getShardKey())];
+            byRing.computeIfAbsent(ring, r -> new ArrayList<>()).add(m);
+        }
+        for (Map.Entry<JobRing, List<OutboxMessage>> e : byRing.entrySet()) {
+            List<OutboxMessage> messages = e.getValue();
+            int published = e.getKey().publish(messages, redelivered, deadlineNanos);
+            if (accepted != null) {
+                accepted.addAll(messages.subList(0, published));
+            }
+            if (published < messages.size()) {
+                throw new TransportUnavailableException("Job ring " + e.getKey().name() + " is full; "
+                        + (messages.size() - published) + " messages not accepted");
+            }
+        }
+    }
+
+    private Runnable consumer(JobType type, JobRing ring) {
+        return () -> {
+            long next = 0;
+            List<Message> drained = new ArrayList<>(batchSize);
+            while (ring.isRunning()) {
+                long available = ring.waitFor(next);
+                if (available < next) {
+                    continue;
+                }
+                long end = Math.min(available, next + batchSize - 1);
+                for (long s = next; s <= end; s++) {
+                    drained.add(toMessage(ring.slot(s)));
+                }
+                ring.release(end);
+                next = end + 1;
+                if (type == JobType.INVOICE_GENERATION) {
+                    handleInvoices(drained);
+                } else {
+                    for (Message m : drained) {
+                        try {
+                            refundListener.handleRefund(new RingDelivery(m));
+                        } catch (RuntimeException e) {
+                            drop(m, e);
+                        }
+                    }
+                }
+                drained.clear();
+            }
+        };
+    }
+
+    /**
+     * Converts the batch (dropping what cannot be converted) and hands it to the listener,
+     * trying a failing batch {@code max-attempts} times at {@code retry-interval-ms} before
+     * dropping it.
+     */
+    private void handleInvoices(List<Message> messages) {
+        List<InvoiceJobDto> jobs = new ArrayList<>(messages.size());
+        for (Message m : messages) {
+            try {
+                m.getMessageProperties().setInferredArgumentType(InvoiceJobDto.class);
+                jobs.add((InvoiceJobDto) messageConverter.fromMessage(m));
+            } catch (RuntimeException e) {
+                drop(m, e);
+            }
+        }
+        if (jobs.isEmpty()) {
+            return;
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                invoiceListener.handleInvoiceBatch(jobs);
+                break;
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    // dropped, also from the journal: redelivering it on every start would not help
+                    log.error("Giving up on {} invoice job(s) after {} attempts: {}", jobs.size(), attempt, e.getMessage(), e);
+                    for (Message m : messages) {
+                        failAttempt(m, e);
+                    }
+                    break;
+                }
+                log.warn("Invoice batch failed (attempt {} of {}): {}", attempt, maxAttempts, e.getMessage());
+                if (!sleep(retryIntervalMs)) {
+                    // stopping; left open in the journal, if any, for the next start
+                    return;
+                }
+            }
+        }
+        for (Message m : messages) {
+            ack(m);
+        }
+    }
+
+    /**
+     * Stops taking messages, gives the consumers {@code shutdown-timeout-ms} to empty the rings
+     * and then stops them.
+     */
+    @PreDestroy
+    public void stop() throws IOException {
+        accepting = false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMs);
+        while (depth() > 0 && System.nanoTime() - deadline < 0) {
+            sleep(10);
+        }
+        long left = depth();
+        if (left > 0) {
+            log.warn("Stopping in-process job transport with {} messages undelivered{}", left,
+                    journal != null ? " (kept in the journal)" : "");
+        }
+        for (JobRing[] typeRings : rings.values()) {
+            for (JobRing ring : typeRings) {
+                ring.stop();
+            }
+        }
+        for (Thread t : consumers) {
+            try {
+                t.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        requeues.shutdown();
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /** Messages in the rings, over all job types. */
+    public long depth() {
+        long depth = 0;
+        for (JobRing[] typeRings : rings.values()) {
+            for (JobRing ring : typeRings) {
+                depth += ring.depth();
+            }
+        }
+        return depth;
+    }
+
+    public long depth(JobType type) {
+        long depth = 0;
+        for (JobRing ring : rings.getOrDefault(type, new JobRing[0])) {
+            depth += ring.depth();
+        }
+        return depth;
+    }
+
+    private void ack(Message m) {
+        if (journal != null) {
+            journal.ack(UUID.fromString(m.getMessageProperties().getMessageId()));
+        }
+    }
+
+    private void drop(Message m, Exception cause) {
+        MessageProperties props = m.getMessageProperties();
+        log.error("Dropping job message {} (job {}, {}): {}", props.getMessageId(), props.getCorrelationId(),
+                props.getReceivedRoutingKey(), cause.getMessage());
+        failAttempt(m, cause);
+        ack(m);
+    }
+
+    /**
+     * Records a dropped message on its job as a failed attempt, unless the job has finished.
+     */
+    private void failAttempt(Message m, Exception cause) {
+        String jobId = m.getMessageProperties().getCorrelationId();
+        String reason = "Dropped by the in-process transport: " + cause.getMessage();
+        try {
+            transactionTemplate.executeWithoutResult(status -> jobLogRepository.findById(UUID.fromString(jobId))
+                    .filter(job -> job.getStatus() != JobStatus.SUCCESS && job.getStatus() != JobStatus.FAILED)
+                    .ifPresent(job -> {
+                        job.setAttempts(job.getAttempts() + 1);
+                        retryPolicy.onFailure(job, reason);
+                        jobLogRepository.save(job);
+                        metrics.jobSettled(job);
+                    }));
+        } catch (RuntimeException e) {
+            log.error("Could not record dropped job {}: {}", jobId, e.getMessage(), e);
+        }
+    }
+
+    private static Message toMessage(JobRing.Slot s) {
+        MessageProperties props = new MessageProperties();
+        props.setContentType(s.contentType);
+        props.setMessageId(s.messageId.toString());
+        props.setCorrelationId(s.jobId.toString());
+        props.setReceivedRoutingKey(s.routingKey);
+        props.setRedelivered(s.redelivered);
+        if (s.typeId != null) {
+            props.setHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME, s.typeId);
+        }
+        if (s.shardKey != null) {
+            props.setHeader(RabbitJobTransport.SHARD_KEY_HEADER, s.shardKey.toString());
+        }
+        return new Message(s.payload, props);
+    }
+
+    private static OutboxMessage toOutboxMessage(Message m) {
+        MessageProperties props = m.getMessageProperties();
+        Object typeId = props.getHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME);
+        Object shardKey = props.getHeader(RabbitJobTransport.SHARD_KEY_HEADER);
+        return new OutboxMessage(UUID.fromString(props.getMessageId()), UUID.fromString(props.getCorrelationId()), null,
+                props.getReceivedRoutingKey(), shardKey != null ? UUID.fromString(shardKey.toString()) : null,
+                props.getContentType(), typeId != null ? typeId.toString() : null, m.getBody());
+    }
+
+    private static boolean sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * A refund message taken off a ring: acking releases it from the journal, a requeue puts it
+     * back on its ring.
+     */
+    private final class RingDelivery implements JobDelivery {
+
+        private final Message message;
+
+        RingDelivery(Message message) {
+            this.message = message;
+        }
+
+        @Override
+        public Message message() {
+            return message;
+        }
+
+        @Override
+        public boolean redelivered() {
+            return message.getMessageProperties().isRedelivered();
+        }
+
+        @Override
+        public void ack() {
+            RingBufferJobTransport.this.ack(message);
+        }
+
+        @Override
+        public void requeue() {
+            if (!accepting) {
+                return;
+            }
+            requeues.execute(() -> {
+                try {
+                    publish(List.of(toOutboxMessage(message)), true,
+                            System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMs), null);
+                } catch (IllegalStateException e) {
+                    log.error("Could not requeue job message {}: {}", message.getMessageProperties().getMessageId(), e.getMessage());
+                }
+            });
+        }
+
+        @Override
+        public void deadLetter(Exception cause) {
+            drop(message, cause);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.ordermanagement.messaging;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a {@link RingBufferJobTransport} consumer waits for the next message
+ * ({@code app.jobs.ring.wait-strategy}). From lowest handoff latency and highest idle
+ * CPU cost to the reverse: {@code busy-spin} keeps a core busy per consumer, {@code yielding}
+ * spins briefly and then yields it, {@code sleeping} backs off to short parks (tens of
+ * microseconds), and {@code blocking} sleeps on a condition the producer signals.
+ */
+public enum RingWaitStrategy {
+    BUSY_SPIN,
+    YIELDING,
+    SLEEPING,
+    BLOCKING;
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    // upper bound on a blocking wait, so a stopped ring is noticed without a signal
+    private static final long BLOCK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Waits until {@code ring} has published {@code sequence}; returns the highest published
+     * sequence, or one less than {@code sequence} when the ring was stopped first.
+     */
+    long waitFor(long sequence, JobRing ring) {
+        int tries = 0;
+        long available;
+        while ((available = ring.cursor()) < sequence) {
+            if (!ring.isRunning()) {
+                return sequence - 1;
+            }
+            switch (this) {
+                case BUSY_SPIN -> Thread.onSpinWait();
+                case YIELDING -> {
+                    if (tries++ < SPIN_TRIES) {
+                        Thread.onSpinWait();
+                    } else {
+                        Thread.yield();
+                    }
+                }
+                case SLEEPING -> {
+                    if (tries < SPIN_TRIES) {
+                        Thread.onSpinWait();
+                    } else if (tries < SPIN_TRIES + YIELD_TRIES) {
+                        Thread.yield();
+                    } else {
+                        LockSupport.parkNanos(PARK_NANOS);
+                    }
+                    tries++;
+                }
+                case BLOCKING -> ring.awaitPublished(sequence, BLOCK_NANOS);
+            }
+        }
+        return available;
+    }
+
+    /** Accepts the enum name in any case, with dashes for underscores ({@code busy-spin}). */
+    public static RingWaitStrategy parse(String value) {
+        return valueOf(value.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.ordermanagement.messaging;
+
+/**
+ * The {@link JobTransport} cannot take messages right now: no broker connection, no publisher
+ * confirm in time, or a full ring. Says nothing about the messages themselves, so the relay
+ * backs off without counting the failure against the batch's attempts.
+ */
+public class TransportUnavailableException extends IllegalStateException {
+
+    public TransportUnavailableException(String message) {
+        super(message);
+    }
+
+    public TransportUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
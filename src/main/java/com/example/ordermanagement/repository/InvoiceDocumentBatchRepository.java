@@ -0,0 +1,42 @@
+package com.example.ordermanagement.repository;
+
+import com.example.ordermanagement.domain.InvoiceDocument;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+
+/**
+ * JDBC batch writes for the invoice index. Re-rendered invoices replace their entry, so the
+ * write is a batched delete followed by a batched insert, which works the same on H2 and Postgres.
+ */
+@Repository
+public class InvoiceDocumentBatchRepository {
+
+    private static final String DELETE_SQL = "delete from invoice_documents where order_id = ?";
+    private static final String INSERT_SQL =
+            "insert into invoice_documents (order_id, relative_path, size_bytes, checksum, created_at) values (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public InvoiceDocumentBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Transactional
+    public void replaceAll(Collection<InvoiceDocument> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(DELETE_SQL, documents, documents.size(),
+                (ps, d) -> ps.setObject(1, d.getOrderId()));
+        jdbcTemplate.batchUpdate(INSERT_SQL, documents, documents.size(), (ps, d) -> {
+            ps.setObject(1, d.getOrderId());
+            ps.setString(2, d.getRelativePath());
+            ps.setLong(3, d.getSizeBytes());
+            ps.setLong(4, d.getChecksum());
+            ps.setObject(5, d.getCreatedAt());
+        });
+    }
+}
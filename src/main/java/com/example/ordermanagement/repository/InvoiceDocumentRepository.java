@@ -0,0 +1,11 @@
+package com.example.ordermanagement.repository;
+
+import com.example.ordermanagement.domain.InvoiceDocument;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.UUID;
+
+@Repository
+public interface InvoiceDocumentRepository extends JpaRepository<InvoiceDocument, UUID> {
+}
@@ -0,0 +1,79 @@
+package com.example.ordermanagement.repository;
+
+import com.example.ordermanagement.domain.JobLog;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * JDBC batch writes for {@link JobLog} rows, used by listeners that settle many jobs at once
+ * and would otherwise pay one round trip per {@code save}.
+ */
+@Repository
+public class JobLogBatchRepository {
+
+    private static final String UPDATE_STATUS_SQL =
+            "update job_log set status = ?, result_meta = ?, last_error = ?, attempts = ?, next_attempt_at = ?, updated_at = ? where id = ?";
+
+    // only succeeds while the row still carries this node's lease
+    private static final String RELEASE_RETRY_SQL =
+            "update job_log set status = 'PENDING', next_attempt_at = null, updated_at = ? "
+                    + "where id = ? and status = 'RETRYING' and next_attempt_at = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public JobLogBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Writes status, result, error, attempt count and next attempt of every given job in a
+     * single JDBC batch.
+     */
+    public void updateStatuses(Collection<JobLog> jobs) {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(UPDATE_STATUS_SQL, jobs, jobs.size(), (ps, job) -> {
+            ps.setString(1, job.getStatus().name());
+            ps.setString(2, job.getResultMeta());
+            ps.setString(3, job.getLastError());
+            ps.setInt(4, job.getAttempts());
+            ps.setObject(5, job.getNextAttemptAt());
+            ps.setObject(6, job.getUpdatedAt());
+            ps.setObject(7, job.getId());
+        });
+    }
+
+    /**
+     * Moves leased RETRYING jobs back to PENDING. {@code leases} maps job id to the
+     * {@code next_attempt_at} value this node wrote when it claimed the job; a job whose lease
+     * expired and was claimed elsewhere no longer matches. Returns the ids that were released.
+     */
+    public List<UUID> releaseRetries(Map<UUID, OffsetDateTime> leases) {
+        if (leases.isEmpty()) {
+            return List.of();
+        }
+        List<Map.Entry<UUID, OffsetDateTime>> entries = List.copyOf(leases.entrySet());
+        OffsetDateTime now = OffsetDateTime.now();
+        int[][] counts = jdbcTemplate.batchUpdate(RELEASE_RETRY_SQL, entries, entries.size(), (ps, e) -> {
+            ps.setObject(1, now);
+            ps.setObject(2, e.getKey());
+            ps.setObject(3, e.getValue());
+        });
+        List<UUID> released = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            // drivers may report SUCCESS_NO_INFO (-2) for batched statements; treat it as released
+            if (counts[0][i] != 0) {
+                released.add(entries.get(i).getKey());
+            }
+        }
+        return released;
+    }
+}
@@ -1,14 +1,42 @@
 package com.example.ordermanagement.repository;
 
 import com.example.ordermanagement.domain.JobLog;
-import org.springframework.data.jpa.repository.JpaRepository;
+import com.example.ordermanagement.domain.JobStatus;
+import com.example.ordermanagement.domain.OutboxStatus;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface JobLogRepository extends JpaRepository<JobLog, UUID> {
     Optional<JobLog> findByIdempotencyKey(String idempotencyKey);
-}
 
+    /**
+     * Locks jobs in the given status whose next attempt is due by {@code dueBefore}, earliest
+     * first. Rendered with SKIP LOCKED (see {@link OutboxMessageRepository#claimBatch}), so
+     * nodes claiming at the same time get disjoint batches.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("select j from JobLog j where j.status = :status and j.nextAttemptAt <= :dueBefore order by j.nextAttemptAt")
+    List<JobLog> claimDue(@Param("status") JobStatus status, @Param("dueBefore") OffsetDateTime dueBefore, Pageable page);
+
+    /**
+     * Sets jobs still in {@code from} whose outbox message is among {@code outboxIds} and in
+     * {@code outboxStatus} to {@code to}.
+     */
+    @Modifying
+    @Query("update JobLog j set j.status = :to, j.lastError = :error where j.status = :from and j.id in"
+            + " (select m.jobId from OutboxMessage m where m.id in :outboxIds and m.status = :outboxStatus)")
+    int updateByOutboxStatus(@Param("outboxIds") Collection<UUID> outboxIds, @Param("outboxStatus") OutboxStatus outboxStatus,
+                             @Param("from") JobStatus from, @Param("to") JobStatus to, @Param("error") String error);
+}
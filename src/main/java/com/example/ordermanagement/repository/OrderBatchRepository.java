@@ -0,0 +1,66 @@
+package com.example.ordermanagement.repository;
+
+import com.example.ordermanagement.domain.OrderStatus;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Set-based writes to {@code orders} that bypass the persistence context. Every statement
+ * carries the expected {@code @Version}, so a row changed concurrently is left alone and
+ * reported with an update count of 0.
+ */
+@Repository
+public class OrderBatchRepository {
+
+    private static final String UPDATE_STATUS_SQL =
+            "update orders set status = ?, version = version + 1, updated_at = ? where id = ? and version = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public OrderBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Applies all status updates in one JDBC batch. Returns the update count per entry, in order.
+     */
+    public int[] updateStatuses(List<StatusUpdate> updates, OffsetDateTime updatedAt) {
+        if (updates.isEmpty()) {
+            return new int[0];
+        }
+        return jdbcTemplate.batchUpdate(UPDATE_STATUS_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                StatusUpdate u = updates.get(i);
+                ps.setString(1, u.target.name());
+                ps.setObject(2, updatedAt);
+                ps.setObject(3, u.orderId);
+                ps.setLong(4, u.expectedVersion);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return updates.size();
+            }
+        });
+    }
+
+    public static class StatusUpdate {
+        public final UUID orderId;
+        public final long expectedVersion;
+        public final OrderStatus target;
+
+        public StatusUpdate(UUID orderId, long expectedVersion, OrderStatus target) {
+            this.orderId = orderId;
+            this.expectedVersion = expectedVersion;
+            this.target = target;
+        }
+    }
+}
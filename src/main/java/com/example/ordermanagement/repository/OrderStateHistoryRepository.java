@@ -1,12 +1,40 @@
 package com.example.ordermanagement.repository;
 
 import com.example.ordermanagement.domain.OrderStateHistory;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.OffsetDateTime;
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface OrderStateHistoryRepository extends JpaRepository<OrderStateHistory, UUID> {
-}
 
+    String RECORD = "select new com.example.ordermanagement.repository.StateHistoryRecord("
+            + "h.id, h.order.id, h.fromState, h.toState, h.changedBy, h.reason, h.createdAt) from OrderStateHistory h ";
+
+    @Query(RECORD + "where h.order.id = :orderId order by h.createdAt, h.id")
+    List<StateHistoryRecord> findFirstPage(@Param("orderId") UUID orderId, Pageable page);
+
+    /**
+     * Rows strictly after the (createdAt, id) cursor, in index order.
+     */
+    @Query(RECORD + "where h.order.id = :orderId and (h.createdAt > :createdAt or (h.createdAt = :createdAt and h.id > :id)) "
+            + "order by h.createdAt, h.id")
+    List<StateHistoryRecord> findPageAfter(@Param("orderId") UUID orderId, @Param("createdAt") OffsetDateTime createdAt,
+                                           @Param("id") UUID id, Pageable page);
+
+    /**
+     * Whole history as a cursor-backed stream; must be consumed inside a transaction and closed.
+     */
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+    @Query(RECORD + "where h.order.id = :orderId order by h.createdAt, h.id")
+    Stream<StateHistoryRecord> streamAll(@Param("orderId") UUID orderId);
+}
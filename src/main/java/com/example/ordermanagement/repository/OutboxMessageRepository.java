@@ -0,0 +1,70 @@
+package com.example.ordermanagement.repository;
+
+import com.example.ordermanagement.domain.JobStatus;
+import com.example.ordermanagement.domain.OutboxMessage;
+import com.example.ordermanagement.domain.OutboxStatus;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessage, UUID> {
+
+    /**
+     * Locks the oldest rows in the given status that are due at {@code now}. A lock timeout of
+     * -2 is rendered as SKIP LOCKED, so concurrent relays claim disjoint batches instead of
+     * blocking each other. Only the oldest row of each shard key (order) qualifies, so an
+     * order's messages are published one after the other, in the order they were written, even
+     * with several relays; a row waiting for its backoff holds back the order's later rows.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("select m from OutboxMessage m where m.status = :status"
+            + " and (m.nextAttemptAt is null or m.nextAttemptAt <= :now)"
+            + " and not exists (select o.id from OutboxMessage o where o.shardKey = m.shardKey and o.status = :status"
+            + " and o.createdAt < m.createdAt)"
+            + " order by m.createdAt")
+    List<OutboxMessage> claimBatch(@Param("status") OutboxStatus status, @Param("now") OffsetDateTime now, Pageable page);
+
+    @Modifying
+    @Query("update OutboxMessage m set m.status = :status, m.sentAt = :sentAt where m.id in :ids")
+    int markSent(@Param("ids") Collection<UUID> ids, @Param("status") OutboxStatus status, @Param("sentAt") OffsetDateTime sentAt);
+
+    /**
+     * Records a failed publish of {@code ids}: adds {@code attempts} (0 when the failure was
+     * not the messages' fault) and holds the rows back until {@code nextAttemptAt}.
+     */
+    @Modifying
+    @Query("update OutboxMessage m set m.attempts = m.attempts + :attempts, m.lastError = :error,"
+            + " m.nextAttemptAt = :nextAttemptAt where m.id in :ids")
+    int recordFailure(@Param("ids") Collection<UUID> ids, @Param("attempts") int attempts, @Param("error") String error,
+                      @Param("nextAttemptAt") OffsetDateTime nextAttemptAt);
+
+    /**
+     * Moves the rows among {@code ids} that have failed {@code maxAttempts} times to
+     * {@code status}, so they no longer hold up the head of the outbox.
+     */
+    @Modifying
+    @Query("update OutboxMessage m set m.status = :status where m.id in :ids and m.attempts >= :maxAttempts")
+    int markExhausted(@Param("ids") Collection<UUID> ids, @Param("maxAttempts") int maxAttempts, @Param("status") OutboxStatus status);
+
+    /**
+     * Deletes sent rows older than {@code sentBefore} whose job has finished; the rows of
+     * unfinished jobs are what {@code JobPublisherService#requeue} copies for a retry.
+     */
+    @Modifying
+    @Query("delete from OutboxMessage m where m.status = :sent and m.sentAt < :sentBefore"
+            + " and m.jobId in (select j.id from JobLog j where j.status in :finished)")
+    int purgeSent(@Param("sent") OutboxStatus sent, @Param("sentBefore") OffsetDateTime sentBefore,
+                  @Param("finished") Collection<JobStatus> finished);
+
+    List<OutboxMessage> findByJobIdIn(Collection<UUID> jobIds);
+}
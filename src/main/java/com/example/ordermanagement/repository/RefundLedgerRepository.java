@@ -0,0 +1,168 @@
+package com.example.ordermanagement.repository;
+
+import com.example.ordermanagement.domain.OrderRefundBalance;
+import com.example.ordermanagement.domain.RefundLedgerEntry;
+import com.example.ordermanagement.domain.RefundLedgerStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * JDBC access to {@link RefundLedgerEntry} and {@link OrderRefundBalance}. Every change is a
+ * single conditional UPDATE, so concurrent refunds of one order never need a row lock held
+ * across statements: a reservation only succeeds while the balance still covers it, and an
+ * entry only moves on from the status the caller expects.
+ */
+@Repository
+public class RefundLedgerRepository {
+
+    private static final String FIND_BALANCE_SQL =
+            "select refundable_minor, reserved_minor, refunded_minor from order_refund_balance where order_id = ?";
+
+    private static final String LOCK_ORDER_SQL = "select total_amount from orders where id = ? for update";
+
+    private static final String CREATE_BALANCE_SQL =
+            "insert into order_refund_balance (order_id, refundable_minor, reserved_minor, refunded_minor, updated_at) "
+                    + "select ?, ?, 0, 0, ? "
+                    + "where not exists (select 1 from order_refund_balance where order_id = ?)";
+
+    private static final String RESERVE_SQL =
+            "update order_refund_balance set reserved_minor = reserved_minor + ?, updated_at = ? "
+                    + "where order_id = ? and refunded_minor + reserved_minor + ? <= refundable_minor";
+
+    private static final String SETTLE_SQL =
+            "update order_refund_balance set reserved_minor = reserved_minor - ?, refunded_minor = refunded_minor + ?, updated_at = ? "
+                    + "where order_id = ?";
+
+    private static final String RELEASE_SQL =
+            "update order_refund_balance set reserved_minor = reserved_minor - ?, updated_at = ? where order_id = ?";
+
+    private static final String FIND_ENTRY_SQL =
+            "select id, order_id, amount_minor, status from refund_ledger where job_id = ?";
+
+    private static final String INSERT_ENTRY_SQL =
+            "insert into refund_ledger (id, order_id, return_request_id, job_id, amount_minor, currency, status, created_at, updated_at) "
+                    + "values (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String MOVE_ENTRY_SQL =
+            "update refund_ledger set status = ?, gateway_reference = ?, updated_at = ? "
+                    + "where job_id = ? and status = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public RefundLedgerRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * The order's balance, or null when no refund has touched it yet.
+     */
+    public Balance findBalance(UUID orderId) {
+        List<Balance> rows = jdbcTemplate.query(FIND_BALANCE_SQL,
+                (rs, i) -> new Balance(orderId, rs.getLong(1), rs.getLong(2), rs.getLong(3)), orderId);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * Locks the order row and returns its total (zero when it has none), or empty when the
+     * order does not exist. Creators of one order's balance row are serialized on this lock, so
+     * the second one sees the first one's row instead of failing with a duplicate key.
+     */
+    public Optional<BigDecimal> lockOrderTotal(UUID orderId) {
+        List<BigDecimal> rows = jdbcTemplate.queryForList(LOCK_ORDER_SQL, BigDecimal.class, orderId);
+        if (rows.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(rows.get(0) != null ? rows.get(0) : BigDecimal.ZERO);
+    }
+
+    /**
+     * Creates the order's balance row with {@code refundableMinor} unless it already has one,
+     * in the caller's transaction; call {@link #lockOrderTotal} first.
+     */
+    public void createBalanceIfAbsent(UUID orderId, long refundableMinor) {
+        jdbcTemplate.update(CREATE_BALANCE_SQL, orderId, refundableMinor, OffsetDateTime.now(), orderId);
+    }
+
+    /**
+     * Adds {@code amountMinor} to the order's reserved amount if refunded plus reserved stays
+     * within the refundable amount. Returns false when it would not (or there is no balance row).
+     */
+    public boolean reserve(UUID orderId, long amountMinor) {
+        return jdbcTemplate.update(RESERVE_SQL, amountMinor, OffsetDateTime.now(), orderId, amountMinor) == 1;
+    }
+
+    /**
+     * Moves a reserved amount to refunded.
+     */
+    public void settle(UUID orderId, long amountMinor) {
+        jdbcTemplate.update(SETTLE_SQL, amountMinor, amountMinor, OffsetDateTime.now(), orderId);
+    }
+
+    /**
+     * Gives a reserved amount back to the refundable balance.
+     */
+    public void release(UUID orderId, long amountMinor) {
+        jdbcTemplate.update(RELEASE_SQL, amountMinor, OffsetDateTime.now(), orderId);
+    }
+
+    public Entry findEntry(UUID jobId) {
+        List<Entry> rows = jdbcTemplate.query(FIND_ENTRY_SQL, (rs, i) -> new Entry(rs.getObject(1, UUID.class), rs.getObject(2, UUID.class),
+                jobId, rs.getLong(3), RefundLedgerStatus.valueOf(rs.getString(4))), jobId);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * Inserts a RESERVED entry; fails with a duplicate key if the job already has one.
+     */
+    public void insertReserved(UUID orderId, UUID returnRequestId, UUID jobId, long amountMinor, String currency) {
+        OffsetDateTime now = OffsetDateTime.now();
+        jdbcTemplate.update(INSERT_ENTRY_SQL, UUID.randomUUID(), orderId, returnRequestId, jobId, amountMinor, currency,
+                RefundLedgerStatus.RESERVED.name(), now, now);
+    }
+
+    /**
+     * Moves the job's entry from {@code from} to {@code to}; returns false if it was not in
+     * {@code from} (already moved by someone else, or missing).
+     */
+    public boolean moveEntry(UUID jobId, RefundLedgerStatus from, RefundLedgerStatus to, String gatewayReference) {
+        return jdbcTemplate.update(MOVE_ENTRY_SQL, to.name(), gatewayReference, OffsetDateTime.now(), jobId, from.name()) == 1;
+    }
+
+    public static class Balance {
+        public final UUID orderId;
+        public final long refundableMinor;
+        public final long reservedMinor;
+        public final long refundedMinor;
+        public final long remainingMinor;
+
+        public Balance(UUID orderId, long refundableMinor, long reservedMinor, long refundedMinor) {
+            this.orderId = orderId;
+            this.refundableMinor = refundableMinor;
+            this.reservedMinor = reservedMinor;
+            this.refundedMinor = refundedMinor;
+            this.remainingMinor = refundableMinor - reservedMinor - refundedMinor;
+        }
+    }
+
+    public static class Entry {
+        public final UUID id;
+        public final UUID orderId;
+        public final UUID jobId;
+        public final long amountMinor;
+        public final RefundLedgerStatus status;
+
+        public Entry(UUID id, UUID orderId, UUID jobId, long amountMinor, RefundLedgerStatus status) {
+            this.id = id;
+            this.orderId = orderId;
+            this.jobId = jobId;
+            this.amountMinor = amountMinor;
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.ordermanagement.repository;
+
+import com.example.ordermanagement.domain.OrderStateHistory;
+import com.example.ordermanagement.domain.ReturnStateHistory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * JDBC batch inserts of {@link OrderStateHistory} and {@link ReturnStateHistory} rows. History
+ * is write-only from the transition paths, so the rows never need to enter the persistence
+ * context (or load the parent they reference).
+ */
+@Repository
+public class StateHistoryBatchRepository {
+
+    public enum Kind {
+        ORDER("order_state_history", "order_id", "orders"),
+        RETURN("return_state_history", "return_request_id", "return_requests");
+
+        final String insertSql;
+        final String reconcileSql;
+
+        Kind(String table, String parentColumn, String parentTable) {
+            this.insertSql = "insert into " + table + " (id, " + parentColumn + ", from_state, to_state, changed_by, reason, created_at) "
+                    + "values (?, ?, ?, ?, ?, ?, ?)";
+            this.reconcileSql = "select p.id, p.status, (select h.to_state from " + table + " h where h." + parentColumn + " = p.id "
+                    + "order by h.created_at desc, h.id desc fetch first 1 rows only) from " + parentTable + " p "
+                    + "where p.updated_at >= ?";
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public StateHistoryBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Inserts the given rows with one JDBC batch per history table.
+     */
+    public void insert(Collection<Row> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        for (Kind kind : Kind.values()) {
+            List<Row> batch = new ArrayList<>(rows.size());
+            for (Row r : rows) {
+                if (r.kind == kind) {
+                    batch.add(r);
+                }
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            jdbcTemplate.batchUpdate(kind.insertSql, batch, batch.size(), (ps, r) -> {
+                ps.setObject(1, r.id);
+                ps.setObject(2, r.parentId);
+                ps.setString(3, r.fromState);
+                ps.setString(4, r.toState);
+                ps.setString(5, r.changedBy);
+                ps.setString(6, r.reason);
+                ps.setObject(7, r.createdAt);
+            });
+        }
+    }
+
+    /**
+     * Finds orders or returns updated since {@code since} whose current status is not the
+     * {@code to_state} of their latest history row, and returns one row per such parent
+     * bridging the two (not inserted). Intermediate states that left no row cannot be recovered.
+     */
+    public List<Row> findGaps(Kind kind, OffsetDateTime since, String changedBy, String reason) {
+        OffsetDateTime now = OffsetDateTime.now();
+        List<Row> gaps = new ArrayList<>();
+        jdbcTemplate.query(kind.reconcileSql, rs -> {
+            String status = rs.getString(2);
+            String last = rs.getString(3);
+            if (status != null && !Objects.equals(status, last)) {
+                gaps.add(new Row(kind, UUID.randomUUID(), rs.getObject(1, UUID.class), last, status, changedBy, reason, now));
+            }
+        }, since);
+        return gaps;
+    }
+
+    /**
+     * One history row; states are the enum names.
+     */
+    public static class Row {
+        public final Kind kind;
+        public final UUID id;
+        public final UUID parentId;
+        public final String fromState;
+        public final String toState;
+        public final String changedBy;
+        public final String reason;
+        public final OffsetDateTime createdAt;
+
+        public Row(Kind kind, UUID id, UUID parentId, String fromState, String toState, String changedBy, String reason,
+                   OffsetDateTime createdAt) {
+            this.kind = kind;
+            this.id = id;
+            this.parentId = parentId;
+            this.fromState = fromState;
+            this.toState = toState;
+            this.changedBy = changedBy;
+            this.reason = reason;
+            this.createdAt = createdAt;
+        }
+    }
+}
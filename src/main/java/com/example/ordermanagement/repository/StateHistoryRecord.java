@@ -0,0 +1,44 @@
+package com.example.ordermanagement.repository;
+
+import com.example.ordermanagement.domain.OrderStatus;
+import com.example.ordermanagement.domain.ReturnStatus;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Read projection of an order or return state change ({@code StateHistoryRecord} in the API
+ * spec). Selected with a constructor expression, so rows never enter the persistence context.
+ */
+public class StateHistoryRecord {
+    public UUID id;
+    public UUID referenceId;
+    public String previousStatus;
+    public String newStatus;
+    public String actor;
+    public String reason;
+    public OffsetDateTime createdAt;
+
+    public StateHistoryRecord(UUID id, UUID referenceId, OrderStatus previousStatus, OrderStatus newStatus,
+                              String actor, String reason, OffsetDateTime createdAt) {
+        this(id, referenceId, previousStatus != null ? previousStatus.name() : null, newStatus != null ? newStatus.name() : null,
+                actor, reason, createdAt);
+    }
+
+    public StateHistoryRecord(UUID id, UUID referenceId, ReturnStatus previousStatus, ReturnStatus newStatus,
+                              String actor, String reason, OffsetDateTime createdAt) {
+        this(id, referenceId, previousStatus != null ? previousStatus.name() : null, newStatus != null ? newStatus.name() : null,
+                actor, reason, createdAt);
+    }
+
+    private StateHistoryRecord(UUID id, UUID referenceId, String previousStatus, String newStatus,
+                               String actor, String reason, OffsetDateTime createdAt) {
+        this.id = id;
+        this.referenceId = referenceId;
+        this.previousStatus = previousStatus;
+        this.newStatus = newStatus;
+        this.actor = actor;
+        this.reason = reason;
+        this.createdAt = createdAt;
+    }
+}
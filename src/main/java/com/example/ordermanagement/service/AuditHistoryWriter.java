@@ -0,0 +1,331 @@
+package com.example.ordermanagement.service;
+
+import com.example.ordermanagement.domain.OrderStatus;
+import com.example.ordermanagement.domain.ReturnStatus;
+import com.example.ordermanagement.repository.StateHistoryBatchRepository;
+import com.example.ordermanagement.repository.StateHistoryBatchRepository.Kind;
+import com.example.ordermanagement.repository.StateHistoryBatchRepository.Row;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the order and return state history, in one of two modes ({@code app.history.mode}).
+ * <p>
+ * {@code sync}: the rows a transaction records are collected and inserted with one JDBC batch
+ * just before it commits, so they commit or roll back with the transition itself.
+ * <p>
+ * {@code write-behind}: rows are queued once their transaction has committed and a writer
+ * thread inserts them in batches of up to {@code batch-size}, waiting at most
+ * {@code flush-interval-ms} for a batch to fill. History then lags by up to the flush
+ * interval and a crash loses what is still queued, at most {@code max-pending} rows; a
+ * producer that finds the queue full waits {@code offer-timeout-ms} and then drops its row.
+ * After every flush the writer records, in a marker file, the creation time of the oldest row
+ * not yet written; a clean shutdown with nothing dropped deletes it. If the marker is there at
+ * startup, every order and return changed since then (less {@code recovery-margin-ms}) whose
+ * current status is not the last one in its history gets one bridging row, with reason
+ * {@value #RECOVERED_REASON}. Run it on one node: a row still queued on another write-behind
+ * node may be recovered here as well.
+ */
+@Component
+public class AuditHistoryWriter {
+
+    static final String RECOVERED_REASON = "recovered after unclean shutdown";
+
+    private static final Logger log = LoggerFactory.getLogger(AuditHistoryWriter.class);
+
+    private static final int FLUSH_ATTEMPTS = 5;
+
+    private final StateHistoryBatchRepository historyBatchRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean writeBehind;
+    private final Path markerPath;
+    private final AtomicLong dropped = new AtomicLong();
+    // creation time (epoch ms) of the oldest dropped row; holds the marker back until restart
+    private final AtomicLong oldestDropped = new AtomicLong(Long.MAX_VALUE);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${app.history.write-behind.batch-size:500}")
+    private int batchSize = 500;
+
+    @Value("${app.history.write-behind.max-pending:10000}")
+    private int maxPending = 10000;
+
+    @Value("${app.history.write-behind.flush-interval-ms:200}")
+    private long flushIntervalMs = 200;
+
+    @Value("${app.history.write-behind.offer-timeout-ms:50}")
+    private long offerTimeoutMs = 50;
+
+    @Value("${app.history.write-behind.recovery-margin-ms:60000}")
+    private long recoveryMarginMs = 60000;
+
+    @Value("${app.history.write-behind.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs = 10000;
+
+    private BlockingQueue<Row> queue;
+    private Thread writer;
+    private volatile boolean running;
+
+    public AuditHistoryWriter(StateHistoryBatchRepository historyBatchRepository, PlatformTransactionManager transactionManager,
+                              @Value("${app.history.mode:sync}") String mode,
+                              @Value("${app.history.write-behind.marker-path:data/history-writer.marker}") String markerPath) {
+        this.historyBatchRepository = historyBatchRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.writeBehind = switch (mode.trim().toLowerCase(Locale.ROOT)) {
+            case "sync" -> false;
+            case "write-behind" -> true;
+            default -> throw new IllegalArgumentException("Unknown app.history.mode: " + mode);
+        };
+        this.markerPath = Path.of(markerPath);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        recover();
+        if (!writeBehind) {
+            return;
+        }
+        if (markerPath.getParent() != null) {
+            Files.createDirectories(markerPath.getParent());
+        }
+        queue = new ArrayBlockingQueue<>(maxPending);
+        writeMarker(System.currentTimeMillis());
+        running = true;
+        writer = new Thread(this::drain, "history-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        writer.join(shutdownTimeoutMs);
+        if (writer.isAlive()) {
+            log.warn("History writer did not finish within {} ms; {} row(s) left for recovery", shutdownTimeoutMs, queue.size());
+        } else if (dropped.get() == 0) {
+            try {
+                Files.deleteIfExists(markerPath);
+            } catch (IOException e) {
+                log.warn("Could not delete history marker {}: {}", markerPath, e.getMessage());
+            }
+        }
+    }
+
+    public void recordOrder(UUID orderId, OrderStatus from, OrderStatus to, String actor, String reason) {
+        record(new Row(Kind.ORDER, UUID.randomUUID(), orderId, from != null ? from.name() : null, to.name(), actor, reason,
+                OffsetDateTime.now()));
+    }
+
+    public void recordReturn(UUID returnId, ReturnStatus from, ReturnStatus to, String actor, String reason) {
+        record(new Row(Kind.RETURN, UUID.randomUUID(), returnId, from != null ? from.name() : null, to.name(), actor, reason,
+                OffsetDateTime.now()));
+    }
+
+    /**
+     * Rows waiting in the write-behind queue.
+     */
+    public int pending() {
+        return queue != null ? queue.size() : 0;
+    }
+
+    /**
+     * Rows dropped by the write-behind writer (queue full or flush failed) since startup.
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void record(Row row) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            if (writeBehind) {
+                enqueue(row);
+            } else {
+                historyBatchRepository.insert(List.of(row));
+            }
+            return;
+        }
+        List<Row> rows = (List<Row>) TransactionSynchronizationManager.getResource(this);
+        if (rows == null) {
+            List<Row> txRows = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, txRows);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    if (!writeBehind) {
+                        // the parents may only be pending in the persistence context so far
+                        entityManager.flush();
+                        historyBatchRepository.insert(txRows);
+                    }
+                }
+
+                @Override
+                public void afterCommit() {
+                    if (writeBehind) {
+                        txRows.forEach(AuditHistoryWriter.this::enqueue);
+                    }
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(AuditHistoryWriter.this);
+                }
+            });
+            rows = txRows;
+        }
+        rows.add(row);
+    }
+
+    private void enqueue(Row row) {
+        if (!running) {
+            // before start or after stop: nothing would drain the queue
+            historyBatchRepository.insert(List.of(row));
+            return;
+        }
+        try {
+            if (queue.offer(row, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drop(List.of(row));
+    }
+
+    private void drain() {
+        List<Row> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Row first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize && running) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    Row next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                queue.drainTo(batch, batchSize - batch.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Row> batch) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> historyBatchRepository.insert(batch));
+                break;
+            } catch (RuntimeException e) {
+                if (attempt == FLUSH_ATTEMPTS || !running) {
+                    log.error("History flush of {} row(s) failed {} time(s), dropping them: {}", batch.size(), attempt, e.getMessage());
+                    drop(batch);
+                    break;
+                }
+                log.warn("History flush of {} row(s) failed, retrying: {}", batch.size(), e.getMessage());
+                try {
+                    Thread.sleep(flushIntervalMs << attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    running = false;
+                }
+            }
+        }
+        long watermark = System.currentTimeMillis();
+        Row oldest = queue.peek();
+        if (oldest != null) {
+            watermark = Math.min(watermark, oldest.createdAt.toInstant().toEpochMilli());
+        }
+        writeMarker(Math.min(watermark, oldestDropped.get()));
+    }
+
+    private void drop(List<Row> rows) {
+        long n = dropped.addAndGet(rows.size());
+        for (Row r : rows) {
+            oldestDropped.accumulateAndGet(r.createdAt.toInstant().toEpochMilli(), Math::min);
+        }
+        if (Long.bitCount(n) == 1 || rows.size() > 1) {
+            log.warn("History write-behind dropped {} row(s) so far; they are recovered at the next start", n);
+        }
+    }
+
+    private void writeMarker(long watermarkMillis) {
+        try {
+            Path tmp = markerPath.resolveSibling(markerPath.getFileName() + ".tmp");
+            Files.writeString(tmp, Long.toString(watermarkMillis));
+            Files.move(tmp, markerPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not write history marker {}: {}", markerPath, e.getMessage());
+        }
+    }
+
+    /**
+     * Writes bridging rows if a previous write-behind run left its marker; returns how many.
+     */
+    int recover() throws IOException {
+        if (!Files.exists(markerPath)) {
+            return 0;
+        }
+        long watermark = Long.parseLong(Files.readString(markerPath).trim());
+        OffsetDateTime since = OffsetDateTime.ofInstant(Instant.ofEpochMilli(watermark - recoveryMarginMs), ZoneOffset.UTC);
+        List<Row> gaps = transactionTemplate.execute(status -> {
+            List<Row> rows = new ArrayList<>();
+            for (Kind kind : Kind.values()) {
+                rows.addAll(historyBatchRepository.findGaps(kind, since, "system", RECOVERED_REASON));
+            }
+            historyBatchRepository.insert(rows);
+            return rows;
+        });
+        log.warn("History writer was not shut down cleanly; wrote {} recovered history row(s) for changes since {}", gaps.size(), since);
+        if (!writeBehind) {
+            Files.deleteIfExists(markerPath);
+        }
+        return gaps.size();
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.ordermanagement.service;
+
+import com.example.ordermanagement.domain.Order;
+import com.example.ordermanagement.domain.OrderStatus;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Imports orders from NDJSON, one order per line. Lines are parsed as they are read and
+ * inserted in chunks of {@code app.orders.bulk.chunk-size}, each chunk in one transaction with
+ * Hibernate JDBC batching. Lines rejected while parsing count towards the chunk, so results are
+ * streamed at the same boundary and memory stays bounded by the chunk size whatever the input
+ * length or error rate.
+ * If a chunk fails (e.g. a duplicate external id) its lines are retried one by one so the
+ * failure is attributed to the offending line only.
+ */
+@Service
+public class BulkOrderService {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkOrderService.class);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final OrderService orderService;
+    private final AuditHistoryWriter historyWriter;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectReader lineReader;
+    private final OperationMetrics metrics;
+
+    @Value("${app.orders.bulk.chunk-size:500}")
+    private int chunkSize;
+
+    public BulkOrderService(OrderService orderService, AuditHistoryWriter historyWriter, PlatformTransactionManager transactionManager,
+                            ObjectMapper objectMapper, OperationMetrics metrics) {
+        this.orderService = orderService;
+        this.historyWriter = historyWriter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.lineReader = objectMapper.readerFor(OrderLine.class);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Reads {@code in} to the end and reports the outcome of every non-blank line to
+     * {@code sink}, one call per chunk, in input order.
+     */
+    public void ingest(BufferedReader in, ResultSink sink) throws IOException {
+        long start = System.nanoTime();
+        try {
+            read(in, sink);
+        } finally {
+            metrics.record(OperationMetrics.Operation.ORDER_IMPORT, start);
+        }
+    }
+
+    private void read(BufferedReader in, ResultSink sink) throws IOException {
+        List<PendingOrder> chunk = new ArrayList<>(chunkSize);
+        List<LineResult> results = new ArrayList<>(chunkSize);
+        String line;
+        long lineNo = 0;
+        while ((line = in.readLine()) != null) {
+            lineNo++;
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                chunk.add(toPending(lineNo, lineReader.readValue(line)));
+            } catch (JsonProcessingException | IllegalArgumentException e) {
+                results.add(LineResult.rejected(lineNo, e.getMessage()));
+            }
+            // until the chunk is inserted, results only holds this chunk's rejected lines
+            if (chunk.size() + results.size() >= chunkSize) {
+                flush(chunk, results, sink);
+            }
+        }
+        flush(chunk, results, sink);
+    }
+
+    private void flush(List<PendingOrder> chunk, List<LineResult> results, ResultSink sink) throws IOException {
+        if (!chunk.isEmpty()) {
+            insertChunk(chunk, results);
+            chunk.clear();
+        }
+        if (!results.isEmpty()) {
+            // results may be out of line order when parse errors precede the chunk they sit in
+            results.sort((a, b) -> Long.compare(a.line, b.line));
+            sink.accept(results);
+            results.clear();
+        }
+    }
+
+    private void insertChunk(List<PendingOrder> chunk, List<LineResult> results) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (PendingOrder p : chunk) {
+                    Order order = new Order(UUID.randomUUID(), p.externalId, p.customerEmail, p.totalAmount, OrderStatus.PENDING_PAYMENT);
+                    entityManager.persist(order);
+                    historyWriter.recordOrder(order.getId(), null, OrderStatus.PENDING_PAYMENT, "system", "order created");
+                    p.orderId = order.getId();
+                }
+                entityManager.flush();
+                entityManager.clear();
+            });
+            for (PendingOrder p : chunk) {
+                results.add(LineResult.created(p.line, p.orderId));
+                metrics.orderTransition(null, OrderStatus.PENDING_PAYMENT);
+            }
+        } catch (RuntimeException e) {
+            log.debug("Bulk chunk of {} orders failed, retrying line by line: {}", chunk.size(), e.getMessage());
+            for (PendingOrder p : chunk) {
+                try {
+                    Order order = orderService.createOrder(p.externalId, p.customerEmail, p.totalAmount);
+                    results.add(LineResult.created(p.line, order.getId()));
+                } catch (RuntimeException ex) {
+                    results.add(LineResult.rejected(p.line, rootMessage(ex)));
+                }
+            }
+        }
+    }
+
+    private static String rootMessage(Throwable t) {
+        Throwable root = t;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        return root.getMessage();
+    }
+
+    private static PendingOrder toPending(long lineNo, OrderLine line) {
+        if (line.totalAmount == null) {
+            throw new IllegalArgumentException("totalAmount is required");
+        }
+        PendingOrder p = new PendingOrder();
+        p.line = lineNo;
+        p.externalId = line.externalId != null ? line.externalId : UUID.randomUUID().toString();
+        p.customerEmail = line.customerEmail != null ? line.customerEmail : "customer@example.com";
+        p.totalAmount = line.totalAmount;
+        return p;
+    }
+
+    @FunctionalInterface
+    public interface ResultSink {
+        void accept(List<LineResult> results) throws IOException;
+    }
+
+    public static class OrderLine {
+        public String externalId;
+        public String customerEmail;
+        public BigDecimal totalAmount;
+    }
+
+    public static class LineResult {
+        public long line;
+        public String status;
+        public UUID orderId;
+        public String error;
+
+        static LineResult created(long line, UUID orderId) {
+            LineResult r = new LineResult();
+            r.line = line;
+            r.status = "CREATED";
+            r.orderId = orderId;
+            return r;
+        }
+
+        static LineResult rejected(long line, String error) {
+            LineResult r = new LineResult();
+            r.line = line;
+            r.status = "REJECTED";
+            r.error = error;
+            return r;
+        }
+    }
+
+    private static class PendingOrder {
+        long line;
+        String externalId;
+        String customerEmail;
+        BigDecimal totalAmount;
+        UUID orderId;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.ordermanagement.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers recently completed job ids so redelivered jobs can be dropped without a
+ * {@code job_log} lookup: an exact LRU of the last {@code lru-size} completions, where a hit is
+ * authoritative. A job that is not in it may still be complete (evicted, or finished by
+ * another instance), so listeners load the row for misses as before; they need the row to
+ * process the job anyway. The filter is only ever told about completions after they are
+ * committed.
+ */
+@Component
+public class CompletedJobFilter {
+
+    private final int lruSize;
+    private final Map<UUID, Boolean> recent;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CompletedJobFilter(@Value("${app.jobs.completed-filter.lru-size:10000}") int lruSize) {
+        this.lruSize = Math.max(1, lruSize);
+        this.recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Boolean> eldest) {
+                return size() > CompletedJobFilter.this.lruSize;
+            }
+        };
+    }
+
+    /**
+     * True when {@code jobId} is known to have completed; false means the database decides.
+     */
+    public boolean isKnownCompleted(UUID jobId) {
+        synchronized (recent) {
+            if (recent.get(jobId) != null) {
+                hits.increment();
+                return true;
+            }
+        }
+        misses.increment();
+        return false;
+    }
+
+    public void recordCompleted(UUID jobId) {
+        synchronized (recent) {
+            recent.put(jobId, Boolean.TRUE);
+        }
+    }
+
+    public Stats stats() {
+        Stats s = new Stats();
+        s.hits = hits.sum();
+        s.misses = misses.sum();
+        synchronized (recent) {
+            s.exactEntries = recent.size();
+        }
+        return s;
+    }
+
+    public static class Stats {
+        public long hits;
+        public long misses;
+        public int exactEntries;
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.ordermanagement.service;
+
+import com.example.ordermanagement.config.JobShards;
+import com.example.ordermanagement.config.RabbitConfig;
+import com.example.ordermanagement.domain.JobType;
+import com.example.ordermanagement.messaging.DeadLetterPublisher;
+import com.example.ordermanagement.messaging.RabbitJobTransport;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Moves dead-lettered jobs back to the jobs exchange. A replay runs in the background and walks
+ * each selected DLQ once with a consumer whose prefetch is one confirm batch: matching messages
+ * are republished under their original routing key, the rest to the tail of the DLQ, and both
+ * are acked off the head only after the broker has confirmed the whole batch. At most one batch
+ * is unacked at a time, and the pass stops after the messages that were there when it began.
+ * Publishing is paced to {@code ratePerSecond}. The shard is re-resolved from the message's
+ * shard key, so replays still reach the right queue after the shard count changed. A finished
+ * replay's status is kept for {@code status-retention-ms}.
+ */
+@Service
+public class DeadLetterReplayService {
+
+    private static final Logger log = LoggerFactory.getLogger(DeadLetterReplayService.class);
+    private static final String REPLAY_COUNT_HEADER = "x-replay-count";
+
+    private final RabbitTemplate rabbitTemplate;
+    private final JobShards jobShards;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "dlq-replay");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Map<UUID, ReplayStatus> replays = new ConcurrentHashMap<>();
+
+    @Value("${app.dead-letters.replay.confirm-batch-size:500}")
+    private int confirmBatchSize;
+
+    @Value("${app.dead-letters.replay.default-rate-per-second:2000}")
+    private int defaultRatePerSecond;
+
+    @Value("${app.dead-letters.replay.status-retention-ms:86400000}")
+    private long statusRetentionMs;
+
+    @Value("${app.outbox.confirm-timeout-ms:5000}")
+    private long confirmTimeoutMs;
+
+    public DeadLetterReplayService(RabbitTemplate rabbitTemplate, JobShards jobShards) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.jobShards = jobShards;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues a replay; replays run one at a time. Returns its initial status.
+     */
+    public ReplayStatus start(ReplayRequest request) {
+        OffsetDateTime cutoff = OffsetDateTime.now().minus(statusRetentionMs, ChronoUnit.MILLIS);
+        replays.values().removeIf(r -> r.finishedAt != null && r.finishedAt.isBefore(cutoff));
+        ReplayStatus status = new ReplayStatus();
+        status.id = UUID.randomUUID();
+        status.state = "QUEUED";
+        replays.put(status.id, status);
+        executor.submit(() -> run(request, status));
+        return status;
+    }
+
+    public Optional<ReplayStatus> status(UUID id) {
+        return Optional.ofNullable(replays.get(id));
+    }
+
+    private void run(ReplayRequest request, ReplayStatus status) {
+        status.state = "RUNNING";
+        status.startedAt = OffsetDateTime.now();
+        try {
+            List<JobType> types = request.jobType != null ? List.of(request.jobType) : List.of(JobType.values());
+            Pacer pacer = new Pacer(request.ratePerSecond != null && request.ratePerSecond > 0 ? request.ratePerSecond : defaultRatePerSecond);
+            for (JobType type : types) {
+                rabbitTemplate.execute(channel -> {
+                    replayQueue(channel, RabbitConfig.deadLetterQueue(type), request, status, pacer);
+                    return null;
+                });
+            }
+            status.state = "DONE";
+        } catch (RuntimeException e) {
+            status.state = "FAILED";
+            status.error = e.getMessage();
+            log.error("Dead-letter replay {} failed: {}", status.id, e.getMessage(), e);
+        } finally {
+            status.finishedAt = OffsetDateTime.now();
+            log.info("Dead-letter replay {} {}: scanned={} replayed={} skipped={}",
+                    status.id, status.state, status.scanned, status.replayed, status.skipped);
+        }
+    }
+
+    private void replayQueue(Channel channel, String queue, ReplayRequest request, ReplayStatus status, Pacer pacer)
+            throws IOException, InterruptedException, TimeoutException {
+        channel.confirmSelect();
+        // one pass over what is there now; messages dead-lettered meanwhile wait for the next replay
+        long depth = channel.queueDeclarePassive(queue).getMessageCount();
+        if (depth == 0) {
+            return;
+        }
+        long limit = request.maxMessages != null ? request.maxMessages : Long.MAX_VALUE;
+        BlockingQueue<Delivery> deliveries = new LinkedBlockingQueue<>();
+        channel.basicQos(confirmBatchSize);
+        String consumerTag = channel.basicConsume(queue, false, new DefaultConsumer(channel) {
+            @Override
+            public void handleDelivery(String tag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) {
+                deliveries.add(new Delivery(envelope, properties, body));
+            }
+        });
+        List<Long> unconfirmed = new ArrayList<>(confirmBatchSize);
+        long replays = 0;
+        try {
+            for (long i = 0; i < depth && status.replayed + replays < limit; i++) {
+                Delivery d = deliveries.poll(confirmTimeoutMs, TimeUnit.MILLISECONDS);
+                if (d == null) {
+                    // someone else drained the queue
+                    break;
+                }
+                status.scanned++;
+                if (matches(d.getProperties(), request)) {
+                    republish(channel, d);
+                    replays++;
+                } else {
+                    // to the tail, behind this pass
+                    channel.basicPublish("", queue, d.getProperties(), d.getBody());
+                    status.skipped++;
+                }
+                unconfirmed.add(d.getEnvelope().getDeliveryTag());
+                if (unconfirmed.size() >= confirmBatchSize) {
+                    settle(channel, unconfirmed, replays, status);
+                    replays = 0;
+                    pacer.await(status.replayed);
+                }
+            }
+            settle(channel, unconfirmed, replays, status);
+        } finally {
+            if (channel.isOpen()) {
+                channel.basicCancel(consumerTag);
+                // the rest of the prefetch goes back to the head of the DLQ
+                channel.basicRecover(true);
+            }
+        }
+    }
+
+    private void republish(Channel channel, Delivery d) throws IOException {
+        Map<String, Object> headers = d.getProperties().getHeaders() != null
+                ? new HashMap<>(d.getProperties().getHeaders()) : new HashMap<>();
+        String exchange = stringHeader(headers, DeadLetterPublisher.ORIGINAL_EXCHANGE_HEADER, RabbitConfig.EXCHANGE);
+        String routingKey = stringHeader(headers, DeadLetterPublisher.ORIGINAL_ROUTING_KEY_HEADER, d.getEnvelope().getRoutingKey());
+        Object shardKey = headers.get(RabbitJobTransport.SHARD_KEY_HEADER);
+        routingKey = jobShards.routingKey(routingKey, shardKey != null ? UUID.fromString(shardKey.toString()) : null);
+        Object count = headers.get(REPLAY_COUNT_HEADER);
+        headers.put(REPLAY_COUNT_HEADER, count instanceof Number n ? n.intValue() + 1 : 1);
+        AMQP.BasicProperties props = d.getProperties().builder().headers(headers).build();
+        channel.basicPublish(exchange, routingKey, props, d.getBody());
+    }
+
+    private void settle(Channel channel, List<Long> unconfirmed, long replays, ReplayStatus status)
+            throws IOException, InterruptedException, TimeoutException {
+        if (unconfirmed.isEmpty()) {
+            return;
+        }
+        channel.waitForConfirmsOrDie(confirmTimeoutMs);
+        // deliveries are handled in tag order, so this acks exactly the batch
+        channel.basicAck(unconfirmed.get(unconfirmed.size() - 1), true);
+        status.replayed += replays;
+        unconfirmed.clear();
+    }
+
+    static boolean matches(AMQP.BasicProperties props, ReplayRequest request) {
+        Map<String, Object> headers = props.getHeaders() != null ? props.getHeaders() : Map.of();
+        if (request.errorContains != null) {
+            Object reason = headers.get(DeadLetterPublisher.FAILURE_REASON_HEADER);
+            if (reason == null || !reason.toString().toLowerCase(Locale.ROOT).contains(request.errorContains.toLowerCase(Locale.ROOT))) {
+                return false;
+            }
+        }
+        if (request.failedAfter != null || request.failedBefore != null) {
+            Long failedAt = failedAt(headers);
+            if (failedAt == null) {
+                return false;
+            }
+            if (request.failedAfter != null && failedAt < request.failedAfter.toInstant().toEpochMilli()) {
+                return false;
+            }
+            if (request.failedBefore != null && failedAt >= request.failedBefore.toInstant().toEpochMilli()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // our own header, else the time the broker recorded when it dead-lettered a rejection
+    static Long failedAt(Map<String, Object> headers) {
+        Object ours = headers.get(DeadLetterPublisher.FAILED_AT_HEADER);
+        if (ours instanceof Number n) {
+            return n.longValue();
+        }
+        Object deaths = headers.get("x-death");
+        if (deaths instanceof List<?> list && !list.isEmpty() && list.get(0) instanceof Map<?, ?> death
+                && death.get("time") instanceof Date time) {
+            return time.getTime();
+        }
+        return null;
+    }
+
+    private static String stringHeader(Map<String, Object> headers, String name, String fallback) {
+        Object value = headers.get(name);
+        return value != null ? value.toString() : fallback;
+    }
+
+    static final class Pacer {
+        private final int ratePerSecond;
+        private final long startNanos = System.nanoTime();
+
+        Pacer(int ratePerSecond) {
+            this.ratePerSecond = ratePerSecond;
+        }
+
+        void await(long sent) throws InterruptedException {
+            long dueNanos = sent * 1_000_000_000L / ratePerSecond;
+            long aheadNanos = dueNanos - (System.nanoTime() - startNanos);
+            if (aheadNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(aheadNanos);
+            }
+        }
+    }
+
+    public static class ReplayRequest {
+        /** Only this job type's DLQ; both when null. */
+        public JobType jobType;
+        /** Case-insensitive substring of the failure reason. */
+        public String errorContains;
+        public OffsetDateTime failedAfter;
+        public OffsetDateTime failedBefore;
+        public Long maxMessages;
+        public Integer ratePerSecond;
+    }
+
+    public static class ReplayStatus {
+        public UUID id;
+        public volatile String state;
+        public volatile long scanned;
+        public volatile long replayed;
+        public volatile long skipped;
+        public volatile String error;
+        public volatile OffsetDateTime startedAt;
+        public volatile OffsetDateTime finishedAt;
+    }
+}
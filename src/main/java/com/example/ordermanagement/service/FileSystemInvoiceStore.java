@@ -0,0 +1,108 @@
+package com.example.ordermanagement.service;
+
+import com.example.ordermanagement.domain.InvoiceDocument;
+import com.example.ordermanagement.repository.InvoiceDocumentBatchRepository;
+import com.example.ordermanagement.repository.InvoiceDocumentRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps invoices under {@code app.invoices.path} in a two level hash-sharded layout
+ * ({@code ab/cd/<orderId>.pdf}, 65536 leaf directories), so no single directory grows with the
+ * number of orders. Files are written to a temporary name in their shard and renamed into place.
+ */
+@Component
+public class FileSystemInvoiceStore implements InvoiceStore {
+
+    private static final String SUFFIX = ".pdf";
+
+    private final InvoiceDocumentRepository documentRepository;
+    private final InvoiceDocumentBatchRepository documentBatchRepository;
+    private final Path root;
+    private final Set<Path> createdShards = ConcurrentHashMap.newKeySet();
+
+    public FileSystemInvoiceStore(InvoiceDocumentRepository documentRepository,
+                                  InvoiceDocumentBatchRepository documentBatchRepository,
+                                  @Value("${app.invoices.path:${java.io.tmpdir}/invoices}") String invoicesPath) {
+        this.documentRepository = documentRepository;
+        this.documentBatchRepository = documentBatchRepository;
+        this.root = Paths.get(invoicesPath).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public Path write(UUID orderId, ContentWriter writer) throws IOException {
+        Path shard = shardDir(orderId);
+        if (createdShards.add(shard)) {
+            Files.createDirectories(shard);
+        }
+        Path target = shard.resolve(orderId + SUFFIX);
+        Path tmp = shard.resolve(orderId + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writer.writeTo(ch);
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        return target;
+    }
+
+    @Override
+    public void index(Collection<InvoicePdf> invoices) {
+        List<InvoiceDocument> documents = new ArrayList<>(invoices.size());
+        for (InvoicePdf pdf : invoices) {
+            String relative = root.relativize(pdf.getPath()).toString();
+            documents.add(new InvoiceDocument(pdf.getOrderId(), relative, pdf.getSizeBytes(), pdf.getChecksum()));
+        }
+        documentBatchRepository.replaceAll(documents);
+    }
+
+    @Override
+    public Optional<Path> locate(UUID orderId) {
+        Optional<Path> indexed = documentRepository.findById(orderId)
+                .map(d -> root.resolve(d.getRelativePath()))
+                .filter(Files::isRegularFile);
+        if (indexed.isPresent()) {
+            return indexed;
+        }
+        // not indexed yet (the index is written after the file) or written by the flat layout
+        Path sharded = shardDir(orderId).resolve(orderId + SUFFIX);
+        if (Files.isRegularFile(sharded)) {
+            return Optional.of(sharded);
+        }
+        Path legacy = root.resolve(orderId + SUFFIX);
+        return Files.isRegularFile(legacy) ? Optional.of(legacy) : Optional.empty();
+    }
+
+    Path shardDir(UUID orderId) {
+        int h = mix(orderId.getMostSignificantBits() ^ orderId.getLeastSignificantBits());
+        return root.resolve(hex2((h >>> 8) & 0xFF)).resolve(hex2(h & 0xFF));
+    }
+
+    private static int mix(long v) {
+        // murmur3 fmix64, so sequential or otherwise non-random ids still spread evenly
+        v ^= v >>> 33;
+        v *= 0xff51afd7ed558ccdL;
+        v ^= v >>> 33;
+        v *= 0xc4ceb9fe1a85ec53L;
+        v ^= v >>> 33;
+        return (int) v;
+    }
+
+    private static String hex2(int b) {
+        return b < 0x10 ? "0" + Integer.toHexString(b) : Integer.toHexString(b);
+    }
+}
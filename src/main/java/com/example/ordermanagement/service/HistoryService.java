@@ -0,0 +1,175 @@
+package com.example.ordermanagement.service;
+
+import com.example.ordermanagement.repository.*;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Reads order and return state history. Pages are keyset-paginated on
+ * (parent, created_at, id), so every page is one index range scan regardless of how deep the
+ * client has paged; exports stream the whole history through a database cursor.
+ */
+@Service
+public class HistoryService {
+
+    public static final int MAX_PAGE_SIZE = 500;
+
+    private final OrderRepository orderRepository;
+    private final ReturnRequestRepository returnRequestRepository;
+    private final OrderStateHistoryRepository orderHistoryRepository;
+    private final ReturnStateHistoryRepository returnHistoryRepository;
+    private final OperationMetrics metrics;
+
+    public HistoryService(OrderRepository orderRepository, ReturnRequestRepository returnRequestRepository,
+                          OrderStateHistoryRepository orderHistoryRepository, ReturnStateHistoryRepository returnHistoryRepository,
+                          OperationMetrics metrics) {
+        this.orderRepository = orderRepository;
+        this.returnRequestRepository = returnRequestRepository;
+        this.orderHistoryRepository = orderHistoryRepository;
+        this.returnHistoryRepository = returnHistoryRepository;
+        this.metrics = metrics;
+    }
+
+    /**
+     * One page of an order's history after {@code cursor} (null for the first page); empty when
+     * the order does not exist.
+     */
+    @Transactional(readOnly = true)
+    public Optional<HistoryPage> orderHistory(UUID orderId, String cursor, int limit) {
+        long start = System.nanoTime();
+        try {
+            return loadOrderHistory(orderId, cursor, limit);
+        } finally {
+            metrics.record(OperationMetrics.Operation.HISTORY_PAGE, start);
+        }
+    }
+
+    private Optional<HistoryPage> loadOrderHistory(UUID orderId, String cursor, int limit) {
+        PageRequest page = PageRequest.of(0, clamp(limit) + 1);
+        List<StateHistoryRecord> rows;
+        if (cursor == null) {
+            rows = orderHistoryRepository.findFirstPage(orderId, page);
+        } else {
+            Cursor c = Cursor.decode(cursor);
+            rows = orderHistoryRepository.findPageAfter(orderId, c.createdAt, c.id, page);
+        }
+        if (rows.isEmpty() && !orderRepository.existsById(orderId)) {
+            return Optional.empty();
+        }
+        return Optional.of(HistoryPage.of(rows, clamp(limit)));
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<HistoryPage> returnHistory(UUID returnId, String cursor, int limit) {
+        long start = System.nanoTime();
+        try {
+            return loadReturnHistory(returnId, cursor, limit);
+        } finally {
+            metrics.record(OperationMetrics.Operation.HISTORY_PAGE, start);
+        }
+    }
+
+    private Optional<HistoryPage> loadReturnHistory(UUID returnId, String cursor, int limit) {
+        PageRequest page = PageRequest.of(0, clamp(limit) + 1);
+        List<StateHistoryRecord> rows;
+        if (cursor == null) {
+            rows = returnHistoryRepository.findFirstPage(returnId, page);
+        } else {
+            Cursor c = Cursor.decode(cursor);
+            rows = returnHistoryRepository.findPageAfter(returnId, c.createdAt, c.id, page);
+        }
+        if (rows.isEmpty() && !returnRequestRepository.existsById(returnId)) {
+            return Optional.empty();
+        }
+        return Optional.of(HistoryPage.of(rows, clamp(limit)));
+    }
+
+    public boolean orderExists(UUID orderId) {
+        return orderRepository.existsById(orderId);
+    }
+
+    public boolean returnExists(UUID returnId) {
+        return returnRequestRepository.existsById(returnId);
+    }
+
+    /**
+     * Hands every history row of the order to {@code sink}, oldest first. Rows are projections,
+     * not entities, so memory stays flat however long the history is.
+     */
+    @Transactional(readOnly = true)
+    public void exportOrderHistory(UUID orderId, Consumer<StateHistoryRecord> sink) {
+        try (Stream<StateHistoryRecord> rows = orderHistoryRepository.streamAll(orderId)) {
+            rows.forEach(sink);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public void exportReturnHistory(UUID returnId, Consumer<StateHistoryRecord> sink) {
+        try (Stream<StateHistoryRecord> rows = returnHistoryRepository.streamAll(returnId)) {
+            rows.forEach(sink);
+        }
+    }
+
+    private static int clamp(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    public static class HistoryPage {
+        public final List<StateHistoryRecord> items;
+        /** Cursor for the next page, or null when this is the last one. */
+        public final String nextCursor;
+
+        private HistoryPage(List<StateHistoryRecord> items, String nextCursor) {
+            this.items = items;
+            this.nextCursor = nextCursor;
+        }
+
+        // rows holds up to limit + 1 entries; the extra one only tells us another page exists
+        static HistoryPage of(List<StateHistoryRecord> rows, int limit) {
+            if (rows.size() <= limit) {
+                return new HistoryPage(rows, null);
+            }
+            List<StateHistoryRecord> items = rows.subList(0, limit);
+            StateHistoryRecord last = items.get(limit - 1);
+            return new HistoryPage(items, new Cursor(last.createdAt, last.id).encode());
+        }
+    }
+
+    /**
+     * Position after a row: its (createdAt, id), base64url-encoded so clients treat it as opaque.
+     */
+    static class Cursor {
+        final OffsetDateTime createdAt;
+        final UUID id;
+
+        Cursor(OffsetDateTime createdAt, UUID id) {
+            this.createdAt = createdAt;
+            this.id = id;
+        }
+
+        String encode() {
+            String raw = createdAt + "," + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String token) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+                int comma = raw.indexOf(',');
+                return new Cursor(OffsetDateTime.parse(raw.substring(0, comma)), UUID.fromString(raw.substring(comma + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid history cursor", e);
+            }
+        }
+    }
+}
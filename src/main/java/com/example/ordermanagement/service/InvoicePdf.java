@@ -0,0 +1,48 @@
+package com.example.ordermanagement.service;
+
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * Metadata of a rendered invoice. The document itself stays on disk; callers only get
+ * where it is, how large it is and its CRC32C checksum.
+ */
+public final class InvoicePdf {
+
+    private final UUID orderId;
+    private final Path path;
+    private final long sizeBytes;
+    private final long checksum;
+
+    public InvoicePdf(UUID orderId, Path path, long sizeBytes, long checksum) {
+        this.orderId = orderId;
+        this.path = path;
+        this.sizeBytes = sizeBytes;
+        this.checksum = checksum;
+    }
+
+    public UUID getOrderId() {
+        return orderId;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public long getChecksum() {
+        return checksum;
+    }
+
+    public String getChecksumHex() {
+        return String.format("%08x", checksum);
+    }
+
+    /** Compact form stored in {@code job_log.result_meta}. */
+    public String toResultMeta() {
+        return "path=" + path + ";bytes=" + sizeBytes + ";crc32c=" + getChecksumHex();
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.ordermanagement.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+/**
+ * Pre-serialized single page invoice layout. Everything that does not depend on the invoice
+ * (header, catalog, page tree, font dictionaries, the title line and the cross-reference
+ * table) is encoded once; rendering only encodes the content stream with the variable lines
+ * and the trailer, then gathers all parts into the destination channel in one write.
+ *
+ * <p>The page uses the standard 14 Helvetica fonts with WinAnsiEncoding, so no font program
+ * is embedded. Characters outside Latin-1 are written as {@code ?}.
+ *
+ * <p>Each thread renders into its own scratch buffer. It grows for oversized fields, but a
+ * buffer grown past {@link #RETAINED_CAPACITY} is dropped after the render, so one huge
+ * invoice does not pin its buffer to a listener thread for good.
+ */
+final class InvoicePdfTemplate {
+
+    private static final int CONTENT_OBJECT = 6;
+
+    private static final int INITIAL_CAPACITY = 2048;
+    static final int RETAINED_CAPACITY = 16 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> SCRATCH = ThreadLocal.withInitial(() -> ByteBuffer.allocate(INITIAL_CAPACITY));
+
+    private final ByteBuffer prefix;
+    private final ByteBuffer xref;
+
+    InvoicePdfTemplate() {
+        String[] objects = {
+                "<< /Type /Catalog /Pages 2 0 R >>",
+                "<< /Type /Pages /Kids [3 0 R] /Count 1 >>",
+                "<< /Type /Page /Parent 2 0 R /MediaBox [0 0 612 792]"
+                        + " /Resources << /Font << /F1 4 0 R /F2 5 0 R >> >> /Contents " + CONTENT_OBJECT + " 0 R >>",
+                "<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica-Bold /Encoding /WinAnsiEncoding >>",
+                "<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica /Encoding /WinAnsiEncoding >>"
+        };
+        StringBuilder head = new StringBuilder("%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n");
+        long[] offsets = new long[CONTENT_OBJECT + 1];
+        for (int i = 0; i < objects.length; i++) {
+            offsets[i + 1] = head.length();
+            head.append(i + 1).append(" 0 obj\n").append(objects[i]).append("\nendobj\n");
+        }
+        // the content stream always starts right after the static objects, so the whole
+        // xref table is known up front; only startxref moves with the content length
+        offsets[CONTENT_OBJECT] = head.length();
+
+        StringBuilder table = new StringBuilder("xref\n0 ").append(CONTENT_OBJECT + 1).append('\n');
+        table.append("0000000000 65535 f \n");
+        for (int i = 1; i <= CONTENT_OBJECT; i++) {
+            table.append(String.format("%010d 00000 n \n", offsets[i]));
+        }
+        table.append("trailer\n<< /Size ").append(CONTENT_OBJECT + 1).append(" /Root 1 0 R >>\nstartxref\n");
+
+        this.prefix = readOnly(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        this.xref = readOnly(table.toString().getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Writes one invoice to {@code out} and returns its size. {@code crc} is reset and left
+     * holding the checksum of the written document.
+     */
+    long render(GatheringByteChannel out, CRC32C crc, String orderId, String customerEmail, String date) throws IOException {
+        ByteBuffer body = SCRATCH.get();
+        body.clear();
+
+        // content stream: reserve room for the object header, fill the stream, then go back
+        // and write the header with the now known length
+        int headerRoom = 48;
+        body.position(headerRoom);
+        body = put(body, "BT\n/F1 18 Tf\n50 700 Td\n(ArtiCurated - Invoice) Tj\nET\nBT\n/F2 12 Tf\n50 660 Td\n(Order: ");
+        body = putEscaped(body, orderId);
+        body = put(body, ") Tj\n0 -15 Td\n(Customer: ");
+        body = putEscaped(body, customerEmail);
+        body = put(body, ") Tj\n0 -15 Td\n(Date: ");
+        body = putEscaped(body, date);
+        body = put(body, ") Tj\nET");
+        int streamLength = body.position() - headerRoom;
+        body = put(body, "\nendstream\nendobj\n");
+        int end = body.position();
+
+        byte[] header = (CONTENT_OBJECT + " 0 obj\n<< /Length " + streamLength + " >>\nstream\n").getBytes(StandardCharsets.ISO_8859_1);
+        int start = headerRoom - header.length;
+        body.position(start);
+        body.put(header);
+        body.position(start).limit(end);
+
+        long xrefOffset = prefix.remaining() + body.remaining();
+        ByteBuffer trailer = ByteBuffer.wrap((xrefOffset + "\n%%EOF\n").getBytes(StandardCharsets.ISO_8859_1));
+
+        crc.reset();
+        crc.update(prefix.duplicate());
+        crc.update(body.duplicate());
+        crc.update(xref.duplicate());
+        crc.update(trailer.duplicate());
+
+        ByteBuffer[] parts = {prefix.duplicate(), body, xref.duplicate(), trailer};
+        long total = 0;
+        for (ByteBuffer part : parts) {
+            total += part.remaining();
+        }
+        try {
+            long written = 0;
+            while (written < total) {
+                written += out.write(parts);
+            }
+        } finally {
+            if (body.capacity() > RETAINED_CAPACITY) {
+                SCRATCH.set(ByteBuffer.allocate(INITIAL_CAPACITY));
+            }
+        }
+        return total;
+    }
+
+    /** Capacity of the calling thread's scratch buffer. */
+    static int scratchCapacity() {
+        return SCRATCH.get().capacity();
+    }
+
+    private static ByteBuffer put(ByteBuffer buf, String ascii) {
+        buf = ensure(buf, ascii.length());
+        for (int i = 0; i < ascii.length(); i++) {
+            buf.put((byte) ascii.charAt(i));
+        }
+        return buf;
+    }
+
+    private static ByteBuffer putEscaped(ByteBuffer buf, String text) {
+        if (text == null) {
+            return buf;
+        }
+        buf = ensure(buf, text.length() * 2);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '(' || c == ')' || c == '\\') {
+                buf.put((byte) '\\').put((byte) c);
+            } else if (c < 0x20 || c > 0xFF || (c >= 0x7F && c < 0xA0)) {
+                buf.put((byte) '?');
+            } else {
+                buf.put((byte) c);
+            }
+        }
+        return buf;
+    }
+
+    private static ByteBuffer ensure(ByteBuffer buf, int extra) {
+        if (buf.remaining() >= extra) {
+            return buf;
+        }
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + extra));
+        buf.flip();
+        bigger.put(buf);
+        SCRATCH.set(bigger);
+        return bigger;
+    }
+
+    private static ByteBuffer readOnly(byte[] bytes) {
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+}
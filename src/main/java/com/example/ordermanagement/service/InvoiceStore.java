@@ -0,0 +1,37 @@
+package com.example.ordermanagement.service;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Storage for rendered invoice files, one per order.
+ */
+public interface InvoiceStore {
+
+    /**
+     * Stores the content produced by {@code writer} as the invoice of {@code orderId}. Readers
+     * never observe a partially written file: the content becomes visible atomically once the
+     * writer has returned. Returns the final location.
+     */
+    Path write(UUID orderId, ContentWriter writer) throws IOException;
+
+    /**
+     * Records order-to-file entries for invoices written by {@link #write}, in one batch.
+     */
+    void index(Collection<InvoicePdf> invoices);
+
+    /**
+     * Finds the stored invoice of an order, if any.
+     */
+    Optional<Path> locate(UUID orderId);
+
+    @FunctionalInterface
+    interface ContentWriter {
+        /** Writes the full content to {@code channel} and returns the number of bytes written. */
+        long writeTo(FileChannel channel) throws IOException;
+    }
+}
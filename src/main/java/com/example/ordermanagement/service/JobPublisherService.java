@@ -1,42 +1,119 @@
 package com.example.ordermanagement.service;
 
+import com.example.ordermanagement.config.RabbitConfig;
 import com.example.ordermanagement.domain.*;
+import com.example.ordermanagement.messaging.JobMessageCodec;
 import com.example.ordermanagement.messaging.dto.InvoiceJobDto;
 import com.example.ordermanagement.messaging.dto.RefundJobDto;
 import com.example.ordermanagement.repository.JobLogRepository;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import com.example.ordermanagement.repository.OutboxMessageRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.UUID;
+import java.util.*;
 
+/**
+ * Records background jobs. The {@link JobLog} and its message are written to the outbox in the
+ * caller's transaction; {@link OutboxRelay} publishes them to the broker after commit, so a
+ * rolled back transition never leaves a message behind and callers never wait on the broker.
+ * Every method must be called inside the transaction of the state change it belongs to.
+ */
 @Service
 public class JobPublisherService {
 
-    private final RabbitTemplate rabbitTemplate;
+    private final MessageConverter messageConverter;
     private final JobLogRepository jobLogRepository;
+    private final OutboxMessageRepository outboxRepository;
 
-    public JobPublisherService(RabbitTemplate rabbitTemplate, JobLogRepository jobLogRepository) {
-        this.rabbitTemplate = rabbitTemplate;
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${app.jobs.codec:json}")
+    private JobMessageCodec codec = JobMessageCodec.JSON;
+
+    public JobPublisherService(MessageConverter messageConverter, JobLogRepository jobLogRepository, OutboxMessageRepository outboxRepository) {
+        this.messageConverter = messageConverter;
         this.jobLogRepository = jobLogRepository;
+        this.outboxRepository = outboxRepository;
     }
 
+    @Transactional(propagation = Propagation.MANDATORY)
     public UUID publishInvoiceJob(Order order) {
         UUID jobId = UUID.randomUUID();
         JobLog job = new JobLog(jobId, JobType.INVOICE_GENERATION, order.getId(), null, jobId.toString(), JobStatus.PENDING);
         jobLogRepository.save(job);
 
         InvoiceJobDto dto = new InvoiceJobDto(jobId, order.getId(), order.getCustomerEmail());
-        rabbitTemplate.convertAndSend("ordermanagement.jobs", "invoice.generate", dto);
+        enqueue(jobId, RabbitConfig.INVOICE_ROUTING_KEY, order.getId(), dto);
         return jobId;
     }
 
+    /**
+     * Enqueues invoice jobs for several shipped orders at once; the job and outbox rows are
+     * flushed together as JDBC batches. Returns the job ids in input order.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<UUID> publishInvoiceJobs(List<Order> orders) {
+        List<UUID> jobIds = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            UUID jobId = UUID.randomUUID();
+            entityManager.persist(new JobLog(jobId, JobType.INVOICE_GENERATION, order.getId(), null, jobId.toString(), JobStatus.PENDING));
+            entityManager.persist(toOutbox(jobId, RabbitConfig.INVOICE_ROUTING_KEY, order.getId(),
+                    new InvoiceJobDto(jobId, order.getId(), order.getCustomerEmail())));
+            jobIds.add(jobId);
+        }
+        return jobIds;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
     public UUID publishRefundJob(ReturnRequest returnRequest, String paymentReference, String currency) {
         UUID jobId = UUID.randomUUID();
         JobLog job = new JobLog(jobId, JobType.REFUND_PROCESSING, returnRequest.getOrder().getId(), returnRequest.getId(), jobId.toString(), JobStatus.PENDING);
         jobLogRepository.save(job);
 
         RefundJobDto dto = new RefundJobDto(jobId, returnRequest.getOrder().getId(), returnRequest.getId(), paymentReference, currency);
-        rabbitTemplate.convertAndSend("ordermanagement.jobs", "refund.process", dto);
+        enqueue(jobId, RabbitConfig.REFUND_ROUTING_KEY, returnRequest.getOrder().getId(), dto);
         return jobId;
     }
+
+    /**
+     * Enqueues another delivery of each job by copying its most recent outbox message. Runs in
+     * the caller's transaction like the publish methods. Returns the jobs that had a message
+     * to copy.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Set<UUID> requeue(Collection<UUID> jobIds) {
+        Map<UUID, OutboxMessage> latest = new HashMap<>();
+        for (OutboxMessage m : outboxRepository.findByJobIdIn(jobIds)) {
+            latest.merge(m.getJobId(), m, (a, b) -> a.getCreatedAt().isAfter(b.getCreatedAt()) ? a : b);
+        }
+        for (OutboxMessage m : latest.values()) {
+            entityManager.persist(new OutboxMessage(UUID.randomUUID(), m.getJobId(), m.getExchange(), m.getRoutingKey(), m.getShardKey(),
+                    m.getContentType(), m.getTypeId(), m.getPayload()));
+        }
+        return latest.keySet();
+    }
+
+    private void enqueue(UUID jobId, String routingKey, UUID orderId, Object payload) {
+        outboxRepository.save(toOutbox(jobId, routingKey, orderId, payload));
+    }
+
+    private OutboxMessage toOutbox(UUID jobId, String routingKey, UUID orderId, Object payload) {
+        // convert once here so the relay only copies bytes
+        MessageProperties outbound = new MessageProperties();
+        outbound.setContentType(codec.contentType());
+        Message message = messageConverter.toMessage(payload, outbound);
+        MessageProperties props = message.getMessageProperties();
+        Object typeId = props.getHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME);
+        return new OutboxMessage(UUID.randomUUID(), jobId, RabbitConfig.EXCHANGE, routingKey, orderId,
+                props.getContentType(), typeId != null ? typeId.toString() : null, message.getBody());
+    }
 }
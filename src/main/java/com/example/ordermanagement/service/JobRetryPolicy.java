@@ -0,0 +1,74 @@
+package com.example.ordermanagement.service;
+
+import com.example.ordermanagement.domain.JobLog;
+import com.example.ordermanagement.domain.JobStatus;
+import com.example.ordermanagement.domain.JobType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides what happens to a job after a transient failure: RETRYING with a due time when it
+ * has attempts left for its {@link JobType}, FAILED otherwise. The delay doubles per attempt up
+ * to {@code max-delay-ms}; half of it is randomized so jobs that failed together (a gateway
+ * outage) do not all come back in the same instant.
+ */
+@Component
+public class JobRetryPolicy {
+
+    private final Map<JobType, Integer> maxAttempts = new EnumMap<>(JobType.class);
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+
+    public JobRetryPolicy(@Value("${app.jobs.retry.max-attempts.invoice:5}") int invoiceMaxAttempts,
+                          @Value("${app.jobs.retry.max-attempts.refund:8}") int refundMaxAttempts,
+                          @Value("${app.jobs.retry.base-delay-ms:1000}") long baseDelayMs,
+                          @Value("${app.jobs.retry.max-delay-ms:300000}") long maxDelayMs) {
+        maxAttempts.put(JobType.INVOICE_GENERATION, invoiceMaxAttempts);
+        maxAttempts.put(JobType.REFUND_PROCESSING, refundMaxAttempts);
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    public int maxAttempts(JobType type) {
+        return maxAttempts.getOrDefault(type, 1);
+    }
+
+    /**
+     * Records a transient failure on {@code job}, whose {@code attempts} already counts the
+     * attempt that just failed.
+     */
+    public void onFailure(JobLog job, String error) {
+        job.setLastError(error);
+        if (job.getAttempts() >= maxAttempts(job.getJobType())) {
+            job.setStatus(JobStatus.FAILED);
+            job.setNextAttemptAt(null);
+            return;
+        }
+        job.setStatus(JobStatus.RETRYING);
+        job.setNextAttemptAt(OffsetDateTime.now().plus(delayMs(job.getAttempts()), ChronoUnit.MILLIS));
+    }
+
+    /**
+     * Puts {@code job} back to RETRYING for about {@code delayMs} without spending an attempt:
+     * its call was refused before reaching the gateway (circuit breaker open, bulkhead full).
+     */
+    public void park(JobLog job, String reason, long delayMs) {
+        job.setLastError(reason);
+        job.setStatus(JobStatus.RETRYING);
+        long delay = Math.max(delayMs, baseDelayMs);
+        job.setNextAttemptAt(OffsetDateTime.now().plus(delay + ThreadLocalRandom.current().nextLong(delay / 2 + 1), ChronoUnit.MILLIS));
+    }
+
+    long delayMs(int attempts) {
+        int shift = Math.min(Math.max(attempts - 1, 0), 30);
+        long delay = Math.min(maxDelayMs, baseDelayMs << shift);
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+}
@@ -0,0 +1,392 @@
+package com.example.ordermanagement.service;
+
+import com.example.ordermanagement.config.ConcurrencyLimits;
+import com.example.ordermanagement.config.JobShards;
+import com.example.ordermanagement.config.RabbitConfig;
+import com.example.ordermanagement.domain.JobType;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adjusts consumer count and prefetch of the job listener containers at run time.
+ * <p>
+ * Every {@code interval-ms} it samples, per job type, the depth of the job queues (all shards),
+ * the average handler latency since the last sample (from the {@code jobs.handler} timer of
+ * {@link OperationMetrics}), and the machine's
+ * CPU load, then moves the consumer count one step within {@code min-consumers}..{@code max-consumers}:
+ * up while the backlog exceeds {@code backlog-per-consumer} per consumer, down when the queues
+ * are empty. Invoice rendering is CPU bound, so above {@code cpu-high} the invoice containers
+ * shed a consumer instead of adding one; refunds wait on the gateway and are never shed for CPU,
+ * so an invoice backlog cannot starve them. Prefetch is sized so each consumer holds about
+ * {@code prefetch-window-ms} worth of work at the observed latency: slow handlers get a short
+ * buffer and work spreads across consumers and nodes, fast ones keep enough deliveries to stay busy.
+ * <p>
+ * A consumer's prefetch is fixed when it starts. For the invoice containers (auto ack) a new
+ * prefetch is therefore applied by restarting the containers, once the queues are empty so
+ * only the messages being rendered are in hand; stopping waits for those and returns nothing
+ * unacked. The refund containers ack manually once a gateway call settles, so a stopped refund
+ * consumer would requeue its whole window and its later acks would fail on a closed channel:
+ * they are never restarted or scaled down, and a new prefetch only reaches the refund consumers
+ * added when scaling up.
+ * <p>
+ * With sharded queues (see {@link JobShards}) every container keeps its single consumer, so a
+ * new prefetch would never reach one; autoscaling is then switched off at startup.
+ * Every change is logged and the current state is available from {@link #stats()},
+ * which is also published as gauges.
+ */
+@Component
+public class ListenerAutoscaler {
+
+    private static final Logger log = LoggerFactory.getLogger(ListenerAutoscaler.class);
+
+    private final RabbitListenerEndpointRegistry registry;
+    private final AmqpAdmin amqpAdmin;
+    private final JobShards jobShards;
+    private final ConcurrencyLimits concurrencyLimits;
+    private final OperationMetrics metrics;
+    private final double cpuHigh;
+    private final int backlogPerConsumer;
+    private final long prefetchWindowMs;
+    private final Map<JobType, Group> groups = new EnumMap<>(JobType.class);
+    private volatile boolean enabled;
+
+    @Value("${app.listeners.autoscale.invoice.min-consumers:1}")
+    private int invoiceMinConsumers;
+
+    // 0 means one less than the available processors
+    @Value("${app.listeners.autoscale.invoice.max-consumers:0}")
+    private int invoiceMaxConsumers;
+
+    @Value("${app.listeners.autoscale.invoice.min-prefetch:1}")
+    private int invoiceMinPrefetch;
+
+    @Value("${app.listeners.autoscale.invoice.max-prefetch:50}")
+    private int invoiceMaxPrefetch;
+
+    @Value("${app.listeners.autoscale.refund.min-consumers:1}")
+    private int refundMinConsumers;
+
+    @Value("${app.listeners.autoscale.refund.max-consumers:8}")
+    private int refundMaxConsumers;
+
+    @Value("${app.listeners.autoscale.refund.min-prefetch:10}")
+    private int refundMinPrefetch;
+
+    @Value("${app.listeners.autoscale.refund.max-prefetch:250}")
+    private int refundMaxPrefetch;
+
+    @Value("${app.jobs.invoice.batch.enabled:false}")
+    private boolean invoiceBatchEnabled;
+
+    @Value("${app.jobs.invoice.batch.size:50}")
+    private int invoiceBatchSize;
+
+    public ListenerAutoscaler(RabbitListenerEndpointRegistry registry, AmqpAdmin amqpAdmin, JobShards jobShards,
+                              ConcurrencyLimits concurrencyLimits, OperationMetrics metrics,
+                              @Value("${app.listeners.autoscale.enabled:true}") boolean enabled,
+                              @Value("${app.listeners.autoscale.cpu-high:0.85}") double cpuHigh,
+                              @Value("${app.listeners.autoscale.backlog-per-consumer:100}") int backlogPerConsumer,
+                              @Value("${app.listeners.autoscale.prefetch-window-ms:1000}") long prefetchWindowMs) {
+        this.registry = registry;
+        this.amqpAdmin = amqpAdmin;
+        this.jobShards = jobShards;
+        this.concurrencyLimits = concurrencyLimits;
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.cpuHigh = cpuHigh;
+        this.backlogPerConsumer = Math.max(1, backlogPerConsumer);
+        this.prefetchWindowMs = Math.max(1, prefetchWindowMs);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (enabled && jobShards.isSharded()) {
+            // shard containers run exactly one consumer, and prefetch only reaches new consumers
+            log.info("Listener autoscaling is off: the {} job shards keep one consumer each with the configured prefetch",
+                    jobShards.count());
+            enabled = false;
+        }
+        // leave a core for refunds, completions and HTTP when rendering flat out
+        int invoiceMax = invoiceMaxConsumers > 0 ? invoiceMaxConsumers : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        int invoicePrefetchFloor = invoiceMinPrefetch;
+        if (invoiceBatchEnabled) {
+            // the batch container cannot assemble a batch larger than its prefetch
+            invoicePrefetchFloor = Math.max(invoicePrefetchFloor, invoiceBatchSize);
+        }
+        groups.put(JobType.INVOICE_GENERATION, new Group(JobType.INVOICE_GENERATION, true, false,
+                invoiceMinConsumers, invoiceMax, invoicePrefetchFloor, invoiceMaxPrefetch));
+        // acked by RefundListener once the gateway call settles
+        groups.put(JobType.REFUND_PROCESSING, new Group(JobType.REFUND_PROCESSING, false, true,
+                refundMinConsumers, refundMaxConsumers, refundMinPrefetch, refundMaxPrefetch));
+    }
+
+    @Scheduled(fixedDelayString = "${app.listeners.autoscale.interval-ms:5000}")
+    public void adjust() {
+        if (!enabled) {
+            return;
+        }
+        double cpu = cpuLoad();
+        for (Group g : groups.values()) {
+            List<SimpleMessageListenerContainer> containers = containers(g.type);
+            if (containers.isEmpty()) {
+                continue;
+            }
+            long depth;
+            try {
+                depth = queueDepth(g.type);
+            } catch (AmqpException e) {
+                log.debug("Cannot sample {} queue depth: {}", g.type, e.getMessage());
+                continue;
+            }
+            Timer handler = metrics.jobHandlerTimer(g.type);
+            Decision d = decide(g, depth, g.sampleLatencyMs(handler.count(), handler.totalTime(TimeUnit.NANOSECONDS)), cpu);
+            apply(g, d, containers);
+        }
+    }
+
+    /**
+     * Next consumer count and prefetch for {@code g}. The consumer count moves at most one
+     * step per sample so a burst does not overshoot.
+     */
+    Decision decide(Group g, long depth, double latencyMs, double cpu) {
+        int consumers = g.consumers;
+        String reason = "steady";
+        if (g.cpuBound && cpu > cpuHigh) {
+            consumers--;
+            reason = "cpu";
+        } else if (depth > (long) backlogPerConsumer * consumers) {
+            consumers++;
+            reason = "backlog";
+        } else if (depth == 0 && !g.manualAck) {
+            consumers--;
+            reason = "idle";
+        }
+        consumers = clamp(consumers, g.minConsumers, g.maxConsumers);
+
+        int prefetch = g.prefetch > 0 ? g.prefetch : g.maxPrefetch;
+        if (latencyMs > 0) {
+            // a refund consumer keeps its share of the gateway window busy, an invoice consumer one render
+            double inFlight = g.cpuBound ? 1 : Math.max(1.0, (double) concurrencyLimits.refundCallPermits() / Math.max(1, consumers));
+            prefetch = (int) Math.ceil(inFlight * prefetchWindowMs / latencyMs);
+        }
+        prefetch = clamp(prefetch, g.minPrefetch, g.maxPrefetch);
+        return new Decision(consumers, prefetch, depth, latencyMs, cpu, reason);
+    }
+
+    private void apply(Group g, Decision d, List<SimpleMessageListenerContainer> containers) {
+        boolean first = g.prefetch == 0;
+        boolean consumersChanged = first || d.consumers != g.consumers;
+        boolean prefetchChanged = first || d.prefetch != g.prefetch;
+        if (prefetchChanged && !g.manualAck) {
+            g.stalePrefetch = true;
+        }
+        if (!consumersChanged && !prefetchChanged) {
+            restartIfStale(g, d, containers);
+            g.last = d;
+            return;
+        }
+        for (SimpleMessageListenerContainer c : containers) {
+            if (prefetchChanged) {
+                c.setPrefetchCount(d.prefetch);
+            }
+            if (consumersChanged) {
+                // concurrent may never exceed max, and the container's starting values are
+                // unknown before the first adjustment: lift the cap, set, then pin the cap
+                c.setMaxConcurrentConsumers(Integer.MAX_VALUE);
+                c.setConcurrentConsumers(d.consumers);
+                c.setMaxConcurrentConsumers(d.consumers);
+            }
+        }
+        log.info("{} listeners: consumers {} -> {}, prefetch {} -> {} ({}; depth={}, latency={}ms, cpu={})",
+                g.type, g.consumers, d.consumers, g.prefetch, d.prefetch, d.reason, d.queueDepth,
+                String.format("%.1f", d.latencyMs), String.format("%.2f", d.cpuLoad));
+        g.consumers = d.consumers;
+        g.prefetch = d.prefetch;
+        g.adjustments++;
+        g.last = d;
+        restartIfStale(g, d, containers);
+    }
+
+    /**
+     * Restarts auto-ack containers whose running consumers still have an older prefetch, once
+     * the queues are empty.
+     */
+    private void restartIfStale(Group g, Decision d, List<SimpleMessageListenerContainer> containers) {
+        if (!g.stalePrefetch || d.queueDepth != 0) {
+            return;
+        }
+        for (SimpleMessageListenerContainer c : containers) {
+            c.stop();
+            c.start();
+        }
+        g.stalePrefetch = false;
+        g.restarts++;
+        log.info("{} listeners restarted to apply prefetch {}", g.type, g.prefetch);
+    }
+
+    private List<SimpleMessageListenerContainer> containers(JobType type) {
+        Set<String> queues = new HashSet<>(jobShards.queueNames(RabbitConfig.queue(type)));
+        List<SimpleMessageListenerContainer> result = new ArrayList<>();
+        for (MessageListenerContainer c : registry.getListenerContainers()) {
+            if (c instanceof SimpleMessageListenerContainer smlc && c.isRunning()
+                    && queues.containsAll(Arrays.asList(smlc.getQueueNames()))) {
+                result.add(smlc);
+            }
+        }
+        return result;
+    }
+
+    private long queueDepth(JobType type) {
+        long depth = 0;
+        for (String queue : jobShards.queueNames(RabbitConfig.queue(type))) {
+            QueueInformation info = amqpAdmin.getQueueInfo(queue);
+            if (info != null) {
+                depth += info.getMessageCount();
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Machine-wide CPU load in [0, 1], or the load average per core where the JVM does not
+     * report it.
+     */
+    static double cpuLoad() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean sun) {
+            double load = sun.getCpuLoad();
+            if (load >= 0) {
+                return load;
+            }
+        }
+        double avg = os.getSystemLoadAverage();
+        return avg < 0 ? 0 : Math.min(1.0, avg / os.getAvailableProcessors());
+    }
+
+    public List<Stats> stats() {
+        List<Stats> stats = new ArrayList<>(groups.size());
+        for (Group g : groups.values()) {
+            Decision d = g.last;
+            stats.add(new Stats(g.type, enabled, g.consumers, g.prefetch, g.minConsumers, g.maxConsumers,
+                    d != null ? d.queueDepth : -1, d != null ? d.latencyMs : 0, d != null ? d.cpuLoad : 0,
+                    d != null ? d.reason : null, g.adjustments, g.restarts));
+        }
+        return stats;
+    }
+
+    private static int clamp(int v, int min, int max) {
+        return Math.max(min, Math.min(max, v));
+    }
+
+    static final class Group {
+        final JobType type;
+        final boolean cpuBound;
+        // consumers hold un-acked deliveries between calls: never stopped
+        final boolean manualAck;
+        final int minConsumers;
+        final int maxConsumers;
+        final int minPrefetch;
+        final int maxPrefetch;
+        volatile int consumers;
+        // 0 until the first adjustment has been applied
+        volatile int prefetch;
+        volatile long adjustments;
+        volatile long restarts;
+        volatile Decision last;
+        // running consumers have an older prefetch than the containers' setting
+        boolean stalePrefetch;
+        private double lastLatencyMs;
+        private long lastCount;
+        private double lastTotalNanos;
+
+        Group(JobType type, boolean cpuBound, boolean manualAck, int minConsumers, int maxConsumers, int minPrefetch, int maxPrefetch) {
+            this.type = type;
+            this.cpuBound = cpuBound;
+            this.manualAck = manualAck;
+            this.minConsumers = Math.max(1, minConsumers);
+            this.maxConsumers = Math.max(this.minConsumers, maxConsumers);
+            this.minPrefetch = Math.max(1, minPrefetch);
+            this.maxPrefetch = Math.max(this.minPrefetch, maxPrefetch);
+            this.consumers = this.minConsumers;
+        }
+
+        /**
+         * Average latency since the previous sample, from the cumulative count and total time of
+         * the {@code jobs.handler} timer; the last known value when nothing was handled.
+         */
+        double sampleLatencyMs(long count, double totalNanos) {
+            long n = count - lastCount;
+            if (n > 0) {
+                lastLatencyMs = (totalNanos - lastTotalNanos) / 1_000_000.0 / n;
+            }
+            lastCount = count;
+            lastTotalNanos = totalNanos;
+            return lastLatencyMs;
+        }
+    }
+
+    static final class Decision {
+        final int consumers;
+        final int prefetch;
+        final long queueDepth;
+        final double latencyMs;
+        final double cpuLoad;
+        final String reason;
+
+        Decision(int consumers, int prefetch, long queueDepth, double latencyMs, double cpuLoad, String reason) {
+            this.consumers = consumers;
+            this.prefetch = prefetch;
+            this.queueDepth = queueDepth;
+            this.latencyMs = latencyMs;
+            this.cpuLoad = cpuLoad;
+            this.reason = reason;
+        }
+    }
+
+    public static class Stats {
+        public final JobType jobType;
+        public final boolean enabled;
+        public final int consumers;
+        public final int prefetch;
+        public final int minConsumers;
+        public final int maxConsumers;
+        public final long queueDepth;
+        public final double avgLatencyMs;
+        public final double cpuLoad;
+        public final String lastReason;
+        public final long adjustments;
+        public final long restarts;
+
+        Stats(JobType jobType, boolean enabled, int consumers, int prefetch, int minConsumers, int maxConsumers,
+              long queueDepth, double avgLatencyMs, double cpuLoad, String lastReason, long adjustments, long restarts) {
+            this.jobType = jobType;
+            this.enabled = enabled;
+            this.consumers = consumers;
+            this.prefetch = prefetch;
+            this.minConsumers = minConsumers;
+            this.maxConsumers = maxConsumers;
+            this.queueDepth = queueDepth;
+            this.avgLatencyMs = avgLatencyMs;
+            this.cpuLoad = cpuLoad;
+            this.lastReason = lastReason;
+            this.adjustments = adjustments;
+            this.restarts = restarts;
+        }
+    }
+}
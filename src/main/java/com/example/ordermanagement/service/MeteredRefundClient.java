@@ -0,0 +1,55 @@
+package com.example.ordermanagement.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Times every gateway call of the {@link RefundClient} it wraps: single calls as
+ * {@code refunds.gateway}, batches as {@code refunds.gateway.batch}. Async calls are timed to
+ * completion of the returned future. Applied to the {@code RefundClient} bean by
+ * {@link com.example.ordermanagement.config.RefundClientConfig}.
+ */
+public class MeteredRefundClient implements RefundClient {
+
+    private final RefundClient delegate;
+    private final OperationMetrics metrics;
+
+    public MeteredRefundClient(RefundClient delegate, OperationMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public RefundResponse processRefund(RefundRequestDto request) throws RefundException {
+        long start = System.nanoTime();
+        try {
+            return delegate.processRefund(request);
+        } finally {
+            metrics.record(OperationMetrics.Operation.REFUND_CALL, start);
+        }
+    }
+
+    @Override
+    public CompletableFuture<RefundResponse> processRefundAsync(RefundRequestDto request) {
+        long start = System.nanoTime();
+        return delegate.processRefundAsync(request)
+                .whenComplete((r, e) -> metrics.record(OperationMetrics.Operation.REFUND_CALL, start));
+    }
+
+    @Override
+    public List<RefundResponse> processRefunds(List<RefundRequestDto> requests) throws RefundException {
+        long start = System.nanoTime();
+        try {
+            return delegate.processRefunds(requests);
+        } finally {
+            metrics.record(OperationMetrics.Operation.REFUND_BATCH_CALL, start);
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<RefundResponse>> processRefundsAsync(List<RefundRequestDto> requests) {
+        long start = System.nanoTime();
+        return delegate.processRefundsAsync(requests)
+                .whenComplete((r, e) -> metrics.record(OperationMetrics.Operation.REFUND_BATCH_CALL, start));
+    }
+}
@@ -1,19 +1,90 @@
 package com.example.ordermanagement.service;
 
+import jakarta.annotation.PreDestroy;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class MockRefundClient implements RefundClient {
 
+    private static final long LATENCY_MS = 200;
+
+    // completes async calls after the simulated latency without holding a thread meanwhile
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "mock-refund-gateway");
+        t.setDaemon(true);
+        return t;
+    });
+
     @Override
     public RefundResponse processRefund(RefundRequestDto request) throws RefundException {
         // simulate processing delay
         try {
-            Thread.sleep(200);
+            Thread.sleep(LATENCY_MS);
+        } catch (InterruptedException ignored) {
+        }
+        return success();
+    }
+
+    @Override
+    public CompletableFuture<RefundResponse> processRefundAsync(RefundRequestDto request) {
+        CompletableFuture<RefundResponse> result = new CompletableFuture<>();
+        timer.schedule(() -> result.complete(success()), LATENCY_MS, TimeUnit.MILLISECONDS);
+        return result;
+    }
+
+    @Override
+    public List<RefundResponse> processRefunds(List<RefundRequestDto> requests) throws RefundException {
+        requireSingleCurrency(requests);
+        // one round trip for the whole batch
+        try {
+            Thread.sleep(LATENCY_MS);
         } catch (InterruptedException ignored) {
         }
+        return successes(requests.size());
+    }
+
+    @Override
+    public CompletableFuture<List<RefundResponse>> processRefundsAsync(List<RefundRequestDto> requests) {
+        CompletableFuture<List<RefundResponse>> result = new CompletableFuture<>();
+        try {
+            requireSingleCurrency(requests);
+        } catch (RefundException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        timer.schedule(() -> result.complete(successes(requests.size())), LATENCY_MS, TimeUnit.MILLISECONDS);
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    private static void requireSingleCurrency(List<RefundRequestDto> requests) throws RefundException {
+        long currencies = requests.stream().map(r -> r.currency).distinct().count();
+        if (currencies > 1) {
+            throw new RefundException("Batch refund must use a single currency");
+        }
+    }
+
+    private static List<RefundResponse> successes(int count) {
+        List<RefundResponse> responses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            responses.add(success());
+        }
+        return responses;
+    }
+
+    private static RefundResponse success() {
         RefundResponse r = new RefundResponse();
         r.success = true;
         r.gatewayReference = "MOCK-REFUND-" + UUID.randomUUID();
@@ -21,4 +92,3 @@ public class MockRefundClient implements RefundClient {
         return r;
     }
 }
-
@@ -0,0 +1,303 @@
+package com.example.ordermanagement.service;
+
+import com.example.ordermanagement.domain.JobLog;
+import com.example.ordermanagement.domain.JobStatus;
+import com.example.ordermanagement.domain.JobType;
+import com.example.ordermanagement.domain.OrderStatus;
+import com.example.ordermanagement.domain.ReturnStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers and counters for the order, return and job paths. Every meter is looked up once and
+ * held in an array indexed by enum ordinal, so recording on a hot path is an array read and an
+ * update of the meter; callers take {@link System#nanoTime()} themselves instead of going
+ * through {@code Timer.Sample} or a lambda. Percentile histograms are switched on per metric
+ * name prefix in {@code management.metrics.distribution}.
+ */
+@Component
+public class OperationMetrics {
+
+    /**
+     * Timed service operations, one timer each.
+     */
+    public enum Operation {
+        ORDER_CREATE("orders.create"),
+        ORDER_STATUS_CHANGE("orders.status.change"),
+        ORDER_STATUS_CHANGE_BATCH("orders.status.change.batch"),
+        ORDER_READ("orders.read"),
+        ORDER_IMPORT("orders.import"),
+        RETURN_CREATE("returns.create"),
+        RETURN_STATUS_CHANGE("returns.status.change"),
+        RETURN_READ("returns.read"),
+        HISTORY_PAGE("history.page"),
+        INVOICE_RENDER("invoices.render"),
+        REFUND_CALL("refunds.gateway"),
+        REFUND_BATCH_CALL("refunds.gateway.batch"),
+        OUTBOX_RELAY("outbox.relay");
+
+        final String metricName;
+
+        Operation(String metricName) {
+            this.metricName = metricName;
+        }
+    }
+
+    private static final String NONE = "none";
+    // values() clones its array on every call
+    private static final OrderStatus[] ORDER_STATUS_VALUES = OrderStatus.values();
+    private static final ReturnStatus[] RETURN_STATUS_VALUES = ReturnStatus.values();
+    private static final int ORDER_STATUSES = ORDER_STATUS_VALUES.length;
+    private static final int RETURN_STATUSES = RETURN_STATUS_VALUES.length;
+
+    private final MeterRegistry registry;
+    private final Timer[] operations;
+    private final Timer[] jobHandlers;
+    private final Timer[] jobLag;
+    // [jobType][jobStatus]
+    private final Counter[][] jobOutcomes;
+    // [from][to], with an extra "from" slot for entities that are being created; filled lazily
+    private final Counter[][] orderTransitions;
+    private final Counter[][] returnTransitions;
+    private final ThreadLocal<PendingCounts> pending = ThreadLocal.withInitial(PendingCounts::new);
+
+    public OperationMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Operation[] ops = Operation.values();
+        operations = new Timer[ops.length];
+        for (Operation op : ops) {
+            operations[op.ordinal()] = Timer.builder(op.metricName).register(registry);
+        }
+        JobType[] types = JobType.values();
+        JobStatus[] statuses = JobStatus.values();
+        jobHandlers = new Timer[types.length];
+        jobLag = new Timer[types.length];
+        jobOutcomes = new Counter[types.length][statuses.length];
+        for (JobType type : types) {
+            String t = tag(type);
+            jobHandlers[type.ordinal()] = Timer.builder("jobs.handler")
+                    .description("Listener time per job")
+                    .tag("type", t).register(registry);
+            jobLag[type.ordinal()] = Timer.builder("jobs.lag")
+                    .description("Time from job creation to SUCCESS or FAILED")
+                    .tag("type", t).register(registry);
+            for (JobStatus status : statuses) {
+                jobOutcomes[type.ordinal()][status.ordinal()] = Counter.builder("jobs.outcomes")
+                        .tag("type", t).tag("status", tag(status)).register(registry);
+            }
+        }
+        orderTransitions = new Counter[ORDER_STATUSES + 1][ORDER_STATUSES];
+        returnTransitions = new Counter[RETURN_STATUSES + 1][RETURN_STATUSES];
+    }
+
+    /**
+     * Records an operation that started at {@code startNanos} ({@link System#nanoTime()}).
+     */
+    public void record(Operation op, long startNanos) {
+        operations[op.ordinal()].record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records {@code jobs} jobs handled by a listener in {@code nanos}; a batch counts as
+     * {@code jobs} samples of the average.
+     */
+    public void jobsHandled(JobType type, int jobs, long nanos) {
+        if (jobs <= 0) {
+            return;
+        }
+        Timer timer = jobHandlers[type.ordinal()];
+        long perJob = nanos / jobs;
+        for (int i = 0; i < jobs; i++) {
+            timer.record(perJob, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public Timer jobHandlerTimer(JobType type) {
+        return jobHandlers[type.ordinal()];
+    }
+
+    /**
+     * Counts the status a job was just settled with and, for SUCCESS and FAILED, records the
+     * time since the job was created. Inside a transaction both are recorded once it commits,
+     * so an outcome that is rolled back is not counted.
+     */
+    public void jobSettled(JobLog job) {
+        if (job.getJobType() == null || job.getStatus() == null) {
+            return;
+        }
+        int type = job.getJobType().ordinal();
+        int status = job.getStatus().ordinal();
+        OffsetDateTime createdAt = job.getCreatedAt();
+        long lagMs = -1;
+        if (createdAt != null && (job.getStatus() == JobStatus.SUCCESS || job.getStatus() == JobStatus.FAILED)) {
+            lagMs = Math.max(0, System.currentTimeMillis() - createdAt.toInstant().toEpochMilli());
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            pendingForTransaction().addJob(type, status, lagMs);
+        } else {
+            recordJob(type, status, lagMs);
+        }
+    }
+
+    /**
+     * Counts an order moving from {@code from} (null for a new order) to {@code to} once the
+     * current transaction commits, so attempts rolled back on a version conflict are not counted.
+     */
+    public void orderTransitionAfterCommit(OrderStatus from, OrderStatus to) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            pendingForTransaction().orders[from == null ? ORDER_STATUSES : from.ordinal()][to.ordinal()]++;
+        } else {
+            orderTransition(from, to);
+        }
+    }
+
+    public void returnTransitionAfterCommit(ReturnStatus from, ReturnStatus to) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            pendingForTransaction().returns[from == null ? RETURN_STATUSES : from.ordinal()][to.ordinal()]++;
+        } else {
+            returnTransition(from, to);
+        }
+    }
+
+    public void orderTransition(OrderStatus from, OrderStatus to) {
+        int f = from == null ? ORDER_STATUSES : from.ordinal();
+        Counter c = orderTransitions[f][to.ordinal()];
+        if (c == null) {
+            // the registry hands out one counter per id, so a racing first use is harmless
+            c = registry.counter("orders.transitions", "from", from == null ? NONE : tag(from), "to", tag(to));
+            orderTransitions[f][to.ordinal()] = c;
+        }
+        c.increment();
+    }
+
+    public void returnTransition(ReturnStatus from, ReturnStatus to) {
+        int f = from == null ? RETURN_STATUSES : from.ordinal();
+        Counter c = returnTransitions[f][to.ordinal()];
+        if (c == null) {
+            c = registry.counter("returns.transitions", "from", from == null ? NONE : tag(from), "to", tag(to));
+            returnTransitions[f][to.ordinal()] = c;
+        }
+        c.increment();
+    }
+
+    private void recordJob(int type, int status, long lagMs) {
+        jobOutcomes[type][status].increment();
+        if (lagMs >= 0) {
+            jobLag[type].record(lagMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * This thread's buffer for the current transaction, registered with it on first use.
+     */
+    private PendingCounts pendingForTransaction() {
+        PendingCounts counts = pending.get();
+        if (!counts.registered) {
+            TransactionSynchronizationManager.registerSynchronization(counts);
+            counts.registered = true;
+        }
+        return counts;
+    }
+
+    /**
+     * Counts recorded inside one transaction, applied to the meters when it commits and dropped
+     * when it rolls back. Each thread reuses one instance, registered once per transaction, so
+     * recording a transition or an outcome only bumps an array slot. A transaction suspended for
+     * a nested one keeps its instance; the nested one gets its own.
+     */
+    private final class PendingCounts implements TransactionSynchronization {
+        final int[][] orders = new int[ORDER_STATUSES + 1][ORDER_STATUSES];
+        final int[][] returns = new int[RETURN_STATUSES + 1][RETURN_STATUSES];
+        final int[][] jobs = new int[jobOutcomes.length][JobStatus.values().length];
+        // job lag samples: type ordinal and milliseconds
+        int[] lagTypes = new int[8];
+        long[] lagMs = new long[8];
+        int lags;
+        boolean registered;
+
+        void addJob(int type, int status, long lag) {
+            jobs[type][status]++;
+            if (lag < 0) {
+                return;
+            }
+            if (lags == lagMs.length) {
+                lagTypes = Arrays.copyOf(lagTypes, lags * 2);
+                lagMs = Arrays.copyOf(lagMs, lags * 2);
+            }
+            lagTypes[lags] = type;
+            lagMs[lags++] = lag;
+        }
+
+        @Override
+        public void suspend() {
+            pending.set(new PendingCounts());
+        }
+
+        @Override
+        public void resume() {
+            pending.set(this);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (status == STATUS_COMMITTED) {
+                apply();
+            }
+            clear();
+        }
+
+        private void apply() {
+            for (int f = 0; f < orders.length; f++) {
+                for (int t = 0; t < ORDER_STATUSES; t++) {
+                    for (int n = orders[f][t]; n > 0; n--) {
+                        orderTransition(f == ORDER_STATUSES ? null : ORDER_STATUS_VALUES[f], ORDER_STATUS_VALUES[t]);
+                    }
+                }
+            }
+            for (int f = 0; f < returns.length; f++) {
+                for (int t = 0; t < RETURN_STATUSES; t++) {
+                    for (int n = returns[f][t]; n > 0; n--) {
+                        returnTransition(f == RETURN_STATUSES ? null : RETURN_STATUS_VALUES[f], RETURN_STATUS_VALUES[t]);
+                    }
+                }
+            }
+            for (int type = 0; type < jobs.length; type++) {
+                for (int status = 0; status < jobs[type].length; status++) {
+                    if (jobs[type][status] > 0) {
+                        jobOutcomes[type][status].increment(jobs[type][status]);
+                    }
+                }
+            }
+            for (int i = 0; i < lags; i++) {
+                jobLag[lagTypes[i]].record(lagMs[i], TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void clear() {
+            for (int[] row : orders) {
+                Arrays.fill(row, 0);
+            }
+            for (int[] row : returns) {
+                Arrays.fill(row, 0);
+            }
+            for (int[] row : jobs) {
+                Arrays.fill(row, 0);
+            }
+            lags = 0;
+            registered = false;
+        }
+    }
+
+    private static String tag(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,42 +1,79 @@
 package com.example.ordermanagement.service;
 
 import com.example.ordermanagement.domain.*;
+import com.example.ordermanagement.repository.OrderBatchRepository;
 import com.example.ordermanagement.repository.OrderRepository;
-import com.example.ordermanagement.repository.OrderStateHistoryRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
-import java.util.Optional;
-import java.util.UUID;
+import java.time.OffsetDateTime;
+import java.util.*;
 
 @Service
 public class OrderService {
 
     private final OrderRepository orderRepository;
-    private final OrderStateHistoryRepository historyRepository;
+    private final AuditHistoryWriter historyWriter;
+    private final OrderBatchRepository orderBatchRepository;
     private final JobPublisherService jobPublisherService;
+    private final VersionedCache<UUID, OrderView> orderCache;
+    private final TransitionGuard transitionGuard;
+    private final TransactionTemplate transactionTemplate;
+    private final OperationMetrics metrics;
+
+    @PersistenceContext
+    private EntityManager entityManager;
 
     public OrderService(OrderRepository orderRepository,
-                        OrderStateHistoryRepository historyRepository,
-                        JobPublisherService jobPublisherService) {
+                        AuditHistoryWriter historyWriter,
+                        OrderBatchRepository orderBatchRepository,
+                        JobPublisherService jobPublisherService,
+                        VersionedCache<UUID, OrderView> orderCache,
+                        TransitionGuard transitionGuard,
+                        PlatformTransactionManager transactionManager,
+                        OperationMetrics metrics) {
         this.orderRepository = orderRepository;
-        this.historyRepository = historyRepository;
+        this.historyWriter = historyWriter;
+        this.orderBatchRepository = orderBatchRepository;
         this.jobPublisherService = jobPublisherService;
+        this.orderCache = orderCache;
+        this.transitionGuard = transitionGuard;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.metrics = metrics;
     }
 
     @Transactional
     public Order createOrder(String externalId, String customerEmail, BigDecimal totalAmount) {
+        long start = System.nanoTime();
         Order order = new Order(UUID.randomUUID(), externalId, customerEmail, totalAmount, OrderStatus.PENDING_PAYMENT);
         orderRepository.save(order);
         // initial history entry
-        OrderStateHistory h = new OrderStateHistory(UUID.randomUUID(), order, null, OrderStatus.PENDING_PAYMENT, "system", "order created");
-        historyRepository.save(h);
+        historyWriter.recordOrder(order.getId(), null, OrderStatus.PENDING_PAYMENT, "system", "order created");
+        metrics.orderTransitionAfterCommit(null, OrderStatus.PENDING_PAYMENT);
+        metrics.record(OperationMetrics.Operation.ORDER_CREATE, start);
         return order;
     }
 
-    @Transactional
+    /**
+     * Transitions one order. Runs under the order's {@link TransitionGuard} stripe, one
+     * transaction per attempt, so a version conflict with another node is retried.
+     */
     public Order changeOrderStatus(UUID orderId, OrderStatus target, String actor, String reason) {
+        long start = System.nanoTime();
+        try {
+            return transitionGuard.execute(orderId,
+                    () -> transactionTemplate.execute(status -> applyTransition(orderId, target, actor, reason)));
+        } finally {
+            metrics.record(OperationMetrics.Operation.ORDER_STATUS_CHANGE, start);
+        }
+    }
+
+    private Order applyTransition(UUID orderId, OrderStatus target, String actor, String reason) {
         Order order = orderRepository.findById(orderId).orElseThrow(() -> new IllegalArgumentException("Order not found: " + orderId));
         OrderStatus from = order.getStatus();
         if (from == null) {
@@ -46,10 +83,11 @@ public class OrderService {
             throw new IllegalStateException("Invalid transition from " + from + " to " + target);
         }
         // create history
-        OrderStateHistory history = new OrderStateHistory(UUID.randomUUID(), order, from, target, actor, reason);
-        historyRepository.save(history);
+        historyWriter.recordOrder(order.getId(), from, target, actor, reason);
         order.setStatus(target);
         orderRepository.save(order);
+        metrics.orderTransitionAfterCommit(from, target);
+        orderCache.putAfterCommit(order.getId(), () -> OrderView.of(order));
 
         // enqueue invoice generation when shipped
         if (target == OrderStatus.SHIPPED) {
@@ -59,8 +97,183 @@ public class OrderService {
         return order;
     }
 
+    /**
+     * Applies many status changes in one transaction. Each change is validated on its own and
+     * reported in the result (same order as the input): valid ones are written with one batched,
+     * version-checked UPDATE, their history rows go to the {@link AuditHistoryWriter} and invoice jobs for
+     * the newly SHIPPED orders are enqueued together. A change to the order's current status is
+     * reported as UNCHANGED and writes nothing.
+     */
+    @Transactional
+    public List<TransitionResult> changeOrderStatuses(List<StatusChange> changes, String actor, String reason) {
+        long start = System.nanoTime();
+        Set<UUID> ids = new HashSet<>();
+        for (StatusChange c : changes) {
+            if (c.orderId != null) {
+                ids.add(c.orderId);
+            }
+        }
+        Map<UUID, Order> orders = new HashMap<>();
+        for (Order o : orderRepository.findAllById(ids)) {
+            orders.put(o.getId(), o);
+        }
+
+        TransitionResult[] results = new TransitionResult[changes.size()];
+        List<Integer> candidates = new ArrayList<>();
+        List<OrderBatchRepository.StatusUpdate> updates = new ArrayList<>();
+        Set<UUID> seen = new HashSet<>();
+        for (int i = 0; i < changes.size(); i++) {
+            StatusChange c = changes.get(i);
+            OrderStatus target = parseStatus(c.status);
+            Order order = c.orderId != null ? orders.get(c.orderId) : null;
+            if (target == null) {
+                results[i] = TransitionResult.rejected(c.orderId, c.status, "Unknown status: " + c.status);
+            } else if (order == null) {
+                results[i] = TransitionResult.rejected(c.orderId, c.status, "Order not found: " + c.orderId);
+            } else if (!seen.add(order.getId())) {
+                results[i] = TransitionResult.rejected(c.orderId, c.status, "Order appears more than once in request");
+            } else {
+                OrderStatus from = order.getStatus() != null ? order.getStatus() : OrderStatus.PENDING_PAYMENT;
+                if (from == target) {
+                    results[i] = TransitionResult.of(order.getId(), from, target, "UNCHANGED");
+                } else if (!from.canTransitionTo(target)) {
+                    results[i] = TransitionResult.rejected(c.orderId, c.status, "Invalid transition from " + from + " to " + target);
+                } else {
+                    candidates.add(i);
+                    updates.add(new OrderBatchRepository.StatusUpdate(order.getId(), order.getVersion(), target));
+                }
+            }
+        }
+
+        int[] counts = orderBatchRepository.updateStatuses(updates, OffsetDateTime.now());
+        List<Order> shipped = new ArrayList<>();
+        for (int k = 0; k < candidates.size(); k++) {
+            int i = candidates.get(k);
+            OrderBatchRepository.StatusUpdate u = updates.get(k);
+            Order order = orders.get(u.orderId);
+            OrderStatus from = order.getStatus() != null ? order.getStatus() : OrderStatus.PENDING_PAYMENT;
+            // drivers may report SUCCESS_NO_INFO (-2) for batched statements; treat it as applied
+            if (counts[k] == 0) {
+                results[i] = TransitionResult.rejected(u.orderId, u.target.name(), "Order was modified concurrently");
+                continue;
+            }
+            historyWriter.recordOrder(u.orderId, from, u.target, actor, reason);
+            orderCache.invalidateAfterCommit(u.orderId, u.expectedVersion + 1);
+            metrics.orderTransitionAfterCommit(from, u.target);
+            results[i] = TransitionResult.of(u.orderId, from, u.target, "APPLIED");
+            if (u.target == OrderStatus.SHIPPED) {
+                shipped.add(order);
+            }
+        }
+        if (!shipped.isEmpty()) {
+            jobPublisherService.publishInvoiceJobs(shipped);
+        }
+        // the loaded orders are stale after the set-based update; keep them out of later reads
+        entityManager.flush();
+        entityManager.clear();
+        metrics.record(OperationMetrics.Operation.ORDER_STATUS_CHANGE_BATCH, start);
+        return Arrays.asList(results);
+    }
+
+    private static OrderStatus parseStatus(String status) {
+        if (status == null) {
+            return null;
+        }
+        try {
+            return OrderStatus.valueOf(status);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
     public Optional<Order> findById(UUID id) {
         return orderRepository.findById(id);
     }
-}
 
+    /**
+     * Read path for {@code GET /orders/{id}}: served from the read cache, loading and caching a
+     * snapshot on a miss. Deliberately not transactional so cache hits never take a connection.
+     */
+    public Optional<OrderView> getOrder(UUID id) {
+        long start = System.nanoTime();
+        try {
+            OrderView cached = orderCache.get(id);
+            if (cached != null) {
+                return Optional.of(cached);
+            }
+            Optional<OrderView> loaded = orderRepository.findById(id).map(OrderView::of);
+            loaded.ifPresent(v -> orderCache.put(id, v));
+            return loaded;
+        } finally {
+            metrics.record(OperationMetrics.Operation.ORDER_READ, start);
+        }
+    }
+
+    /**
+     * Immutable snapshot of an order as served by the read endpoints.
+     */
+    public static class OrderView {
+        public final UUID id;
+        public final String externalId;
+        public final String customerEmail;
+        public final BigDecimal totalAmount;
+        public final OrderStatus status;
+        public final OffsetDateTime createdAt;
+        public final OffsetDateTime updatedAt;
+        public final long version;
+
+        private OrderView(Order o) {
+            this.id = o.getId();
+            this.externalId = o.getExternalId();
+            this.customerEmail = o.getCustomerEmail();
+            this.totalAmount = o.getTotalAmount();
+            this.status = o.getStatus();
+            this.createdAt = o.getCreatedAt();
+            this.updatedAt = o.getUpdatedAt();
+            this.version = o.getVersion() != null ? o.getVersion() : -1L;
+        }
+
+        public static OrderView of(Order o) {
+            return new OrderView(o);
+        }
+    }
+
+    public static class StatusChange {
+        public UUID orderId;
+        public String status;
+
+        public StatusChange() {
+        }
+
+        public StatusChange(UUID orderId, String status) {
+            this.orderId = orderId;
+            this.status = status;
+        }
+    }
+
+    public static class TransitionResult {
+        public UUID orderId;
+        public OrderStatus fromStatus;
+        public String toStatus;
+        public String result;
+        public String error;
+
+        static TransitionResult of(UUID orderId, OrderStatus from, OrderStatus to, String result) {
+            TransitionResult r = new TransitionResult();
+            r.orderId = orderId;
+            r.fromStatus = from;
+            r.toStatus = to.name();
+            r.result = result;
+            return r;
+        }
+
+        static TransitionResult rejected(UUID orderId, String to, String error) {
+            TransitionResult r = new TransitionResult();
+            r.orderId = orderId;
+            r.toStatus = to;
+            r.result = "REJECTED";
+            r.error = error;
+            return r;
+        }
+    }
+}
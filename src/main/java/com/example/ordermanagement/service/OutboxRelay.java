@@ -0,0 +1,142 @@
+package com.example.ordermanagement.service;
+
+import com.example.ordermanagement.domain.JobStatus;
+import com.example.ordermanagement.domain.OutboxMessage;
+import com.example.ordermanagement.domain.OutboxStatus;
+import com.example.ordermanagement.messaging.JobTransport;
+import com.example.ordermanagement.messaging.TransportUnavailableException;
+import com.example.ordermanagement.repository.JobLogRepository;
+import com.example.ordermanagement.repository.OutboxMessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Drains the job outbox. Each pass claims a batch of pending rows (SKIP LOCKED, so several
+ * nodes can relay in parallel), hands it to the {@link JobTransport} (with Rabbit: one channel
+ * and one wait for publisher confirms) and then marks the whole batch sent with a single UPDATE.
+ * <p>
+ * A failed batch is held back with exponential backoff ({@code retry-initial-ms} doubling up to
+ * {@code retry-max-ms}) before it is claimed again. When the transport is unavailable (no
+ * broker, confirm timeout, full ring) the failure does not count as an attempt, and the backoff
+ * grows with the run of such failures on this node, so an outage of any length delays jobs but
+ * never fails them. Any other failure counts, and a batch that fails {@code max-attempts} times is
+ * given up: its rows become FAILED and their jobs, which never reached a listener, FAILED too.
+ * Sent rows of finished jobs are deleted once they are {@code retention-ms} old.
+ */
+@Component
+public class OutboxRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final OutboxMessageRepository outboxRepository;
+    private final JobLogRepository jobLogRepository;
+    private final JobTransport jobTransport;
+    private final TransactionTemplate transactionTemplate;
+    private final OperationMetrics metrics;
+
+    @Value("${app.outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.outbox.max-attempts:10}")
+    private int maxAttempts = 10;
+
+    @Value("${app.outbox.retry-initial-ms:1000}")
+    private long retryInitialMs = 1000;
+
+    @Value("${app.outbox.retry-max-ms:60000}")
+    private long retryMaxMs = 60_000;
+
+    // consecutive passes that found the transport unavailable; only the scheduler thread relays
+    private int unavailableStreak;
+
+    @Value("${app.outbox.retention-ms:86400000}")
+    private long retentionMs = 86_400_000L;
+
+    public OutboxRelay(OutboxMessageRepository outboxRepository, JobLogRepository jobLogRepository, JobTransport jobTransport,
+                       PlatformTransactionManager transactionManager, OperationMetrics metrics) {
+        this.outboxRepository = outboxRepository;
+        this.jobLogRepository = jobLogRepository;
+        this.jobTransport = jobTransport;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.metrics = metrics;
+    }
+
+    @Scheduled(fixedDelayString = "${app.outbox.poll-interval-ms:200}")
+    public void relayPending() {
+        int relayed;
+        do {
+            Integer n = transactionTemplate.execute(status -> relayBatch());
+            relayed = n != null ? n : 0;
+        } while (relayed == batchSize);
+    }
+
+    @Scheduled(fixedDelayString = "${app.outbox.purge-interval-ms:60000}")
+    public void purgeSent() {
+        Integer purged = transactionTemplate.execute(status -> outboxRepository.purgeSent(OutboxStatus.SENT,
+                OffsetDateTime.now().minus(retentionMs, ChronoUnit.MILLIS), EnumSet.of(JobStatus.SUCCESS, JobStatus.FAILED)));
+        if (purged != null && purged > 0) {
+            log.debug("Purged {} sent outbox messages", purged);
+        }
+    }
+
+    /**
+     * Publishes one claimed batch. Returns the number of rows marked sent; a failed batch
+     * stays pending and is claimed again once its backoff has passed.
+     */
+    int relayBatch() {
+        OffsetDateTime now = OffsetDateTime.now();
+        List<OutboxMessage> batch = outboxRepository.claimBatch(OutboxStatus.PENDING, now, PageRequest.of(0, batchSize));
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        List<UUID> ids = new ArrayList<>(batch.size());
+        int attempts = 0;
+        for (OutboxMessage m : batch) {
+            ids.add(m.getId());
+            attempts = Math.max(attempts, m.getAttempts());
+        }
+        try {
+            jobTransport.send(batch);
+        } catch (TransportUnavailableException e) {
+            long delayMs = backoffMs(++unavailableStreak);
+            log.warn("Job transport unavailable, holding {} outbox messages back for {} ms: {}", batch.size(), delayMs, e.getMessage());
+            outboxRepository.recordFailure(ids, 0, e.getMessage(), now.plus(delayMs, ChronoUnit.MILLIS));
+            return 0;
+        } catch (RuntimeException e) {
+            long delayMs = backoffMs(attempts + 1);
+            log.warn("Outbox relay failed to publish {} messages (attempt {}), retrying in {} ms: {}",
+                    batch.size(), attempts + 1, delayMs, e.getMessage());
+            outboxRepository.recordFailure(ids, 1, e.getMessage(), now.plus(delayMs, ChronoUnit.MILLIS));
+            int exhausted = outboxRepository.markExhausted(ids, maxAttempts, OutboxStatus.FAILED);
+            if (exhausted > 0) {
+                jobLogRepository.updateByOutboxStatus(ids, OutboxStatus.FAILED, JobStatus.PENDING, JobStatus.FAILED,
+                        "Job message could not be published: " + e.getMessage());
+                log.error("Gave up publishing {} outbox messages after {} attempts", exhausted, maxAttempts);
+            }
+            return 0;
+        }
+        unavailableStreak = 0;
+        outboxRepository.markSent(ids, OutboxStatus.SENT, OffsetDateTime.now());
+        metrics.record(OperationMetrics.Operation.OUTBOX_RELAY, start);
+        log.debug("Relayed {} outbox messages", batch.size());
+        return batch.size();
+    }
+
+    private long backoffMs(int failures) {
+        return Math.min(retryMaxMs, retryInitialMs << Math.min(failures - 1, 20));
+    }
+}
@@ -1,62 +1,48 @@
 package com.example.ordermanagement.service;
 
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.PDPageContentStream;
-import org.apache.pdfbox.pdmodel.common.PDRectangle;
-import org.apache.pdfbox.pdmodel.font.PDType1Font;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.time.OffsetDateTime;
 import java.util.UUID;
+import java.util.zip.CRC32C;
 
+/**
+ * Renders invoices from a pre-built {@link InvoicePdfTemplate} straight into the channel the
+ * {@link InvoiceStore} hands out. No document model or intermediate byte array is built per
+ * invoice; callers get back only the file's metadata.
+ */
 @Service
 public class PdfService {
 
-    @Value("${app.invoices.path:${java.io.tmpdir}/invoices}")
-    private String invoicesPath;
+    private static final ThreadLocal<CRC32C> CRC = ThreadLocal.withInitial(CRC32C::new);
 
-    public byte[] generateInvoicePdf(UUID orderId, String customerEmail) throws IOException {
-        PDDocument doc = new PDDocument();
-        PDPage page = new PDPage(PDRectangle.LETTER);
-        doc.addPage(page);
+    private final InvoicePdfTemplate template = new InvoicePdfTemplate();
+    private final InvoiceStore invoiceStore;
+    private final OperationMetrics metrics;
 
-        try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
-            cs.beginText();
-            cs.setFont(PDType1Font.HELVETICA_BOLD, 18);
-            cs.newLineAtOffset(50, 700);
-            cs.showText("ArtiCurated - Invoice");
-            cs.endText();
-
-            cs.beginText();
-            cs.setFont(PDType1Font.HELVETICA, 12);
-            cs.newLineAtOffset(50, 660);
-            cs.showText("Order: " + orderId.toString());
-            cs.newLineAtOffset(0, -15);
-            cs.showText("Customer: " + customerEmail);
-            cs.newLineAtOffset(0, -15);
-            cs.showText("Date: " + OffsetDateTime.now().toString());
-            cs.endText();
-        }
-
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        doc.save(baos);
-        doc.close();
+    public PdfService(InvoiceStore invoiceStore, OperationMetrics metrics) {
+        this.invoiceStore = invoiceStore;
+        this.metrics = metrics;
+    }
 
-        // persist to filesystem for now
-        File dir = new File(invoicesPath);
-        if (!dir.exists()) dir.mkdirs();
-        File out = new File(dir, orderId + ".pdf");
-        try (FileOutputStream fos = new FileOutputStream(out)) {
-            fos.write(baos.toByteArray());
+    /**
+     * Renders and stores the invoice of {@code orderId}. The page uses the PDF standard fonts
+     * with WinAnsiEncoding, so text is limited to Latin-1: any other character in
+     * {@code customerEmail} (e.g. in an internationalized address) is printed as {@code ?}.
+     * The invoice is still produced; a job never fails over it.
+     */
+    public InvoicePdf generateInvoicePdf(UUID orderId, String customerEmail) throws IOException {
+        long start = System.nanoTime();
+        try {
+            CRC32C crc = CRC.get();
+            String date = OffsetDateTime.now().toString();
+            long[] size = new long[1];
+            Path out = invoiceStore.write(orderId, ch -> size[0] = template.render(ch, crc, orderId.toString(), customerEmail, date));
+            return new InvoicePdf(orderId, out, size[0], crc.getValue());
+        } finally {
+            metrics.record(OperationMetrics.Operation.INVOICE_RENDER, start);
         }
-
-        return baos.toByteArray();
     }
 }
-
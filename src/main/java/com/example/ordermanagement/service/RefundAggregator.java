@@ -0,0 +1,143 @@
+package com.example.ordermanagement.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces single refund requests into gateway batch calls. Requests are buffered until
+ * {@code max-items} are waiting or the oldest has waited {@code max-wait-ms}; the buffer is then
+ * grouped by currency and each group goes out as one {@link RefundClient#processRefundsAsync}
+ * call. Every caller gets back its own future, completed with the response at its position in
+ * the batch.
+ */
+@Component
+public class RefundAggregator {
+
+    private static final Logger log = LoggerFactory.getLogger(RefundAggregator.class);
+
+    private final RefundClient refundClient;
+    private final int maxItems;
+    private final long maxWaitMs;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "refund-aggregator");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Object lock = new Object();
+    private List<Pending> buffer = new ArrayList<>();
+    private ScheduledFuture<?> deadline;
+
+    public RefundAggregator(RefundClient refundClient,
+                            @Value("${app.jobs.refund.aggregation.max-items:50}") int maxItems,
+                            @Value("${app.jobs.refund.aggregation.max-wait-ms:50}") long maxWaitMs) {
+        this.refundClient = refundClient;
+        this.maxItems = Math.max(1, maxItems);
+        this.maxWaitMs = maxWaitMs;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        timer.shutdown();
+    }
+
+    public CompletableFuture<RefundClient.RefundResponse> submit(RefundClient.RefundRequestDto request) {
+        Pending pending = new Pending(request);
+        List<Pending> full = null;
+        synchronized (lock) {
+            buffer.add(pending);
+            if (buffer.size() >= maxItems) {
+                full = drain();
+            } else if (deadline == null) {
+                deadline = timer.schedule(this::flush, maxWaitMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            dispatch(full);
+        }
+        return pending.result;
+    }
+
+    void flush() {
+        List<Pending> batch;
+        synchronized (lock) {
+            batch = drain();
+        }
+        dispatch(batch);
+    }
+
+    private List<Pending> drain() {
+        List<Pending> batch = buffer;
+        buffer = new ArrayList<>();
+        if (deadline != null) {
+            deadline.cancel(false);
+            deadline = null;
+        }
+        return batch;
+    }
+
+    private void dispatch(List<Pending> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Map<String, List<Pending>> byCurrency = new LinkedHashMap<>();
+        for (Pending p : batch) {
+            byCurrency.computeIfAbsent(p.request.currency, k -> new ArrayList<>()).add(p);
+        }
+        for (Map.Entry<String, List<Pending>> group : byCurrency.entrySet()) {
+            send(group.getKey(), group.getValue());
+        }
+    }
+
+    private void send(String currency, List<Pending> group) {
+        List<RefundClient.RefundRequestDto> requests = new ArrayList<>(group.size());
+        for (Pending p : group) {
+            requests.add(p.request);
+        }
+        CompletableFuture<List<RefundClient.RefundResponse>> call;
+        try {
+            call = refundClient.processRefundsAsync(requests);
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((responses, error) -> {
+            if (error == null && responses.size() != group.size()) {
+                error = new RefundClient.RefundException("Gateway returned " + responses.size()
+                        + " results for a batch of " + group.size());
+            }
+            if (error != null) {
+                log.warn("Refund batch of {} {} item(s) failed: {}", group.size(), currency, error.getMessage());
+                for (Pending p : group) {
+                    p.result.completeExceptionally(error);
+                }
+                return;
+            }
+            for (int i = 0; i < group.size(); i++) {
+                group.get(i).result.complete(responses.get(i));
+            }
+        });
+    }
+
+    private static final class Pending {
+        final RefundClient.RefundRequestDto request;
+        final CompletableFuture<RefundClient.RefundResponse> result = new CompletableFuture<>();
+
+        Pending(RefundClient.RefundRequestDto request) {
+            this.request = request;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.ordermanagement.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker for the refund gateway over a sliding window of the last
+ * {@code window-size} call outcomes. Once at least {@code minimum-calls} are in the window
+ * and {@code failure-rate-threshold} percent of them failed, it opens: calls are refused
+ * without reaching the gateway for {@code open-ms}. Then up to {@code half-open-calls} trial
+ * calls go through; if they all succeed it closes with an empty window, and the first failure
+ * opens it again. Declined refunds are answers, not failures; only errors and timeouts count.
+ * <p>
+ * Every call carries the {@link Admission} it was let through with, and its outcome counts only
+ * if the breaker has not changed state since: a slow call admitted before the circuit opened
+ * cannot close or reopen it as if it were a trial.
+ */
+@Component
+public class RefundCircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(RefundCircuitBreaker.class);
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final boolean[] window;
+    private final int minimumCalls;
+    private final int failureRatePercent;
+    private final long openNanos;
+    private final int halfOpenCalls;
+
+    // all guarded by this
+    private State state = State.CLOSED;
+    private int next;
+    private int recorded;
+    private int failures;
+    private long openUntil;
+    private int trialsStarted;
+    private int trialsSucceeded;
+    private long opened;
+    // bumped on every state change; outcomes of calls admitted in an earlier epoch are ignored
+    private long epoch;
+
+    public RefundCircuitBreaker(@Value("${app.jobs.refund.resilience.breaker.window-size:50}") int windowSize,
+                                @Value("${app.jobs.refund.resilience.breaker.minimum-calls:20}") int minimumCalls,
+                                @Value("${app.jobs.refund.resilience.breaker.failure-rate-threshold:50}") int failureRatePercent,
+                                @Value("${app.jobs.refund.resilience.breaker.open-ms:30000}") long openMs,
+                                @Value("${app.jobs.refund.resilience.breaker.half-open-calls:5}") int halfOpenCalls) {
+        this.window = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, window.length));
+        this.failureRatePercent = failureRatePercent;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+    }
+
+    /**
+     * Lets a call go ahead now (taking a trial slot when half-open), or says how many
+     * milliseconds until calls are let through again. The outcome of an allowed call is
+     * reported with the returned admission.
+     */
+    public synchronized Admission tryAcquire() {
+        long now = System.nanoTime();
+        if (state == State.OPEN) {
+            if (now - openUntil < 0) {
+                return new Admission(epoch, Math.max(1, TimeUnit.NANOSECONDS.toMillis(openUntil - now)));
+            }
+            state = State.HALF_OPEN;
+            epoch++;
+            trialsStarted = 0;
+            trialsSucceeded = 0;
+            log.info("Refund gateway circuit half-open; letting {} trial call(s) through", halfOpenCalls);
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialsStarted >= halfOpenCalls) {
+                // trials still running; check back shortly
+                return new Admission(epoch, Math.max(1, TimeUnit.NANOSECONDS.toMillis(openNanos) / 10));
+            }
+            trialsStarted++;
+        }
+        return new Admission(epoch, 0);
+    }
+
+    /**
+     * Milliseconds until calls are let through again, or 0 if they would be now. Takes no
+     * trial slot.
+     */
+    public synchronized long rejectingForMs() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        long remaining = openUntil - System.nanoTime();
+        return remaining > 0 ? Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)) : 0;
+    }
+
+    public synchronized void onSuccess(Admission admission) {
+        if (admission.epoch != epoch) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            if (++trialsSucceeded >= halfOpenCalls) {
+                state = State.CLOSED;
+                epoch++;
+                next = 0;
+                recorded = 0;
+                failures = 0;
+                log.info("Refund gateway circuit closed");
+            }
+            return;
+        }
+        if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    /**
+     * The call admitted by {@link #tryAcquire} was not made after all; frees its trial slot.
+     */
+    public synchronized void onNotCalled(Admission admission) {
+        if (admission.epoch == epoch && state == State.HALF_OPEN && trialsStarted > 0) {
+            trialsStarted--;
+        }
+    }
+
+    public synchronized void onFailure(Admission admission) {
+        if (admission.epoch != epoch) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        if (state == State.CLOSED) {
+            record(true);
+            if (recorded >= minimumCalls && failures * 100 >= failureRatePercent * recorded) {
+                open();
+            }
+        }
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    /** Times the breaker has opened since startup. */
+    public synchronized long openedCount() {
+        return opened;
+    }
+
+    private void record(boolean failed) {
+        if (recorded == window.length) {
+            if (window[next]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        window[next] = failed;
+        if (failed) {
+            failures++;
+        }
+        next = (next + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        epoch++;
+        openUntil = System.nanoTime() + openNanos;
+        opened++;
+        log.warn("Refund gateway circuit open for {} ms ({} of the last {} calls failed)",
+                TimeUnit.NANOSECONDS.toMillis(openNanos), failures, recorded);
+    }
+
+    /**
+     * The breaker's answer to {@link #tryAcquire}.
+     */
+    public static final class Admission {
+        private final long epoch;
+        // 0 when the call may go ahead
+        public final long retryAfterMs;
+
+        Admission(long epoch, long retryAfterMs) {
+            this.epoch = epoch;
+            this.retryAfterMs = retryAfterMs;
+        }
+
+        public boolean allowed() {
+            return retryAfterMs == 0;
+        }
+    }
+}
@@ -1,10 +1,47 @@
 package com.example.ordermanagement.service;
 
-import com.example.ordermanagement.domain.ReturnRequest;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface RefundClient {
     RefundResponse processRefund(RefundRequestDto request) throws RefundException;
 
+    /**
+     * Non-blocking variant of {@link #processRefund}. The future completes with the gateway's
+     * response, or exceptionally with a {@link RefundException} (possibly wrapped in a
+     * {@link java.util.concurrent.CompletionException}). Clients that can make the call without
+     * tying up the calling thread should override this; the default calls {@link #processRefund}
+     * on the calling thread and returns the settled future, so a listener using it holds one
+     * consumer thread per call in flight.
+     */
+    default CompletableFuture<RefundResponse> processRefundAsync(RefundRequestDto request) {
+        try {
+            return CompletableFuture.completedFuture(processRefund(request));
+        } catch (RefundException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Submits several refunds as one gateway batch call. All requests must share a currency.
+     * The returned list holds one response per request, in request order; each item keeps its
+     * own idempotency key so a retried batch cannot refund an item twice.
+     */
+    List<RefundResponse> processRefunds(List<RefundRequestDto> requests) throws RefundException;
+
+    /**
+     * Non-blocking variant of {@link #processRefunds}, with the same ordering guarantees. The
+     * default calls {@link #processRefunds} on the calling thread, like
+     * {@link #processRefundAsync}.
+     */
+    default CompletableFuture<List<RefundResponse>> processRefundsAsync(List<RefundRequestDto> requests) {
+        try {
+            return CompletableFuture.completedFuture(processRefunds(requests));
+        } catch (RefundException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     class RefundRequestDto {
         public String paymentReference;
         public String idempotencyKey;
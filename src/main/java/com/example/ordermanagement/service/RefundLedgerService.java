@@ -0,0 +1,150 @@
+package com.example.ordermanagement.service;
+
+import com.example.ordermanagement.domain.RefundLedgerStatus;
+import com.example.ordermanagement.repository.OrderRepository;
+import com.example.ordermanagement.repository.RefundLedgerRepository;
+import com.example.ordermanagement.repository.RefundLedgerRepository.Balance;
+import com.example.ordermanagement.repository.RefundLedgerRepository.Entry;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+/**
+ * Partial refunds against an order, possibly over several returns. Each order has a running
+ * balance (refundable, reserved, refunded, in minor currency units) created from its total when
+ * its first return is opened (or, for older returns, on first reservation). A refund job reserves its amount before the gateway call, only if the balance
+ * still covers it; the outcome then settles the reservation into the refunded amount or
+ * releases it. Reading what is left to refund is a single-row lookup.
+ * <p>
+ * Every method except {@link #balance} runs in the caller's transaction, so ledger and job
+ * status commit together; a job keeps its reservation across retries.
+ */
+@Service
+public class RefundLedgerService {
+
+    private final RefundLedgerRepository ledgerRepository;
+    private final OrderRepository orderRepository;
+
+    public RefundLedgerService(RefundLedgerRepository ledgerRepository, OrderRepository orderRepository) {
+        this.ledgerRepository = ledgerRepository;
+        this.orderRepository = orderRepository;
+    }
+
+    /**
+     * Converts a decimal amount with at most two decimal places to minor units.
+     */
+    public static long toMinor(BigDecimal amount) {
+        try {
+            return amount.setScale(2, RoundingMode.UNNECESSARY).movePointRight(2).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount must have at most two decimal places: " + amount);
+        }
+    }
+
+    /**
+     * The order's refund balance, or empty when the order does not exist.
+     */
+    public Optional<Balance> balance(UUID orderId) {
+        Balance balance = ledgerRepository.findBalance(orderId);
+        if (balance != null) {
+            return Optional.of(balance);
+        }
+        return orderRepository.findById(orderId)
+                .map(o -> new Balance(orderId, o.getTotalAmount() != null ? toMinor(o.getTotalAmount()) : 0L, 0L, 0L));
+    }
+
+    /**
+     * Creates the order's balance row if it has none yet and returns the balance, or empty
+     * when the order does not exist.
+     */
+    public Optional<Balance> openBalance(UUID orderId) {
+        if (!createBalance(orderId)) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(ledgerRepository.findBalance(orderId));
+    }
+
+    /**
+     * Reserves the amount of refund job {@code jobId}: {@code amountMinor}, or whatever is left
+     * on the order when null. Returns the reserved amount (that of the job's earlier
+     * reservation when it is retried), or empty when the balance does not cover it.
+     */
+    public OptionalLong reserve(UUID jobId, UUID orderId, UUID returnRequestId, Long amountMinor, String currency) {
+        Entry entry = ledgerRepository.findEntry(jobId);
+        if (entry != null) {
+            if (entry.status != RefundLedgerStatus.RELEASED) {
+                return OptionalLong.of(entry.amountMinor);
+            }
+            if (!reserveBalance(orderId, entry.amountMinor)) {
+                // another delivery of the job may have re-reserved it meanwhile and taken the room
+                Entry current = ledgerRepository.findEntry(jobId);
+                return current.status != RefundLedgerStatus.RELEASED ? OptionalLong.of(current.amountMinor) : OptionalLong.empty();
+            }
+            if (!ledgerRepository.moveEntry(jobId, RefundLedgerStatus.RELEASED, RefundLedgerStatus.RESERVED, null)) {
+                // another delivery of the job re-reserved it first and holds the amount
+                ledgerRepository.release(orderId, entry.amountMinor);
+            }
+            return OptionalLong.of(entry.amountMinor);
+        }
+        long amount;
+        if (amountMinor != null) {
+            amount = amountMinor;
+        } else {
+            amount = balance(orderId).map(b -> b.remainingMinor).orElse(0L);
+        }
+        if (amount == 0) {
+            // nothing to hold; still goes to the gateway so the return can complete
+            return OptionalLong.of(0L);
+        }
+        if (amount < 0 || !reserveBalance(orderId, amount)) {
+            return OptionalLong.empty();
+        }
+        ledgerRepository.insertReserved(orderId, returnRequestId, jobId, amount, currency);
+        return OptionalLong.of(amount);
+    }
+
+    /**
+     * Records the job's refund as done: its reservation becomes refunded. Does nothing when the
+     * job holds no reservation (a zero amount, or already settled).
+     */
+    public void settle(UUID jobId, String gatewayReference) {
+        Entry entry = ledgerRepository.findEntry(jobId);
+        if (entry != null && ledgerRepository.moveEntry(jobId, RefundLedgerStatus.RESERVED, RefundLedgerStatus.SETTLED, gatewayReference)) {
+            ledgerRepository.settle(entry.orderId, entry.amountMinor);
+        }
+    }
+
+    /**
+     * Gives the job's reservation back after the refund failed for good.
+     */
+    public void release(UUID jobId) {
+        Entry entry = ledgerRepository.findEntry(jobId);
+        if (entry != null && ledgerRepository.moveEntry(jobId, RefundLedgerStatus.RESERVED, RefundLedgerStatus.RELEASED, null)) {
+            ledgerRepository.release(entry.orderId, entry.amountMinor);
+        }
+    }
+
+    private boolean reserveBalance(UUID orderId, long amount) {
+        if (ledgerRepository.reserve(orderId, amount)) {
+            return true;
+        }
+        if (ledgerRepository.findBalance(orderId) != null) {
+            return false;
+        }
+        return createBalance(orderId) && ledgerRepository.reserve(orderId, amount);
+    }
+
+    // the refundable amount is the order total, converted here like every other amount
+    private boolean createBalance(UUID orderId) {
+        Optional<BigDecimal> total = ledgerRepository.lockOrderTotal(orderId);
+        if (total.isEmpty()) {
+            return false;
+        }
+        ledgerRepository.createBalanceIfAbsent(orderId, toMinor(total.get()));
+        return true;
+    }
+}
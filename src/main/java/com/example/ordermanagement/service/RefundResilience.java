@@ -0,0 +1,407 @@
+package com.example.ordermanagement.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Guards calls to the refund gateway, whoever makes them (applied to the {@code RefundClient}
+ * bean by {@link com.example.ordermanagement.config.RefundClientConfig}):
+ * <ul>
+ *     <li>the {@link RefundCircuitBreaker} refuses calls while the gateway is failing;</li>
+ *     <li>a bulkhead caps gateway calls in flight (hedges included) at
+ *     {@code max-concurrent-calls}; a call that finds no permit within {@code max-wait-ms} is
+ *     refused. A call's permit comes back when the gateway answers or at the deadline,
+ *     whichever is first, so a hanging gateway cannot use up the bulkhead;</li>
+ *     <li>every call, single or batch, fails with a {@link RefundClient.RefundException} once
+ *     {@code timeout-ms} has passed. The gateway may still carry it out, so the retry that
+ *     follows must reuse the idempotency key;</li>
+ *     <li>with {@code hedge.enabled}, a single refund still open after the
+ *     {@code hedge.percentile} latency of recent successful calls (at least
+ *     {@code hedge.min-delay-ms}) is sent a second time, with the same idempotency key, and the
+ *     first success wins. Batches are never hedged.</li>
+ * </ul>
+ * Refused calls fail with {@link CallRejectedException} without reaching the gateway, so
+ * callers can park the job instead of spending one of its attempts. Blocking calls go through
+ * the gateway's async API.
+ */
+@Component
+public class RefundResilience {
+
+    // successful call latencies kept for the hedge delay, and how often it is recomputed
+    private static final int LATENCY_SAMPLES = 512;
+    private static final int HEDGE_MIN_SAMPLES = 32;
+    private static final int HEDGE_RECOMPUTE_EVERY = 64;
+
+    private final RefundCircuitBreaker breaker;
+    private final long timeoutMs;
+    private final int maxConcurrentCalls;
+    private final Semaphore bulkhead;
+    private final long maxWaitMs;
+    private final boolean hedge;
+    private final double hedgePercentile;
+    private final long hedgeMinDelayNanos;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "refund-resilience");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // guarded by latencies
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private long latencyCount;
+    // Long.MAX_VALUE until enough samples are in
+    private volatile long hedgeDelayNanos = Long.MAX_VALUE;
+
+    private final LongAdder breakerRejections = new LongAdder();
+    private final LongAdder bulkheadRejections = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder hedgesSent = new LongAdder();
+    private final LongAdder hedgesWon = new LongAdder();
+
+    public RefundResilience(RefundCircuitBreaker breaker,
+                            @Value("${app.jobs.refund.resilience.timeout-ms:5000}") long timeoutMs,
+                            @Value("${app.jobs.refund.resilience.bulkhead.max-concurrent-calls:64}") int maxConcurrentCalls,
+                            @Value("${app.jobs.refund.resilience.bulkhead.max-wait-ms:0}") long maxWaitMs,
+                            @Value("${app.jobs.refund.resilience.hedge.enabled:false}") boolean hedge,
+                            @Value("${app.jobs.refund.resilience.hedge.percentile:95}") double hedgePercentile,
+                            @Value("${app.jobs.refund.resilience.hedge.min-delay-ms:50}") long hedgeMinDelayMs) {
+        this.breaker = breaker;
+        this.timeoutMs = timeoutMs;
+        this.maxConcurrentCalls = Math.max(1, maxConcurrentCalls);
+        this.bulkhead = new Semaphore(this.maxConcurrentCalls);
+        this.maxWaitMs = maxWaitMs;
+        this.hedge = hedge;
+        this.hedgePercentile = Math.min(100, Math.max(0, hedgePercentile));
+        this.hedgeMinDelayNanos = TimeUnit.MILLISECONDS.toNanos(hedgeMinDelayMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Wraps {@code gateway} with the breaker, bulkhead, deadline and hedging.
+     */
+    public RefundClient decorate(RefundClient gateway) {
+        return new GuardedRefundClient(gateway);
+    }
+
+    /**
+     * Milliseconds until the breaker lets calls through again, or 0 if it would now.
+     */
+    public long rejectingForMs() {
+        return breaker.rejectingForMs();
+    }
+
+    public Stats stats() {
+        Stats s = new Stats();
+        s.breakerState = breaker.state();
+        s.breakerOpened = breaker.openedCount();
+        s.breakerRejections = breakerRejections.sum();
+        s.bulkheadRejections = bulkheadRejections.sum();
+        s.inFlight = maxConcurrentCalls - bulkhead.availablePermits();
+        s.timeouts = timeouts.sum();
+        s.hedgesSent = hedgesSent.sum();
+        s.hedgesWon = hedgesWon.sum();
+        long delay = hedgeDelayNanos;
+        s.hedgeDelayMs = delay == Long.MAX_VALUE ? -1 : TimeUnit.NANOSECONDS.toMillis(delay);
+        return s;
+    }
+
+    /**
+     * Takes a breaker slot and a bulkhead permit, or throws why the call is refused.
+     */
+    private RefundCircuitBreaker.Admission admit() throws CallRejectedException {
+        RefundCircuitBreaker.Admission admission = breaker.tryAcquire();
+        if (!admission.allowed()) {
+            breakerRejections.increment();
+            throw new CallRejectedException("Refund gateway circuit is open", admission.retryAfterMs);
+        }
+        boolean permitted;
+        try {
+            permitted = maxWaitMs > 0 ? bulkhead.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS) : bulkhead.tryAcquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            permitted = false;
+        }
+        if (!permitted) {
+            bulkheadRejections.increment();
+            breaker.onNotCalled(admission);
+            throw new CallRejectedException("Refund gateway bulkhead is full", Math.max(1, maxWaitMs));
+        }
+        return admission;
+    }
+
+    /**
+     * Applies the deadline to {@code call} and feeds its outcome to the breaker. The call's
+     * bulkhead permits are given back before the returned future completes.
+     */
+    private <T> CompletableFuture<T> guard(CompletableFuture<T> call, RefundCircuitBreaker.Admission admission, Permits permits) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        call.orTimeout(timeoutMs, TimeUnit.MILLISECONDS).whenComplete((r, e) -> {
+            permits.releaseAll();
+            if (e == null) {
+                breaker.onSuccess(admission);
+                result.complete(r);
+                return;
+            }
+            breaker.onFailure(admission);
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof TimeoutException) {
+                timeouts.increment();
+                result.completeExceptionally(new RefundClient.RefundException("Refund gateway call timed out after " + timeoutMs + " ms"));
+            } else {
+                result.completeExceptionally(cause);
+            }
+        });
+        return result;
+    }
+
+    private void recordLatency(long nanos) {
+        long delay;
+        synchronized (latencies) {
+            latencies[(int) (latencyCount++ % LATENCY_SAMPLES)] = nanos;
+            if (latencyCount < HEDGE_MIN_SAMPLES || latencyCount % HEDGE_RECOMPUTE_EVERY != 0 && latencyCount != HEDGE_MIN_SAMPLES) {
+                return;
+            }
+            long[] sorted = Arrays.copyOf(latencies, (int) Math.min(latencyCount, LATENCY_SAMPLES));
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(hedgePercentile / 100 * sorted.length) - 1;
+            delay = sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+        hedgeDelayNanos = Math.max(hedgeMinDelayNanos, delay);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws RefundClient.RefundException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RefundClient.RefundException("Interrupted waiting for the refund gateway", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RefundClient.RefundException re) {
+                throw re;
+            }
+            throw new RefundClient.RefundException(String.valueOf(e.getCause().getMessage()), e.getCause());
+        }
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable t) {
+        CompletableFuture<T> f = new CompletableFuture<>();
+        f.completeExceptionally(t);
+        return f;
+    }
+
+    /**
+     * One bulkhead permit, given back exactly once: when the gateway answers, or when the
+     * guarded call settles first (deadline passed, or a hedged copy won) while the gateway
+     * call is still open.
+     */
+    private final class Permit {
+        private final AtomicBoolean held = new AtomicBoolean(true);
+
+        void release() {
+            if (held.compareAndSet(true, false)) {
+                bulkhead.release();
+            }
+        }
+    }
+
+    /**
+     * The permits of one guarded call and its hedge.
+     */
+    private final class Permits {
+        private final List<Permit> taken = new ArrayList<>(2);
+        private boolean settled;
+
+        /**
+         * Tracks a permit just taken from the bulkhead, or gives it back and returns null when
+         * the call has already settled.
+         */
+        synchronized Permit add() {
+            Permit permit = new Permit();
+            if (settled) {
+                permit.release();
+                return null;
+            }
+            taken.add(permit);
+            return permit;
+        }
+
+        synchronized void releaseAll() {
+            settled = true;
+            for (Permit permit : taken) {
+                permit.release();
+            }
+        }
+    }
+
+    /**
+     * A call refused by the breaker or the bulkhead; it never reached the gateway.
+     */
+    public static class CallRejectedException extends RefundClient.RefundException {
+        private final long retryAfterMs;
+
+        public CallRejectedException(String message, long retryAfterMs) {
+            super(message);
+            this.retryAfterMs = retryAfterMs;
+        }
+
+        public long retryAfterMs() {
+            return retryAfterMs;
+        }
+    }
+
+    public class GuardedRefundClient implements RefundClient {
+
+        private final RefundClient gateway;
+
+        GuardedRefundClient(RefundClient gateway) {
+            this.gateway = gateway;
+        }
+
+        @Override
+        public RefundResponse processRefund(RefundRequestDto request) throws RefundException {
+            return await(processRefundAsync(request));
+        }
+
+        @Override
+        public CompletableFuture<RefundResponse> processRefundAsync(RefundRequestDto request) {
+            RefundCircuitBreaker.Admission admission;
+            try {
+                admission = admit();
+            } catch (CallRejectedException e) {
+                return failed(e);
+            }
+            Permits permits = new Permits();
+            Permit primary = permits.add();
+            CompletableFuture<RefundResponse> first = new CompletableFuture<>();
+            CompletableFuture<RefundResponse> guarded = guard(first, admission, permits);
+            AtomicInteger outstanding = new AtomicInteger(1);
+            AtomicReference<Throwable> lastError = new AtomicReference<>();
+            AtomicBoolean answered = new AtomicBoolean();
+            send(request, first, primary, outstanding, lastError, answered, false);
+            long delay = hedgeDelayNanos;
+            if (hedge && delay != Long.MAX_VALUE) {
+                timer.schedule(() -> {
+                    // only while the breaker is closed and a permit is free right now
+                    if (first.isDone() || breaker.state() != RefundCircuitBreaker.State.CLOSED || !bulkhead.tryAcquire()) {
+                        return;
+                    }
+                    Permit permit = permits.add();
+                    if (permit == null) {
+                        // the deadline passed in the meantime
+                        return;
+                    }
+                    if (outstanding.getAndIncrement() == 0) {
+                        // the primary failed in the meantime and settled the result
+                        permit.release();
+                        return;
+                    }
+                    hedgesSent.increment();
+                    send(request, first, permit, outstanding, lastError, answered, true);
+                }, delay, TimeUnit.NANOSECONDS);
+            }
+            return guarded;
+        }
+
+        /**
+         * Sends one copy of {@code request} on {@code permit}. The first success completes
+         * {@code result}; it fails with the last error once no copy is left.
+         */
+        private void send(RefundRequestDto request, CompletableFuture<RefundResponse> result, Permit permit,
+                          AtomicInteger outstanding, AtomicReference<Throwable> lastError, AtomicBoolean answered, boolean hedged) {
+            long start = System.nanoTime();
+            CompletableFuture<RefundResponse> call;
+            try {
+                call = gateway.processRefundAsync(request);
+            } catch (RuntimeException e) {
+                call = failed(e);
+            }
+            call.whenComplete((r, e) -> {
+                permit.release();
+                if (e == null) {
+                    recordLatency(System.nanoTime() - start);
+                    if (answered.compareAndSet(false, true)) {
+                        // counted before completing, which runs the caller's continuations
+                        if (hedged) {
+                            hedgesWon.increment();
+                        }
+                        result.complete(r);
+                    }
+                } else {
+                    lastError.set(e);
+                }
+                if (outstanding.decrementAndGet() == 0 && !result.isDone()) {
+                    Throwable error = lastError.get();
+                    result.completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                }
+            });
+        }
+
+        @Override
+        public List<RefundResponse> processRefunds(List<RefundRequestDto> requests) throws RefundException {
+            return await(processRefundsAsync(requests));
+        }
+
+        @Override
+        public CompletableFuture<List<RefundResponse>> processRefundsAsync(List<RefundRequestDto> requests) {
+            RefundCircuitBreaker.Admission admission;
+            try {
+                admission = admit();
+            } catch (CallRejectedException e) {
+                return failed(e);
+            }
+            Permits permits = new Permits();
+            Permit permit = permits.add();
+            CompletableFuture<List<RefundResponse>> call;
+            try {
+                call = gateway.processRefundsAsync(requests);
+            } catch (RuntimeException e) {
+                call = failed(e);
+            }
+            call.whenComplete((r, e) -> permit.release());
+            // a future of our own, so the deadline does not complete the gateway's
+            CompletableFuture<List<RefundResponse>> own = new CompletableFuture<>();
+            call.whenComplete((r, e) -> {
+                if (e == null) {
+                    own.complete(r);
+                } else {
+                    own.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                }
+            });
+            return guard(own, admission, permits);
+        }
+    }
+
+    public static class Stats {
+        public RefundCircuitBreaker.State breakerState;
+        public long breakerOpened;
+        public long breakerRejections;
+        public long bulkheadRejections;
+        public int inFlight;
+        public long timeouts;
+        public long hedgesSent;
+        public long hedgesWon;
+        public long hedgeDelayMs;
+    }
+}
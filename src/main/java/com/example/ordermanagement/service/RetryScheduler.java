@@ -0,0 +1,148 @@
+package com.example.ordermanagement.service;
+
+import com.example.ordermanagement.domain.JobLog;
+import com.example.ordermanagement.domain.JobStatus;
+import com.example.ordermanagement.repository.JobLogBatchRepository;
+import com.example.ordermanagement.repository.JobLogRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Brings RETRYING jobs back when their {@code next_attempt_at} comes due.
+ * <p>
+ * Every {@code poll-interval-ms} a node claims, in batches and with SKIP LOCKED, the jobs due
+ * within {@code horizon-ms}. It leases each one by moving {@code next_attempt_at} to
+ * {@code lease-ms} from now, so other nodes stop seeing it, and parks it in an in-memory
+ * {@link TimingWheel} until its original due time. When the timer fires, the job is released
+ * back to PENDING (only if the lease is still ours) and its last outbox message is copied,
+ * so the relay delivers it again. If the node dies in between, the lease runs out and another
+ * node claims the job.
+ */
+@Component
+public class RetryScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(RetryScheduler.class);
+
+    private final JobLogRepository jobLogRepository;
+    private final JobLogBatchRepository jobLogBatchRepository;
+    private final JobPublisherService jobPublisherService;
+    private final TransactionTemplate transactionTemplate;
+    private final TimingWheel<Claim> wheel;
+
+    @Value("${app.jobs.retry.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.jobs.retry.horizon-ms:10000}")
+    private long horizonMs;
+
+    @Value("${app.jobs.retry.lease-ms:60000}")
+    private long leaseMs;
+
+    public RetryScheduler(JobLogRepository jobLogRepository, JobLogBatchRepository jobLogBatchRepository,
+                          JobPublisherService jobPublisherService, PlatformTransactionManager transactionManager,
+                          @Value("${app.jobs.retry.tick-ms:100}") long tickMs,
+                          @Value("${app.jobs.retry.wheel-slots:512}") int wheelSlots) {
+        this.jobLogRepository = jobLogRepository;
+        this.jobLogBatchRepository = jobLogBatchRepository;
+        this.jobPublisherService = jobPublisherService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.wheel = new TimingWheel<>("retry-wheel", tickMs, wheelSlots, this::dispatch);
+    }
+
+    @PostConstruct
+    public void start() {
+        wheel.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        wheel.stop();
+    }
+
+    @Scheduled(fixedDelayString = "${app.jobs.retry.poll-interval-ms:5000}")
+    public void claimDue() {
+        int claimed;
+        do {
+            List<Claim> batch = transactionTemplate.execute(status -> claimBatch());
+            OffsetDateTime now = OffsetDateTime.now();
+            for (Claim c : batch) {
+                wheel.schedule(c, Math.max(0, Duration.between(now, c.dueAt).toMillis()));
+            }
+            claimed = batch.size();
+        } while (claimed == batchSize);
+    }
+
+    /**
+     * Number of claimed jobs waiting for their due time on this node.
+     */
+    public int pending() {
+        return wheel.size();
+    }
+
+    List<Claim> claimBatch() {
+        OffsetDateTime horizon = OffsetDateTime.now().plus(horizonMs, ChronoUnit.MILLIS);
+        List<JobLog> due = jobLogRepository.claimDue(JobStatus.RETRYING, horizon, PageRequest.of(0, batchSize));
+        // millisecond precision survives the round trip through any timestamp column
+        OffsetDateTime lease = OffsetDateTime.now().plus(leaseMs, ChronoUnit.MILLIS).truncatedTo(ChronoUnit.MILLIS);
+        List<Claim> claims = new ArrayList<>(due.size());
+        for (JobLog job : due) {
+            // a job overdue by more than lease-ms must not come back already expired
+            claims.add(new Claim(job.getId(), job.getNextAttemptAt(), lease));
+            job.setNextAttemptAt(lease);
+        }
+        return claims;
+    }
+
+    void dispatch(List<Claim> due) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                Map<UUID, OffsetDateTime> leases = new HashMap<>();
+                for (Claim c : due) {
+                    leases.put(c.jobId, c.leaseUntil);
+                }
+                List<UUID> released = jobLogBatchRepository.releaseRetries(leases);
+                if (released.isEmpty()) {
+                    return;
+                }
+                Set<UUID> requeued = jobPublisherService.requeue(released);
+                if (requeued.size() < released.size()) {
+                    List<UUID> orphans = new ArrayList<>(released);
+                    orphans.removeAll(requeued);
+                    for (JobLog job : jobLogRepository.findAllById(orphans)) {
+                        job.setStatus(JobStatus.FAILED);
+                        job.setLastError("No message to retry");
+                    }
+                }
+                log.info("Re-enqueued {} job(s) for retry", requeued.size());
+            });
+        } catch (RuntimeException e) {
+            // leases run out and the jobs are claimed again
+            log.error("Failed to re-enqueue {} retry job(s): {}", due.size(), e.getMessage(), e);
+        }
+    }
+
+    static final class Claim {
+        final UUID jobId;
+        final OffsetDateTime dueAt;
+        final OffsetDateTime leaseUntil;
+
+        Claim(UUID jobId, OffsetDateTime dueAt, OffsetDateTime leaseUntil) {
+            this.jobId = jobId;
+            this.dueAt = dueAt;
+            this.leaseUntil = leaseUntil;
+        }
+    }
+}
@@ -3,8 +3,11 @@ package com.example.ordermanagement.service;
 import com.example.ordermanagement.domain.*;
 import com.example.ordermanagement.repository.ReturnRequestRepository;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.OffsetDateTime;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -13,33 +16,135 @@ public class ReturnService {
 
     private final ReturnRequestRepository returnRequestRepository;
     private final OrderService orderService;
+    private final AuditHistoryWriter historyWriter;
+    private final RefundLedgerService refundLedger;
+    private final JobPublisherService jobPublisherService;
+    private final VersionedCache<UUID, ReturnView> returnCache;
+    private final TransitionGuard transitionGuard;
+    private final TransactionTemplate transactionTemplate;
+    private final OperationMetrics metrics;
 
-    public ReturnService(ReturnRequestRepository returnRequestRepository, OrderService orderService) {
+    public ReturnService(ReturnRequestRepository returnRequestRepository, OrderService orderService, AuditHistoryWriter historyWriter,
+                         RefundLedgerService refundLedger, JobPublisherService jobPublisherService, VersionedCache<UUID, ReturnView> returnCache, TransitionGuard transitionGuard,
+                         PlatformTransactionManager transactionManager, OperationMetrics metrics) {
         this.returnRequestRepository = returnRequestRepository;
         this.orderService = orderService;
+        this.historyWriter = historyWriter;
+        this.refundLedger = refundLedger;
+        this.jobPublisherService = jobPublisherService;
+        this.returnCache = returnCache;
+        this.transitionGuard = transitionGuard;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.metrics = metrics;
     }
 
+    /**
+     * Opens a return that will refund {@code refundAmountMinor} (minor currency units), or all
+     * that is still refundable on the order when null. The amount is checked against the
+     * order's balance here, but only reserved when the refund runs, so several open returns may
+     * together ask for more than is left; the later refunds then fail.
+     */
     @Transactional
-    public ReturnRequest createReturn(UUID orderId, String reason) {
+    public ReturnRequest createReturn(UUID orderId, String reason, Long refundAmountMinor) {
+        long start = System.nanoTime();
         Optional<Order> orderOpt = orderService.findById(orderId);
         if (orderOpt.isEmpty()) throw new IllegalArgumentException("Order not found: " + orderId);
         Order order = orderOpt.get();
         if (order.getStatus() != OrderStatus.DELIVERED) {
             throw new IllegalStateException("Return can only be initiated for delivered orders");
         }
+        // created here, in this transaction, so refund jobs find it
+        long remaining = refundLedger.openBalance(orderId).map(b -> b.remainingMinor).orElse(0L);
+        long amount = refundAmountMinor != null ? refundAmountMinor : remaining;
+        if (amount < 0 || amount > remaining) {
+            throw new IllegalStateException("Refund amount " + amount + " exceeds the refundable balance " + remaining);
+        }
         ReturnRequest rr = new ReturnRequest(UUID.randomUUID(), order, reason, ReturnStatus.REQUESTED);
+        rr.setRefundAmountMinor(amount);
         returnRequestRepository.save(rr);
+        historyWriter.recordReturn(rr.getId(), null, ReturnStatus.REQUESTED, "system", "return requested");
+        metrics.returnTransitionAfterCommit(null, ReturnStatus.REQUESTED);
+        metrics.record(OperationMetrics.Operation.RETURN_CREATE, start);
         return rr;
     }
 
-    @Transactional
+    /**
+     * Transitions one return; see {@link OrderService#changeOrderStatus}.
+     */
     public ReturnRequest changeReturnStatus(UUID returnId, ReturnStatus target, String actor, String reason) {
+        long start = System.nanoTime();
+        try {
+            return transitionGuard.execute(returnId,
+                    () -> transactionTemplate.execute(status -> applyTransition(returnId, target, actor, reason)));
+        } finally {
+            metrics.record(OperationMetrics.Operation.RETURN_STATUS_CHANGE, start);
+        }
+    }
+
+    private ReturnRequest applyTransition(UUID returnId, ReturnStatus target, String actor, String reason) {
         ReturnRequest rr = returnRequestRepository.findById(returnId).orElseThrow(() -> new IllegalArgumentException("Return not found: " + returnId));
         ReturnStatus from = rr.getStatus();
         if (!from.canTransitionTo(target)) throw new IllegalStateException("Invalid transition from " + from + " to " + target);
         rr.setStatus(target);
         returnRequestRepository.save(rr);
+        historyWriter.recordReturn(rr.getId(), from, target, actor, reason);
+        metrics.returnTransitionAfterCommit(from, target);
+        returnCache.putAfterCommit(rr.getId(), () -> ReturnView.of(rr));
+
+        // the refund job commits (or rolls back) with the transition
+        if (target == ReturnStatus.COMPLETED) {
+            // dummy paymentRef/currency for now
+            jobPublisherService.publishRefundJob(rr, "ORIG-PAYMENT-REF", "USD");
+        }
         return rr;
     }
+
+    /**
+     * Read path for {@code GET /returns/{id}}; see {@link OrderService#getOrder(UUID)}.
+     */
+    public Optional<ReturnView> getReturn(UUID id) {
+        long start = System.nanoTime();
+        try {
+            ReturnView cached = returnCache.get(id);
+            if (cached != null) {
+                return Optional.of(cached);
+            }
+            Optional<ReturnView> loaded = returnRequestRepository.findById(id).map(ReturnView::of);
+            loaded.ifPresent(v -> returnCache.put(id, v));
+            return loaded;
+        } finally {
+            metrics.record(OperationMetrics.Operation.RETURN_READ, start);
+        }
+    }
+
+    /**
+     * Immutable snapshot of a return request as served by the read endpoints.
+     */
+    public static class ReturnView {
+        public final UUID id;
+        public final UUID orderId;
+        public final String reason;
+        public final Long refundAmountMinor;
+        public final ReturnStatus status;
+        public final OffsetDateTime createdAt;
+        public final OffsetDateTime updatedAt;
+        public final long version;
+
+        private ReturnView(ReturnRequest rr) {
+            this.id = rr.getId();
+            // id of the lazy association, read without initializing it
+            this.orderId = rr.getOrder().getId();
+            this.reason = rr.getReason();
+            this.refundAmountMinor = rr.getRefundAmountMinor();
+            this.status = rr.getStatus();
+            this.createdAt = rr.getCreatedAt();
+            this.updatedAt = rr.getUpdatedAt();
+            this.version = rr.getVersion() != null ? rr.getVersion() : -1L;
+        }
+
+        public static ReturnView of(ReturnRequest rr) {
+            return new ReturnView(rr);
+        }
+    }
 }
 
@@ -0,0 +1,97 @@
+package com.example.ordermanagement.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel: {@code slots} buckets of {@code tickMs} each, advanced by one thread.
+ * Scheduling and expiry are O(1) per item, and a tick with nothing due costs a single bucket
+ * check, so thousands of pending timers cost nothing like one scheduled task each. Items due
+ * further out than one revolution wait out the extra revolutions in their bucket. Expiry is
+ * accurate to one tick.
+ */
+public class TimingWheel<T> {
+
+    private final long tickMs;
+    private final List<ArrayDeque<Timer<T>>> wheel;
+    private final ScheduledExecutorService ticker;
+    private final Consumer<List<T>> onExpired;
+    private long cursor;
+    private int size;
+
+    public TimingWheel(String name, long tickMs, int slots, Consumer<List<T>> onExpired) {
+        this.tickMs = Math.max(1, tickMs);
+        this.wheel = new ArrayList<>(slots);
+        for (int i = 0; i < slots; i++) {
+            wheel.add(new ArrayDeque<>());
+        }
+        this.onExpired = onExpired;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void start() {
+        ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        ticker.shutdownNow();
+    }
+
+    public synchronized void schedule(T item, long delayMs) {
+        long ticks = Math.max(1, (delayMs + tickMs - 1) / tickMs);
+        long target = cursor + ticks;
+        int slot = (int) (target % wheel.size());
+        long rounds = (ticks - 1) / wheel.size();
+        wheel.get(slot).add(new Timer<>(item, rounds));
+        size++;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private void tick() {
+        List<T> expired = new ArrayList<>();
+        synchronized (this) {
+            cursor++;
+            Iterator<Timer<T>> it = wheel.get((int) (cursor % wheel.size())).iterator();
+            while (it.hasNext()) {
+                Timer<T> t = it.next();
+                if (t.rounds > 0) {
+                    t.rounds--;
+                } else {
+                    it.remove();
+                    expired.add(t.item);
+                    size--;
+                }
+            }
+        }
+        if (!expired.isEmpty()) {
+            try {
+                onExpired.accept(expired);
+            } catch (RuntimeException ignored) {
+                // the consumer logs; never let one failure cancel the ticker
+            }
+        }
+    }
+
+    private static final class Timer<T> {
+        final T item;
+        long rounds;
+
+        Timer(T item, long rounds) {
+            this.item = item;
+            this.rounds = rounds;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.ordermanagement.service;
+
+import jakarta.persistence.OptimisticLockException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Serializes status transitions of the same entity on this node and retries the ones that
+ * still lose an optimistic-lock race to another node.
+ * <p>
+ * Each entity id maps to one of {@code lock-stripes} locks, so two transitions of one order
+ * never overlap here and never waste a transaction on a version conflict with each other. A
+ * conflict with a different node is retried up to {@code max-attempts} times, each attempt in
+ * a fresh transaction, after a full-jitter exponential backoff slept without holding the
+ * stripe. If a stripe cannot be taken within {@code lock-timeout-ms} the attempt proceeds
+ * without it; the version check still keeps the write correct.
+ */
+@Component
+public class TransitionGuard {
+
+    private static final Logger log = LoggerFactory.getLogger(TransitionGuard.class);
+
+    private final ReentrantLock[] stripes;
+    private final int maxAttempts;
+    private final long backoffMs;
+    private final long lockTimeoutMs;
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+    private final LongAdder lockTimeouts = new LongAdder();
+    private final LongAdder lockWaitNanos = new LongAdder();
+    private final LongAccumulator maxLockWaitNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    public TransitionGuard(@Value("${app.transitions.lock-stripes:256}") int lockStripes,
+                           @Value("${app.transitions.max-attempts:3}") int maxAttempts,
+                           @Value("${app.transitions.backoff-ms:20}") long backoffMs,
+                           @Value("${app.transitions.lock-timeout-ms:5000}") long lockTimeoutMs) {
+        int n = Integer.highestOneBit(Math.max(1, lockStripes - 1)) << 1;
+        this.stripes = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMs = backoffMs;
+        this.lockTimeoutMs = lockTimeoutMs;
+    }
+
+    /**
+     * Runs {@code transition}, which must open and commit its own transaction, under the
+     * entity's stripe. Inside an existing transaction the conflict would only surface at the
+     * caller's commit, so there it runs once, without retry.
+     */
+    public <T> T execute(UUID entityId, Supplier<T> transition) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return transition.get();
+        }
+        ReentrantLock stripe = stripes[spread(entityId.hashCode()) & (stripes.length - 1)];
+        for (int attempt = 1; ; attempt++) {
+            boolean locked = acquire(stripe);
+            try {
+                return transition.get();
+            } catch (OptimisticLockingFailureException | OptimisticLockException e) {
+                conflicts.increment();
+                if (attempt >= maxAttempts) {
+                    exhausted.increment();
+                    throw e;
+                }
+                log.debug("Version conflict on {} (attempt {}), retrying", entityId, attempt);
+            } finally {
+                if (locked) {
+                    stripe.unlock();
+                }
+            }
+            backoff(attempt);
+        }
+    }
+
+    public Stats stats() {
+        Stats s = new Stats();
+        s.stripes = stripes.length;
+        s.acquisitions = acquisitions.sum();
+        s.contended = contended.sum();
+        s.lockTimeouts = lockTimeouts.sum();
+        s.totalLockWaitMs = TimeUnit.NANOSECONDS.toMillis(lockWaitNanos.sum());
+        s.maxLockWaitMs = TimeUnit.NANOSECONDS.toMillis(maxLockWaitNanos.get());
+        s.conflicts = conflicts.sum();
+        s.retriesExhausted = exhausted.sum();
+        return s;
+    }
+
+    private boolean acquire(ReentrantLock stripe) {
+        if (stripe.tryLock()) {
+            acquisitions.increment();
+            return true;
+        }
+        contended.increment();
+        long start = System.nanoTime();
+        boolean locked;
+        try {
+            locked = stripe.tryLock(lockTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            locked = false;
+        }
+        long waited = System.nanoTime() - start;
+        lockWaitNanos.add(waited);
+        maxLockWaitNanos.accumulate(waited);
+        if (locked) {
+            acquisitions.increment();
+        } else {
+            lockTimeouts.increment();
+        }
+        return locked;
+    }
+
+    private void backoff(int attempt) {
+        long cap = backoffMs << Math.min(attempt - 1, 10);
+        if (cap <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(cap + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    public static class Stats {
+        public int stripes;
+        public long acquisitions;
+        public long contended;
+        public long lockTimeouts;
+        public long totalLockWaitMs;
+        public long maxLockWaitMs;
+        public long conflicts;
+        public long retriesExhausted;
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.ordermanagement.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bounded cache of read snapshots, stamped with the entity's {@code @Version}. An entry is only
+ * ever replaced by one with an equal or higher version, so a reader that loaded a row just
+ * before a writer committed cannot overwrite the writer's fresher snapshot. Writers that do not
+ * have a full snapshot at hand leave a tombstone carrying the new version instead; it reads as a
+ * miss and still blocks older snapshots.
+ * <p>
+ * Only this node's writes invalidate entries, so a transition committed on another node would
+ * leave the snapshot here stale; every snapshot therefore reads as a miss
+ * {@code expireAfterWriteMs} after it was stored. The version check is a per-key
+ * {@link ConcurrentHashMap#compute}, so readers on different keys never contend. Beyond
+ * {@code maxSize} keys the oldest-inserted are evicted first.
+ */
+public class VersionedCache<K, V> {
+
+    private final String name;
+    private final int maxSize;
+    private final long expireAfterWriteNanos;
+    private final ToLongFunction<V> versionOf;
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    // keys in insertion order; each key present in entries is queued exactly once
+    private final Queue<K> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder staleRejections = new LongAdder();
+
+    public VersionedCache(String name, int maxSize, long expireAfterWriteMs, ToLongFunction<V> versionOf) {
+        this.name = name;
+        this.maxSize = Math.max(1, maxSize);
+        this.expireAfterWriteNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, expireAfterWriteMs));
+        this.versionOf = versionOf;
+    }
+
+    public V get(K key) {
+        Entry<V> e = entries.get(key);
+        if (e == null || e.value == null) {
+            misses.increment();
+            return null;
+        }
+        if (System.nanoTime() - e.writtenAt > expireAfterWriteNanos) {
+            // keep the entry: its version still fences off older snapshots
+            expirations.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return e.value;
+    }
+
+    public void put(K key, V value) {
+        store(key, value, versionOf.applyAsLong(value));
+    }
+
+    /**
+     * Drops the snapshot of {@code key} and remembers that anything older than {@code version}
+     * is stale.
+     */
+    public void invalidate(K key, long version) {
+        store(key, null, version);
+    }
+
+    /**
+     * Stores the snapshot once the current transaction commits (immediately when there is none).
+     * The supplier runs after commit, so it sees the version the flush assigned.
+     */
+    public void putAfterCommit(K key, Supplier<V> snapshot) {
+        afterCommit(() -> put(key, snapshot.get()));
+    }
+
+    public void invalidateAfterCommit(K key, long version) {
+        afterCommit(() -> invalidate(key, version));
+    }
+
+    public Stats stats() {
+        Stats s = new Stats();
+        s.name = name;
+        s.size = entries.size();
+        s.maxSize = maxSize;
+        s.expireAfterWriteMs = TimeUnit.NANOSECONDS.toMillis(expireAfterWriteNanos);
+        s.hits = hits.sum();
+        s.misses = misses.sum();
+        s.expirations = expirations.sum();
+        s.evictions = evictions.sum();
+        s.staleRejections = staleRejections.sum();
+        long lookups = s.hits + s.misses;
+        s.hitRatio = lookups == 0 ? 0.0 : (double) s.hits / lookups;
+        return s;
+    }
+
+    private void store(K key, V value, long version) {
+        long now = System.nanoTime();
+        entries.compute(key, (k, existing) -> {
+            if (existing == null) {
+                insertionOrder.add(k);
+            } else if (existing.version > version) {
+                staleRejections.increment();
+                return existing;
+            }
+            return new Entry<>(value, version, now);
+        });
+        while (entries.size() > maxSize) {
+            K eldest = insertionOrder.poll();
+            if (eldest == null) {
+                break;
+            }
+            if (entries.remove(eldest) != null) {
+                evictions.increment();
+            }
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long version;
+        final long writtenAt;
+
+        Entry(V value, long version, long writtenAt) {
+            this.value = value;
+            this.version = version;
+            this.writtenAt = writtenAt;
+        }
+    }
+
+    public static class Stats {
+        public String name;
+        public int size;
+        public int maxSize;
+        public long expireAfterWriteMs;
+        public long hits;
+        public long misses;
+        public long expirations;
+        public long evictions;
+        public long staleRejections;
+        public double hitRatio;
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.ordermanagement.config;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Envelope;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.amqp.core.BatchMessageListener;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.rabbit.retry.MessageBatchRecoverer;
+import org.springframework.boot.autoconfigure.amqp.RabbitProperties;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class InvoiceBatchContainerTest {
+
+    private static final int BATCH = 3;
+
+    private SimpleMessageListenerContainer container;
+
+    @AfterEach
+    public void stop() {
+        if (container != null) {
+            container.stop();
+        }
+    }
+
+    @Test
+    public void testWholeBatchIsAckedAndAFailedOneDeadLetteredThenAcked() throws Exception {
+        AtomicBoolean fail = new AtomicBoolean();
+        MessageBatchRecoverer recoverer = Mockito.mock(MessageBatchRecoverer.class);
+        Channel channel = Mockito.mock(Channel.class);
+        Consumer consumer = start(channel, recoverer, messages -> {
+            if (fail.get()) {
+                throw new IllegalStateException("render failed");
+            }
+        });
+        // two batches per consumer unless configured
+        Mockito.verify(channel).basicQos(2 * BATCH, false);
+
+        deliver(consumer, 1, 2, 3);
+        Mockito.verify(channel, Mockito.timeout(5000)).basicAck(3L, true);
+
+        fail.set(true);
+        deliver(consumer, 4, 5, 6);
+        // retried in place, then handed to the recoverer as one batch and acked
+        Mockito.verify(recoverer, Mockito.timeout(5000)).recover(Mockito.argThat((List<Message> l) -> l.size() == BATCH),
+                Mockito.any(Throwable.class));
+        Mockito.verify(channel, Mockito.timeout(5000)).basicAck(6L, true);
+        Mockito.verify(channel, Mockito.never()).basicNack(Mockito.anyLong(), Mockito.anyBoolean(), Mockito.anyBoolean());
+    }
+
+    @Test
+    public void testFailedBatchIsNackedWhenItCannotBeDeadLettered() throws Exception {
+        MessageBatchRecoverer recoverer = Mockito.mock(MessageBatchRecoverer.class);
+        Mockito.doThrow(new IllegalStateException("DLX unreachable")).when(recoverer)
+                .recover(Mockito.<List<Message>>any(), Mockito.any(Throwable.class));
+        Channel channel = Mockito.mock(Channel.class);
+        Consumer consumer = start(channel, recoverer, messages -> {
+            throw new IllegalStateException("render failed");
+        });
+
+        deliver(consumer, 1, 2, 3);
+        // the whole batch goes back to the broker at once
+        Mockito.verify(channel, Mockito.timeout(5000)).basicNack(3L, true, true);
+        Mockito.verify(channel, Mockito.never()).basicAck(Mockito.anyLong(), Mockito.anyBoolean());
+    }
+
+    private Consumer start(Channel channel, MessageBatchRecoverer recoverer, BatchMessageListener listener) throws Exception {
+        ConnectionFactory connectionFactory = Mockito.mock(ConnectionFactory.class);
+        Connection connection = Mockito.mock(Connection.class);
+        Mockito.when(connectionFactory.createConnection()).thenReturn(connection);
+        Mockito.when(connection.isOpen()).thenReturn(true);
+        Mockito.when(connection.createChannel(Mockito.anyBoolean())).thenReturn(channel);
+        Mockito.when(channel.isOpen()).thenReturn(true);
+        ArgumentCaptor<Consumer> consumer = ArgumentCaptor.forClass(Consumer.class);
+        Mockito.when(channel.basicConsume(Mockito.anyString(), Mockito.anyBoolean(), Mockito.anyString(), Mockito.anyBoolean(),
+                Mockito.anyBoolean(), Mockito.<Map<String, Object>>any(), consumer.capture())).thenReturn("tag");
+
+        RabbitProperties properties = new RabbitProperties();
+        RabbitProperties.ListenerRetry retry = properties.getListener().getSimple().getRetry();
+        retry.setEnabled(true);
+        retry.setMaxAttempts(2);
+        retry.setInitialInterval(Duration.ofMillis(10));
+        SimpleRabbitListenerContainerFactoryConfigurer configurer = new SimpleRabbitListenerContainerFactoryConfigurer(properties);
+        ReflectionTestUtils.invokeMethod(configurer, "setMessageRecoverer", recoverer);
+        SimpleRabbitListenerContainerFactory factory = new RabbitConfig().invoiceBatchContainerFactory(configurer, connectionFactory, BATCH, 100, 0);
+
+        SimpleRabbitListenerEndpoint endpoint = new SimpleRabbitListenerEndpoint();
+        endpoint.setId("invoiceBatchListener");
+        endpoint.setQueueNames("invoices");
+        endpoint.setBatchListener(true);
+        endpoint.setMessageListener(listener);
+        container = factory.createListenerContainer(endpoint);
+        container.setMissingQueuesFatal(false);
+        container.afterPropertiesSet();
+        container.start();
+        Mockito.verify(channel, Mockito.timeout(5000)).basicConsume(Mockito.anyString(), Mockito.anyBoolean(), Mockito.anyString(),
+                Mockito.anyBoolean(), Mockito.anyBoolean(), Mockito.<Map<String, Object>>any(), Mockito.any(Consumer.class));
+        Consumer captured = consumer.getValue();
+        captured.handleConsumeOk("tag");
+        Assertions.assertTrue(container.isRunning());
+        return captured;
+    }
+
+    private static void deliver(Consumer consumer, long... tags) throws Exception {
+        for (long tag : tags) {
+            consumer.handleDelivery("tag", new Envelope(tag, false, "", "invoice.generate"),
+                    new AMQP.BasicProperties.Builder().build(), new byte[]{1});
+        }
+    }
+}
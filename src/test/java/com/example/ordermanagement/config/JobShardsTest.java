@@ -0,0 +1,63 @@
+package com.example.ordermanagement.config;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.UUID;
+
+public class JobShardsTest {
+
+    @Test
+    public void testJumpHashIsStableAndMovesOnlyToNewBuckets() {
+        Random random = new Random(42);
+        int keys = 10_000;
+        int moved = 0;
+        for (int i = 0; i < keys; i++) {
+            long key = random.nextLong();
+            int four = JobShards.jumpConsistentHash(key, 4);
+            int five = JobShards.jumpConsistentHash(key, 5);
+            Assertions.assertEquals(four, JobShards.jumpConsistentHash(key, 4));
+            Assertions.assertEquals(0, JobShards.jumpConsistentHash(key, 1));
+            Assertions.assertTrue(four >= 0 && four < 4);
+            if (five != four) {
+                // growing from 4 to 5 buckets only moves keys into the new bucket
+                Assertions.assertEquals(4, five);
+                moved++;
+            }
+        }
+        // about 1/5 of the keys move
+        Assertions.assertTrue(moved > keys * 0.17 && moved < keys * 0.23, "moved " + moved);
+    }
+
+    @Test
+    public void testShardOfAndRoutingKeys() {
+        JobShards four = new JobShards(4);
+        JobShards five = new JobShards(5);
+        JobShards single = new JobShards(1);
+
+        UUID orderId = UUID.fromString("7c1d5f0e-8a51-4c39-9d7b-2a6f3e1b9c44");
+        int shard = four.shardOf(orderId);
+        Assertions.assertEquals(shard, new JobShards(4).shardOf(orderId));
+        Assertions.assertEquals(0, four.shardOf(null));
+        int resharded = five.shardOf(orderId);
+        Assertions.assertTrue(resharded == shard || resharded == 4);
+
+        Assertions.assertEquals("invoice.generate." + shard, four.routingKey("invoice.generate", orderId));
+        // a key resolved for another shard count is re-resolved
+        Assertions.assertEquals("invoice.generate." + resharded, five.routingKey("invoice.generate." + shard, orderId));
+        Assertions.assertEquals("invoice.generate", single.routingKey("invoice.generate.3", orderId));
+        Assertions.assertEquals("invoice.q", single.queueName("invoice.q", 0));
+        Assertions.assertEquals("invoice.q.2", four.queueName("invoice.q", 2));
+    }
+
+    @Test
+    public void testBaseRoutingKey() {
+        Assertions.assertEquals("invoice.generate", JobShards.baseRoutingKey("invoice.generate.3"));
+        Assertions.assertEquals("invoice.generate", JobShards.baseRoutingKey("invoice.generate.12"));
+        Assertions.assertEquals("invoice.generate", JobShards.baseRoutingKey("invoice.generate"));
+        Assertions.assertEquals("refund.v2", JobShards.baseRoutingKey("refund.v2"));
+        Assertions.assertEquals("refund.", JobShards.baseRoutingKey("refund."));
+        Assertions.assertEquals("refund", JobShards.baseRoutingKey("refund"));
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.ordermanagement.controller;
+
+import com.example.ordermanagement.messaging.JobTransport;
+import com.example.ordermanagement.service.InvoiceStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {"spring.profiles.active=local", "app.outbox.poll-interval-ms=3600000",
+        "app.invoices.sendfile-min-bytes=1024"})
+@AutoConfigureMockMvc
+public class OrderControllerInvoiceTest {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private InvoiceStore invoiceStore;
+
+    @MockBean
+    private JobTransport jobTransport;
+
+    @TempDir
+    Path invoicesDir;
+
+    @Test
+    public void testSmallInvoiceIsStreamedEvenWithSendfile() throws Exception {
+        UUID orderId = UUID.randomUUID();
+        byte[] content = invoice(orderId, 512);
+
+        MvcResult result = mockMvc.perform(get("/orders/{id}/invoice", orderId).requestAttr(SENDFILE_SUPPORT, true))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        Assertions.assertEquals("application/pdf", result.getResponse().getContentType());
+        Assertions.assertEquals(content.length, result.getResponse().getContentLengthLong());
+        Assertions.assertArrayEquals(content, result.getResponse().getContentAsByteArray());
+        Assertions.assertNull(result.getRequest().getAttribute(SENDFILE_FILENAME));
+    }
+
+    @Test
+    public void testLargeInvoiceIsHandedToSendfile() throws Exception {
+        UUID orderId = UUID.randomUUID();
+        byte[] content = invoice(orderId, 4096);
+
+        MvcResult result = mockMvc.perform(get("/orders/{id}/invoice", orderId).requestAttr(SENDFILE_SUPPORT, true))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        Assertions.assertEquals(content.length, result.getResponse().getContentLengthLong());
+        Assertions.assertEquals(0, result.getResponse().getContentAsByteArray().length);
+        Assertions.assertEquals(invoicesDir.resolve(orderId + ".pdf").toString(),
+                result.getRequest().getAttribute(SENDFILE_FILENAME));
+        Assertions.assertEquals((long) content.length, result.getRequest().getAttribute(SENDFILE_END));
+    }
+
+    @Test
+    public void testLargeInvoiceIsStreamedWithoutSendfileSupport() throws Exception {
+        UUID orderId = UUID.randomUUID();
+        byte[] content = invoice(orderId, 4096);
+
+        MvcResult result = mockMvc.perform(get("/orders/{id}/invoice", orderId))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        Assertions.assertArrayEquals(content, result.getResponse().getContentAsByteArray());
+        Assertions.assertNull(result.getRequest().getAttribute(SENDFILE_FILENAME));
+    }
+
+    @Test
+    public void testMissingInvoiceIsNotFound() throws Exception {
+        UUID orderId = UUID.randomUUID();
+        Mockito.when(invoiceStore.locate(orderId)).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/orders/{id}/invoice", orderId))
+                .andExpect(status().isNotFound());
+    }
+
+    private byte[] invoice(UUID orderId, int size) throws Exception {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) i;
+        }
+        Path path = Files.write(invoicesDir.resolve(orderId + ".pdf"), content);
+        Mockito.when(invoiceStore.locate(orderId)).thenReturn(Optional.of(path));
+        return content;
+    }
+}
@@ -5,6 +5,7 @@ import com.example.ordermanagement.domain.JobStatus;
 import com.example.ordermanagement.domain.Order;
 import com.example.ordermanagement.domain.OrderStatus;
 import com.example.ordermanagement.repository.JobLogRepository;
+import com.example.ordermanagement.service.InvoiceStore;
 import com.example.ordermanagement.service.OrderService;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Assumptions;
@@ -21,6 +22,7 @@ import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
 import java.io.File;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
@@ -61,6 +63,9 @@ public class IntegrationInvoiceFlowTest {
     @Autowired
     private JobLogRepository jobLogRepository;
 
+    @Autowired
+    private InvoiceStore invoiceStore;
+
     @Test
     @Timeout(value = 120)
     public void invoiceJobIsProcessedAndPdfCreated() throws Exception {
@@ -102,9 +107,11 @@ public class IntegrationInvoiceFlowTest {
         File dir = new File(invoicesPath);
         Assertions.assertTrue(dir.exists() && dir.isDirectory(), "Invoices directory should exist");
 
-        File[] pdfs = dir.listFiles((d, name) -> name.endsWith(".pdf") && name.contains(orderId.toString()));
-        Assertions.assertNotNull(pdfs);
-        Assertions.assertTrue(pdfs.length >= 1, "Expected at least one PDF invoice for the order");
+        // invoices are stored in hash-sharded subdirectories of the invoices path
+        Optional<Path> pdf = invoiceStore.locate(orderId);
+        Assertions.assertTrue(pdf.isPresent(), "Expected a PDF invoice for the order");
+        Assertions.assertTrue(pdf.get().startsWith(dir.toPath().toAbsolutePath().normalize()));
+        Assertions.assertTrue(pdf.get().getFileName().toString().equals(orderId + ".pdf"));
     }
 
     private JobLog waitForJobForOrder(UUID orderId, Duration timeout) throws InterruptedException {
@@ -0,0 +1,265 @@
+package com.example.ordermanagement.listener;
+
+import com.example.ordermanagement.config.ConcurrencyLimits;
+import com.example.ordermanagement.domain.*;
+import com.example.ordermanagement.messaging.JobDelivery;
+import com.example.ordermanagement.messaging.JobTransport;
+import com.example.ordermanagement.messaging.dto.RefundJobDto;
+import com.example.ordermanagement.repository.JobLogRepository;
+import com.example.ordermanagement.service.OrderService;
+import com.example.ordermanagement.service.RefundClient;
+import com.example.ordermanagement.service.RefundLedgerService;
+import com.example.ordermanagement.service.ReturnService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@SpringBootTest(properties = {"spring.profiles.active=local", "app.outbox.poll-interval-ms=3600000"})
+public class RefundListenerTest {
+
+    @Autowired
+    private RefundListener refundListener;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ReturnService returnService;
+
+    @Autowired
+    private RefundLedgerService refundLedger;
+
+    @Autowired
+    private ConcurrencyLimits concurrencyLimits;
+
+    @Autowired
+    private MessageConverter messageConverter;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @SpyBean
+    private JobLogRepository jobLogRepository;
+
+    @MockBean
+    private RefundClient refundClient;
+
+    @MockBean
+    private JobTransport jobTransport;
+
+    @Test
+    public void testGatewayFailureIsRetriedAndTheWindowReleased() throws Exception {
+        JobLog job = refundJob("listener-1");
+        Mockito.when(refundClient.processRefundAsync(Mockito.any()))
+                .thenReturn(CompletableFuture.failedFuture(new RefundClient.RefundException("gateway down")));
+
+        TestDelivery delivery = deliver(job, false);
+        Assertions.assertEquals("ack", delivery.outcome);
+        JobLog after = jobLogRepository.findById(job.getId()).orElseThrow();
+        Assertions.assertEquals(JobStatus.RETRYING, after.getStatus());
+        Assertions.assertEquals(1, after.getAttempts());
+        Assertions.assertEquals("gateway down", after.getLastError());
+        // a retried job keeps its reservation
+        Assertions.assertEquals(2000, refundLedger.balance(job.getRelatedOrderId()).orElseThrow().reservedMinor);
+        Assertions.assertEquals(concurrencyLimits.refundCallPermits(), concurrencyLimits.refundCalls().availablePermits());
+    }
+
+    @Test
+    public void testOutcomeThatCannotBeRecordedIsRequeuedAndRedelivered() throws Exception {
+        JobLog job = refundJob("listener-2");
+        RefundClient.RefundResponse ok = new RefundClient.RefundResponse();
+        ok.success = true;
+        ok.gatewayReference = "gw-1";
+        Mockito.when(refundClient.processRefundAsync(Mockito.any())).thenReturn(CompletableFuture.completedFuture(ok));
+        // marking the job IN_PROGRESS works, recording the outcome does not
+        Mockito.doThrow(new DataAccessResourceFailureException("database gone")).when(jobLogRepository)
+                .save(Mockito.argThat(j -> j != null && job.getId().equals(j.getId()) && j.getStatus() == JobStatus.SUCCESS));
+
+        TestDelivery first = deliver(job, false);
+        Assertions.assertEquals("requeue", first.outcome);
+        Assertions.assertEquals(JobStatus.IN_PROGRESS, jobLogRepository.findById(job.getId()).orElseThrow().getStatus());
+        Assertions.assertEquals(concurrencyLimits.refundCallPermits(), concurrencyLimits.refundCalls().availablePermits());
+
+        Mockito.reset(jobLogRepository);
+        TestDelivery second = deliver(job, true);
+        Assertions.assertEquals("ack", second.outcome);
+        JobLog after = jobLogRepository.findById(job.getId()).orElseThrow();
+        Assertions.assertEquals(JobStatus.SUCCESS, after.getStatus());
+        // the redelivery reused the first reservation
+        Assertions.assertEquals(2000, refundLedger.balance(job.getRelatedOrderId()).orElseThrow().refundedMinor);
+        Assertions.assertEquals(0, refundLedger.balance(job.getRelatedOrderId()).orElseThrow().reservedMinor);
+    }
+
+    @Test
+    public void testRedeliveredRefundOfACompletedReturnCountsNoTransition() throws Exception {
+        JobLog job = refundJob("listener-4");
+        RefundClient.RefundResponse ok = new RefundClient.RefundResponse();
+        ok.success = true;
+        ok.gatewayReference = "gw-3";
+        Mockito.when(refundClient.processRefundAsync(Mockito.any())).thenReturn(CompletableFuture.completedFuture(ok));
+        double before = completedToCompleted();
+
+        TestDelivery delivery = deliver(job, true);
+        Assertions.assertEquals("ack", delivery.outcome);
+        Assertions.assertEquals(JobStatus.SUCCESS, jobLogRepository.findById(job.getId()).orElseThrow().getStatus());
+        // the return was already COMPLETED when the refund was queued
+        Assertions.assertEquals(before, completedToCompleted());
+    }
+
+    @Test
+    public void testRefundsOfOneOrderRunOneAtATimeInDeliveryOrder() throws Exception {
+        Order o = deliveredOrder("listener-3");
+        JobLog first = refundJob(o, 500L);
+        JobLog second = refundJob(o, 700L);
+        CompletableFuture<RefundClient.RefundResponse> firstCall = new CompletableFuture<>();
+        RefundClient.RefundResponse ok = new RefundClient.RefundResponse();
+        ok.success = true;
+        ok.gatewayReference = "gw-2";
+        Mockito.when(refundClient.processRefundAsync(Mockito.any()))
+                .thenReturn(firstCall, CompletableFuture.completedFuture(ok));
+
+        TestDelivery firstDelivery = send(first, false);
+        TestDelivery secondDelivery = send(second, false);
+        // the second waits for the first, holding its window slot
+        Thread.sleep(200);
+        Mockito.verify(refundClient, Mockito.times(1)).processRefundAsync(Mockito.any());
+        Assertions.assertEquals(concurrencyLimits.refundCallPermits() - 2, concurrencyLimits.refundCalls().availablePermits());
+
+        firstCall.complete(ok);
+        Assertions.assertTrue(firstDelivery.settled.await(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(secondDelivery.settled.await(5, TimeUnit.SECONDS));
+        ArgumentCaptor<RefundClient.RefundRequestDto> requests = ArgumentCaptor.forClass(RefundClient.RefundRequestDto.class);
+        Mockito.verify(refundClient, Mockito.times(2)).processRefundAsync(requests.capture());
+        Assertions.assertEquals(List.of(500L, 700L), requests.getAllValues().stream().map(r -> r.amountCents).toList());
+        Assertions.assertEquals(JobStatus.SUCCESS, jobLogRepository.findById(second.getId()).orElseThrow().getStatus());
+        Assertions.assertEquals(1200, refundLedger.balance(o.getId()).orElseThrow().refundedMinor);
+    }
+
+    @Test
+    public void testDefaultAsyncCallDelegatesToTheBlockingOne() {
+        RefundClient.RefundResponse ok = new RefundClient.RefundResponse();
+        RefundClient blocking = new RefundClient() {
+            @Override
+            public RefundResponse processRefund(RefundRequestDto request) throws RefundException {
+                if (request.amountCents < 0) {
+                    throw new RefundException("negative");
+                }
+                return ok;
+            }
+
+            @Override
+            public List<RefundResponse> processRefunds(List<RefundRequestDto> requests) {
+                return List.of();
+            }
+        };
+        RefundClient.RefundRequestDto request = new RefundClient.RefundRequestDto();
+        Assertions.assertSame(ok, blocking.processRefundAsync(request).join());
+        request.amountCents = -1;
+        CompletableFuture<RefundClient.RefundResponse> failed = blocking.processRefundAsync(request);
+        Assertions.assertTrue(failed.isCompletedExceptionally());
+    }
+
+    private double completedToCompleted() {
+        Counter c = meterRegistry.find("returns.transitions").tag("from", "completed").tag("to", "completed").counter();
+        return c == null ? 0 : c.count();
+    }
+
+    private JobLog refundJob(String externalId) {
+        return refundJob(deliveredOrder(externalId), null);
+    }
+
+    private Order deliveredOrder(String externalId) {
+        Order o = orderService.createOrder(externalId, "r@l.com", new BigDecimal("20.00"));
+        for (OrderStatus s : new OrderStatus[]{OrderStatus.PAID, OrderStatus.PROCESSING_IN_WAREHOUSE, OrderStatus.SHIPPED, OrderStatus.DELIVERED}) {
+            orderService.changeOrderStatus(o.getId(), s, "test", "step");
+        }
+        return o;
+    }
+
+    private JobLog refundJob(Order o, Long amountMinor) {
+        ReturnRequest rr = returnService.createReturn(o.getId(), "broken", amountMinor);
+        for (ReturnStatus s : new ReturnStatus[]{ReturnStatus.APPROVED, ReturnStatus.IN_TRANSIT, ReturnStatus.RECEIVED, ReturnStatus.COMPLETED}) {
+            returnService.changeReturnStatus(rr.getId(), s, "test", "step");
+        }
+        return jobLogRepository.findAll().stream()
+                .filter(j -> j.getJobType() == JobType.REFUND_PROCESSING && rr.getId().equals(j.getRelatedReturnId()))
+                .findFirst().orElseThrow();
+    }
+
+    private TestDelivery deliver(JobLog job, boolean redelivered) throws InterruptedException {
+        TestDelivery delivery = send(job, redelivered);
+        Assertions.assertTrue(delivery.settled.await(5, TimeUnit.SECONDS));
+        // the window slot is given back just after the delivery is settled
+        for (int i = 0; i < 100 && concurrencyLimits.refundCalls().availablePermits() < concurrencyLimits.refundCallPermits(); i++) {
+            Thread.sleep(10);
+        }
+        return delivery;
+    }
+
+    private TestDelivery send(JobLog job, boolean redelivered) {
+        MessageProperties props = new MessageProperties();
+        props.setRedelivered(redelivered);
+        Message message = messageConverter.toMessage(
+                new RefundJobDto(job.getId(), job.getRelatedOrderId(), job.getRelatedReturnId(), "PAY-1", "USD"), props);
+        TestDelivery delivery = new TestDelivery(message);
+        refundListener.handleRefund(delivery);
+        return delivery;
+    }
+
+    private static final class TestDelivery implements JobDelivery {
+        private final Message message;
+        private final CountDownLatch settled = new CountDownLatch(1);
+        private volatile String outcome;
+
+        TestDelivery(Message message) {
+            this.message = message;
+        }
+
+        @Override
+        public Message message() {
+            return message;
+        }
+
+        @Override
+        public boolean redelivered() {
+            return message.getMessageProperties().isRedelivered();
+        }
+
+        @Override
+        public void ack() {
+            settle("ack");
+        }
+
+        @Override
+        public void requeue() {
+            settle("requeue");
+        }
+
+        @Override
+        public void deadLetter(Exception cause) {
+            settle("dead-letter");
+        }
+
+        private void settle(String how) {
+            outcome = how;
+            settled.countDown();
+        }
+    }
+}
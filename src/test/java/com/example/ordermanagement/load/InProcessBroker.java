@@ -0,0 +1,147 @@
+package com.example.ordermanagement.load;
+
+import com.example.ordermanagement.config.RabbitConfig;
+import com.example.ordermanagement.domain.JobType;
+import com.example.ordermanagement.listener.InvoiceListener;
+import com.example.ordermanagement.listener.RefundListener;
+import com.example.ordermanagement.messaging.dto.InvoiceJobDto;
+import com.rabbitmq.client.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for RabbitMQ inside the test JVM. Registered as the primary {@link RabbitTemplate},
+ * it takes what {@code OutboxRelay} publishes and hands each message to the job listeners on a
+ * fixed pool of consumer threads, like a container would: invoice jobs are converted and passed
+ * to {@link InvoiceListener#handleInvoice}, refund jobs go to {@link RefundListener#handleRefund}
+ * with a channel whose acks and nacks are tracked (a requeueing nack redelivers). Confirms
+ * succeed immediately; messages for the dead-letter exchange are only counted.
+ */
+class InProcessBroker extends RabbitTemplate {
+
+    private static final Logger log = LoggerFactory.getLogger(InProcessBroker.class);
+
+    private final ObjectProvider<InvoiceListener> invoiceListener;
+    private final ObjectProvider<RefundListener> refundListener;
+    private final MessageConverter messageConverter;
+    private final ExecutorService consumers;
+    private final AtomicLong deliveryTags = new AtomicLong();
+    private final Map<Long, Message> unacked = new ConcurrentHashMap<>();
+    private final Channel channel;
+
+    final AtomicLong published = new AtomicLong();
+    final AtomicLong acked = new AtomicLong();
+    final AtomicLong redelivered = new AtomicLong();
+    final AtomicLong rejected = new AtomicLong();
+    final AtomicLong deadLettered = new AtomicLong();
+    final AtomicLong listenerErrors = new AtomicLong();
+
+    InProcessBroker(ObjectProvider<InvoiceListener> invoiceListener, ObjectProvider<RefundListener> refundListener,
+                    MessageConverter messageConverter, int consumerThreads) {
+        this.invoiceListener = invoiceListener;
+        this.refundListener = refundListener;
+        this.messageConverter = messageConverter;
+        this.consumers = Executors.newFixedThreadPool(consumerThreads, r -> {
+            Thread t = new Thread(r, "in-process-consumer");
+            t.setDaemon(true);
+            return t;
+        });
+        this.channel = (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[]{Channel.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "basicAck" -> settle((Long) args[0], true, false);
+                        case "basicNack" -> settle((Long) args[0], false, (Boolean) args[2]);
+                        case "basicReject" -> settle((Long) args[0], false, (Boolean) args[1]);
+                        case "isOpen" -> {
+                            return true;
+                        }
+                        default -> {
+                        }
+                    }
+                    return null;
+                });
+    }
+
+    @Override
+    public <T> T invoke(OperationsCallback<T> action, com.rabbitmq.client.ConfirmCallback acks,
+                        com.rabbitmq.client.ConfirmCallback nacks) {
+        return action.doInRabbit(this);
+    }
+
+    @Override
+    public void waitForConfirmsOrDie(long timeout) {
+    }
+
+    @Override
+    public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+        if (RabbitConfig.DEAD_LETTER_EXCHANGE.equals(exchange)) {
+            deadLettered.incrementAndGet();
+            return;
+        }
+        published.incrementAndGet();
+        MessageProperties props = message.getMessageProperties();
+        props.setReceivedExchange(exchange);
+        props.setReceivedRoutingKey(routingKey);
+        deliver(message, false);
+    }
+
+    private void deliver(Message message, boolean redelivery) {
+        long tag = deliveryTags.incrementAndGet();
+        MessageProperties props = message.getMessageProperties();
+        props.setDeliveryTag(tag);
+        props.setRedelivered(redelivery);
+        consumers.execute(() -> consume(tag, message));
+    }
+
+    private void consume(long tag, Message message) {
+        JobType type = RabbitConfig.jobTypeForRoutingKey(message.getMessageProperties().getReceivedRoutingKey());
+        try {
+            if (type == JobType.REFUND_PROCESSING) {
+                // settled through the channel once the gateway call completes
+                unacked.put(tag, message);
+                refundListener.getObject().handleRefund(message, channel);
+            } else {
+                message.getMessageProperties().setInferredArgumentType(InvoiceJobDto.class);
+                invoiceListener.getObject().handleInvoice((InvoiceJobDto) messageConverter.fromMessage(message));
+                acked.incrementAndGet();
+            }
+        } catch (RuntimeException e) {
+            listenerErrors.incrementAndGet();
+            log.warn("Listener failed for delivery {}: {}", tag, e.getMessage());
+        }
+    }
+
+    private void settle(long tag, boolean ack, boolean requeue) {
+        Message message = unacked.remove(tag);
+        if (message == null) {
+            return;
+        }
+        if (ack) {
+            acked.incrementAndGet();
+        } else if (requeue) {
+            redelivered.incrementAndGet();
+            deliver(message, true);
+        } else {
+            rejected.incrementAndGet();
+        }
+    }
+
+    void shutdown() throws InterruptedException {
+        consumers.shutdown();
+        consumers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+}
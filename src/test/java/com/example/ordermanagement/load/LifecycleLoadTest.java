@@ -0,0 +1,318 @@
+package com.example.ordermanagement.load;
+
+import com.example.ordermanagement.domain.JobLog;
+import com.example.ordermanagement.domain.JobStatus;
+import com.example.ordermanagement.domain.JobType;
+import com.example.ordermanagement.listener.InvoiceListener;
+import com.example.ordermanagement.listener.RefundListener;
+import com.example.ordermanagement.repository.JobLogRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives order and return lifecycles through the HTTP API at a target rate and reports latency
+ * percentiles (HdrHistogram) per API call and per job, from {@code JobLog.createdAt} to SUCCESS.
+ * Runs entirely in-process: H2 (local profile) and {@link InProcessBroker} in place of RabbitMQ,
+ * so the numbers include the outbox relay, the listeners and the mock refund gateway.
+ * <p>
+ * Skipped unless {@code -Dloadtest=true}. Knobs (system properties):
+ * <ul>
+ *   <li>{@code load.rate} — lifecycles started per second (default 20)</li>
+ *   <li>{@code load.duration-s} — how long to keep starting them (default 30)</li>
+ *   <li>{@code load.mix} — weights per lifecycle, default
+ *       {@code create=10,ship=20,deliver=30,return=15,refund=25}: {@code create} only creates
+ *       the order, {@code ship} takes it to SHIPPED (invoice job), {@code deliver} to DELIVERED,
+ *       {@code return} also opens and approves a return, {@code refund} completes the return
+ *       (refund job)</li>
+ *   <li>{@code load.workers} — concurrent API clients (default 64)</li>
+ *   <li>{@code load.consumers} — consumer threads of the broker stand-in (default 8)</li>
+ *   <li>{@code load.drain-timeout-s} — how long to wait for jobs to finish (default 120)</li>
+ * </ul>
+ * Lifecycles are started open-loop on a fixed schedule; when every worker is busy they queue,
+ * and the wait shows up as "lifecycle start delay" instead of silently lowering the rate.
+ * The report is printed and written to {@code target/load-report.txt}.
+ * <pre>
+ * mvn test -Dtest=LifecycleLoadTest -Dloadtest=true -Dload.rate=100 -Dload.duration-s=60
+ * </pre>
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.profiles.active=local",
+        "spring.jpa.show-sql=false",
+        "logging.level.com.example.ordermanagement=INFO",
+        // the broker stand-in feeds the listeners; keep the real containers down
+        "spring.rabbitmq.listener.simple.auto-startup=false",
+        "app.listeners.autoscale.enabled=false"})
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+public class LifecycleLoadTest {
+
+    private static final Logger log = LoggerFactory.getLogger(LifecycleLoadTest.class);
+
+    enum Lifecycle { CREATE, SHIP, DELIVER, RETURN, REFUND }
+
+    private static final String[] ORDER_PATH = {"PAID", "PROCESSING_IN_WAREHOUSE", "SHIPPED"};
+    private static final String[] RETURN_PATH = {"IN_TRANSIT", "RECEIVED", "COMPLETED"};
+
+    @TestConfiguration
+    static class BrokerStandIn {
+        @Bean
+        @Primary
+        InProcessBroker inProcessBroker(ConnectionFactory connectionFactory, ObjectProvider<InvoiceListener> invoiceListener,
+                                        ObjectProvider<RefundListener> refundListener, MessageConverter messageConverter) {
+            InProcessBroker broker = new InProcessBroker(invoiceListener, refundListener, messageConverter,
+                    Integer.getInteger("load.consumers", 8));
+            // never used for I/O; RabbitTemplate just insists on having one
+            broker.setConnectionFactory(connectionFactory);
+            return broker;
+        }
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JobLogRepository jobLogRepository;
+
+    @Autowired
+    private InProcessBroker broker;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final Map<String, Histogram> apiLatency = new ConcurrentSkipListMap<>();
+    private final Histogram allApiCalls = new ConcurrentHistogram(3);
+    private final Histogram startDelay = new ConcurrentHistogram(3);
+    private final AtomicLong apiErrors = new AtomicLong();
+    private final AtomicLong lifecyclesDone = new AtomicLong();
+
+    @Test
+    public void runLifecycleLoad() throws Exception {
+        int rate = Integer.getInteger("load.rate", 20);
+        int durationS = Integer.getInteger("load.duration-s", 30);
+        String mixSpec = System.getProperty("load.mix", "create=10,ship=20,deliver=30,return=15,refund=25");
+        int workers = Integer.getInteger("load.workers", 64);
+        int drainTimeoutS = Integer.getInteger("load.drain-timeout-s", 120);
+        Lifecycle[] mix = parseMix(mixSpec);
+
+        ExecutorService clients = Executors.newFixedThreadPool(workers);
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long t0 = System.nanoTime();
+        AtomicLong started = new AtomicLong();
+        ScheduledFuture<?> schedule = ticker.scheduleAtFixedRate(() -> {
+            long intended = t0 + started.getAndIncrement() * periodNanos;
+            Lifecycle lifecycle = mix[ThreadLocalRandom.current().nextInt(mix.length)];
+            clients.execute(() -> {
+                startDelay.recordValue(micros(System.nanoTime() - intended));
+                run(lifecycle);
+            });
+        }, 0, periodNanos, TimeUnit.NANOSECONDS);
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(durationS));
+        schedule.cancel(false);
+        ticker.shutdown();
+        clients.shutdown();
+        clients.awaitTermination(5, TimeUnit.MINUTES);
+        double elapsedS = (System.nanoTime() - t0) / 1e9;
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(drainTimeoutS);
+        long open;
+        while ((open = openJobs()) > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(200);
+        }
+
+        String report = report(rate, durationS, mixSpec, started.get(), elapsedS, open);
+        log.info("Load test report:\n{}", report);
+        Path out = Path.of("target", "load-report.txt");
+        Files.createDirectories(out.getParent());
+        Files.writeString(out, report);
+        broker.shutdown();
+
+        Assertions.assertEquals(0, apiErrors.get(), "API calls failed, see report");
+        Assertions.assertEquals(0, open, "jobs still open after " + drainTimeoutS + "s, see report");
+    }
+
+    private void run(Lifecycle lifecycle) {
+        try {
+            UUID orderId = post("POST /orders", "/orders",
+                    "{\"customerEmail\":\"load@example.com\",\"totalAmount\":\"49.90\"}");
+            if (lifecycle == Lifecycle.CREATE) {
+                return;
+            }
+            for (String status : ORDER_PATH) {
+                orderStatus(orderId, status);
+            }
+            if (lifecycle == Lifecycle.SHIP) {
+                return;
+            }
+            orderStatus(orderId, "DELIVERED");
+            if (lifecycle == Lifecycle.DELIVER) {
+                return;
+            }
+            UUID returnId = post("POST /returns", "/returns", "{\"orderId\":\"" + orderId + "\",\"reason\":\"load\"}");
+            returnStatus(returnId, "APPROVED");
+            if (lifecycle == Lifecycle.RETURN) {
+                return;
+            }
+            for (String status : RETURN_PATH) {
+                returnStatus(returnId, status);
+            }
+        } catch (ApiFailure e) {
+            // counted where it happened; the rest of this lifecycle is skipped
+        } finally {
+            lifecyclesDone.incrementAndGet();
+        }
+    }
+
+    private void orderStatus(UUID orderId, String status) {
+        post("POST /orders/{id}/status", "/orders/" + orderId + "/status", "{\"status\":\"" + status + "\"}");
+    }
+
+    private void returnStatus(UUID returnId, String status) {
+        post("POST /returns/{id}/status", "/returns/" + returnId + "/status", "{\"status\":\"" + status + "\"}");
+    }
+
+    /**
+     * Posts {@code json}, records the latency under {@code name} and returns the {@code id} of
+     * the response body.
+     */
+    private UUID post(String name, String path, String json) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+        long start = System.nanoTime();
+        HttpResponse<String> response;
+        try {
+            response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (IOException e) {
+            apiErrors.incrementAndGet();
+            throw new ApiFailure();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiFailure();
+        }
+        long latency = micros(System.nanoTime() - start);
+        apiLatency.computeIfAbsent(name, k -> new ConcurrentHistogram(3)).recordValue(latency);
+        allApiCalls.recordValue(latency);
+        if (response.statusCode() / 100 != 2) {
+            apiErrors.incrementAndGet();
+            throw new ApiFailure();
+        }
+        try {
+            return UUID.fromString(objectMapper.readTree(response.body()).get("id").asText());
+        } catch (IOException | RuntimeException e) {
+            apiErrors.incrementAndGet();
+            throw new ApiFailure();
+        }
+    }
+
+    private long openJobs() {
+        long open = 0;
+        for (JobLog job : jobLogRepository.findAll()) {
+            if (job.getStatus() != JobStatus.SUCCESS && job.getStatus() != JobStatus.FAILED) {
+                open++;
+            }
+        }
+        return open;
+    }
+
+    private String report(int rate, int durationS, String mix, long started, double elapsedS, long openJobs) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%n=== Lifecycle load: target %d/s for %ds, mix %s ===%n", rate, durationS, mix));
+        sb.append(String.format("lifecycles started %d (%.1f/s), finished %d, API errors %d%n",
+                started, started / elapsedS, lifecyclesDone.get(), apiErrors.get()));
+        sb.append(String.format("%n%-34s %8s %9s %9s %9s %9s %9s%n", "API latency (ms)", "count", "p50", "p90", "p99", "p99.9", "max"));
+        for (Map.Entry<String, Histogram> e : apiLatency.entrySet()) {
+            row(sb, e.getKey(), e.getValue());
+        }
+        row(sb, "all API calls", allApiCalls);
+        row(sb, "lifecycle start delay", startDelay);
+
+        Map<JobType, Histogram> completion = new EnumMap<>(JobType.class);
+        Map<String, Long> outcomes = new TreeMap<>();
+        for (JobLog job : jobLogRepository.findAll()) {
+            outcomes.merge(job.getJobType() + " " + job.getStatus(), 1L, Long::sum);
+            if (job.getStatus() == JobStatus.SUCCESS && job.getCreatedAt() != null && job.getUpdatedAt() != null) {
+                long us = Math.max(0, Duration.between(job.getCreatedAt(), job.getUpdatedAt()).toNanos() / 1000);
+                completion.computeIfAbsent(job.getJobType(), k -> new Histogram(3)).recordValue(us);
+            }
+        }
+        sb.append(String.format("%n%-34s %8s %9s %9s %9s %9s %9s%n", "job completion, created->SUCCESS (ms)", "count", "p50", "p90", "p99", "p99.9", "max"));
+        for (Map.Entry<JobType, Histogram> e : completion.entrySet()) {
+            row(sb, e.getKey().name(), e.getValue());
+        }
+        sb.append(String.format("%njob outcomes: %s, still open: %d%n", outcomes, openJobs));
+        sb.append(String.format("broker stand-in: published %d, acked %d, redelivered %d, rejected %d, dead-lettered %d, listener errors %d%n",
+                broker.published.get(), broker.acked.get(), broker.redelivered.get(), broker.rejected.get(),
+                broker.deadLettered.get(), broker.listenerErrors.get()));
+        return sb.toString();
+    }
+
+    private static void row(StringBuilder sb, String name, Histogram h) {
+        sb.append(String.format("%-34s %8d %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, h.getTotalCount(),
+                ms(h.getValueAtPercentile(50)), ms(h.getValueAtPercentile(90)), ms(h.getValueAtPercentile(99)),
+                ms(h.getValueAtPercentile(99.9)), ms(h.getMaxValue())));
+    }
+
+    /**
+     * Expands {@code name=weight,...} into a table to pick from uniformly.
+     */
+    static Lifecycle[] parseMix(String spec) {
+        List<Lifecycle> table = new ArrayList<>();
+        for (String part : spec.split(",")) {
+            String[] kv = part.trim().split("=");
+            Lifecycle lifecycle = Lifecycle.valueOf(kv[0].trim().toUpperCase(Locale.ROOT));
+            int weight = Integer.parseInt(kv[1].trim());
+            for (int i = 0; i < weight; i++) {
+                table.add(lifecycle);
+            }
+        }
+        if (table.isEmpty()) {
+            throw new IllegalArgumentException("Empty load.mix: " + spec);
+        }
+        return table.toArray(new Lifecycle[0]);
+    }
+
+    private static long micros(long nanos) {
+        return Math.max(0, nanos / 1000);
+    }
+
+    private static double ms(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static final class ApiFailure extends RuntimeException {
+        ApiFailure() {
+            super(null, null, false, false);
+        }
+    }
+}
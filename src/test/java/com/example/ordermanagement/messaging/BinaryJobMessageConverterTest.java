@@ -0,0 +1,76 @@
+package com.example.ordermanagement.messaging;
+
+import com.example.ordermanagement.config.RabbitConfig;
+import com.example.ordermanagement.messaging.dto.InvoiceJobDto;
+import com.example.ordermanagement.messaging.dto.RefundJobDto;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+public class BinaryJobMessageConverterTest {
+
+    private final MessageConverter converter = new RabbitConfig().jobMessageConverter(Jackson2ObjectMapperBuilder.json().build());
+
+    @Test
+    public void testRoundTripsAndCoexistsWithJson() {
+        RefundJobDto refund = new RefundJobDto(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), "pay-ünïcode-" + "x".repeat(200), null);
+        Message binary = converter.toMessage(refund, outbound(BinaryJobMessageConverter.CONTENT_TYPE));
+        Assertions.assertEquals(BinaryJobMessageConverter.CONTENT_TYPE, binary.getMessageProperties().getContentType());
+        RefundJobDto decoded = (RefundJobDto) converter.fromMessage(binary);
+        Assertions.assertEquals(refund.jobId, decoded.jobId);
+        Assertions.assertEquals(refund.orderId, decoded.orderId);
+        Assertions.assertEquals(refund.returnId, decoded.returnId);
+        Assertions.assertEquals(refund.paymentReference, decoded.paymentReference);
+        Assertions.assertNull(decoded.currency);
+
+        InvoiceJobDto invoice = new InvoiceJobDto(UUID.randomUUID(), null, "customer@example.com");
+        Message invoiceBinary = converter.toMessage(invoice, outbound(BinaryJobMessageConverter.CONTENT_TYPE));
+        InvoiceJobDto invoiceDecoded = (InvoiceJobDto) converter.fromMessage(invoiceBinary);
+        Assertions.assertEquals(invoice.jobId, invoiceDecoded.jobId);
+        Assertions.assertNull(invoiceDecoded.orderId);
+        Assertions.assertEquals(invoice.customerEmail, invoiceDecoded.customerEmail);
+
+        // JSON messages still decode through the same converter
+        Message json = converter.toMessage(invoice, outbound(MessageProperties.CONTENT_TYPE_JSON));
+        Assertions.assertEquals(MessageProperties.CONTENT_TYPE_JSON, json.getMessageProperties().getContentType());
+        Assertions.assertEquals(invoice.customerEmail, ((InvoiceJobDto) converter.fromMessage(json)).customerEmail);
+
+        InvoiceJobDto full = new InvoiceJobDto(UUID.randomUUID(), UUID.randomUUID(), "customer@example.com");
+        int binarySize = converter.toMessage(full, outbound(BinaryJobMessageConverter.CONTENT_TYPE)).getBody().length;
+        int jsonSize = converter.toMessage(full, outbound(MessageProperties.CONTENT_TYPE_JSON)).getBody().length;
+        Assertions.assertTrue(binarySize * 2 < jsonSize, binarySize + " vs " + jsonSize);
+    }
+
+    @Test
+    public void testRejectsUnknownVersionsAndTruncatedMessages() {
+        Message m = converter.toMessage(new InvoiceJobDto(UUID.randomUUID(), UUID.randomUUID(), "a@b.c"),
+                outbound(BinaryJobMessageConverter.CONTENT_TYPE));
+        byte[] body = m.getBody();
+
+        byte[] future = body.clone();
+        future[0] = BinaryJobMessageConverter.VERSION + 1;
+        Assertions.assertThrows(MessageConversionException.class,
+                () -> converter.fromMessage(new Message(future, m.getMessageProperties())));
+
+        byte[] truncated = Arrays.copyOf(body, body.length - 2);
+        Assertions.assertThrows(MessageConversionException.class,
+                () -> converter.fromMessage(new Message(truncated, m.getMessageProperties())));
+
+        // fields appended by a later writer are skipped
+        byte[] extended = Arrays.copyOf(body, body.length + 4);
+        Assertions.assertEquals("a@b.c", ((InvoiceJobDto) converter.fromMessage(new Message(extended, m.getMessageProperties()))).customerEmail);
+    }
+
+    private static MessageProperties outbound(String contentType) {
+        MessageProperties props = new MessageProperties();
+        props.setContentType(contentType);
+        return props;
+    }
+}
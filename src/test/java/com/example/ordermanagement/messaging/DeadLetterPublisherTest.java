@@ -0,0 +1,53 @@
+package com.example.ordermanagement.messaging;
+
+import com.example.ordermanagement.config.RabbitConfig;
+import com.example.ordermanagement.domain.JobType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+public class DeadLetterPublisherTest {
+
+    @Test
+    public void testPublishTagsAndWaitsForTheConfirm() {
+        RabbitTemplate template = Mockito.mock(RabbitTemplate.class);
+        RabbitOperations ops = Mockito.mock(RabbitOperations.class);
+        Mockito.when(template.invoke(Mockito.any())).thenAnswer(inv ->
+                inv.getArgument(0, RabbitOperations.OperationsCallback.class).doInRabbit(ops));
+        DeadLetterPublisher publisher = new DeadLetterPublisher(template);
+
+        MessageProperties props = new MessageProperties();
+        props.setReceivedExchange(RabbitConfig.EXCHANGE);
+        props.setReceivedRoutingKey(RabbitConfig.REFUND_ROUTING_KEY + ".3");
+        props.setConsumerQueue("ordermanagement.refund_processing.3");
+        Message message = new Message(new byte[]{1}, props);
+        long before = System.currentTimeMillis();
+        publisher.publish(message, new IllegalStateException("wrapped", new IllegalArgumentException("x".repeat(1500))));
+
+        ArgumentCaptor<Message> sent = ArgumentCaptor.forClass(Message.class);
+        Mockito.verify(ops).send(Mockito.eq(RabbitConfig.DEAD_LETTER_EXCHANGE), Mockito.eq(RabbitConfig.REFUND_ROUTING_KEY + ".3"), sent.capture());
+        Mockito.verify(ops).waitForConfirmsOrDie(Mockito.anyLong());
+        Map<String, Object> headers = sent.getValue().getMessageProperties().getHeaders();
+        Assertions.assertEquals(JobType.REFUND_PROCESSING.name(), headers.get(DeadLetterPublisher.JOB_TYPE_HEADER));
+        // the root cause, truncated
+        Assertions.assertEquals("x".repeat(1000), headers.get(DeadLetterPublisher.FAILURE_REASON_HEADER));
+        Assertions.assertEquals(IllegalArgumentException.class.getName(), headers.get(DeadLetterPublisher.EXCEPTION_TYPE_HEADER));
+        Assertions.assertTrue((Long) headers.get(DeadLetterPublisher.FAILED_AT_HEADER) >= before);
+        Assertions.assertEquals(RabbitConfig.EXCHANGE, headers.get(DeadLetterPublisher.ORIGINAL_EXCHANGE_HEADER));
+        Assertions.assertEquals(RabbitConfig.REFUND_ROUTING_KEY + ".3", headers.get(DeadLetterPublisher.ORIGINAL_ROUTING_KEY_HEADER));
+        Assertions.assertEquals("ordermanagement.refund_processing.3", headers.get(DeadLetterPublisher.ORIGINAL_QUEUE_HEADER));
+
+        // a consumer batch goes out on one channel with one wait
+        publisher.recover(List.of(message, message), new RuntimeException("batch"));
+        Mockito.verify(ops, Mockito.times(3)).send(Mockito.anyString(), Mockito.anyString(), Mockito.any(Message.class));
+        Mockito.verify(ops, Mockito.times(2)).waitForConfirmsOrDie(Mockito.anyLong());
+    }
+}
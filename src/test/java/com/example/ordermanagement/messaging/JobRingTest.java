@@ -0,0 +1,170 @@
+package com.example.ordermanagement.messaging;
+
+import com.example.ordermanagement.config.JobShards;
+import com.example.ordermanagement.config.RabbitConfig;
+import com.example.ordermanagement.domain.OutboxMessage;
+import com.example.ordermanagement.listener.InvoiceListener;
+import com.example.ordermanagement.listener.RefundListener;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class JobRingTest {
+
+    @Test
+    public void testWrapsAroundAndWaitsForTheConsumer() throws Exception {
+        JobRing ring = new JobRing("test", 3, RingWaitStrategy.BLOCKING);
+        Assertions.assertEquals(4, ring.capacity());
+
+        List<OutboxMessage> first = messages(4);
+        Assertions.assertEquals(4, ring.publish(first, false, System.nanoTime()));
+        // full: nothing more goes in until the consumer releases
+        Assertions.assertEquals(0, ring.publish(messages(1), false, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20)));
+
+        Assertions.assertEquals(3, ring.waitFor(0));
+        Assertions.assertEquals(first.get(0).getId(), ring.slot(0).messageId);
+        Assertions.assertEquals(first.get(3).getId(), ring.slot(3).messageId);
+        ring.release(1);
+        Assertions.assertEquals(2, ring.depth());
+
+        // a batch larger than the free space is published in parts as the consumer catches up
+        List<OutboxMessage> second = messages(5);
+        List<UUID> consumed = new ArrayList<>();
+        Thread consumer = new Thread(() -> {
+            long next = 2;
+            while (consumed.size() < 7) {
+                long available = ring.waitFor(next);
+                for (long s = next; s <= available; s++) {
+                    consumed.add(ring.slot(s).messageId);
+                }
+                ring.release(available);
+                next = available + 1;
+            }
+        });
+        consumer.start();
+        Assertions.assertEquals(5, ring.publish(second, true, System.nanoTime() + TimeUnit.SECONDS.toNanos(5)));
+        consumer.join(5000);
+        Assertions.assertEquals(7, consumed.size());
+        Assertions.assertEquals(second.get(4).getId(), consumed.get(6));
+        Assertions.assertTrue(ring.slot(8).redelivered);
+        Assertions.assertEquals(0, ring.depth());
+
+        ring.stop();
+        Assertions.assertEquals(8, ring.waitFor(9));
+    }
+
+    @Test
+    public void testJournalRedeliversUnackedMessages(@TempDir Path dir) throws Exception {
+        Path path = dir.resolve("journal.bin");
+        List<OutboxMessage> sent = messages(3);
+        JobJournal journal = JobJournal.open(path, 1 << 20, new ArrayList<>());
+        journal.append(sent);
+        journal.ack(sent.get(1).getId());
+        journal.close();
+
+        List<OutboxMessage> recovered = new ArrayList<>();
+        journal = JobJournal.open(path, 1 << 20, recovered);
+        Assertions.assertEquals(List.of(sent.get(0).getId(), sent.get(2).getId()), recovered.stream().map(OutboxMessage::getId).toList());
+        OutboxMessage m = recovered.get(1);
+        Assertions.assertEquals(sent.get(2).getJobId(), m.getJobId());
+        Assertions.assertEquals(sent.get(2).getShardKey(), m.getShardKey());
+        Assertions.assertEquals(RabbitConfig.REFUND_ROUTING_KEY, m.getRoutingKey());
+        Assertions.assertArrayEquals(sent.get(2).getPayload(), m.getPayload());
+
+        journal.ack(sent.get(0).getId());
+        journal.ack(sent.get(2).getId());
+        Assertions.assertEquals(0, journal.openCount());
+        journal.close();
+        recovered.clear();
+        JobJournal.open(path, 1 << 20, recovered).close();
+        Assertions.assertTrue(recovered.isEmpty());
+    }
+
+    @Test
+    public void testJournalStaysBoundedWhileMessagesAreAlwaysOpen(@TempDir Path dir) throws Exception {
+        Path path = dir.resolve("journal.bin");
+        JobJournal journal = JobJournal.open(path, 4096, new ArrayList<>());
+        OutboxMessage stuck = messages(1).get(0);
+        journal.append(List.of(stuck));
+        List<OutboxMessage> previous = messages(1);
+        journal.append(previous);
+        for (int i = 0; i < 500; i++) {
+            // one message always open, as under steady load
+            List<OutboxMessage> next = messages(1);
+            journal.append(next);
+            journal.ack(previous.get(0).getId());
+            previous = next;
+        }
+        Assertions.assertTrue(Files.size(path) < 2 * 4096 + 1024, "journal is " + Files.size(path) + " bytes");
+        journal.close();
+
+        List<OutboxMessage> recovered = new ArrayList<>();
+        JobJournal.open(path, 4096, recovered).close();
+        Assertions.assertEquals(List.of(stuck.getId(), previous.get(0).getId()), recovered.stream().map(OutboxMessage::getId).toList());
+    }
+
+    @Test
+    public void testMessagesAcceptedByAFailedSendAreNotSentAgain() throws Exception {
+        CountDownLatch proceed = new CountDownLatch(1);
+        List<String> handled = new CopyOnWriteArrayList<>();
+        RefundListener refundListener = Mockito.mock(RefundListener.class);
+        Mockito.doAnswer(inv -> {
+            proceed.await(5, TimeUnit.SECONDS);
+            handled.add(inv.getArgument(0, JobDelivery.class).message().getMessageProperties().getMessageId());
+            return null;
+        }).when(refundListener).handleRefund(Mockito.any(JobDelivery.class));
+        RingBufferJobTransport transport = new RingBufferJobTransport(Mockito.mock(InvoiceListener.class), refundListener, null,
+                null, null, null, null);
+        ReflectionTestUtils.setField(transport, "ringSize", 2);
+        ReflectionTestUtils.setField(transport, "partitions", 2);
+        ReflectionTestUtils.setField(transport, "batchSize", 50);
+        ReflectionTestUtils.setField(transport, "waitStrategy", "blocking");
+        ReflectionTestUtils.setField(transport, "shutdownTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(transport, "sendTimeoutMs", 50L);
+        transport.start();
+
+        // one message per ring keeps both consumers busy
+        transport.send(List.of(message(0), message(1)));
+        Thread.sleep(100);
+        List<OutboxMessage> batch = List.of(message(0), message(0), message(1), message(1), message(1));
+        // ring 0 takes its two, ring 1 only two of three
+        Assertions.assertThrows(IllegalStateException.class, () -> transport.send(batch));
+        proceed.countDown();
+        transport.send(batch);
+        transport.stop();
+
+        Assertions.assertEquals(7, handled.size());
+        Assertions.assertEquals(7, handled.stream().distinct().count());
+    }
+
+    private static OutboxMessage message(int partition) {
+        JobShards shards = new JobShards(2);
+        UUID orderId;
+        do {
+            orderId = UUID.randomUUID();
+        } while (shards.shardOf(orderId) != partition);
+        return new OutboxMessage(UUID.randomUUID(), UUID.randomUUID(), RabbitConfig.EXCHANGE, RabbitConfig.REFUND_ROUTING_KEY,
+                orderId, "application/json", null, "{}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<OutboxMessage> messages(int n) {
+        List<OutboxMessage> messages = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            messages.add(new OutboxMessage(UUID.randomUUID(), UUID.randomUUID(), RabbitConfig.EXCHANGE, RabbitConfig.REFUND_ROUTING_KEY,
+                    UUID.randomUUID(), "application/json", null, ("{\"n\":" + i + "}").getBytes(StandardCharsets.UTF_8)));
+        }
+        return messages;
+    }
+}
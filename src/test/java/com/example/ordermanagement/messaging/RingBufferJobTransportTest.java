@@ -0,0 +1,56 @@
+package com.example.ordermanagement.messaging;
+
+import com.example.ordermanagement.config.RabbitConfig;
+import com.example.ordermanagement.domain.*;
+import com.example.ordermanagement.repository.JobLogRepository;
+import com.example.ordermanagement.service.OrderService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@SpringBootTest(properties = {"spring.profiles.active=local", "app.outbox.poll-interval-ms=3600000",
+        "app.jobs.retry.poll-interval-ms=3600000", "app.jobs.transport=ring", "app.jobs.ring.partitions=1"})
+public class RingBufferJobTransportTest {
+
+    @Autowired
+    private RingBufferJobTransport transport;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private JobLogRepository jobLogRepository;
+
+    @Test
+    public void testPoisonMessageIsRecordedOnItsJobForRetry() throws Exception {
+        Order o = orderService.createOrder("ring-1", "r@i.ng", new BigDecimal("10.00"));
+        for (OrderStatus s : new OrderStatus[]{OrderStatus.PAID, OrderStatus.PROCESSING_IN_WAREHOUSE, OrderStatus.SHIPPED}) {
+            orderService.changeOrderStatus(o.getId(), s, "test", "step");
+        }
+        JobLog job = jobLogRepository.findAll().stream()
+                .filter(j -> o.getId().equals(j.getRelatedOrderId()))
+                .findFirst().orElseThrow();
+
+        transport.send(List.of(new OutboxMessage(UUID.randomUUID(), job.getId(), RabbitConfig.EXCHANGE,
+                RabbitConfig.INVOICE_ROUTING_KEY, o.getId(), "application/json", null,
+                "not a job".getBytes(StandardCharsets.UTF_8))));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (jobLogRepository.findById(job.getId()).orElseThrow().getStatus() == JobStatus.PENDING
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        JobLog after = jobLogRepository.findById(job.getId()).orElseThrow();
+        Assertions.assertEquals(JobStatus.RETRYING, after.getStatus());
+        Assertions.assertEquals(1, after.getAttempts());
+        Assertions.assertTrue(after.getLastError().startsWith("Dropped by the in-process transport"));
+        Assertions.assertTrue(after.getNextAttemptAt().isAfter(OffsetDateTime.now().minusSeconds(1)));
+    }
+}
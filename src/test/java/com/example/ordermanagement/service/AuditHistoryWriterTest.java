@@ -0,0 +1,115 @@
+package com.example.ordermanagement.service;
+
+import com.example.ordermanagement.domain.Order;
+import com.example.ordermanagement.domain.OrderStatus;
+import com.example.ordermanagement.domain.ReturnRequest;
+import com.example.ordermanagement.domain.ReturnStatus;
+import com.example.ordermanagement.repository.StateHistoryBatchRepository;
+import com.example.ordermanagement.repository.StateHistoryRecord;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@SpringBootTest(properties = {"spring.profiles.active=local", "app.outbox.poll-interval-ms=3600000"})
+public class AuditHistoryWriterTest {
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ReturnService returnService;
+
+    @Autowired
+    private HistoryService historyService;
+
+    @Autowired
+    private StateHistoryBatchRepository historyBatchRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private JobPublisherService jobPublisherService; // mock to prevent RabbitMQ calls in tests
+
+    @Test
+    public void testReturnTransitionsAreRecorded() {
+        Order o = delivered("audit-return");
+        ReturnRequest rr = returnService.createReturn(o.getId(), "too small", null);
+        returnService.changeReturnStatus(rr.getId(), ReturnStatus.APPROVED, "agent", "approved");
+
+        List<StateHistoryRecord> history = new ArrayList<>();
+        historyService.exportReturnHistory(rr.getId(), history::add);
+        Assertions.assertEquals(List.of("REQUESTED", "APPROVED"), history.stream().map(r -> r.newStatus).toList());
+        Assertions.assertEquals("REQUESTED", history.get(1).previousStatus);
+        Assertions.assertEquals("agent", history.get(1).actor);
+
+        // a rejected transition leaves no row behind
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> returnService.changeReturnStatus(rr.getId(), ReturnStatus.COMPLETED, "agent", "skip"));
+        history.clear();
+        historyService.exportReturnHistory(rr.getId(), history::add);
+        Assertions.assertEquals(2, history.size());
+    }
+
+    @Test
+    public void testWriteBehindFlushesOnStopAndRecoversAfterCrash(@TempDir Path dir) throws Exception {
+        Path marker = dir.resolve("history.marker");
+        Order o = orderService.createOrder("audit-wb", "w@b.com", new BigDecimal("12.00"));
+
+        AuditHistoryWriter writer = new AuditHistoryWriter(historyBatchRepository, transactionManager, "write-behind", marker.toString());
+        writer.start();
+        Assertions.assertTrue(Files.exists(marker));
+        writer.recordOrder(o.getId(), OrderStatus.PENDING_PAYMENT, OrderStatus.PAID, "test", "queued");
+        writer.stop();
+        Assertions.assertEquals(List.of("PENDING_PAYMENT", "PAID"), newStatuses(o));
+        Assertions.assertFalse(Files.exists(marker));
+
+        // a crashed write-behind run: the status moved on but its history row never made it
+        AuditHistoryWriter crashed = new AuditHistoryWriter(historyBatchRepository, transactionManager, "write-behind", marker.toString());
+        crashed.start();
+        jdbcTemplate.update("update orders set status = 'PROCESSING_IN_WAREHOUSE', updated_at = ? where id = ?", OffsetDateTime.now(), o.getId());
+
+        AuditHistoryWriter restarted = new AuditHistoryWriter(historyBatchRepository, transactionManager, "sync", marker.toString());
+        Assertions.assertTrue(restarted.recover() >= 1);
+        Assertions.assertFalse(Files.exists(marker));
+        List<StateHistoryRecord> history = new ArrayList<>();
+        historyService.exportOrderHistory(o.getId(), history::add);
+        StateHistoryRecord recovered = history.get(history.size() - 1);
+        Assertions.assertEquals("PAID", recovered.previousStatus);
+        Assertions.assertEquals("PROCESSING_IN_WAREHOUSE", recovered.newStatus);
+        Assertions.assertEquals(AuditHistoryWriter.RECOVERED_REASON, recovered.reason);
+        // nothing left to bridge
+        Files.writeString(marker, Long.toString(System.currentTimeMillis()));
+        Assertions.assertEquals(0, restarted.recover());
+        crashed.stop();
+    }
+
+    private Order delivered(String externalId) {
+        Order o = orderService.createOrder(externalId, "a@b.com", new BigDecimal("30.00"));
+        for (OrderStatus s : new OrderStatus[]{OrderStatus.PAID, OrderStatus.PROCESSING_IN_WAREHOUSE, OrderStatus.SHIPPED, OrderStatus.DELIVERED}) {
+            orderService.changeOrderStatus(o.getId(), s, "test", "step");
+        }
+        return o;
+    }
+
+    private List<String> newStatuses(Order o) {
+        List<StateHistoryRecord> history = new ArrayList<>();
+        historyService.exportOrderHistory(o.getId(), history::add);
+        return history.stream().map(r -> r.newStatus).toList();
+    }
+}
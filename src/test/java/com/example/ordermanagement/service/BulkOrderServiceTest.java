@@ -0,0 +1,58 @@
+package com.example.ordermanagement.service;
+
+import com.example.ordermanagement.domain.OrderStatus;
+import com.example.ordermanagement.repository.OrderRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+@SpringBootTest(properties = {"spring.profiles.active=local", "app.outbox.poll-interval-ms=3600000",
+        "app.orders.bulk.chunk-size=2"})
+public class BulkOrderServiceTest {
+
+    @Autowired
+    private BulkOrderService bulkOrderService;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Test
+    public void testIngestReportsEveryLine() throws Exception {
+        String ndjson = String.join("\n",
+                "{\"externalId\":\"bulk-1\",\"customerEmail\":\"a@b.com\",\"totalAmount\":10.5}",
+                "not json",
+                "{\"externalId\":\"bulk-2\",\"customerEmail\":\"c@d.com\",\"totalAmount\":3}",
+                "",
+                "{\"externalId\":\"bulk-1\",\"customerEmail\":\"dup@b.com\",\"totalAmount\":1}",
+                "{\"externalId\":\"bulk-3\",\"customerEmail\":\"e@f.com\"}",
+                "{\"externalId\":\"bulk-4\",\"customerEmail\":\"g@h.com\",\"totalAmount\":7}");
+
+        List<BulkOrderService.LineResult> results = new ArrayList<>();
+        bulkOrderService.ingest(new BufferedReader(new StringReader(ndjson)), results::addAll);
+
+        Assertions.assertEquals(6, results.size());
+        Assertions.assertEquals(List.of(1L, 2L, 3L, 5L, 6L, 7L), results.stream().map(r -> r.line).toList());
+        Assertions.assertEquals(List.of("CREATED", "REJECTED", "CREATED", "REJECTED", "REJECTED", "CREATED"),
+                results.stream().map(r -> r.status).toList());
+
+        BulkOrderService.LineResult first = results.get(0);
+        Assertions.assertEquals(OrderStatus.PENDING_PAYMENT, orderRepository.findById(first.orderId).orElseThrow().getStatus());
+        Assertions.assertTrue(orderRepository.findById(results.get(5).orderId).isPresent());
+    }
+
+    @Test
+    public void testRejectedLinesAreStreamedAtChunkBoundaries() throws Exception {
+        String ndjson = String.join("\n", "bad 1", "bad 2", "bad 3", "bad 4", "bad 5");
+
+        List<Integer> chunks = new ArrayList<>();
+        bulkOrderService.ingest(new BufferedReader(new StringReader(ndjson)), r -> chunks.add(r.size()));
+
+        Assertions.assertEquals(List.of(2, 2, 1), chunks);
+    }
+}
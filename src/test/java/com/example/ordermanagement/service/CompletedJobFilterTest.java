@@ -0,0 +1,33 @@
+package com.example.ordermanagement.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+public class CompletedJobFilterTest {
+
+    @Test
+    public void testExactHitsEvictionAndCounters() {
+        CompletedJobFilter filter = new CompletedJobFilter(2);
+
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID third = UUID.randomUUID();
+        Assertions.assertFalse(filter.isKnownCompleted(first));
+
+        filter.recordCompleted(first);
+        filter.recordCompleted(second);
+        Assertions.assertTrue(filter.isKnownCompleted(first));
+        // first was just used, so second is the eldest and goes
+        filter.recordCompleted(third);
+        Assertions.assertFalse(filter.isKnownCompleted(second));
+        Assertions.assertTrue(filter.isKnownCompleted(first));
+        Assertions.assertTrue(filter.isKnownCompleted(third));
+
+        CompletedJobFilter.Stats stats = filter.stats();
+        Assertions.assertEquals(3, stats.hits);
+        Assertions.assertEquals(2, stats.misses);
+        Assertions.assertEquals(2, stats.exactEntries);
+    }
+}
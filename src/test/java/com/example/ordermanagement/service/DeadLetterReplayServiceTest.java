@@ -0,0 +1,97 @@
+package com.example.ordermanagement.service;
+
+import com.example.ordermanagement.config.JobShards;
+import com.example.ordermanagement.messaging.DeadLetterPublisher;
+import com.rabbitmq.client.AMQP;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+public class DeadLetterReplayServiceTest {
+
+    private static final OffsetDateTime NOON = OffsetDateTime.of(2024, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+    @Test
+    public void testFilterMatchesOnReasonAndFailureTime() {
+        long noon = NOON.toInstant().toEpochMilli();
+        AMQP.BasicProperties ours = props(Map.of(DeadLetterPublisher.FAILURE_REASON_HEADER, "Gateway Timeout after 5s",
+                DeadLetterPublisher.FAILED_AT_HEADER, noon));
+        // rejected by the container and dead-lettered by the broker: only x-death
+        AMQP.BasicProperties brokers = props(Map.of("x-death", List.of(Map.of("time", new Date(noon - 60_000)))));
+        AMQP.BasicProperties untagged = new AMQP.BasicProperties.Builder().build();
+
+        Assertions.assertEquals(noon, DeadLetterReplayService.failedAt(ours.getHeaders()));
+        Assertions.assertEquals(noon - 60_000, DeadLetterReplayService.failedAt(brokers.getHeaders()));
+        Assertions.assertNull(DeadLetterReplayService.failedAt(Map.of()));
+
+        DeadLetterReplayService.ReplayRequest all = new DeadLetterReplayService.ReplayRequest();
+        Assertions.assertTrue(DeadLetterReplayService.matches(untagged, all));
+
+        DeadLetterReplayService.ReplayRequest timeouts = new DeadLetterReplayService.ReplayRequest();
+        timeouts.errorContains = "timeout";
+        Assertions.assertTrue(DeadLetterReplayService.matches(ours, timeouts));
+        Assertions.assertFalse(DeadLetterReplayService.matches(brokers, timeouts));
+
+        DeadLetterReplayService.ReplayRequest window = new DeadLetterReplayService.ReplayRequest();
+        window.failedAfter = NOON.minusSeconds(30);
+        window.failedBefore = NOON.plusSeconds(30);
+        Assertions.assertTrue(DeadLetterReplayService.matches(ours, window));
+        Assertions.assertFalse(DeadLetterReplayService.matches(brokers, window));
+        Assertions.assertFalse(DeadLetterReplayService.matches(untagged, window));
+        // failedBefore is exclusive
+        window.failedBefore = NOON;
+        Assertions.assertFalse(DeadLetterReplayService.matches(ours, window));
+    }
+
+    @Test
+    public void testPacerHoldsTheRate() throws Exception {
+        DeadLetterReplayService.Pacer pacer = new DeadLetterReplayService.Pacer(1000);
+        long start = System.nanoTime();
+        pacer.await(0);
+        Assertions.assertTrue(System.nanoTime() - start < 50_000_000L);
+        // 100 messages at 1000/s are due 100 ms after the start
+        pacer.await(100);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        Assertions.assertTrue(elapsedMs >= 95 && elapsedMs < 1000, "elapsed " + elapsedMs);
+    }
+
+    @Test
+    public void testFinishedReplaysAreForgottenAfterTheRetention() throws Exception {
+        // no DLQ to walk: every replay finishes at once
+        DeadLetterReplayService service = new DeadLetterReplayService(Mockito.mock(RabbitTemplate.class), new JobShards(1));
+        ReflectionTestUtils.setField(service, "statusRetentionMs", 60_000L);
+        try {
+            DeadLetterReplayService.ReplayStatus old = finished(service);
+            DeadLetterReplayService.ReplayStatus recent = finished(service);
+            old.finishedAt = OffsetDateTime.now().minusMinutes(2);
+
+            DeadLetterReplayService.ReplayStatus next = service.start(new DeadLetterReplayService.ReplayRequest());
+            Assertions.assertTrue(service.status(old.id).isEmpty());
+            Assertions.assertTrue(service.status(recent.id).isPresent());
+            Assertions.assertTrue(service.status(next.id).isPresent());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    private static DeadLetterReplayService.ReplayStatus finished(DeadLetterReplayService service) throws InterruptedException {
+        DeadLetterReplayService.ReplayStatus status = service.start(new DeadLetterReplayService.ReplayRequest());
+        for (int i = 0; i < 500 && status.finishedAt == null; i++) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals("DONE", status.state);
+        return status;
+    }
+
+    private static AMQP.BasicProperties props(Map<String, Object> headers) {
+        return new AMQP.BasicProperties.Builder().headers(headers).build();
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.ordermanagement.service;
+
+import com.example.ordermanagement.domain.Order;
+import com.example.ordermanagement.domain.OrderStatus;
+import com.example.ordermanagement.repository.StateHistoryRecord;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+@SpringBootTest(properties = {"spring.profiles.active=local", "app.outbox.poll-interval-ms=3600000"})
+public class HistoryServiceTest {
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private HistoryService historyService;
+
+    @MockBean
+    private JobPublisherService jobPublisherService; // mock to prevent RabbitMQ calls in tests
+
+    @Test
+    public void testKeysetPagesMatchExport() {
+        Order o = orderService.createOrder("hist-1", "k@l.com", new BigDecimal("40.00"));
+        orderService.changeOrderStatus(o.getId(), OrderStatus.PAID, "test", "payment");
+        orderService.changeOrderStatus(o.getId(), OrderStatus.PROCESSING_IN_WAREHOUSE, "test", "proc");
+        orderService.changeOrderStatus(o.getId(), OrderStatus.SHIPPED, "test", "ship");
+        orderService.changeOrderStatus(o.getId(), OrderStatus.DELIVERED, "test", "deliver");
+
+        List<StateHistoryRecord> paged = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            HistoryService.HistoryPage page = historyService.orderHistory(o.getId(), cursor, 2).orElseThrow();
+            paged.addAll(page.items);
+            cursor = page.nextCursor;
+            pages++;
+        } while (cursor != null);
+
+        List<StateHistoryRecord> exported = new ArrayList<>();
+        historyService.exportOrderHistory(o.getId(), exported::add);
+
+        Assertions.assertEquals(3, pages);
+        Assertions.assertEquals(5, paged.size());
+        Assertions.assertEquals(exported.stream().map(r -> r.id).toList(), paged.stream().map(r -> r.id).toList());
+        Assertions.assertEquals(List.of("PENDING_PAYMENT", "PAID", "PROCESSING_IN_WAREHOUSE", "SHIPPED", "DELIVERED"),
+                exported.stream().map(r -> r.newStatus).toList());
+        Assertions.assertTrue(historyService.orderHistory(UUID.randomUUID(), null, 2).isEmpty());
+    }
+}
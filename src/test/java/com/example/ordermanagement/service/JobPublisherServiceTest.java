@@ -0,0 +1,184 @@
+package com.example.ordermanagement.service;
+
+import com.example.ordermanagement.config.RabbitConfig;
+import com.example.ordermanagement.domain.*;
+import com.example.ordermanagement.messaging.JobTransport;
+import com.example.ordermanagement.messaging.TransportUnavailableException;
+import com.example.ordermanagement.repository.JobLogRepository;
+import com.example.ordermanagement.repository.OutboxMessageRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.IllegalTransactionStateException;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@SpringBootTest(properties = {"spring.profiles.active=local", "app.outbox.poll-interval-ms=3600000"})
+public class JobPublisherServiceTest {
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private JobLogRepository jobLogRepository;
+
+    @Autowired
+    private OutboxMessageRepository outboxRepository;
+
+    @Autowired
+    private ReturnService returnService;
+
+    @Autowired
+    private JobPublisherService jobPublisherService;
+
+    @Autowired
+    private OutboxRelay outboxRelay;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private JobTransport jobTransport;
+
+    @Test
+    public void testShippingWritesJobAndOutboxRow() {
+        Order o = orderService.createOrder("outbox-1", "o@b.com", new BigDecimal("10.00"));
+        orderService.changeOrderStatus(o.getId(), OrderStatus.PAID, "test", "pay");
+        orderService.changeOrderStatus(o.getId(), OrderStatus.PROCESSING_IN_WAREHOUSE, "test", "proc");
+        orderService.changeOrderStatus(o.getId(), OrderStatus.SHIPPED, "test", "ship");
+
+        JobLog job = jobLogRepository.findAll().stream()
+                .filter(j -> o.getId().equals(j.getRelatedOrderId()))
+                .findFirst().orElseThrow();
+        Assertions.assertEquals(JobType.INVOICE_GENERATION, job.getJobType());
+
+        UUID jobId = job.getId();
+        List<OutboxMessage> rows = outboxRepository.findAll().stream()
+                .filter(m -> jobId.equals(m.getJobId()))
+                .toList();
+        Assertions.assertEquals(1, rows.size());
+        Assertions.assertEquals(RabbitConfig.INVOICE_ROUTING_KEY, rows.get(0).getRoutingKey());
+        Assertions.assertTrue(rows.get(0).getPayload().length > 0);
+    }
+
+    @Test
+    public void testRefundJobIsWrittenWithTheReturnTransition() {
+        Order o = shipped("outbox-2");
+        orderService.changeOrderStatus(o.getId(), OrderStatus.DELIVERED, "test", "deliver");
+        ReturnRequest rr = returnService.createReturn(o.getId(), "broken", null);
+        for (ReturnStatus s : new ReturnStatus[]{ReturnStatus.APPROVED, ReturnStatus.IN_TRANSIT, ReturnStatus.RECEIVED, ReturnStatus.COMPLETED}) {
+            returnService.changeReturnStatus(rr.getId(), s, "test", "step");
+        }
+        JobLog job = jobFor(o, JobType.REFUND_PROCESSING);
+        Assertions.assertEquals(rr.getId(), job.getRelatedReturnId());
+        Assertions.assertEquals(1, outboxRows(job).size());
+
+        // never outside a transaction
+        Assertions.assertThrows(IllegalTransactionStateException.class, () -> jobPublisherService.publishInvoiceJob(o));
+    }
+
+    @Test
+    public void testPoisonBatchIsGivenUpAndSentRowsArePurged() {
+        Order poison = shipped("outbox-3");
+        Mockito.doThrow(new IllegalArgumentException("broker says no")).when(jobTransport).send(Mockito.anyList());
+        outboxRelay.relayPending();
+        JobLog failed = jobFor(poison, JobType.INVOICE_GENERATION);
+        OutboxMessage row = outboxRows(failed).get(0);
+        Assertions.assertEquals(1, row.getAttempts());
+        Assertions.assertTrue(row.getNextAttemptAt().isAfter(OffsetDateTime.now()));
+        // held back until then
+        outboxRelay.relayPending();
+        Assertions.assertEquals(1, outboxRows(failed).get(0).getAttempts());
+
+        for (int i = 1; i < 10; i++) {
+            jdbcTemplate.update("update job_outbox set next_attempt_at = null where status = 'PENDING'");
+            outboxRelay.relayPending();
+        }
+        failed = jobFor(poison, JobType.INVOICE_GENERATION);
+        Assertions.assertEquals(JobStatus.FAILED, failed.getStatus());
+        Assertions.assertEquals(OutboxStatus.FAILED, outboxRows(failed).get(0).getStatus());
+
+        Order ok = shipped("outbox-4");
+        Mockito.doNothing().when(jobTransport).send(Mockito.anyList());
+        outboxRelay.relayPending();
+        JobLog job = jobFor(ok, JobType.INVOICE_GENERATION);
+        Assertions.assertEquals(OutboxStatus.SENT, outboxRows(job).get(0).getStatus());
+
+        // sent long ago, but the job has not finished yet
+        jdbcTemplate.update("update job_outbox set sent_at = ? where job_id = ?", OffsetDateTime.now().minusDays(2), job.getId());
+        outboxRelay.purgeSent();
+        Assertions.assertEquals(1, outboxRows(job).size());
+
+        jdbcTemplate.update("update job_log set status = 'SUCCESS' where id = ?", job.getId());
+        outboxRelay.purgeSent();
+        Assertions.assertTrue(outboxRows(job).isEmpty());
+    }
+
+    @Test
+    public void testOrdersMessagesAreRelayedOneAfterTheOther() {
+        Order o = shipped("outbox-6");
+        orderService.changeOrderStatus(o.getId(), OrderStatus.DELIVERED, "test", "deliver");
+        ReturnRequest rr = returnService.createReturn(o.getId(), "broken", null);
+        for (ReturnStatus s : new ReturnStatus[]{ReturnStatus.APPROVED, ReturnStatus.IN_TRANSIT, ReturnStatus.RECEIVED, ReturnStatus.COMPLETED}) {
+            returnService.changeReturnStatus(rr.getId(), s, "test", "step");
+        }
+        JobLog invoice = jobFor(o, JobType.INVOICE_GENERATION);
+        JobLog refund = jobFor(o, JobType.REFUND_PROCESSING);
+
+        // the refund row waits for the invoice row, which was written first
+        outboxRelay.relayPending();
+        Assertions.assertEquals(OutboxStatus.SENT, outboxRows(invoice).get(0).getStatus());
+        Assertions.assertEquals(OutboxStatus.PENDING, outboxRows(refund).get(0).getStatus());
+        outboxRelay.relayPending();
+        Assertions.assertEquals(OutboxStatus.SENT, outboxRows(refund).get(0).getStatus());
+    }
+
+    @Test
+    public void testUnavailableTransportBacksOffWithoutCountingAttempts() {
+        Order o = shipped("outbox-5");
+        JobLog job = jobFor(o, JobType.INVOICE_GENERATION);
+        Mockito.doThrow(new TransportUnavailableException("Connection refused")).when(jobTransport).send(Mockito.anyList());
+        try {
+            for (int i = 0; i < 20; i++) {
+                jdbcTemplate.update("update job_outbox set next_attempt_at = null where status = 'PENDING'");
+                outboxRelay.relayPending();
+            }
+            OutboxMessage row = outboxRows(job).get(0);
+            Assertions.assertEquals(OutboxStatus.PENDING, row.getStatus());
+            Assertions.assertEquals(0, row.getAttempts());
+            // backoff grew to the 60 s cap
+            Assertions.assertTrue(row.getNextAttemptAt().isAfter(OffsetDateTime.now().plusSeconds(50)));
+            Assertions.assertEquals(JobStatus.PENDING, jobFor(o, JobType.INVOICE_GENERATION).getStatus());
+        } finally {
+            Mockito.doNothing().when(jobTransport).send(Mockito.anyList());
+            jdbcTemplate.update("update job_outbox set next_attempt_at = null where status = 'PENDING'");
+            outboxRelay.relayPending();
+        }
+        Assertions.assertEquals(OutboxStatus.SENT, outboxRows(job).get(0).getStatus());
+    }
+
+    private Order shipped(String externalId) {
+        Order o = orderService.createOrder(externalId, "o@b.com", new BigDecimal("10.00"));
+        for (OrderStatus s : new OrderStatus[]{OrderStatus.PAID, OrderStatus.PROCESSING_IN_WAREHOUSE, OrderStatus.SHIPPED}) {
+            orderService.changeOrderStatus(o.getId(), s, "test", "step");
+        }
+        return o;
+    }
+
+    private JobLog jobFor(Order o, JobType type) {
+        return jobLogRepository.findAll().stream()
+                .filter(j -> o.getId().equals(j.getRelatedOrderId()) && j.getJobType() == type)
+                .findFirst().orElseThrow();
+    }
+
+    private List<OutboxMessage> outboxRows(JobLog job) {
+        return outboxRepository.findAll().stream().filter(m -> job.getId().equals(m.getJobId())).toList();
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.ordermanagement.service;
+
+import com.example.ordermanagement.config.ConcurrencyLimits;
+import com.example.ordermanagement.config.JobShards;
+import com.example.ordermanagement.config.RabbitConfig;
+import com.example.ordermanagement.domain.JobType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+
+import java.util.List;
+
+public class ListenerAutoscalerTest {
+
+    @Test
+    public void testInvoiceShedsUnderCpuPressureWhileRefundsKeepScaling() {
+        ListenerAutoscaler autoscaler = new ListenerAutoscaler(null, null, new JobShards(1),
+                new ConcurrencyLimits(64, 0), null, true, 0.85, 100, 1000);
+        ListenerAutoscaler.Group invoice = new ListenerAutoscaler.Group(JobType.INVOICE_GENERATION, true, false, 1, 4, 1, 50);
+        ListenerAutoscaler.Group refund = new ListenerAutoscaler.Group(JobType.REFUND_PROCESSING, false, true, 1, 8, 10, 250);
+        invoice.consumers = 3;
+        refund.consumers = 2;
+
+        // backlog on both queues, CPU saturated by rendering
+        ListenerAutoscaler.Decision i = autoscaler.decide(invoice, 10_000, 400, 0.95);
+        ListenerAutoscaler.Decision r = autoscaler.decide(refund, 10_000, 200, 0.95);
+        Assertions.assertEquals(2, i.consumers);
+        Assertions.assertEquals("cpu", i.reason);
+        Assertions.assertEquals(3, r.consumers);
+        Assertions.assertEquals("backlog", r.reason);
+
+        // a 400 ms render: about 3 per second per consumer
+        Assertions.assertEquals(3, i.prefetch);
+        // 64 gateway calls shared by 3 consumers at 200 ms each
+        Assertions.assertEquals(107, r.prefetch);
+
+        // CPU recovered: invoice grows one step at a time, up to its bound
+        invoice.consumers = 4;
+        Assertions.assertEquals(4, autoscaler.decide(invoice, 10_000, 400, 0.30).consumers);
+        // empty queue: shrink, never below the minimum
+        invoice.consumers = 1;
+        Assertions.assertEquals(1, autoscaler.decide(invoice, 0, 400, 0.30).consumers);
+        invoice.consumers = 3;
+        Assertions.assertEquals(2, autoscaler.decide(invoice, 0, 400, 0.30).consumers);
+        // refund consumers hold un-acked deliveries in their window: never scaled down
+        refund.consumers = 3;
+        ListenerAutoscaler.Decision idle = autoscaler.decide(refund, 0, 200, 0.30);
+        Assertions.assertEquals(3, idle.consumers);
+        Assertions.assertEquals("steady", idle.reason);
+    }
+
+    @Test
+    public void testNewPrefetchRestartsIdleInvoiceContainersOnly() {
+        RabbitListenerEndpointRegistry registry = Mockito.mock(RabbitListenerEndpointRegistry.class);
+        SimpleMessageListenerContainer invoice = container(RabbitConfig.INVOICE_QUEUE);
+        SimpleMessageListenerContainer refund = container(RabbitConfig.REFUND_QUEUE);
+        Mockito.when(registry.getListenerContainers()).thenReturn(List.of(invoice, refund));
+        AmqpAdmin admin = Mockito.mock(AmqpAdmin.class);
+        Mockito.when(admin.getQueueInfo(Mockito.anyString())).thenReturn(new QueueInformation("q", 500, 1));
+        ListenerAutoscaler autoscaler = new ListenerAutoscaler(registry, admin, new JobShards(1),
+                new ConcurrencyLimits(64, 0), new OperationMetrics(new SimpleMeterRegistry()), true, 2.0, 100, 1000);
+        autoscaler.init();
+
+        // backlog: the new prefetch is set for consumers started from now on, nothing restarts
+        autoscaler.adjust();
+        Mockito.verify(invoice).setPrefetchCount(Mockito.anyInt());
+        Mockito.verify(invoice, Mockito.never()).stop();
+
+        // queues drained: the invoice containers restart to pick it up, the refund ones never do
+        Mockito.when(admin.getQueueInfo(Mockito.anyString())).thenReturn(new QueueInformation("q", 0, 1));
+        autoscaler.adjust();
+        Mockito.verify(invoice).stop();
+        Mockito.verify(invoice).start();
+        Mockito.verify(refund, Mockito.never()).stop();
+        autoscaler.adjust();
+        Mockito.verify(invoice, Mockito.times(1)).stop();
+    }
+
+    private static SimpleMessageListenerContainer container(String queue) {
+        SimpleMessageListenerContainer c = Mockito.mock(SimpleMessageListenerContainer.class);
+        Mockito.when(c.isRunning()).thenReturn(true);
+        Mockito.when(c.getQueueNames()).thenReturn(new String[]{queue});
+        return c;
+    }
+
+    @Test
+    public void testShardedQueuesTurnAutoscalingOff() {
+        ListenerAutoscaler autoscaler = new ListenerAutoscaler(null, null, new JobShards(4),
+                new ConcurrencyLimits(64, 0), null, true, 0.85, 100, 1000);
+        autoscaler.init();
+
+        // no registry or broker here: a run that did anything would fail
+        autoscaler.adjust();
+        for (ListenerAutoscaler.Stats s : autoscaler.stats()) {
+            Assertions.assertFalse(s.enabled);
+            Assertions.assertEquals(0, s.adjustments);
+        }
+    }
+}
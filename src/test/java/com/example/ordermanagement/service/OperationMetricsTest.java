@@ -0,0 +1,82 @@
+package com.example.ordermanagement.service;
+
+import com.example.ordermanagement.domain.JobLog;
+import com.example.ordermanagement.domain.JobStatus;
+import com.example.ordermanagement.domain.JobType;
+import com.example.ordermanagement.domain.OrderStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.UUID;
+
+public class OperationMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final OperationMetrics metrics = new OperationMetrics(registry);
+
+    @AfterEach
+    public void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void testCountsAreAppliedOnCommitOnly() {
+        // rolled back: nothing is counted
+        TransactionSynchronizationManager.initSynchronization();
+        metrics.orderTransitionAfterCommit(OrderStatus.PAID, OrderStatus.PROCESSING_IN_WAREHOUSE);
+        metrics.jobSettled(job(JobStatus.FAILED));
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        Assertions.assertEquals(0.0, outcomes(JobStatus.FAILED));
+        Assertions.assertEquals(0, registry.get("jobs.lag").timer().count());
+        Assertions.assertTrue(registry.find("orders.transitions").counters().isEmpty());
+
+        // committed: everything is, with one synchronization for the whole transaction
+        TransactionSynchronizationManager.initSynchronization();
+        metrics.orderTransitionAfterCommit(OrderStatus.PAID, OrderStatus.PROCESSING_IN_WAREHOUSE);
+        metrics.orderTransitionAfterCommit(OrderStatus.PAID, OrderStatus.PROCESSING_IN_WAREHOUSE);
+        metrics.jobSettled(job(JobStatus.SUCCESS));
+        metrics.jobSettled(job(JobStatus.RETRYING));
+        Assertions.assertEquals(1, TransactionSynchronizationManager.getSynchronizations().size());
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        Assertions.assertEquals(2.0, registry.get("orders.transitions").tag("from", "paid").counter().count());
+        Assertions.assertEquals(1.0, outcomes(JobStatus.SUCCESS));
+        Assertions.assertEquals(1.0, outcomes(JobStatus.RETRYING));
+        Assertions.assertEquals(1, registry.get("jobs.lag").timer().count());
+    }
+
+    @Test
+    public void testOutsideTransactionCountsImmediately() {
+        metrics.jobSettled(job(JobStatus.SUCCESS));
+        metrics.orderTransitionAfterCommit(null, OrderStatus.PENDING_PAYMENT);
+
+        Assertions.assertEquals(1.0, outcomes(JobStatus.SUCCESS));
+        Assertions.assertEquals(1.0, registry.get("orders.transitions").tag("from", "none").counter().count());
+    }
+
+    private static JobLog job(JobStatus status) {
+        return new JobLog(UUID.randomUUID(), JobType.REFUND_PROCESSING, UUID.randomUUID(), UUID.randomUUID(), "key", status);
+    }
+
+    private double outcomes(JobStatus status) {
+        return registry.get("jobs.outcomes").tag("type", "refund_processing").tag("status", status.name().toLowerCase())
+                .counter().count();
+    }
+
+    private static void complete(int status) {
+        // what AbstractPlatformTransactionManager does at the end of a transaction
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        for (TransactionSynchronization s : synchronizations) {
+            s.afterCompletion(status);
+        }
+    }
+}
@@ -2,23 +2,29 @@ package com.example.ordermanagement.service;
 
 import com.example.ordermanagement.domain.Order;
 import com.example.ordermanagement.domain.OrderStatus;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.annotation.DirtiesContext;
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.UUID;
 
-@SpringBootTest(properties = "spring.profiles.active=local")
+@SpringBootTest(properties = {"spring.profiles.active=local", "app.outbox.poll-interval-ms=3600000"})
 @DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
 public class OrderServiceTest {
 
     @Autowired
     private OrderService orderService;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @MockBean
     private JobPublisherService jobPublisherService; // mock to prevent RabbitMQ calls in tests
 
@@ -31,6 +37,22 @@ public class OrderServiceTest {
         Assertions.assertEquals(OrderStatus.PAID, updated.getStatus());
     }
 
+    @Test
+    public void testTransitionsAndLatencyAreMetered() {
+        Order o = orderService.createOrder("ext-m", "m@b.com", new BigDecimal("10.00"));
+        orderService.changeOrderStatus(o.getId(), OrderStatus.PAID, "test", "payment");
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> orderService.changeOrderStatus(o.getId(), OrderStatus.DELIVERED, "test", "invalid"));
+
+        Assertions.assertEquals(1.0, meterRegistry.get("orders.transitions")
+                .tags("from", "none", "to", "pending_payment").counter().count());
+        Assertions.assertEquals(1.0, meterRegistry.get("orders.transitions")
+                .tags("from", "pending_payment", "to", "paid").counter().count());
+        // the rejected transition is timed but not counted
+        Assertions.assertEquals(2, meterRegistry.get("orders.status.change").timer().count());
+        Assertions.assertEquals(2, meterRegistry.get("orders.transitions").counters().size());
+    }
+
     @Test
     public void testInvalidTransitionThrows() {
         Order o = orderService.createOrder("ext-2", "c@d.com", new BigDecimal("50.00"));
@@ -44,4 +66,47 @@ public class OrderServiceTest {
             orderService.changeOrderStatus(o.getId(), OrderStatus.SHIPPED, "test", "invalid");
         });
     }
+
+    @Test
+    public void testBulkTransitionsReportPerOrder() {
+        Order a = orderService.createOrder("ext-3", "e@f.com", new BigDecimal("10.00"));
+        Order b = orderService.createOrder("ext-4", "g@h.com", new BigDecimal("20.00"));
+        orderService.changeOrderStatus(b.getId(), OrderStatus.PAID, "test", "payment");
+        orderService.changeOrderStatus(b.getId(), OrderStatus.PROCESSING_IN_WAREHOUSE, "test", "proc");
+
+        List<OrderService.TransitionResult> results = orderService.changeOrderStatuses(List.of(
+                new OrderService.StatusChange(a.getId(), "PAID"),
+                new OrderService.StatusChange(b.getId(), "SHIPPED"),
+                new OrderService.StatusChange(UUID.randomUUID(), "PAID"),
+                new OrderService.StatusChange(a.getId(), "DELIVERED")), "test", "bulk");
+
+        Assertions.assertEquals(List.of("APPLIED", "APPLIED", "REJECTED", "REJECTED"),
+                results.stream().map(r -> r.result).toList());
+        Assertions.assertEquals(OrderStatus.PAID, orderService.findById(a.getId()).orElseThrow().getStatus());
+        Order shipped = orderService.findById(b.getId()).orElseThrow();
+        Assertions.assertEquals(OrderStatus.SHIPPED, shipped.getStatus());
+        Assertions.assertEquals(3L, shipped.getVersion());
+        Mockito.verify(jobPublisherService).publishInvoiceJobs(Mockito.argThat(l -> l.size() == 1 && l.get(0).getId().equals(b.getId())));
+    }
+
+    @Test
+    public void testReadCacheFollowsStatusChanges() {
+        Order o = orderService.createOrder("ext-5", "i@j.com", new BigDecimal("30.00"));
+
+        OrderService.OrderView first = orderService.getOrder(o.getId()).orElseThrow();
+        Assertions.assertSame(first, orderService.getOrder(o.getId()).orElseThrow());
+
+        orderService.changeOrderStatus(o.getId(), OrderStatus.PAID, "test", "payment");
+        OrderService.OrderView paid = orderService.getOrder(o.getId()).orElseThrow();
+        Assertions.assertEquals(OrderStatus.PAID, paid.status);
+        Assertions.assertEquals(first.version + 1, paid.version);
+
+        orderService.changeOrderStatuses(List.of(
+                new OrderService.StatusChange(o.getId(), "PROCESSING_IN_WAREHOUSE")), "test", "bulk");
+        OrderService.OrderView processing = orderService.getOrder(o.getId()).orElseThrow();
+        Assertions.assertEquals(OrderStatus.PROCESSING_IN_WAREHOUSE, processing.status);
+        Assertions.assertEquals(paid.version + 1, processing.version);
+
+        Assertions.assertTrue(orderService.getOrder(UUID.randomUUID()).isEmpty());
+    }
 }
@@ -0,0 +1,71 @@
+package com.example.ordermanagement.service;
+
+import com.example.ordermanagement.repository.InvoiceDocumentBatchRepository;
+import com.example.ordermanagement.repository.InvoiceDocumentRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.zip.CRC32C;
+
+public class PdfServiceTest {
+
+    @TempDir
+    Path invoicesDir;
+
+    private PdfService pdfService() {
+        FileSystemInvoiceStore store = new FileSystemInvoiceStore(Mockito.mock(InvoiceDocumentRepository.class),
+                Mockito.mock(InvoiceDocumentBatchRepository.class), invoicesDir.toString());
+        return new PdfService(store, new OperationMetrics(new SimpleMeterRegistry()));
+    }
+
+    @Test
+    public void testRenderedInvoiceIsReadablePdf() throws Exception {
+        PdfService pdfService = pdfService();
+
+        UUID orderId = UUID.randomUUID();
+        InvoicePdf pdf = pdfService.generateInvoicePdf(orderId, "a(b)\\c@example.com");
+
+        Assertions.assertTrue(pdf.getPath().startsWith(invoicesDir));
+        Assertions.assertEquals(invoicesDir, pdf.getPath().getParent().getParent().getParent());
+        byte[] bytes = Files.readAllBytes(pdf.getPath());
+        Assertions.assertEquals(bytes.length, pdf.getSizeBytes());
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        Assertions.assertEquals(crc.getValue(), pdf.getChecksum());
+
+        try (PDDocument doc = PDDocument.load(bytes)) {
+            Assertions.assertEquals(1, doc.getNumberOfPages());
+            String text = new PDFTextStripper().getText(doc);
+            Assertions.assertTrue(text.contains("ArtiCurated - Invoice"));
+            Assertions.assertTrue(text.contains("Order: " + orderId));
+            Assertions.assertTrue(text.contains("Customer: a(b)\\c@example.com"));
+        }
+    }
+
+    @Test
+    public void testLongCustomerFieldGrowsBuffer() throws Exception {
+        PdfService pdfService = pdfService();
+
+        String email = "x".repeat(50_000) + "@example.com";
+        InvoicePdf pdf = pdfService.generateInvoicePdf(UUID.randomUUID(), email);
+        try (PDDocument doc = PDDocument.load(pdf.getPath().toFile())) {
+            Assertions.assertTrue(new PDFTextStripper().getText(doc).contains("@example.com"));
+        }
+        // the oversized buffer is not kept for the next render
+        Assertions.assertTrue(InvoicePdfTemplate.scratchCapacity() <= InvoicePdfTemplate.RETAINED_CAPACITY);
+
+        // Latin-1 is printed as is, anything else as '?'
+        pdf = pdfService.generateInvoicePdf(UUID.randomUUID(), "jürgen@例え.jp");
+        try (PDDocument doc = PDDocument.load(pdf.getPath().toFile())) {
+            Assertions.assertTrue(new PDFTextStripper().getText(doc).contains("Customer: jürgen@??.jp"));
+        }
+    }
+}
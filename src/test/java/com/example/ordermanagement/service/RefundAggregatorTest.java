@@ -0,0 +1,53 @@
+package com.example.ordermanagement.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+public class RefundAggregatorTest {
+
+    @Test
+    public void testGroupsByCurrencyAndFansOutResults() throws Exception {
+        List<List<String>> batches = new CopyOnWriteArrayList<>();
+        MockRefundClient client = new MockRefundClient() {
+            @Override
+            public CompletableFuture<List<RefundResponse>> processRefundsAsync(List<RefundRequestDto> requests) {
+                batches.add(requests.stream().map(r -> r.currency + ":" + r.idempotencyKey).toList());
+                return super.processRefundsAsync(requests);
+            }
+        };
+        RefundAggregator aggregator = new RefundAggregator(client, 4, 60_000);
+
+        List<CompletableFuture<RefundClient.RefundResponse>> results = new ArrayList<>();
+        results.add(aggregator.submit(request("USD", "k1")));
+        results.add(aggregator.submit(request("EUR", "k2")));
+        results.add(aggregator.submit(request("USD", "k3")));
+        results.add(aggregator.submit(request("EUR", "k4")));
+
+        for (CompletableFuture<RefundClient.RefundResponse> result : results) {
+            Assertions.assertTrue(result.get(5, TimeUnit.SECONDS).success);
+        }
+        Assertions.assertEquals(2, batches.size());
+        Assertions.assertTrue(batches.contains(List.of("USD:k1", "USD:k3")));
+        Assertions.assertTrue(batches.contains(List.of("EUR:k2", "EUR:k4")));
+        Assertions.assertEquals(4, results.stream().map(f -> f.join().gatewayReference).distinct().count());
+
+        // a partial batch goes out once the wait elapses
+        RefundAggregator timed = new RefundAggregator(client, 100, 20);
+        Assertions.assertTrue(timed.submit(request("GBP", "k5")).get(5, TimeUnit.SECONDS).success);
+        Assertions.assertEquals(List.of("GBP:k5"), batches.get(2));
+    }
+
+    private static RefundClient.RefundRequestDto request(String currency, String idempotencyKey) {
+        RefundClient.RefundRequestDto req = new RefundClient.RefundRequestDto();
+        req.paymentReference = "PAY-" + idempotencyKey;
+        req.idempotencyKey = idempotencyKey;
+        req.currency = currency;
+        return req;
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.ordermanagement.service;
+
+import com.example.ordermanagement.domain.Order;
+import com.example.ordermanagement.domain.OrderStatus;
+import com.example.ordermanagement.domain.ReturnRequest;
+import com.example.ordermanagement.repository.RefundLedgerRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@SpringBootTest(properties = {"spring.profiles.active=local", "app.outbox.poll-interval-ms=3600000"})
+public class RefundLedgerServiceTest {
+
+    @Autowired
+    private RefundLedgerService refundLedger;
+
+    @Autowired
+    private RefundLedgerRepository ledgerRepository;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ReturnService returnService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockBean
+    private JobPublisherService jobPublisherService; // mock to prevent RabbitMQ calls in tests
+
+    @Test
+    public void testPartialRefundsAgainstTheRunningBalance() {
+        Order o = orderService.createOrder("ledger-1", "l@m.com", new BigDecimal("100.00"));
+        Assertions.assertEquals(10000, balance(o).remainingMinor);
+
+        UUID first = UUID.randomUUID();
+        Assertions.assertEquals(OptionalLong.of(6000), reserve(first, o, 6000L));
+        Assertions.assertTrue(reserve(UUID.randomUUID(), o, 5000L).isEmpty());
+        // a retried job keeps its reservation instead of taking another
+        Assertions.assertEquals(OptionalLong.of(6000), reserve(first, o, 6000L));
+        Assertions.assertEquals(6000, balance(o).reservedMinor);
+
+        inTransaction(() -> refundLedger.settle(first, "gw-1"));
+        inTransaction(() -> refundLedger.settle(first, "gw-1"));
+        RefundLedgerRepository.Balance b = balance(o);
+        Assertions.assertEquals(6000, b.refundedMinor);
+        Assertions.assertEquals(0, b.reservedMinor);
+        Assertions.assertEquals(4000, b.remainingMinor);
+
+        UUID declined = UUID.randomUUID();
+        Assertions.assertEquals(OptionalLong.of(4000), reserve(declined, o, null));
+        inTransaction(() -> refundLedger.release(declined));
+        Assertions.assertEquals(4000, balance(o).remainingMinor);
+    }
+
+    @Test
+    public void testConcurrentReservationsNeverOverdrawTheBalance() throws Exception {
+        Order o = orderService.createOrder("ledger-2", "l@m.com", new BigDecimal("40.00"));
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<OptionalLong>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(pool.submit(() -> reserve(UUID.randomUUID(), o, 1500L)));
+            }
+            int reserved = 0;
+            for (Future<OptionalLong> f : results) {
+                reserved += f.get().isPresent() ? 1 : 0;
+            }
+            Assertions.assertEquals(2, reserved);
+            Assertions.assertEquals(3000, balance(o).reservedMinor);
+
+            // redeliveries of one released job re-reserve its amount once
+            UUID retried = UUID.randomUUID();
+            Assertions.assertEquals(OptionalLong.of(1000), reserve(retried, o, 1000L));
+            inTransaction(() -> refundLedger.release(retried));
+            results.clear();
+            for (int i = 0; i < 8; i++) {
+                results.add(pool.submit(() -> reserve(retried, o, 1000L)));
+            }
+            for (Future<OptionalLong> f : results) {
+                Assertions.assertEquals(OptionalLong.of(1000), f.get());
+            }
+            Assertions.assertEquals(4000, balance(o).reservedMinor);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testReturnAmountIsCheckedAgainstTheBalance() {
+        Order o = orderService.createOrder("ledger-3", "l@m.com", new BigDecimal("25.50"));
+        for (OrderStatus s : new OrderStatus[]{OrderStatus.PAID, OrderStatus.PROCESSING_IN_WAREHOUSE, OrderStatus.SHIPPED, OrderStatus.DELIVERED}) {
+            orderService.changeOrderStatus(o.getId(), s, "test", "step");
+        }
+        Assertions.assertThrows(IllegalStateException.class, () -> returnService.createReturn(o.getId(), "too much", 2551L));
+        Assertions.assertNull(ledgerRepository.findBalance(o.getId()));
+        ReturnRequest partial = returnService.createReturn(o.getId(), "one item", RefundLedgerService.toMinor(new BigDecimal("10.5")));
+        Assertions.assertEquals(1050L, partial.getRefundAmountMinor());
+        // the balance row is opened with the first return
+        Assertions.assertEquals(2550L, ledgerRepository.findBalance(o.getId()).refundableMinor);
+        ReturnRequest rest = returnService.createReturn(o.getId(), "the rest", null);
+        Assertions.assertEquals(2550L, rest.getRefundAmountMinor());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RefundLedgerService.toMinor(new BigDecimal("1.005")));
+    }
+
+    private OptionalLong reserve(UUID jobId, Order o, Long amountMinor) {
+        return new TransactionTemplate(transactionManager).execute(status -> refundLedger.reserve(jobId, o.getId(), null, amountMinor, "USD"));
+    }
+
+    private void inTransaction(Runnable action) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> action.run());
+    }
+
+    private RefundLedgerRepository.Balance balance(Order o) {
+        return refundLedger.balance(o.getId()).orElseThrow();
+    }
+}
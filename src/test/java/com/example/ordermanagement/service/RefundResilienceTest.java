@@ -0,0 +1,151 @@
+package com.example.ordermanagement.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RefundResilienceTest {
+
+    @Test
+    public void testTimeoutsOpenTheCircuitUntilATrialSucceeds() throws Exception {
+        AtomicBoolean hang = new AtomicBoolean(true);
+        AtomicInteger calls = new AtomicInteger();
+        RefundClient gateway = new MockRefundClient() {
+            @Override
+            public CompletableFuture<RefundResponse> processRefundAsync(RefundRequestDto request) {
+                calls.incrementAndGet();
+                return hang.get() ? new CompletableFuture<>() : CompletableFuture.completedFuture(success("ok"));
+            }
+        };
+        RefundCircuitBreaker breaker = new RefundCircuitBreaker(4, 4, 50, 200, 1);
+        RefundResilience resilience = new RefundResilience(breaker, 50, 8, 0, false, 95, 50);
+        RefundClient client = resilience.decorate(gateway);
+
+        for (int i = 0; i < 4; i++) {
+            RefundClient.RefundException e = Assertions.assertThrows(RefundClient.RefundException.class,
+                    () -> client.processRefund(request("k")));
+            Assertions.assertTrue(e.getMessage().contains("timed out"));
+        }
+        Assertions.assertEquals(RefundCircuitBreaker.State.OPEN, breaker.state());
+        Assertions.assertTrue(resilience.rejectingForMs() > 0);
+        // the gateway never answered, but the deadline gave the permits back
+        Assertions.assertEquals(0, resilience.stats().inFlight);
+
+        // refused without reaching the gateway
+        Assertions.assertThrows(RefundResilience.CallRejectedException.class, () -> client.processRefund(request("k")));
+        Assertions.assertEquals(4, calls.get());
+
+        Thread.sleep(250);
+        hang.set(false);
+        Assertions.assertTrue(client.processRefund(request("k")).success);
+        Assertions.assertEquals(RefundCircuitBreaker.State.CLOSED, breaker.state());
+        RefundResilience.Stats stats = resilience.stats();
+        Assertions.assertEquals(4, stats.timeouts);
+        Assertions.assertEquals(1, stats.breakerRejections);
+        resilience.shutdown();
+    }
+
+    @Test
+    public void testBulkheadRefusesCallsBeyondTheLimit() throws Exception {
+        CompletableFuture<RefundClient.RefundResponse> pending = new CompletableFuture<>();
+        RefundClient gateway = new MockRefundClient() {
+            @Override
+            public CompletableFuture<RefundResponse> processRefundAsync(RefundRequestDto request) {
+                return pending;
+            }
+        };
+        RefundResilience resilience = new RefundResilience(new RefundCircuitBreaker(50, 20, 50, 30_000, 5), 60_000, 1, 0, false, 95, 50);
+        RefundClient client = resilience.decorate(gateway);
+
+        CompletableFuture<RefundClient.RefundResponse> first = client.processRefundAsync(request("k1"));
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+                () -> client.processRefundAsync(request("k2")).get(5, TimeUnit.SECONDS));
+        Assertions.assertInstanceOf(RefundResilience.CallRejectedException.class, e.getCause());
+
+        pending.complete(success("gw-1"));
+        Assertions.assertEquals("gw-1", first.get(5, TimeUnit.SECONDS).gatewayReference);
+        // the permit is back
+        Assertions.assertEquals(0, resilience.stats().inFlight);
+        Assertions.assertEquals(1, resilience.stats().bulkheadRejections);
+        resilience.shutdown();
+    }
+
+    @Test
+    public void testSlowCallIsHedgedWithTheSameIdempotencyKey() throws Exception {
+        List<String> keys = new CopyOnWriteArrayList<>();
+        AtomicBoolean hangNext = new AtomicBoolean();
+        RefundClient gateway = new MockRefundClient() {
+            @Override
+            public CompletableFuture<RefundResponse> processRefundAsync(RefundRequestDto request) {
+                keys.add(request.idempotencyKey);
+                if (hangNext.getAndSet(false)) {
+                    return new CompletableFuture<>();
+                }
+                return CompletableFuture.completedFuture(success("gw-" + keys.size()));
+            }
+        };
+        RefundResilience resilience = new RefundResilience(new RefundCircuitBreaker(50, 20, 50, 30_000, 5), 5_000, 8, 0, true, 50, 10);
+        RefundClient client = resilience.decorate(gateway);
+        // latency samples to derive the hedge delay from
+        for (int i = 0; i < 32; i++) {
+            Assertions.assertTrue(client.processRefund(request("warm-" + i)).success);
+        }
+        keys.clear();
+
+        hangNext.set(true);
+        RefundClient.RefundResponse response = client.processRefundAsync(request("slow")).get(5, TimeUnit.SECONDS);
+        Assertions.assertTrue(response.success);
+        Assertions.assertEquals(List.of("slow", "slow"), keys);
+        RefundResilience.Stats stats = resilience.stats();
+        Assertions.assertEquals(1, stats.hedgesSent);
+        Assertions.assertEquals(1, stats.hedgesWon);
+        // the primary still hangs; its permit went back when the hedge won
+        Assertions.assertEquals(0, stats.inFlight);
+        resilience.shutdown();
+    }
+
+    @Test
+    public void testOnlyTrialCallsDecideTheHalfOpenCircuit() throws Exception {
+        RefundCircuitBreaker breaker = new RefundCircuitBreaker(4, 4, 50, 50, 1);
+        RefundCircuitBreaker.Admission slow = breaker.tryAcquire();
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure(breaker.tryAcquire());
+        }
+        Assertions.assertEquals(RefundCircuitBreaker.State.OPEN, breaker.state());
+        Assertions.assertFalse(breaker.tryAcquire().allowed());
+
+        Thread.sleep(80);
+        RefundCircuitBreaker.Admission trial = breaker.tryAcquire();
+        Assertions.assertTrue(trial.allowed());
+        Assertions.assertEquals(RefundCircuitBreaker.State.HALF_OPEN, breaker.state());
+        // a call admitted before the circuit opened finishing now decides nothing
+        breaker.onSuccess(slow);
+        breaker.onFailure(slow);
+        Assertions.assertEquals(RefundCircuitBreaker.State.HALF_OPEN, breaker.state());
+        breaker.onSuccess(trial);
+        Assertions.assertEquals(RefundCircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    private static RefundClient.RefundResponse success(String gatewayReference) {
+        RefundClient.RefundResponse response = new RefundClient.RefundResponse();
+        response.success = true;
+        response.gatewayReference = gatewayReference;
+        return response;
+    }
+
+    private static RefundClient.RefundRequestDto request(String idempotencyKey) {
+        RefundClient.RefundRequestDto req = new RefundClient.RefundRequestDto();
+        req.paymentReference = "PAY-" + idempotencyKey;
+        req.idempotencyKey = idempotencyKey;
+        req.currency = "USD";
+        req.amountCents = 1000;
+        return req;
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.ordermanagement.service;
+
+import com.example.ordermanagement.domain.*;
+import com.example.ordermanagement.repository.JobLogRepository;
+import com.example.ordermanagement.repository.OutboxMessageRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+
+@SpringBootTest(properties = {"spring.profiles.active=local", "app.outbox.poll-interval-ms=3600000",
+        "app.jobs.retry.poll-interval-ms=3600000", "app.jobs.retry.max-attempts.invoice=2"})
+public class RetrySchedulerTest {
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private JobLogRepository jobLogRepository;
+
+    @Autowired
+    private OutboxMessageRepository outboxRepository;
+
+    @Autowired
+    private JobRetryPolicy retryPolicy;
+
+    @Autowired
+    private RetryScheduler retryScheduler;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void testDueRetryIsReleasedAndReEnqueued() throws Exception {
+        JobLog job = shippedOrderJob("retry-1");
+        UUID jobId = job.getId();
+
+        job.setAttempts(1);
+        retryPolicy.onFailure(job, "disk full");
+        Assertions.assertEquals(JobStatus.RETRYING, job.getStatus());
+        Assertions.assertTrue(job.getNextAttemptAt().isAfter(OffsetDateTime.now()));
+        job.setNextAttemptAt(OffsetDateTime.now());
+        jobLogRepository.save(job);
+
+        retryScheduler.claimDue();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (jobLogRepository.findById(jobId).orElseThrow().getStatus() != JobStatus.PENDING
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        JobLog released = jobLogRepository.findById(jobId).orElseThrow();
+        Assertions.assertEquals(JobStatus.PENDING, released.getStatus());
+        Assertions.assertNull(released.getNextAttemptAt());
+        Assertions.assertEquals(2, outboxRepository.findAll().stream().filter(m -> jobId.equals(m.getJobId())).count());
+
+        // attempts exhausted
+        released.setAttempts(2);
+        retryPolicy.onFailure(released, "disk full");
+        Assertions.assertEquals(JobStatus.FAILED, released.getStatus());
+    }
+
+    @Test
+    public void testOverdueRetryIsLeasedFromNow() {
+        JobLog job = shippedOrderJob("retry-2");
+        job.setAttempts(1);
+        retryPolicy.onFailure(job, "disk full");
+        OffsetDateTime dueAt = OffsetDateTime.now().minusHours(1).truncatedTo(ChronoUnit.MILLIS);
+        job.setNextAttemptAt(dueAt);
+        jobLogRepository.save(job);
+
+        OffsetDateTime before = OffsetDateTime.now();
+        List<RetryScheduler.Claim> claims = new TransactionTemplate(transactionManager).execute(s -> retryScheduler.claimBatch());
+        RetryScheduler.Claim claim = claims.stream().filter(c -> job.getId().equals(c.jobId)).findFirst().orElseThrow();
+
+        // the wheel still fires at the original due time, the lease runs lease-ms from the claim
+        Assertions.assertTrue(claim.dueAt.isEqual(dueAt));
+        Assertions.assertFalse(claim.leaseUntil.isBefore(before.plusSeconds(59)));
+        Assertions.assertTrue(jobLogRepository.findById(job.getId()).orElseThrow().getNextAttemptAt().isEqual(claim.leaseUntil));
+    }
+
+    private JobLog shippedOrderJob(String externalId) {
+        Order o = orderService.createOrder(externalId, "r@b.com", new BigDecimal("10.00"));
+        orderService.changeOrderStatus(o.getId(), OrderStatus.PAID, "test", "pay");
+        orderService.changeOrderStatus(o.getId(), OrderStatus.PROCESSING_IN_WAREHOUSE, "test", "proc");
+        orderService.changeOrderStatus(o.getId(), OrderStatus.SHIPPED, "test", "ship");
+        return jobLogRepository.findAll().stream()
+                .filter(j -> o.getId().equals(j.getRelatedOrderId()))
+                .findFirst().orElseThrow();
+    }
+}
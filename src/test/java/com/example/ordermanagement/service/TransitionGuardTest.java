@@ -0,0 +1,44 @@
+package com.example.ordermanagement.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TransitionGuardTest {
+
+    @Test
+    public void testRetriesVersionConflictsUpToLimit() {
+        TransitionGuard guard = new TransitionGuard(16, 3, 1, 1000);
+        UUID id = UUID.randomUUID();
+
+        AtomicInteger calls = new AtomicInteger();
+        String result = guard.execute(id, () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new ObjectOptimisticLockingFailureException("Order", id);
+            }
+            return "ok";
+        });
+        Assertions.assertEquals("ok", result);
+        Assertions.assertEquals(3, calls.get());
+
+        Assertions.assertThrows(ObjectOptimisticLockingFailureException.class, () -> guard.execute(id, () -> {
+            throw new ObjectOptimisticLockingFailureException("Order", id);
+        }));
+        // other failures are not retried
+        calls.set(0);
+        Assertions.assertThrows(IllegalStateException.class, () -> guard.execute(id, () -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("Invalid transition");
+        }));
+        Assertions.assertEquals(1, calls.get());
+
+        TransitionGuard.Stats stats = guard.stats();
+        Assertions.assertEquals(16, stats.stripes);
+        Assertions.assertEquals(5, stats.conflicts);
+        Assertions.assertEquals(1, stats.retriesExhausted);
+        Assertions.assertEquals(7, stats.acquisitions);
+    }
+}
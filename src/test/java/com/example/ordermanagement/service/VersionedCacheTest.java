@@ -0,0 +1,40 @@
+package com.example.ordermanagement.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class VersionedCacheTest {
+
+    @Test
+    public void testVersionFenceExpiryAndEviction() throws Exception {
+        VersionedCache<String, Long> cache = new VersionedCache<>("test", 2, 50, v -> v);
+
+        cache.put("a", 2L);
+        cache.put("a", 1L);
+        Assertions.assertEquals(2L, cache.get("a"));
+        cache.invalidate("a", 3);
+        Assertions.assertNull(cache.get("a"));
+        cache.put("a", 2L);
+        Assertions.assertNull(cache.get("a"));
+        cache.put("a", 3L);
+        Assertions.assertEquals(3L, cache.get("a"));
+
+        // entries written elsewhere are never invalidated here; they must age out
+        Thread.sleep(80);
+        Assertions.assertNull(cache.get("a"));
+        // the expired entry still fences off older snapshots
+        cache.put("a", 2L);
+        Assertions.assertNull(cache.get("a"));
+
+        cache.put("b", 1L);
+        cache.put("c", 1L);
+        Assertions.assertNull(cache.get("a"));
+        Assertions.assertEquals(1L, cache.get("c"));
+
+        VersionedCache.Stats stats = cache.stats();
+        Assertions.assertEquals(2, stats.size);
+        Assertions.assertEquals(1, stats.evictions);
+        Assertions.assertEquals(3, stats.staleRejections);
+        Assertions.assertEquals(2, stats.expirations);
+    }
+}